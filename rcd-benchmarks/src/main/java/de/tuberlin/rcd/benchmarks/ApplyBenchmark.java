@@ -0,0 +1,102 @@
+package de.tuberlin.rcd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.OTOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTChunkedListDataModel;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearDataModel;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTRopeDataModel;
+
+/**
+ * Throughput of <code>applyOperation</code> on large data models. The invocations alternate
+ * between an insert and a delete at the same position, so the size of the model stays constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplyBenchmark {
+
+    /**
+     * The benchmarked data models.
+     */
+    public enum Model {
+
+        LINEAR,
+
+        CHUNKED,
+
+        ROPE
+    }
+
+    /** Number of distinct positions the operations are applied at. */
+    private static final int POSITIONS = 1024;
+
+    @Param({ "LINEAR", "CHUNKED", "ROPE" })
+    public Model model;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    private OTSystemDefinition.OTDataModel<Character> dataModel;
+
+    private OTOperation<Character>[] operations;
+
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        if( model == Model.LINEAR ) {
+            final OTLinearDataModel<Character> linearModel = new OTLinearDataModel<Character>( Character.class );
+            for( int i = 0; i < size; ++i )
+                linearModel.applyOperation( new OTLinearOperations.InsertSEOperation<Character>( i, (char)( 'a' + i % 26 ) ) );
+            dataModel = linearModel;
+        } else if( model == Model.CHUNKED ) {
+            final List<Character> elements = new ArrayList<Character>( size );
+            for( int i = 0; i < size; ++i )
+                elements.add( (char)( 'a' + i % 26 ) );
+            dataModel = new OTChunkedListDataModel<Character>( Character.class );
+            dataModel.applyOperation( new OTLinearOperations.InsertRangeOperation<Character>( 0, elements ) );
+        } else {
+            final StringBuilder text = new StringBuilder( size );
+            for( int i = 0; i < size; ++i )
+                text.append( (char)( 'a' + i % 26 ) );
+            dataModel = new OTRopeDataModel( text );
+        }
+
+        // spread the positions over the whole model.
+        operations = new OTOperation[2 * POSITIONS];
+        for( int i = 0; i < POSITIONS; ++i ) {
+            final int position = (int)( (long)i * 7919 % size );
+            operations[2 * i] = new OTLinearOperations.InsertSEOperation<Character>( position, 'x' );
+            operations[2 * i + 1] = new OTLinearOperations.DeleteSEOperation<Character>( position );
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public int apply() {
+        dataModel.applyOperation( operations[next] );
+        next = ( next + 1 ) % operations.length;
+        return dataModel.size();
+    }
+}
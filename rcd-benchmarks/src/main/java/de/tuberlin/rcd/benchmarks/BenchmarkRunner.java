@@ -0,0 +1,41 @@
+package de.tuberlin.rcd.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation profiler and writes the results as JSON, so
+ * they can be kept as baseline and compared against later runs. Accepts the usual JMH
+ * command line options, e.g. a benchmark regex or <code>-p depth=16</code>.
+ */
+public final class BenchmarkRunner {
+
+    // prohibit instantiation.
+    private BenchmarkRunner() {}
+
+    /** Default file of the results. */
+    private static final String RESULT_FILE = "rcd-benchmarks.json";
+
+    /**
+     * Application entry point.
+     * @param args JMH command line options.
+     */
+    public static void main( String[] args ) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions commandLine = new CommandLineOptions( args );
+        final OptionsBuilder options = new OptionsBuilder();
+        options.parent( commandLine );
+        if( commandLine.getIncludes().isEmpty() )
+            options.include( BenchmarkRunner.class.getPackage().getName() + ".*" );
+        if( !commandLine.getResult().hasValue() )
+            options.result( RESULT_FILE );
+        if( !commandLine.getResultFormat().hasValue() )
+            options.resultFormat( ResultFormatType.JSON );
+        options.addProfiler( GCProfiler.class );
+        new Runner( options.build() ).run();
+    }
+}
@@ -0,0 +1,176 @@
+package de.tuberlin.rcd.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tuberlin.rcd.network.Connection;
+import de.tuberlin.rcd.network.Message;
+import de.tuberlin.rcd.network.codec.MessageCodecRegistry;
+import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.OTOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveOperationMetaData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
+import de.tuberlin.rcd.protocol.message.MessageFormat;
+import de.tuberlin.rcd.protocol.message.ProtocolCodecs;
+
+/**
+ * Throughput of a operation message through the frame streams of a <code>Connection</code>.
+ * The connection runs over a in-memory socket, every invocation writes one frame and reads
+ * it back, so encoding and decoding are measured without network I/O.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /**
+     * The operations carried by the message.
+     */
+    public enum Payload {
+
+        INSERT,
+
+        INSERT_RANGE
+    }
+
+    /** Number of elements of the inserted range. */
+    private static final int RANGE_LENGTH = 64;
+
+    @Param({ "binary", "java" })
+    public String codec;
+
+    @Param({ "INSERT", "INSERT_RANGE" })
+    public Payload payload;
+
+    private Connection connection;
+
+    private Message message;
+
+    @Setup
+    public void setup() throws IOException {
+        ProtocolCodecs.install();
+        connection = new Connection( new LoopbackSocket() );
+        connection.setCodec( MessageCodecRegistry.create( codec ) );
+
+        final UUID clientUID = UUID.randomUUID();
+        final OTOperation<Character> op;
+        if( payload == Payload.INSERT ) {
+            op = new OTLinearOperations.InsertSEOperation<Character>( 42, 'x' );
+        } else {
+            final List<Character> elements = new ArrayList<Character>( RANGE_LENGTH );
+            for( int i = 0; i < RANGE_LENGTH; ++i )
+                elements.add( (char)( 'a' + i % 26 ) );
+            op = new OTLinearOperations.InsertRangeOperation<Character>( 42, elements );
+        }
+        op.setMetaData( new WaveOperationMetaData( clientUID, new VectorClock( new Integer[]{ 4711 } ) ) );
+        message = connection.msgBuilder.begin( UUID.randomUUID() )
+                .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE,
+                        MessageFormat.MessageType.MSG_TYPE_OPERATION_FOR_REPLICATED_TYPE )
+                .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME, "benchmark-type" )
+                .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_OPERATION, op )
+                .build( clientUID );
+    }
+
+    @Benchmark
+    public Object roundTrip() throws IOException, ClassNotFoundException {
+        connection.writeObject( message );
+        return connection.readObject();
+    }
+
+    /**
+     * Socket whose input stream returns the bytes written to its output stream.
+     */
+    private static final class LoopbackSocket extends Socket {
+
+        private byte[] buffer = new byte[4096];
+
+        private int readPos, writePos;
+
+        private final InputStream in = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return readPos < writePos ? buffer[readPos++] & 0xFF : -1;
+            }
+
+            @Override
+            public int read( byte[] b, int off, int len ) throws IOException {
+                if( readPos == writePos )
+                    return -1;
+                final int n = Math.min( len, writePos - readPos );
+                System.arraycopy( buffer, readPos, b, off, n );
+                readPos += n;
+                return n;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return writePos - readPos;
+            }
+        };
+
+        private final OutputStream out = new OutputStream() {
+            @Override
+            public void write( int b ) throws IOException {
+                ensureCapacity( 1 );
+                buffer[writePos++] = (byte)b;
+            }
+
+            @Override
+            public void write( byte[] b, int off, int len ) throws IOException {
+                ensureCapacity( len );
+                System.arraycopy( b, off, buffer, writePos, len );
+                writePos += len;
+            }
+        };
+
+        /**
+         * Make room for the given number of bytes, the consumed bytes are discarded.
+         */
+        private void ensureCapacity( int len ) {
+            if( readPos == writePos )
+                readPos = writePos = 0;
+            if( writePos + len > buffer.length ) {
+                final byte[] newBuffer = new byte[Math.max( buffer.length * 2, writePos - readPos + len )];
+                System.arraycopy( buffer, readPos, newBuffer, 0, writePos - readPos );
+                writePos -= readPos;
+                readPos = 0;
+                buffer = newBuffer;
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public void setTcpNoDelay( boolean on ) {
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package de.tuberlin.rcd.benchmarks;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tuberlin.rcd.network.common.Event;
+import de.tuberlin.rcd.network.common.EventDispatcher;
+import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.OTOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.jupiter.JupiterOperationMetaData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.jupiter.JupiterServerAlgorithm;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.jupiter.SharedLogJupiterServerAlgorithm;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveOperationMetaData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveServerAlgorithm;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearDataModel;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearTransformer;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.conflictmng.FirstWriterWinsConflictSolver;
+
+/**
+ * Throughput of the server-side integration. Every invocation is one round of two clients:
+ * client B sends an insert based on the latest server state, client A sends a delete that
+ * is <code>depth</code> server operations behind and gets transformed against them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntegrateBenchmark {
+
+    /**
+     * The benchmarked server algorithms.
+     */
+    public enum Algorithm {
+
+        WAVE,
+
+        JUPITER,
+
+        JUPITER_SHARED_LOG
+    }
+
+    /** Number of elements in the data model before the first round. */
+    private static final int INITIAL_SIZE = 1024;
+
+    @Param({ "WAVE", "JUPITER", "JUPITER_SHARED_LOG" })
+    public Algorithm algorithm;
+
+    @Param({ "1", "16", "128" })
+    public int depth;
+
+    private OTSystemDefinition.OTServerAlgorithm<Character> server;
+
+    private final UUID clientA = UUID.randomUUID();
+
+    private final UUID clientB = UUID.randomUUID();
+
+    /** Number of operations client A and client B generated. */
+    private int generatedA, generatedB;
+
+    /** Number of server operations sent to client A and client B (Jupiter modes only). */
+    private int sentToA, sentToB;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        final OTLinearDataModel<Character> dataModel = new OTLinearDataModel<Character>( Character.class );
+        for( int i = 0; i < INITIAL_SIZE; ++i )
+            dataModel.applyOperation( new OTLinearOperations.InsertSEOperation<Character>( i, 'x' ) );
+
+        final OTSystemDefinition.InclusionTransformer<Character> transformer =
+                new OTLinearTransformer<Character>( new FirstWriterWinsConflictSolver<Character>() );
+        final OTSystemDefinition.OperationSender<Character> sender = new OTSystemDefinition.OperationSender<Character>() {
+            @Override
+            public void sendOperation( UUID clientUID, OTOperation<Character> op ) {
+            }
+        };
+        final EventDispatcher dispatcher = new EventDispatcher();
+        if( algorithm == Algorithm.WAVE )
+            server = new WaveServerAlgorithm<Character>( dataModel, transformer, sender, dispatcher );
+        else if( algorithm == Algorithm.JUPITER )
+            server = new JupiterServerAlgorithm<Character>( dataModel, transformer, sender, dispatcher );
+        else
+            server = new SharedLogJupiterServerAlgorithm<Character>( dataModel, transformer, sender, dispatcher );
+        dispatcher.dispatchEvent( new Event( "type_added_client", clientA ) );
+        dispatcher.dispatchEvent( new Event( "type_added_client", clientB ) );
+
+        generatedA = generatedB = sentToA = sentToB = 0;
+        // build up the operations client A has not seen yet.
+        for( int i = 0; i < depth; ++i )
+            integrateB();
+    }
+
+    @Benchmark
+    public OTOperation<Character> integrate() {
+        integrateB();
+        return integrateA();
+    }
+
+    /**
+     * Integrate an operation of client B, that has seen all server operations.
+     */
+    private OTOperation<Character> integrateB() {
+        final OTOperation<Character> op = new OTLinearOperations.InsertSEOperation<Character>( 0, 'b' );
+        if( algorithm == Algorithm.WAVE ) {
+            op.setMetaData( new WaveOperationMetaData( clientB, new VectorClock( new Integer[]{ server.getHistory().getRevision() } ) ) );
+        } else {
+            op.setMetaData( new JupiterOperationMetaData( clientB, new VectorClock( generatedB, sentToB ) ) );
+            ++sentToA;
+        }
+        ++generatedB;
+        return server.integrate( op );
+    }
+
+    /**
+     * Integrate an operation of client A, that misses the last <code>depth</code> server operations.
+     */
+    private OTOperation<Character> integrateA() {
+        final OTOperation<Character> op = new OTLinearOperations.DeleteSEOperation<Character>( 0 );
+        if( algorithm == Algorithm.WAVE ) {
+            op.setMetaData( new WaveOperationMetaData( clientA, new VectorClock( new Integer[]{ server.getHistory().getRevision() - depth } ) ) );
+        } else {
+            op.setMetaData( new JupiterOperationMetaData( clientA, new VectorClock( generatedA, sentToA - depth ) ) );
+            ++sentToB;
+        }
+        ++generatedA;
+        return server.integrate( op );
+    }
+}
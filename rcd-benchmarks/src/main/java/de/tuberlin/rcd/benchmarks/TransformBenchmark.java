@@ -0,0 +1,139 @@
+package de.tuberlin.rcd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tuberlin.rcd.network.common.Pair;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.CompositeOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.NoOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.OTOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearTransformer;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.conflictmng.FirstWriterWinsConflictSolver;
+
+/**
+ * Throughput of <code>OTLinearTransformer.transformOperation</code> for every pair of operation
+ * kinds. The remote operation is placed before, at or after the position of the local operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+    /**
+     * The benchmarked operation kinds. Entity updates share the transformation functions of
+     * the element updates, but need a conflict solver for equal positions.
+     */
+    public enum OperationKind {
+
+        INSERT,
+
+        DELETE,
+
+        UPDATE,
+
+        INSERT_RANGE,
+
+        DELETE_RANGE,
+
+        NO_OPERATION,
+
+        COMPOSITE
+    }
+
+    /**
+     * The position of the remote operation relative to the local operation.
+     */
+    public enum Placement {
+
+        BEFORE,
+
+        EQUAL,
+
+        AFTER
+    }
+
+    /** Position of the local operation. */
+    private static final int LOCAL_POSITION = 16;
+
+    @Param({ "INSERT", "DELETE", "UPDATE", "INSERT_RANGE", "DELETE_RANGE", "NO_OPERATION", "COMPOSITE" })
+    public OperationKind remoteKind;
+
+    @Param({ "INSERT", "DELETE", "UPDATE", "INSERT_RANGE", "DELETE_RANGE", "NO_OPERATION", "COMPOSITE" })
+    public OperationKind localKind;
+
+    @Param({ "BEFORE", "EQUAL", "AFTER" })
+    public Placement placement;
+
+    private OTLinearTransformer<Character> transformer;
+
+    private OTOperation<Character> remoteOp;
+
+    private OTOperation<Character> localOp;
+
+    @Setup
+    public void setup() {
+        transformer = new OTLinearTransformer<Character>( new FirstWriterWinsConflictSolver<Character>() );
+        final int remotePosition;
+        switch( placement ) {
+            case BEFORE: remotePosition = LOCAL_POSITION - 4; break;
+            case AFTER:  remotePosition = LOCAL_POSITION + 4; break;
+            default:     remotePosition = LOCAL_POSITION;
+        }
+        remoteOp = createOperation( remoteKind, remotePosition, 'r' );
+        localOp = createOperation( localKind, LOCAL_POSITION, 'l' );
+    }
+
+    @Benchmark
+    public Pair<OTOperation<Character>, OTOperation<Character>> transform() {
+        return transformer.transformOperation( true, remoteOp, localOp );
+    }
+
+    /**
+     * Create an operation of the given kind.
+     * @param kind The kind of the operation.
+     * @param position The position of the operation.
+     * @param element The inserted or updated element.
+     */
+    static OTOperation<Character> createOperation( OperationKind kind, int position, char element ) {
+        switch( kind ) {
+            case INSERT:
+                return new OTLinearOperations.InsertSEOperation<Character>( position, element );
+            case DELETE:
+                return new OTLinearOperations.DeleteSEOperation<Character>( position );
+            case UPDATE:
+                return new OTLinearOperations.UpdateSEOperation<Character>( position, element );
+            case INSERT_RANGE:
+                return new OTLinearOperations.InsertRangeOperation<Character>( position, Arrays.asList( element, element, element ) );
+            case DELETE_RANGE:
+                return new OTLinearOperations.DeleteRangeOperation<Character>( position, 3 );
+            case NO_OPERATION:
+                return new NoOperation<Character>();
+            case COMPOSITE: {
+                final List<OTOperation<Character>> operations = new ArrayList<OTOperation<Character>>();
+                operations.add( new OTLinearOperations.InsertSEOperation<Character>( position, element ) );
+                operations.add( new OTLinearOperations.DeleteSEOperation<Character>( position + 2 ) );
+                return new CompositeOperation<Character>( operations );
+            }
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+}
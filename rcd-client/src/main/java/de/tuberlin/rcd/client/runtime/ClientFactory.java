@@ -4,10 +4,13 @@ import java.io.IOException;
 import java.net.Socket;
 import java.util.UUID;
 
+import de.tuberlin.rcd.network.BatchPolicy;
 import de.tuberlin.rcd.network.Connection;
 import de.tuberlin.rcd.network.MessageBuilder;
 import de.tuberlin.rcd.network.Transceiver;
 import de.tuberlin.rcd.network.TransceiverFactory;
+import de.tuberlin.rcd.network.codec.MessageCodecRegistry;
+import de.tuberlin.rcd.protocol.message.ProtocolCodecs;
 import de.tuberlin.rcd.protocol.runtimedefinition.IDataManager;
 import de.tuberlin.rcd.protocol.runtimedefinition.TypeNameRegistry;
 import de.tuberlin.rcd.protocol.types.IReplicatedType;
@@ -45,15 +48,54 @@ public final class ClientFactory {
     /** Reference to the client side data manager. */
     private IDataManager dataManager;
 
+    /** Packing of the outgoing messages, by default only already queued messages are packed. */
+    private BatchPolicy batchPolicy = new BatchPolicy( 64, 0 );
+
+    /** The maximal payload length of a received frame. */
+    private int maxFrameSize = Connection.DEFAULT_MAX_FRAME_SIZE;
+
+    /**
+     * Set how the sender packs queued messages into frames.
+     * @param maxBatchSize The maximal number of messages per frame, <code>1</code> disables batching.
+     * @param maxFlushDelay The maximal time in milliseconds a message waits for further messages.
+     * @return This factory.
+     */
+    public ClientFactory setBatching( int maxBatchSize, long maxFlushDelay ) {
+        this.batchPolicy = new BatchPolicy( maxBatchSize, maxFlushDelay );
+        return this;
+    }
+
+    /**
+     * Set the maximal payload length of a received frame. A server that announces
+     * a larger frame is disconnected.
+     * @param maxFrameSize The maximal payload length in bytes.
+     * @return This factory.
+     */
+    public ClientFactory setMaxFrameSize( int maxFrameSize ) {
+        // sanity check.
+        if( maxFrameSize < 1 )
+            throw new IllegalArgumentException();
+
+        this.maxFrameSize = maxFrameSize;
+        return this;
+    }
 
     public ClientContext create( Socket socket ) throws IOException {
+        // Compact wire encoding of the operations.
+        ProtocolCodecs.install();
+
         final Connection connection = new Connection( socket );
+        connection.setMaxFrameSize( maxFrameSize );
         final UUID clientUID;
         try {
             // The first thing after establishing the connection
             // is to receive the client UID from the tests.
-            clientUID = (UUID) connection.in.readObject();
+            clientUID = (UUID) connection.readObject();
             connection.setUID( clientUID );
+            // Select one of the offered codecs, both sides switch after the answer.
+            final String codecName = MessageCodecRegistry.select( (String[]) connection.readObject() );
+            connection.writeObject( codecName );
+            connection.setCodec( MessageCodecRegistry.create( codecName ) );
         } catch( Exception e ) {
             throw new IllegalStateException( e );
         }
@@ -86,6 +128,7 @@ public final class ClientFactory {
         final ClientCommandMapping msgCmdMapping = new ClientCommandMapping( dataManager );
         // inject dependencies for transmitter and receiver.
         transceiver.getReceiver().storeDependency("MessageCmdMap", msgCmdMapping);
+        transceiver.getTransmitter().storeDependency( "batchPolicy", batchPolicy );
         //transceiver.getReceiver().storeDependency("DataManager", dataManager );
         // start connection.
         transceiver.start();
@@ -3,6 +3,7 @@ package de.tuberlin.rcd.client.runtime;
 import org.apache.log4j.Logger;
 
 import de.tuberlin.rcd.network.Message;
+import de.tuberlin.rcd.network.MessageBatch;
 import de.tuberlin.rcd.network.Transceiver;
 import de.tuberlin.rcd.protocol.message.MessageFormat;
 import de.tuberlin.rcd.protocol.runtimedefinition.IMessageCommand;
@@ -10,7 +11,7 @@ import de.tuberlin.rcd.protocol.runtimedefinition.IMessageCommand;
 /**
  * Client receiver thread of the server side transceiver instances.
  */
-public final class ClientReceiver extends Transceiver.TransceiverThreadBase {
+public final class ClientReceiver extends Transceiver.ReceiverThreadBase {
 
     /**
      * Log4J.
@@ -74,10 +75,21 @@ public final class ClientReceiver extends Transceiver.TransceiverThreadBase {
 	 */
 	@Override
 	protected void process() throws Exception {
-        final Object receivedObj = connection.in.readObject();
+        received( connection.readObject() );
+    }
+
+    /* (non-Javadoc)
+     * @see de.tuberlin.rcd.network.Transceiver.ReceiverThreadBase#received(java.lang.Object)
+     */
+    @Override
+    protected void received( Object receivedObj ) throws Exception {
         if( receivedObj instanceof Message ) {
-            final Message msg = (Message)receivedObj;
-            msgDispatcher.dispatchMessage( msg );
+            msgDispatcher.dispatchMessage( (Message)receivedObj );
+        } else if( receivedObj instanceof MessageBatch ) {
+            // unpack the batch, the messages are dispatched in transmission order.
+            for( Message msg : ( (MessageBatch)receivedObj ).getMessages() ) {
+                msgDispatcher.dispatchMessage( msg );
+            }
         } else {
             throw new IllegalStateException();
         }
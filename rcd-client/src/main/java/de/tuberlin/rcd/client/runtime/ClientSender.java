@@ -1,10 +1,13 @@
 package de.tuberlin.rcd.client.runtime;
 
+import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
 
+import de.tuberlin.rcd.network.BatchPolicy;
 import de.tuberlin.rcd.network.Message;
 import de.tuberlin.rcd.network.Transceiver;
 
@@ -28,12 +31,20 @@ public final class ClientSender extends Transceiver.TransceiverThreadBase {
 
     /** Queue containing all messages that are send to the associated client. */
 	private final BlockingQueue<Message> msgQueue = new LinkedBlockingQueue<Message>();
+
+    /** Controls the packing of queued messages into frames. */
+    private BatchPolicy batchPolicy = BatchPolicy.DISABLED;
+
+    /** Set while a caller writes the queued messages on the event driven transport. */
+    private final AtomicBoolean flushing = new AtomicBoolean( false );
 	
 	/* (non-Javadoc)
 	 * @see com.radt.network.Transceiver.TransceiverThreadBase#initialize()
 	 */
 	@Override
 	protected void initialize() throws Exception {
+        final BatchPolicy policy = (BatchPolicy)getDependency( "batchPolicy" );
+        batchPolicy = ( policy != null ) ? policy : BatchPolicy.DISABLED;
 	}
 
 	/* (non-Javadoc)
@@ -42,7 +53,8 @@ public final class ClientSender extends Transceiver.TransceiverThreadBase {
 	@Override
 	protected void process() throws Exception {
 		final Message msg = msgQueue.take();
-        connection.out.writeObject( msg );
+        // pack all pending messages into one frame.
+        connection.writeObject( batchPolicy.collect( msg, msgQueue ) );
 	}
 
 	/* (non-Javadoc)
@@ -53,13 +65,39 @@ public final class ClientSender extends Transceiver.TransceiverThreadBase {
 	}
 
     /**
-     * Enqueue a message in the queue.
+     * Enqueue a message in the queue. Thread-safe without locking the sender.
      * @param msg The message to send.
      */
-    public synchronized void enqueueMessage( Message msg ) {
+    public void enqueueMessage( Message msg ) {
         // sanity check.
         if( msg == null )
             throw new NullPointerException();
         msgQueue.add( msg );
+        if( transceiver.isEventDriven() ) {
+            // no sender thread, the selector based transport queues the frames itself.
+            try {
+                flushQueued();
+            } catch( IOException e ) {
+                throw new IllegalStateException( e );
+            }
+        }
+    }
+
+    /**
+     * Write the queued messages on the event driven transport. Only one caller writes at a
+     * time, messages enqueued meanwhile are packed into the frames of the writing caller.
+     * @throws IOException If the frame could not be written.
+     */
+    private void flushQueued() throws IOException {
+        while( !msgQueue.isEmpty() && flushing.compareAndSet( false, true ) ) {
+            try {
+                Message msg;
+                while( ( msg = msgQueue.poll() ) != null ) {
+                    connection.writeObject( batchPolicy.collectQueued( msg, msgQueue ) );
+                }
+            } finally {
+                flushing.set( false );
+            }
+        }
     }
 }
@@ -4,6 +4,7 @@
 package de.tuberlin.rcd.client.tests.consoleclient;
 
 import java.net.Socket;
+import java.util.Iterator;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -125,15 +126,12 @@ public final class ClientB {
                         int i = 0;
                         while( i++ < 1000 ) {
                             Thread.sleep( 100 );
-                            @SuppressWarnings("rawtypes")
-							ClientReplicatedList<Character>.StableIterator<Character> iterator
-                                    = (ClientReplicatedList.StableIterator)testList.iterator();
+                            final Iterator<Character> iterator = testList.iterator();
                             while( iterator.hasNext() ) {
                                 Character c = iterator.next();
                                 System.out.print( c );
                                 //Thread.sleep( 10 );
                             }
-                            iterator.done();
                             System.out.println();
                         }
                         cdl.countDown();
@@ -6,6 +6,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -17,7 +18,9 @@ import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationHistory;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.ClientOTConcurrencyControlFactory;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.OperationBasedFillData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.SnapshotFillData;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.StateBasedFillData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
 import de.tuberlin.rcd.protocol.message.MessageFormat;
 import de.tuberlin.rcd.protocol.runtimedefinition.IDataManager;
 import de.tuberlin.rcd.protocol.types.AbstractFillData;
@@ -77,11 +80,19 @@ public abstract class AbstractClientReplicatedType<T> extends AbstractReplicated
             //} else {
                 final ClientSender sender = (ClientSender)
                         dataManager.transceiver.getTransmitter();
+                // the operation carries the revision of the client.
+                unacknowledgedOps.set( 0 );
                 sender.enqueueMessage( convertOperationToMessage( op ) );
             //}
         }
     };
 
+    /** Number of integrated server operations after that a idle client acknowledges its revision. */
+    public static final int ACKNOWLEDGE_INTERVAL = 64;
+
+    /** Number of server operations integrated since the revision was last reported to the server. */
+    private final AtomicInteger unacknowledgedOps = new AtomicInteger( 0 );
+
     /** The data structures data model. */
     protected final OTSystemDefinition.OTDataModel<T> model;
 
@@ -122,7 +133,7 @@ public abstract class AbstractClientReplicatedType<T> extends AbstractReplicated
     public void processRemoteOperation( Message msg, OTOperationDefinition.OTOperation<T> op ) {
         if( msg.getSourceUID().equals(dataManager.connection.getUID()) ) {
             LOGGER.info( "received acknowledge for message [UID = " + msg.getMessageUID() + "]" );
-            dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_ACKNOWLEDGE, op ) );
+            dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_ACKNOWLEDGE_ID, op ) );
         }
         //
         // DO THE TRANSFORMATION.
@@ -130,9 +141,29 @@ public abstract class AbstractClientReplicatedType<T> extends AbstractReplicated
         OTOperationDefinition.OTOperation<T> adaptedOp = clientIntegrator.integrate( op );
         if( !msg.getSourceUID().equals( dataManager.connection.getUID() ) ) {
             LOGGER.info( "apply " + op + " to replicated type[name = " + name + "]" );
-            dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_REMOTE_UPDATE, adaptedOp ) );
+            dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_REMOTE_UPDATE_ID, adaptedOp ) );
+        }
+        dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_UPDATE_ID, adaptedOp ) );
+
+        // report the revision, so the server can drop the operations from its history.
+        if( unacknowledgedOps.incrementAndGet() >= ACKNOWLEDGE_INTERVAL ) {
+            unacknowledgedOps.set( 0 );
+            sendAcknowledge( MessageFormat.MessageType.MSG_TYPE_ACKNOWLEDGE_REPLICATED_TYPE );
         }
-        dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_UPDATE, adaptedOp ) );
+    }
+
+    /**
+     * Report the current revision of the client to the server.
+     * @param msgType The kind of the acknowledge.
+     */
+    private void sendAcknowledge( MessageFormat.MessageType msgType ) {
+        final ClientSender sender = (ClientSender)
+                dataManager.transceiver.getTransmitter();
+        sender.enqueueMessage( dataManager.messageBuilder.begin( UUID.randomUUID() )
+                .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE, msgType )
+                .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME, name )
+                .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_REVISION, clientIntegrator.getRevision() )
+                .build( dataManager.connection.getUID() ) );
     }
 
     /**
@@ -146,8 +177,8 @@ public abstract class AbstractClientReplicatedType<T> extends AbstractReplicated
         waitUntilFilled();
 
         clientIntegrator.generate(op);
-        dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_LOCAL_UPDATE, op ) );
-        dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_UPDATE, op ) );
+        dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_LOCAL_UPDATE_ID, op ) );
+        dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_UPDATE_ID, op ) );
     }
 
     @Override
@@ -168,6 +199,9 @@ public abstract class AbstractClientReplicatedType<T> extends AbstractReplicated
                 clientIntegrator.setState( data.state );
             } else if( fillData instanceof OperationBasedFillData) {
                 final OperationBasedFillData<T> data = (OperationBasedFillData<T>)fillData;
+                // a truncated history can not rebuild the data model.
+                if( data.history.getBaseRevision() != 0 )
+                    throw new IllegalStateException();
                 for ( Iterator<OTOperationDefinition.OTOperation<T>> iterator =
                               data.history.getHistoryIterator(); iterator.hasNext(); ) {
                     final OTOperationDefinition.OTOperation<T> op = iterator.next();
@@ -175,9 +209,19 @@ public abstract class AbstractClientReplicatedType<T> extends AbstractReplicated
                 }
                 clientIntegrator.setState( data.state );
                 clientIntegrator.fillHistory( data.history );
+            } else if( fillData instanceof SnapshotFillData ) {
+                final SnapshotFillData<T> data = (SnapshotFillData<T>)fillData;
+                if( !data.elements.isEmpty() )
+                    model.applyOperation( new OTLinearOperations.InsertRangeOperation<T>( 0, data.elements ) );
+                for( OTOperationDefinition.OTOperation<T> op : data.tail )
+                    model.applyOperation( op );
+                clientIntegrator.setState( data.state );
             }
+            // the server holds back further operations until the fill is acknowledged. The acknowledge
+            // must precede the first local operation, so it is sent before the fill latch opens.
+            sendAcknowledge( MessageFormat.MessageType.MSG_TYPE_FILL_ACKNOWLEDGE_REPLICATED_TYPE );
         }
-        dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_FILL, model ) );
+        dispatchEvent( new ReplicatedTypeEvent( ReplicatedTypeEvent.RS_FILL_ID, model ) );
         this.fillLatch.countDown();
     }
 
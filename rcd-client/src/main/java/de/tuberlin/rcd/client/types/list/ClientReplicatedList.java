@@ -1,6 +1,7 @@
 package de.tuberlin.rcd.client.types.list;
 
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -8,20 +9,25 @@ import java.util.ListIterator;
 import java.util.UUID;
 
 import de.tuberlin.rcd.client.types.AbstractClientReplicatedType;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.ClientOTConcurrencyControlFactory;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveClientAlgorithm;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearCursor;
-import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearDataModel;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearTransformer;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTSnapshotDataModel;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.conflictmng.LastWriterWinsConflictSolver;
 import de.tuberlin.rcd.protocol.runtimedefinition.IDataManager;
 import de.tuberlin.rcd.protocol.types.AbstractReplicatedType;
 import de.tuberlin.rcd.protocol.types.list.IReplicatedList;
+import de.tuberlin.rcd.protocol.types.list.ListModel;
 
 /**
  * The client-side list implementation. The replicated list implement the java
  * <code>List</code> interface and can hence be used as a simple list in the client code.
+ * The query methods read an immutable snapshot of the elements that is published after every
+ * applied operation, so readers neither block nor are blocked by the integration of operations.
  * @param <T> The type of the elements in the data model.
  */
 public class ClientReplicatedList<T> extends AbstractClientReplicatedType<T>
@@ -36,6 +42,14 @@ public class ClientReplicatedList<T> extends AbstractClientReplicatedType<T>
      * Constructor.
      */
     public ClientReplicatedList(String name, UUID typeUID, final Class<T> typeInfo, IDataManager dataManager) {
+        this( name, typeUID, typeInfo, dataManager, ListModel.LINEAR );
+    }
+
+    /**
+     * Constructor.
+     * @param listModel The data model of the list replica, e.g. <code>CHUNKED</code> for large lists.
+     */
+    public ClientReplicatedList(String name, UUID typeUID, final Class<T> typeInfo, IDataManager dataManager, final ListModel listModel) {
         super( new ClientOTConcurrencyControlFactory<T>() {
 
             @Override
@@ -56,7 +70,7 @@ public class ClientReplicatedList<T> extends AbstractClientReplicatedType<T>
 
             @Override
             public OTSystemDefinition.OTDataModel<T> injectDataModel() {
-                return new OTLinearDataModel<T>( typeInfo );
+                return new OTSnapshotDataModel<T>( listModel.createDataModel( typeInfo ) );
             }
 
         }, name, typeUID, dataManager);
@@ -67,6 +81,15 @@ public class ClientReplicatedList<T> extends AbstractClientReplicatedType<T>
     /** Internal cursor, for list modification methods. */
     private final OTLinearCursor<T> cursor;
 
+    /**
+     * Return an immutable snapshot of the elements. The snapshot is published by the thread
+     * that applies a operation, reading it takes no lock.
+     * @return The unmodifiable elements after the latest applied operation.
+     */
+    public List<T> snapshot() {
+        return ((OTSnapshotDataModel<T>)model).getSnapshot();
+    }
+
     /**
      * Create a cursor on a fixed position.
      * @param position Index of the data element the cursor points to.
@@ -211,7 +234,7 @@ public class ClientReplicatedList<T> extends AbstractClientReplicatedType<T>
         // sanity check.
         if( element == null )
             throw new IllegalArgumentException();
-        final StableIterator<T> iterator = (StableIterator<T>) this.iterator();
+        final StableIterator<T> iterator = new StableIterator<T>( this, -1 );
         while( iterator.hasNext() ) {
             final T obj = iterator.next();
             if( obj == element || obj.equals( element ) ) {
@@ -224,8 +247,8 @@ public class ClientReplicatedList<T> extends AbstractClientReplicatedType<T>
     }
 
     @Override
-    public synchronized boolean addAll( Collection<? extends T> elements ) {  // need a mutex?
-        return addAll( 0, elements );
+    public synchronized boolean addAll( Collection<? extends T> elements ) {
+        return addAll( size(), elements );
     }
 
     @Override
@@ -233,11 +256,15 @@ public class ClientReplicatedList<T> extends AbstractClientReplicatedType<T>
         // sanity check.
         if( elements == null )
             throw new IllegalArgumentException();
-            final StableListIterator<T> iterator = (StableListIterator<T>) this.listIterator( index );
-        for( T element : elements ) {
-            iterator.add( element );
-        }
-        iterator.done();
+        if( index > size() || index < 0 )
+            throw new IndexOutOfBoundsException();
+        if( elements.isEmpty() )
+            return false;
+
+        // all elements are inserted by a single operation.
+        final OTOperationDefinition.OTOperation<T> insertOp
+                = new OTLinearOperations.InsertRangeOperation<T>( index, new ArrayList<T>( elements ) );
+        processLocalOperation( insertOp );
         return true;
     }
 
@@ -266,28 +293,45 @@ public class ClientReplicatedList<T> extends AbstractClientReplicatedType<T>
         // sanity check.
         if( elements == null )
             throw new IllegalArgumentException();
-        final StableListIterator<T> iterator = (StableListIterator<T>) this.listIterator();
-        boolean result = false;
-        while( iterator.hasNext() ) {
-            final T obj = iterator.next();
-            for( Object o : elements ) {
-                if( obj == o || obj.equals( o ) ) {
-                    iterator.remove();
-                    result = true;
+
+        // block the calling thread until the fill sequence is finished.
+        waitUntilFilled();
+        // the positions are read and the operation is generated under the monitor of the
+        // integrator, so no remote operation is integrated in between and shifts them.
+        synchronized( clientIntegrator ) {
+            // every run of consecutive matching elements is deleted by one range delete. The runs
+            // are collected from the tail, so the positions of the remaining runs stay valid.
+            final List<T> current = snapshot();
+            final List<OTOperationDefinition.OTOperation<T>> deleteOps = new ArrayList<OTOperationDefinition.OTOperation<T>>();
+            int end = -1;
+            for( int i = current.size() - 1; i >= -1; --i ) {
+                final boolean match = i >= 0 && elements.contains( current.get( i ) );
+                if( match && end < 0 ) {
+                    end = i + 1;
+                } else if( !match && end >= 0 ) {
+                    deleteOps.add( new OTLinearOperations.DeleteRangeOperation<T>( i + 1, end - i - 1 ) );
+                    end = -1;
                 }
             }
+
+            if( deleteOps.isEmpty() )
+                return false;
+            processLocalOperation( deleteOps.size() == 1
+                    ? deleteOps.get( 0 ) : new OTOperationDefinition.CompositeOperation<T>( deleteOps ) );
+            return true;
         }
-        iterator.done();
-        return result;
     }
 
     @Override
     public synchronized void clear() {
-        final StableIterator<T> iterator = (StableIterator<T>) this.iterator();
-        while( iterator.hasNext() ) {
-            iterator.remove();
+        // block the calling thread until the fill sequence is finished.
+        waitUntilFilled();
+        // the size is read and the operation is generated under the monitor of the integrator.
+        synchronized( clientIntegrator ) {
+            final int size = size();
+            if( size > 0 )
+                processLocalOperation( new OTLinearOperations.DeleteRangeOperation<T>( 0, size ) );
         }
-        iterator.done();
     }
 
     //-----------------------------------------------
@@ -296,66 +340,68 @@ public class ClientReplicatedList<T> extends AbstractClientReplicatedType<T>
 
     @Override
     public int size() {
-        return ((List<?>)model.getData()).size();
+        return snapshot().size();
     }
 
     @Override
     public boolean isEmpty() {
-        return ((List<?>)model.getData()).isEmpty();
+        return snapshot().isEmpty();
     }
 
     @Override
     public boolean contains(Object o) {
-        return ((List<?>)model.getData()).contains( o );
+        return snapshot().contains( o );
     }
 
     @Override
     public boolean containsAll(Collection<?> c) {
-        return ((List<?>)model).containsAll( c );
+        return snapshot().containsAll( c );
     }
 
     @Override
     public Object[] toArray() {
-        return ((List<?>)model.getData()).toArray();
+        return snapshot().toArray();
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <G> G[] toArray( G[] a) {
-        return ((List<T>)model.getData()).toArray(a);
+        return snapshot().toArray( a );
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public T get(int index) {
-        return ((List<T>)model.getData()).get(index);
+        return snapshot().get( index );
     }
 
     @Override
     public int indexOf(Object o) {
-        return ((List<?>)model.getData()).indexOf( o );
+        return snapshot().indexOf( o );
     }
 
     @Override
     public int lastIndexOf(Object o) {
-        return ((List<?>)model.getData()).lastIndexOf(o);
+        return snapshot().lastIndexOf( o );
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public List<T> subList(int fromIndex, int toIndex) {
-        return ((List<T>)model.getData()).subList( fromIndex, toIndex );
+        return snapshot().subList( fromIndex, toIndex );
     }
 
     //-----------------------------------------------
     // Iterator methods.
     //-----------------------------------------------
 
+    /**
+     * Return an iterator over the snapshot of the elements. The iterator needs no cursor
+     * and no <code>done</code> call, it does not support <code>remove</code>. Use
+     * <code>listIterator</code> to modify the list while iterating.
+     */
     @Override
     public Iterator<T> iterator() {
         // block the calling thread until the fill sequence is finished.
         waitUntilFilled();
-        return new StableIterator<T>( this, -1 );
+        return snapshot().iterator();
     }
 
     @Override
@@ -1,5 +1,6 @@
 package de.tuberlin.rcd.client.types.string;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -11,8 +12,8 @@ import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.ClientOTConcurrencyControlFactory;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveClientAlgorithm;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearCursor;
-import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearDataModel;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTRopeDataModel;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearTransformer;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.conflictmng.LastWriterWinsConflictSolver;
 import de.tuberlin.rcd.protocol.runtimedefinition.IDataManager;
@@ -54,7 +55,7 @@ public final class ClientReplicatedString extends AbstractClientReplicatedType<C
 
             @Override
             public OTSystemDefinition.OTDataModel<Character> injectDataModel() {
-                return new OTLinearDataModel<Character>( Character.class );
+                return new OTRopeDataModel();
             }
 
         }, name, typeUID, dataManager );
@@ -86,11 +87,9 @@ public final class ClientReplicatedString extends AbstractClientReplicatedType<C
      * @param character The character to insert.
      */
     @Override
-    @SuppressWarnings("unchecked")
     public void insertChar( int pos, char character ) {
-        final List<Character> m = (List<Character>)model.getData();
         // sanity check.
-        if( pos > m.size() || pos < 0 )
+        if( pos > model.size() || pos < 0 )
             throw new IndexOutOfBoundsException();
 
         final OTOperationDefinition.OTOperation<Character> insertOp
@@ -104,11 +103,9 @@ public final class ClientReplicatedString extends AbstractClientReplicatedType<C
      * @param pos The position to delete.
      */
     @Override
-    @SuppressWarnings("unchecked")
     public void deleteChar( int pos ) {
-        final List<Character> m = (List<Character>)model.getData();
         // sanity check.
-        if( pos > m.size() || pos < 0 )
+        if( pos >= model.size() || pos < 0 )
             throw new IndexOutOfBoundsException();
 
         final OTOperationDefinition.OTOperation<Character> deleteOp
@@ -117,35 +114,81 @@ public final class ClientReplicatedString extends AbstractClientReplicatedType<C
         processLocalOperation( deleteOp );
     }
 
+    /**
+     * Insert a sequence of characters at a given position. The characters are
+     * inserted by a single operation.
+     * @param pos The position to insert.
+     * @param text The characters to insert.
+     */
+    @Override
+    public void insertString( int pos, CharSequence text ) {
+        // sanity check.
+        if( text == null )
+            throw new IllegalArgumentException();
+        if( pos > model.size() || pos < 0 )
+            throw new IndexOutOfBoundsException();
+        if( text.length() == 0 )
+            return;
+
+        final List<Character> characters = new ArrayList<Character>( text.length() );
+        for( int i = 0; i < text.length(); ++i )
+            characters.add( text.charAt( i ) );
+        final OTOperationDefinition.OTOperation<Character> insertOp
+                = new OTLinearOperations.InsertRangeOperation<Character>( pos, characters );
+
+        processLocalOperation( insertOp );
+    }
+
+    /**
+     * Delete a sequence of characters starting at a given position. The characters
+     * are deleted by a single operation.
+     * @param pos The position of the first deleted character.
+     * @param count The number of characters to delete.
+     */
+    @Override
+    public void deleteString( int pos, int count ) {
+        // sanity check.
+        if( count < 0 )
+            throw new IllegalArgumentException();
+        if( pos < 0 || pos + count > model.size() )
+            throw new IndexOutOfBoundsException();
+        if( count == 0 )
+            return;
+
+        final OTOperationDefinition.OTOperation<Character> deleteOp
+                = new OTLinearOperations.DeleteRangeOperation<Character>( pos, count );
+
+        processLocalOperation( deleteOp );
+    }
+
     //-----------------------------------------------
     // CharSequence implementation.
     //-----------------------------------------------
 
     @Override
-    @SuppressWarnings("unchecked")
     public int length() {
-        return ((List<Character>)model.getData()).size();
+        return model.size();
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public char charAt( int i ) {
-        return ((List<Character>)model).get( i );
+        return text().charAt( i );
     }
 
     @Override
     public CharSequence subSequence( int i, int i1 ) {
-        throw new UnsupportedOperationException();
+        return text().subSequence( i, i1 );
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public String toString() {
-        final List<Character> m = (List<Character>)model.getData();
-        StringBuilder builder = new StringBuilder( m.size() );
-        for( Character ch : m ) {
-            builder.append( ch );
-        }
-        return builder.toString();
+        return text().toString();
+    }
+
+    /**
+     * Return the text data model.
+     */
+    private OTRopeDataModel text() {
+        return (OTRopeDataModel)model;
     }
 }
@@ -0,0 +1,96 @@
+package de.tuberlin.rcd.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls how the senders pack queued messages into frames. A frame is flushed as soon as it
+ * contains <code>maxBatchSize</code> messages or the oldest message waited <code>maxFlushDelay</code>
+ * milliseconds. With a delay of zero only the messages that are already queued are packed, so
+ * batching never adds latency. The event driven transport never waits and packs only the
+ * messages that are already queued.
+ *
+ * @author Tobias Herb
+ *
+ */
+public final class BatchPolicy {
+
+    /** Every message is transmitted in its own frame. */
+    public static final BatchPolicy DISABLED = new BatchPolicy( 1, 0 );
+
+    /**
+     * Constructor.
+     * @param maxBatchSize The maximal number of messages per frame.
+     * @param maxFlushDelay The maximal time in milliseconds a message waits for further messages.
+     */
+    public BatchPolicy( int maxBatchSize, long maxFlushDelay ) {
+        // sanity check.
+        if( maxBatchSize < 1 )
+            throw new IllegalArgumentException();
+        if( maxFlushDelay < 0 )
+            throw new IllegalArgumentException();
+
+        this.maxBatchSize = maxBatchSize;
+        this.maxFlushDelay = maxFlushDelay;
+    }
+
+    /** The maximal number of messages per frame. */
+    public final int maxBatchSize;
+
+    /** The maximal time in milliseconds a message waits for further messages. */
+    public final long maxFlushDelay;
+
+    /**
+     * Collect the messages for the next frame.
+     * @param first The first message, already taken from the queue.
+     * @param queue The queue of pending messages.
+     * @return The message itself or a <code>MessageBatch</code>.
+     * @throws InterruptedException If the thread is interrupted while waiting for further messages.
+     */
+    public Object collect( Message first, BlockingQueue<Message> queue ) throws InterruptedException {
+        // sanity check.
+        if( first == null )
+            throw new NullPointerException();
+        if( maxBatchSize == 1 )
+            return first;
+
+        final List<Message> batch = new ArrayList<Message>();
+        batch.add( first );
+        queue.drainTo( batch, maxBatchSize - 1 );
+        if( maxFlushDelay > 0 ) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( maxFlushDelay );
+            while( batch.size() < maxBatchSize ) {
+                final long remaining = deadline - System.nanoTime();
+                if( remaining <= 0 )
+                    break;
+                final Message next = queue.poll( remaining, TimeUnit.NANOSECONDS );
+                if( next == null )
+                    break;
+                batch.add( next );
+                queue.drainTo( batch, maxBatchSize - batch.size() );
+            }
+        }
+        return batch.size() == 1 ? first : new MessageBatch( batch );
+    }
+
+    /**
+     * Collect the messages for the next frame without waiting for further messages.
+     * @param first The first message, already taken from the queue.
+     * @param queue The queue of pending messages.
+     * @return The message itself or a <code>MessageBatch</code>.
+     */
+    public Object collectQueued( Message first, BlockingQueue<Message> queue ) {
+        // sanity check.
+        if( first == null )
+            throw new NullPointerException();
+        if( maxBatchSize == 1 || queue.isEmpty() )
+            return first;
+
+        final List<Message> batch = new ArrayList<Message>();
+        batch.add( first );
+        queue.drainTo( batch, maxBatchSize - 1 );
+        return batch.size() == 1 ? first : new MessageBatch( batch );
+    }
+}
@@ -0,0 +1,67 @@
+package de.tuberlin.rcd.network;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.tuberlin.rcd.network.codec.MessageCodec;
+
+/**
+ * Message that is transmitted unchanged to several connections. The message is encoded only
+ * once per codec, all connections share the same immutable payload.
+ *
+ * @author Tobias Herb
+ *
+ */
+public final class BroadcastMessage extends Message {
+
+    /**
+     * Constants.
+     */
+    private static final long serialVersionUID = -1297651874385047152L;
+
+    /**
+     * Constructor.
+     * @param sourceUID The UID of the creator of the message.
+     */
+    public BroadcastMessage( UUID sourceUID, UUID messageUID, Map<String,Serializable> dataTable, int timeStamp ) {
+        super( sourceUID, messageUID, dataTable, timeStamp );
+    }
+
+    /** The encoded message by codec name. */
+    private final transient ConcurrentMap<String,byte[]> payloads = new ConcurrentHashMap<String,byte[]>();
+
+    /**
+     * Return the payload of the message for the given codec. The message is encoded
+     * on the first call, all further calls return the same payload.
+     * ATTENTION: The returned array must not be modified!
+     * @param codec The codec of the connection.
+     * @return The encoded message.
+     * @throws IOException If the message could not be encoded.
+     */
+    public byte[] getPayload( MessageCodec codec ) throws IOException {
+        // sanity check.
+        if( codec == null )
+            throw new NullPointerException();
+
+        final byte[] payload = payloads.get( codec.getName() );
+        if( payload != null )
+            return payload;
+        // concurrent senders may encode at the same time, only the first payload is kept.
+        final byte[] encoded = codec.encodeDetached( this );
+        final byte[] existing = payloads.putIfAbsent( codec.getName(), encoded );
+        return existing != null ? existing : encoded;
+    }
+
+    /**
+     * The receivers get a plain message.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new Message( getSourceUID(), getMessageUID(), new HashMap<String,Serializable>( getDataTable() ), getTimeStamp() );
+    }
+}
@@ -2,15 +2,28 @@ package de.tuberlin.rcd.network;
 
 import org.apache.log4j.Logger;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.UUID;
 
+import de.tuberlin.rcd.network.codec.JavaSerializationCodec;
+import de.tuberlin.rcd.network.codec.MessageCodec;
+
 /**
  * Encapsulates a client connection.
- * 
+ *
+ * All objects are transmitted as length prefixed frames ( [int length][payload] ). The framing
+ * is shared by the blocking and the non-blocking (selector based) transport, so a blocking client
+ * can talk to a server that runs the selector based transport. The payload is produced by the
+ * <code>MessageCodec</code> of the connection, which is agreed on during the connection handshake.
+ *
  * @author Tobias Herb
  *
  */
@@ -21,37 +34,101 @@ public final class Connection {
      */
     private static final Logger LOGGER = Logger.getLogger( Connection.class );
 
+    /** Size of the frame header (the payload length). */
+    public static final int FRAME_HEADER_SIZE = 4;
+
+    /** Default maximal payload length of a received frame. */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
 	/**
-	 * Constructor.
+	 * Constructor. Creates a connection for the blocking transport.
 	 * @param socket Endpoint for client communication.
-	 * @throws IOException If an I/O error occurs while reading or 
-	 * 		   writing stream header.
+	 * @throws IOException If an I/O error occurs while creating the streams.
 	 */
 	public Connection( Socket socket ) throws IOException {
-		// sanity check. 
+		// sanity check.
 		if( socket == null )
 			throw new NullPointerException();
 
         this.socket = socket;
-        // be careful this order is important here, otherwise we generate a deadlock.
-        this.out = new ObjectOutputStream( socket.getOutputStream() );
-        this.in = new ObjectInputStream( socket.getInputStream() );
+        this.channel = null;
+        // frames are already packed by the senders, don't delay them further.
+        socket.setTcpNoDelay( true );
+        this.out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+        this.in = new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
         this.msgBuilder = new MessageBuilder( false );
         LOGGER.info( "connection context created [uid = " + clientUID + "]" );
     }
-	
+
+    /**
+     * Constructor. Creates a connection for the selector based transport. As long as the
+     * channel is in blocking mode (e.g. during the UID handshake) frames are written directly,
+     * after the <code>NioTransceiver</code> took over the channel they are queued.
+     * @param channel Endpoint for client communication.
+     * @throws IOException If the socket options could not be set.
+     */
+    public Connection( SocketChannel channel ) throws IOException {
+        // sanity check.
+        if( channel == null )
+            throw new NullPointerException();
+
+        this.socket = channel.socket();
+        this.channel = channel;
+        // frames are already packed by the senders, don't delay them further.
+        socket.setTcpNoDelay( true );
+        this.out = null;
+        this.in = null;
+        this.msgBuilder = new MessageBuilder( false );
+        LOGGER.info( "connection context created [uid = " + clientUID + "]" );
+    }
+
 	/** Endpoint for client communication. */
 	public final Socket socket;
-	
-	/** Channel for receiving objects. */
-	public final ObjectInputStream in;
-	
-	/** Channel for transmitting objects. */
-	public final ObjectOutputStream out;
-	
+
+    /** Channel of the selector based transport, <code>null</code> for the blocking transport. */
+    final SocketChannel channel;
+
+	/** Channel for receiving frames (blocking transport only). */
+	private final DataInputStream in;
+
+	/** Channel for transmitting frames (blocking transport only). */
+	private final DataOutputStream out;
+
+    /** The transceiver that owns the channel, after it switched to non-blocking mode. */
+    volatile NioTransceiver nioTransceiver = null;
+
+    /** Codec of the frame payloads. Until the handshake is finished the Java serialization is used. */
+    private volatile MessageCodec codec = new JavaSerializationCodec();
+
+    /** Serializes encoding and transmission, the codec may intern names across frames. */
+    private final Object writeLock = new Object();
+
 	/** Unique identifier for the connected client. */
 	private UUID clientUID = null;
 
+    /** Maximal payload length of a received frame, the length is sent by the peer. */
+    private volatile int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+    /**
+     * Set the maximal payload length of a received frame. A peer that announces
+     * a larger frame is disconnected.
+     * @param maxFrameSize The maximal payload length in bytes.
+     */
+    public void setMaxFrameSize( int maxFrameSize ) {
+        // sanity check.
+        if( maxFrameSize < 1 )
+            throw new IllegalArgumentException();
+
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Return the maximal payload length of a received frame.
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
     /** Every connection gets its own message builder. */
     public final MessageBuilder msgBuilder;
 
@@ -84,27 +161,154 @@ public final class Connection {
             return clientUID;
     }
 
+    /**
+     * Set the codec of the frame payloads. Must be called on both sides at the same point
+     * of the frame sequence, i.e. during the connection handshake.
+     * @param codec The codec.
+     */
+    public void setCodec( MessageCodec codec ) {
+        // sanity check.
+        if( codec == null )
+            throw new NullPointerException();
+        this.codec = codec;
+        LOGGER.info( "connection codec selected [codec = " + codec.getName() + "]" );
+    }
+
+    /**
+     * Return the codec of the frame payloads.
+     */
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Transmit an object. For the blocking transport the calling thread writes the frame, for the
+     * selector based transport the frame is handed over to the I/O thread that owns the channel.
+     * @param obj The object to transmit.
+     * @throws IOException If an I/O error occurs while writing the frame.
+     */
+    public void writeObject( Object obj ) throws IOException {
+        // sanity check.
+        if( obj == null )
+            throw new NullPointerException();
+
+        synchronized( writeLock ) {
+            // broadcast messages are encoded once, the payload is shared with the other connections.
+            final boolean shared = obj instanceof BroadcastMessage;
+            final byte[] payload = shared ? ( (BroadcastMessage)obj ).getPayload( codec ) : codec.encode( obj );
+            if( channel == null ) {
+                out.writeInt( payload.length );
+                out.write( payload );
+                out.flush();
+            } else {
+                final NioTransceiver transceiver = nioTransceiver;
+                if( transceiver != null && shared ) {
+                    // header and a read-only view of the shared payload, gathered by the I/O thread.
+                    final ByteBuffer header = ByteBuffer.allocate( FRAME_HEADER_SIZE );
+                    header.putInt( payload.length );
+                    header.flip();
+                    transceiver.enqueueFrame( header );
+                    transceiver.enqueueFrame( ByteBuffer.wrap( payload ).asReadOnlyBuffer() );
+                    return;
+                }
+                final ByteBuffer frame = ByteBuffer.allocate( FRAME_HEADER_SIZE + payload.length );
+                frame.putInt( payload.length ).put( payload );
+                frame.flip();
+                if( transceiver != null ) {
+                    transceiver.enqueueFrame( frame );
+                } else {
+                    while( frame.hasRemaining() ) {
+                        channel.write( frame );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Receive an object. Blocks until a complete frame is read. Supported by the blocking
+     * transport and by the selector based transport as long as the channel is in blocking
+     * mode (e.g. during the connection handshake), afterwards its I/O threads decode the frames.
+     * @return The received object.
+     * @throws IOException If an I/O error occurs while reading the frame.
+     * @throws ClassNotFoundException If the class of the received object could not be found.
+     */
+    public Object readObject() throws IOException, ClassNotFoundException {
+        final byte[] payload;
+        if( channel == null ) {
+            final int length = in.readInt();
+            checkFrameLength( length );
+            payload = new byte[length];
+            in.readFully( payload );
+        } else {
+            if( nioTransceiver != null )
+                throw new IllegalStateException();
+            final ByteBuffer header = ByteBuffer.allocate( FRAME_HEADER_SIZE );
+            readFully( header );
+            checkFrameLength( header.getInt( 0 ) );
+            final ByteBuffer body = ByteBuffer.allocate( header.getInt( 0 ) );
+            readFully( body );
+            payload = body.array();
+        }
+        return decode( payload );
+    }
+
+    /**
+     * Fill the buffer from the blocking channel.
+     */
+    private void readFully( ByteBuffer buffer ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            if( channel.read( buffer ) < 0 )
+                throw new EOFException();
+        }
+    }
+
+    /**
+     * Check the payload length of a received frame header.
+     * @param length The payload length sent by the peer.
+     * @throws IOException If the length is negative or exceeds the maximal frame size.
+     */
+    void checkFrameLength( int length ) throws IOException {
+        if( length < 0 || length > maxFrameSize )
+            throw new IOException( "invalid frame length " + length + " [uid = " + clientUID + "]" );
+    }
+
+    /**
+     * Decode a frame payload.
+     * @param payload The frame payload.
+     * @return The decoded object.
+     * @throws IOException If the payload could not be decoded.
+     * @throws ClassNotFoundException If the class of the received object could not be found.
+     */
+    Object decode( byte[] payload ) throws IOException, ClassNotFoundException {
+        return codec.decode( payload );
+    }
+
 	/**
 	 * Closes the client connection.
 	 * @throws IOException If an I/O error occurs while closing the connection.
 	 */
 	public void close() throws IOException {
-		if( out == null || in == null || socket == null )
-			throw new IllegalStateException();
-		out.close();
-		in.close();
-		socket.close();
+        if( channel != null ) {
+            channel.close();
+        } else {
+            if( out == null || in == null || socket == null )
+                throw new IllegalStateException();
+            out.close();
+            in.close();
+            socket.close();
+        }
         LOGGER.info( "connection context closed [uid = " + clientUID + "]" );
 	}
-	
+
     /**
      * Converts this client connection to a <code>String</code>.
      *
      * @return  a string representation of this client connection.
      */
 	public String toString() {
-		return "Connection {/n/t SOCKET:" 
-						+ socket.toString() 
+		return "Connection {/n/t SOCKET:"
+						+ socket.toString()
 						+ "/n/tUID:" + ( clientUID == null ? null : clientUID.toString() )
 						+ "/n}";
 	}
@@ -0,0 +1,57 @@
+package de.tuberlin.rcd.network;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Data container for several messages that are transmitted in one frame. Receivers
+ * unpack the batch and handle the messages in their original order.
+ *
+ * @author Tobias Herb
+ *
+ */
+public final class MessageBatch implements Serializable {
+
+    /**
+     * Constants.
+     */
+    private static final long serialVersionUID = 3301840447151830472L;
+
+    /**
+     * Constructor.
+     * @param messages The messages in transmission order.
+     */
+    public MessageBatch( List<Message> messages ) {
+        // sanity check.
+        if( messages == null )
+            throw new NullPointerException();
+
+        this.messages = new ArrayList<Message>( messages );
+    }
+
+    /** The messages in transmission order. */
+    private final List<Message> messages;
+
+    /**
+     * Return the messages in transmission order.
+     */
+    public List<Message> getMessages() {
+        return Collections.unmodifiableList( messages );
+    }
+
+    /**
+     * Return the number of messages.
+     */
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * Create a string representation of that batch.
+     */
+    public String toString() {
+        return "MessageBatch { SIZE: " + messages.size() + " }";
+    }
+}
@@ -0,0 +1,191 @@
+package de.tuberlin.rcd.network;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A small fixed pool of I/O threads for the selector based transport. Every thread owns
+ * a <code>Selector</code> and serves all channels registered at it. The connections are
+ * distributed round-robin over the threads.
+ *
+ * @author Tobias Herb
+ *
+ */
+public final class NioSelectorGroup {
+
+    /**
+     * Log4J.
+     */
+    private static final Logger LOGGER = Logger.getLogger( NioSelectorGroup.class );
+
+    /**
+     * The I/O thread code. Registrations and write requests of other threads are
+     * queued and processed by the owning thread after waking up the selector.
+     */
+    final class SelectorLoop implements Runnable {
+
+        /**
+         * Constructor.
+         * @throws IOException If the selector could not be opened.
+         */
+        SelectorLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /** The selector of that I/O thread. */
+        private final Selector selector;
+
+        /** Transceivers waiting for registration. */
+        private final Queue<NioTransceiver> pendingRegistrations = new ConcurrentLinkedQueue<NioTransceiver>();
+
+        /** Transceivers with queued outgoing frames. */
+        private final Queue<NioTransceiver> pendingWrites = new ConcurrentLinkedQueue<NioTransceiver>();
+
+        /**
+         * Register a transceiver at that loop.
+         * @param transceiver The transceiver that gets registered.
+         */
+        void register( NioTransceiver transceiver ) {
+            pendingRegistrations.add( transceiver );
+            selector.wakeup();
+        }
+
+        /**
+         * Request flushing the outgoing frames of a transceiver.
+         * @param transceiver The transceiver with queued frames.
+         */
+        void requestWrite( NioTransceiver transceiver ) {
+            pendingWrites.add( transceiver );
+            selector.wakeup();
+        }
+
+        /**
+         * Stop a transceiver whose processing failed, the other connections of the loop stay served.
+         * @param transceiver The failed transceiver.
+         * @param e The failure.
+         */
+        private void fail( NioTransceiver transceiver, RuntimeException e ) {
+            // a cancelled key means that the transceiver was stopped concurrently.
+            if( !( e instanceof CancelledKeyException ) )
+                LOGGER.error( "could not serve connection [uid = " + transceiver.getConnection().getUID() + "]", e );
+            try {
+                transceiver.stop();
+            } catch( RuntimeException e2 ) {
+                LOGGER.error( "could not stop transceiver [uid = " + transceiver.getConnection().getUID() + "]", e2 );
+            }
+        }
+
+        @Override
+        public void run() {
+            while( running.get() ) {
+                try {
+                    selector.select();
+
+                    NioTransceiver transceiver;
+                    while( ( transceiver = pendingRegistrations.poll() ) != null ) {
+                        try {
+                            transceiver.attach( selector );
+                        } catch( RuntimeException e ) {
+                            fail( transceiver, e );
+                        }
+                    }
+                    while( ( transceiver = pendingWrites.poll() ) != null ) {
+                        try {
+                            transceiver.handleWrite();
+                        } catch( RuntimeException e ) {
+                            fail( transceiver, e );
+                        }
+                    }
+
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while( keys.hasNext() ) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+                        final NioTransceiver t = (NioTransceiver)key.attachment();
+                        try {
+                            if( key.isReadable() ) {
+                                t.handleRead();
+                            }
+                            if( key.isValid() && key.isWritable() ) {
+                                t.handleWrite();
+                            }
+                        } catch( RuntimeException e ) {
+                            fail( t, e );
+                        }
+                    }
+                } catch( IOException e ) {
+                    LOGGER.error( "selector loop failure", e );
+                } catch( RuntimeException e ) {
+                    // keep serving the other connections.
+                    LOGGER.error( "selector loop failure", e );
+                }
+            }
+            try {
+                selector.close();
+            } catch( IOException e ) {
+                LOGGER.error( "could not close selector", e );
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param ioThreads The number of I/O threads.
+     */
+    public NioSelectorGroup( int ioThreads ) {
+        // sanity check.
+        if( ioThreads < 1 )
+            throw new IllegalArgumentException();
+
+        this.loops = new SelectorLoop[ioThreads];
+        try {
+            for( int i = 0; i < ioThreads; ++i ) {
+                loops[i] = new SelectorLoop();
+                final Thread thread = new Thread( loops[i] );
+                thread.setName( "NioSelectorLoop( " + i + " )" );
+                thread.setDaemon( true );
+                thread.start();
+            }
+        } catch( IOException e ) {
+            running.set( false );
+            throw new IllegalStateException( e );
+        }
+        LOGGER.info( "selector group started [threads = " + ioThreads + "]" );
+    }
+
+    /** The selector loops, one per I/O thread. */
+    private final SelectorLoop[] loops;
+
+    /** Round-robin counter for the loop assignment. */
+    private final AtomicInteger nextLoop = new AtomicInteger( 0 );
+
+    /** Flag that controls the life of the I/O threads. */
+    private final AtomicBoolean running = new AtomicBoolean( true );
+
+    /**
+     * Return the loop the next connection is assigned to.
+     */
+    SelectorLoop next() {
+        return loops[ ( nextLoop.getAndIncrement() & Integer.MAX_VALUE ) % loops.length ];
+    }
+
+    /**
+     * Stop all I/O threads.
+     */
+    public void shutdown() {
+        running.set( false );
+        for( SelectorLoop loop : loops ) {
+            loop.selector.wakeup();
+        }
+        LOGGER.info( "selector group stopped" );
+    }
+}
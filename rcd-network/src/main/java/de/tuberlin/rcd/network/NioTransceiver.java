@@ -0,0 +1,244 @@
+package de.tuberlin.rcd.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Selector based transceiver. Instead of a sender and a receiver thread per connection the
+ * channel is served by one of the I/O threads of a <code>NioSelectorGroup</code>. Received
+ * frames are decoded in the I/O thread and handed over to the receiver by <code>received</code>,
+ * so receiver implementations must not block. Outgoing frames are queued and written as
+ * soon as the channel is writable.
+ *
+ * @author Tobias Herb
+ *
+ */
+public final class NioTransceiver extends Transceiver {
+
+    /**
+     * Log4J.
+     */
+    private static final Logger LOGGER = Logger.getLogger( NioTransceiver.class );
+
+    /** Initial capacity of the read buffer. Grows for larger frames. */
+    private static final int INITIAL_READ_BUFFER_SIZE = 8192;
+
+    /** Maximal number of frames that are passed to one gathering write. */
+    private static final int MAX_GATHERED_FRAMES = 64;
+
+    /**
+     * Constructor.
+     * @param connection The client connection, must be created for the selector based transport.
+     * @param selectorGroup The I/O threads serving the connection.
+     */
+    public NioTransceiver( Connection connection,
+                           NioSelectorGroup selectorGroup,
+                           Runnable startingCallback,
+                           Runnable closingCallback ) {
+        super( connection, startingCallback, closingCallback );
+        // sanity check.
+        if( connection.channel == null )
+            throw new IllegalArgumentException();
+        if( selectorGroup == null )
+            throw new NullPointerException();
+
+        this.channel = connection.channel;
+        this.loop = selectorGroup.next();
+    }
+
+    /** The channel of the connection. */
+    private final SocketChannel channel;
+
+    /** The I/O thread that serves this connection. */
+    private final NioSelectorGroup.SelectorLoop loop;
+
+    /** Frames waiting for transmission. */
+    private final Queue<ByteBuffer> outgoingFrames = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /** Flag that prevents multiple write requests for the same frames. */
+    private final AtomicBoolean writeRequested = new AtomicBoolean( false );
+
+    /** Buffer for partially received frames. Only accessed by the I/O thread. */
+    private ByteBuffer readBuffer = ByteBuffer.allocate( INITIAL_READ_BUFFER_SIZE );
+
+    /** Frames of the current gathering write. Only accessed by the I/O thread. */
+    private final ByteBuffer[] gatheredFrames = new ByteBuffer[MAX_GATHERED_FRAMES];
+
+    /** The selection key of the channel. */
+    private SelectionKey key = null;
+
+    /**
+     * Start the processing of the connection. Initializes sender and receiver and
+     * hands the channel over to the I/O thread.
+     */
+    @Override
+    public void start() {
+        // sanity check.
+        if( !active.get() ) {
+            try {
+                getTransmitter().initialize();
+                getReceiver().initialize();
+                channel.configureBlocking( false );
+            } catch( Exception e ) {
+                throw new IllegalStateException( e );
+            }
+            active.set( true );
+            getConnection().nioTransceiver = this;
+            loop.register( this );
+
+            if( startingCallback != null ) {
+                startingCallback.run();
+            }
+
+            LOGGER.info( "transceiver registered at selector [uid = " + getConnection().getUID() + "]" );
+        }
+    }
+
+    /**
+     * Stops processing of the connection.
+     */
+    @Override
+    public synchronized void stop() {
+        // sanity check.
+        if( active.get() ) {
+            active.set( false );
+            if( key != null ) {
+                key.cancel();
+            }
+            try {
+                getTransmitter().shutdown();
+                getReceiver().shutdown();
+            } catch( Exception e ) {
+                throw new IllegalStateException( e );
+            } finally {
+                // notification of the external environment.
+                if( closingCallback != null ) {
+                    closingCallback.run();
+                }
+            }
+            LOGGER.info( "transceiver deregistered from selector [uid = " + getConnection().getUID() + "]" );
+        }
+    }
+
+    /**
+     * The selector based transceiver is event driven.
+     */
+    @Override
+    public boolean isEventDriven() {
+        return true;
+    }
+
+    /**
+     * Queue a frame for transmission. A frame may be split over consecutive buffers.
+     * @param frame The frame, ready for reading.
+     */
+    void enqueueFrame( ByteBuffer frame ) {
+        outgoingFrames.add( frame );
+        if( writeRequested.compareAndSet( false, true ) ) {
+            loop.requestWrite( this );
+        }
+    }
+
+    /**
+     * Register the channel at the selector. Called by the I/O thread.
+     * @param selector The selector of the I/O thread.
+     */
+    void attach( Selector selector ) {
+        try {
+            key = channel.register( selector, SelectionKey.OP_READ, this );
+        } catch( ClosedChannelException e ) {
+            stop();
+            return;
+        }
+        // frames could be queued before the registration.
+        if( !outgoingFrames.isEmpty() ) {
+            handleWrite();
+        }
+    }
+
+    /**
+     * Read available bytes and dispatch all complete frames. Called by the I/O thread.
+     */
+    void handleRead() {
+        try {
+            final int n = channel.read( readBuffer );
+            if( n < 0 ) {
+                LOGGER.info( "connection context collapsed [uid = " + getConnection().getUID() + "]" );
+                stop();
+                return;
+            }
+            readBuffer.flip();
+            while( readBuffer.remaining() >= Connection.FRAME_HEADER_SIZE ) {
+                final int length = readBuffer.getInt( readBuffer.position() );
+                // don't grow the buffer for a corrupt or hostile length, the connection is closed.
+                getConnection().checkFrameLength( length );
+                if( readBuffer.remaining() < Connection.FRAME_HEADER_SIZE + length ) {
+                    if( readBuffer.capacity() < Connection.FRAME_HEADER_SIZE + length ) {
+                        final ByteBuffer grown = ByteBuffer.allocate( Connection.FRAME_HEADER_SIZE + length );
+                        grown.put( readBuffer );
+                        grown.flip();
+                        readBuffer = grown;
+                    }
+                    break;
+                }
+                readBuffer.getInt();
+                final byte[] payload = new byte[length];
+                readBuffer.get( payload );
+                getReceiver().received( getConnection().decode( payload ) );
+            }
+            readBuffer.compact();
+        } catch( Exception e ) {
+            if( isActive() ) {
+                LOGGER.error( "could not process received frame [uid = " + getConnection().getUID() + "]", e );
+                stop();
+            }
+        }
+    }
+
+    /**
+     * Write queued frames until the channel is not writable anymore. Called by the I/O thread.
+     */
+    void handleWrite() {
+        if( key == null || !key.isValid() )
+            return;
+        writeRequested.set( false );
+        try {
+            // pass all queued frames to one gathering write.
+            while( !outgoingFrames.isEmpty() ) {
+                int count = 0;
+                for( ByteBuffer frame : outgoingFrames ) {
+                    if( count == MAX_GATHERED_FRAMES )
+                        break;
+                    gatheredFrames[count++] = frame;
+                }
+                channel.write( gatheredFrames, 0, count );
+                for( int i = 0; i < count; ++i ) {
+                    if( gatheredFrames[i].hasRemaining() ) {
+                        Arrays.fill( gatheredFrames, null );
+                        // socket buffer is full, wait until the channel is writable again.
+                        key.interestOps( SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+                        return;
+                    }
+                    outgoingFrames.poll();
+                }
+                Arrays.fill( gatheredFrames, 0, count, null );
+            }
+            key.interestOps( SelectionKey.OP_READ );
+        } catch( IOException e ) {
+            if( isActive() ) {
+                LOGGER.error( "could not write frame [uid = " + getConnection().getUID() + "]", e );
+                stop();
+            }
+        }
+    }
+}
@@ -8,12 +8,13 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * 
+ * The transceiver runs a dedicated sender and receiver thread for a connection.
+ * For many concurrent connections use the selector based <code>NioTransceiver</code>.
+ *
  * @author Tobias Herb
  *
- * TODO: use thread pools to reduce thread creation effort!
  */
-public final class Transceiver {
+public class Transceiver {
 
     /**
      * Log4J.
@@ -120,6 +121,7 @@ public final class Transceiver {
 		 * @throws Exception
 		 */
 		protected abstract void shutdown() throws Exception;
+
 	
 		/**
 		 * Check if the processing is finished.
@@ -139,6 +141,28 @@ public final class Transceiver {
             dependencyMap.put( name, dependency );
         }
 	}
+
+    /**
+     * Base class of the receivers. Event driven transceivers hand the received objects over
+     * by <code>received</code> from their I/O threads instead of running the processing loop.
+     */
+    public static abstract class ReceiverThreadBase extends TransceiverThreadBase {
+
+        /**
+         * Constructor.
+         * @param transceiver The connection context this thread is processing.
+         */
+        public ReceiverThreadBase( Transceiver transceiver ) {
+            super( transceiver );
+        }
+
+        /**
+         * Hand over a received object.
+         * @param obj The received object.
+         * @throws Exception
+         */
+        protected abstract void received( Object obj ) throws Exception;
+    }
 	
 	/**
 	 * Constructor.
@@ -162,13 +186,13 @@ public final class Transceiver {
 	
 	/** Flag that indicates if the sender and receiver thread of the
 	    transceiver is running. */
-	private final AtomicBoolean active;
+	protected final AtomicBoolean active;
 
 	/** Contains the code for the sender thread. */
 	private TransceiverThreadBase transmitter = null;
 	
 	/** Contains the code for the receiver thread. */
-	private TransceiverThreadBase receiver = null;
+	private ReceiverThreadBase receiver = null;
 
     /** Store the reference to the sender thread container. */
     private Thread transmitterThread = null;
@@ -177,10 +201,10 @@ public final class Transceiver {
     private Thread receiverThread = null;
 
     /** Callback handler that is executed after starting sender and receiver threads. */
-    private final Runnable startingCallback;
+    protected final Runnable startingCallback;
 
 	/** Callback handler that is executed after shutting down the transceiver component. */
-	private final Runnable closingCallback;
+	protected final Runnable closingCallback;
 
 	/**
 	 * 
@@ -196,7 +220,7 @@ public final class Transceiver {
 	 * 
 	 * @param receiver
 	 */
-	public void setReceiver( TransceiverThreadBase receiver ) {
+	public void setReceiver( ReceiverThreadBase receiver ) {
 		if( receiver == null )
 			throw new NullPointerException();
 		this.receiver = receiver; 
@@ -216,6 +240,15 @@ public final class Transceiver {
 	public boolean isActive() {
 		return active.get();
 	}
+
+    /**
+     * Indicates if the transceiver is event driven. Event driven transceivers run no sender
+     * and receiver threads, received objects are handed over by <code>received</code> and
+     * senders write directly to the connection.
+     */
+    public boolean isEventDriven() {
+        return false;
+    }
 	
 	/**
 	 * Start the processing of sender and receiver thread
@@ -288,7 +321,7 @@ public final class Transceiver {
      *
      * @return
      */
-    public TransceiverThreadBase getReceiver() {
+    public ReceiverThreadBase getReceiver() {
         return receiver;
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package de.tuberlin.rcd.network;
 
+import de.tuberlin.rcd.network.Transceiver.ReceiverThreadBase;
 import de.tuberlin.rcd.network.Transceiver.TransceiverThreadBase;
 
 /**
@@ -13,7 +14,7 @@ public final class TransceiverFactory {
 	 * @param receiverClass
 	 * @param senderClass
 	 */
-	public TransceiverFactory( Class<? extends Transceiver.TransceiverThreadBase> receiverClass,
+	public TransceiverFactory( Class<? extends Transceiver.ReceiverThreadBase> receiverClass,
 							   Class<? extends Transceiver.TransceiverThreadBase> senderClass ) {
 		// sanity check.
 		if( receiverClass == null )
@@ -23,17 +24,43 @@ public final class TransceiverFactory {
 		
 		this.receiverClass = receiverClass;
 		this.senderClass = senderClass;
+        this.selectorGroup = null;
 	}
+
+    /**
+     * Constructor. The created transceivers use the selector based transport.
+     * @param receiverClass
+     * @param senderClass
+     * @param selectorGroup The I/O threads that serve the connections.
+     */
+    public TransceiverFactory( Class<? extends Transceiver.ReceiverThreadBase> receiverClass,
+                               Class<? extends Transceiver.TransceiverThreadBase> senderClass,
+                               NioSelectorGroup selectorGroup ) {
+        // sanity check.
+        if( receiverClass == null )
+            throw new NullPointerException();
+        if( senderClass == null )
+            throw new NullPointerException();
+        if( selectorGroup == null )
+            throw new NullPointerException();
+
+        this.receiverClass = receiverClass;
+        this.senderClass = senderClass;
+        this.selectorGroup = selectorGroup;
+    }
 	
 	/**
 	 * 
 	 */
-	private Class<? extends Transceiver.TransceiverThreadBase> receiverClass;
+	private Class<? extends Transceiver.ReceiverThreadBase> receiverClass;
 	
 	/**
 	 * 
 	 */
 	private Class<? extends Transceiver.TransceiverThreadBase> senderClass;
+
+    /** I/O threads of the selector based transport, <code>null</code> for the blocking transport. */
+    private final NioSelectorGroup selectorGroup;
 	
 	/**
 	 * 
@@ -48,10 +75,14 @@ public final class TransceiverFactory {
 
 		Transceiver transceiver = null;
 		try {
-			transceiver = new Transceiver( connection, startingCallback, closingCallback );
+			if( selectorGroup != null ) {
+                transceiver = new NioTransceiver( connection, selectorGroup, startingCallback, closingCallback );
+            } else {
+                transceiver = new Transceiver( connection, startingCallback, closingCallback );
+            }
             TransceiverThreadBase sender = senderClass.getConstructor( Transceiver.class ).
                     newInstance( transceiver );
-			TransceiverThreadBase receiver = receiverClass.getConstructor( Transceiver.class ).
+			ReceiverThreadBase receiver = receiverClass.getConstructor( Transceiver.class ).
                     newInstance( transceiver );
 			transceiver.setTransmitter( sender );
 			transceiver.setReceiver( receiver );
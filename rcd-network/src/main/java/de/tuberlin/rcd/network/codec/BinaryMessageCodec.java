@@ -0,0 +1,613 @@
+package de.tuberlin.rcd.network.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.tuberlin.rcd.network.BroadcastMessage;
+import de.tuberlin.rcd.network.Message;
+import de.tuberlin.rcd.network.MessageBatch;
+
+/**
+ * Compact tagged binary codec. Every value is prefixed with a one byte tag, integers are written
+ * as varints, UUIDs as two longs and enums as ordinals. Names (parameter keys, class names of
+ * enums and custom values and the string parameters of a message, e.g. the type name) are interned
+ * per connection: the first occurrence defines the name, all further occurrences just transmit its id.
+ * Detached encodings (see <code>BroadcastMessage</code>) don't depend on the connection, they only use
+ * the shared names that are registered on both sides and transmit all other names as literals.
+ *
+ * Other modules can plug in compact encodings for their own classes with <code>registerValueCodec</code>,
+ * all remaining serializable values fall back to the Java serialization.
+ *
+ * @author Tobias Herb
+ *
+ */
+public final class BinaryMessageCodec implements MessageCodec {
+
+    /** Name of the codec. */
+    public static final String NAME = "binary";
+
+    /** Maximal number of interned names per connection and direction. */
+    private static final int MAX_INTERNED_NAMES = 4096;
+
+    /** Maximal length of string parameters that get interned. */
+    private static final int MAX_INTERNED_STRING_LENGTH = 64;
+
+    // value tags.
+    private static final int TAG_NULL               = 0;
+    private static final int TAG_MESSAGE            = 1;
+    private static final int TAG_STRING             = 2;
+    private static final int TAG_INTERNED_STRING    = 3;
+    private static final int TAG_INTEGER            = 4;
+    private static final int TAG_LONG               = 5;
+    private static final int TAG_TRUE               = 6;
+    private static final int TAG_FALSE              = 7;
+    private static final int TAG_CHARACTER          = 8;
+    private static final int TAG_SHORT              = 9;
+    private static final int TAG_BYTE               = 10;
+    private static final int TAG_DOUBLE             = 11;
+    private static final int TAG_FLOAT              = 12;
+    private static final int TAG_UUID               = 13;
+    private static final int TAG_ENUM               = 14;
+    private static final int TAG_CUSTOM             = 15;
+    private static final int TAG_SERIALIZED         = 16;
+    private static final int TAG_MESSAGE_BATCH      = 17;
+
+    // name encoding, values >= NAME_REFERENCE are ids of already defined names.
+    private static final int NAME_LITERAL           = 0;
+    private static final int NAME_DEFINITION        = 1;
+    private static final int NAME_SHARED            = 2;
+    private static final int NAME_REFERENCE         = 3;
+
+    /**
+     * Compact encoding for values of a specific class.
+     */
+    public static interface ValueCodec {
+
+        /**
+         * Write the value.
+         * @param value The value, never <code>null</code>.
+         * @param out The output of the codec.
+         * @throws IOException
+         */
+        public abstract void write( Object value, BinaryOutput out ) throws IOException;
+
+        /**
+         * Read a value.
+         * @param in The input of the codec.
+         * @return The decoded value.
+         * @throws IOException
+         * @throws ClassNotFoundException
+         */
+        public abstract Object read( BinaryInput in ) throws IOException, ClassNotFoundException;
+    }
+
+    /** The registered value codecs, accessed by the exact class of the value. */
+    private static final Map<Class<?>,ValueCodec> VALUE_CODECS = new ConcurrentHashMap<Class<?>,ValueCodec>();
+
+    /** Names known by both sides, the index is the id. */
+    private static final List<String> SHARED_NAMES = new CopyOnWriteArrayList<String>();
+
+    /** Ids of the shared names. */
+    private static final Map<String,Integer> SHARED_NAME_IDS = new ConcurrentHashMap<String,Integer>();
+
+    /**
+     * Register a compact encoding for the values of a class. The class name becomes a shared name,
+     * so the registrations must be done on both sides of a connection in the same order before
+     * the codec is used.
+     * @param clazz The class of the values.
+     * @param codec The encoding.
+     */
+    public static synchronized void registerValueCodec( Class<?> clazz, ValueCodec codec ) {
+        // sanity check.
+        if( clazz == null )
+            throw new NullPointerException();
+        if( codec == null )
+            throw new NullPointerException();
+
+        VALUE_CODECS.put( clazz, codec );
+        registerSharedName( clazz.getName() );
+    }
+
+    /**
+     * Register a name that is known by both sides, e.g. a parameter key. Shared names keep
+     * detached encodings compact. Must be done on both sides of a connection in the same
+     * order before the codec is used.
+     * @param name The name.
+     */
+    public static synchronized void registerSharedName( String name ) {
+        // sanity check.
+        if( name == null )
+            throw new NullPointerException();
+
+        if( !SHARED_NAME_IDS.containsKey( name ) ) {
+            SHARED_NAME_IDS.put( name, SHARED_NAMES.size() );
+            SHARED_NAMES.add( name );
+        }
+    }
+
+    /**
+     * Output of the codec, passed to the value codecs.
+     */
+    public final class BinaryOutput {
+
+        /**
+         * Constructor.
+         * @param out The underlying stream.
+         * @param detached Flag that prevents the usage of the interned names of the connection.
+         */
+        private BinaryOutput( DataOutputStream out, boolean detached ) {
+            this.out = out;
+            this.detached = detached;
+        }
+
+        /** The underlying stream. */
+        private final DataOutputStream out;
+
+        /** Flag that prevents the usage of the interned names of the connection. */
+        private final boolean detached;
+
+        public void writeByte( int value ) throws IOException {
+            out.writeByte( value );
+        }
+
+        public void writeBoolean( boolean value ) throws IOException {
+            out.writeBoolean( value );
+        }
+
+        public void writeLong( long value ) throws IOException {
+            out.writeLong( value );
+        }
+
+        /**
+         * Write a non-negative integer with 1 to 5 bytes.
+         */
+        public void writeVarInt( int value ) throws IOException {
+            while( ( value & ~0x7F ) != 0 ) {
+                out.writeByte( ( value & 0x7F ) | 0x80 );
+                value >>>= 7;
+            }
+            out.writeByte( value );
+        }
+
+        /**
+         * Write a integer with zig-zag encoding, small negative values stay small.
+         */
+        public void writeSignedVarInt( int value ) throws IOException {
+            writeVarInt( ( value << 1 ) ^ ( value >> 31 ) );
+        }
+
+        /**
+         * Write a long with zig-zag encoding.
+         */
+        public void writeSignedVarLong( long value ) throws IOException {
+            long v = ( value << 1 ) ^ ( value >> 63 );
+            while( ( v & ~0x7FL ) != 0 ) {
+                out.writeByte( (int)( ( v & 0x7F ) | 0x80 ) );
+                v >>>= 7;
+            }
+            out.writeByte( (int)v );
+        }
+
+        public void writeUUID( UUID value ) throws IOException {
+            out.writeLong( value.getMostSignificantBits() );
+            out.writeLong( value.getLeastSignificantBits() );
+        }
+
+        /**
+         * Write a string literal.
+         */
+        public void writeString( String value ) throws IOException {
+            final byte[] bytes = value.getBytes( "UTF-8" );
+            writeVarInt( bytes.length );
+            out.write( bytes );
+        }
+
+        /**
+         * Write a interned name, e.g. a class name.
+         */
+        public void writeName( String name ) throws IOException {
+            if( detached ) {
+                final Integer sharedId = SHARED_NAME_IDS.get( name );
+                if( sharedId != null ) {
+                    writeVarInt( NAME_SHARED );
+                    writeVarInt( sharedId );
+                } else {
+                    writeVarInt( NAME_LITERAL );
+                    writeString( name );
+                }
+                return;
+            }
+            final Integer id = encoderNames.get( name );
+            if( id != null ) {
+                writeVarInt( id + NAME_REFERENCE );
+            } else if( encoderNameOrder.size() < MAX_INTERNED_NAMES ) {
+                encoderNames.put( name, encoderNameOrder.size() );
+                encoderNameOrder.add( name );
+                writeVarInt( NAME_DEFINITION );
+                writeString( name );
+            } else {
+                writeVarInt( NAME_LITERAL );
+                writeString( name );
+            }
+        }
+
+        /**
+         * Write a class as interned name.
+         */
+        public void writeClass( Class<?> clazz ) throws IOException {
+            writeName( clazz.getName() );
+        }
+
+        /**
+         * Write a tagged value.
+         */
+        public void writeValue( Object value ) throws IOException {
+            writeValue( value, false );
+        }
+
+        private void writeValue( Object value, boolean internStrings ) throws IOException {
+            if( value == null ) {
+                out.writeByte( TAG_NULL );
+            } else if( value instanceof String ) {
+                final String str = (String)value;
+                if( internStrings && str.length() <= MAX_INTERNED_STRING_LENGTH ) {
+                    out.writeByte( TAG_INTERNED_STRING );
+                    writeName( str );
+                } else {
+                    out.writeByte( TAG_STRING );
+                    writeString( str );
+                }
+            } else if( value instanceof Integer ) {
+                out.writeByte( TAG_INTEGER );
+                writeSignedVarInt( (Integer)value );
+            } else if( value instanceof Character ) {
+                out.writeByte( TAG_CHARACTER );
+                writeVarInt( (Character)value );
+            } else if( value instanceof Boolean ) {
+                out.writeByte( (Boolean)value ? TAG_TRUE : TAG_FALSE );
+            } else if( value instanceof Long ) {
+                out.writeByte( TAG_LONG );
+                writeSignedVarLong( (Long)value );
+            } else if( value instanceof UUID ) {
+                out.writeByte( TAG_UUID );
+                writeUUID( (UUID)value );
+            } else if( value instanceof Short ) {
+                out.writeByte( TAG_SHORT );
+                writeSignedVarInt( (Short)value );
+            } else if( value instanceof Byte ) {
+                out.writeByte( TAG_BYTE );
+                out.writeByte( (Byte)value );
+            } else if( value instanceof Double ) {
+                out.writeByte( TAG_DOUBLE );
+                out.writeDouble( (Double)value );
+            } else if( value instanceof Float ) {
+                out.writeByte( TAG_FLOAT );
+                out.writeFloat( (Float)value );
+            } else if( value instanceof BroadcastMessage && !detached ) {
+                // the payload is shared by all connections and already starts with the tag.
+                out.write( ( (BroadcastMessage)value ).getPayload( BinaryMessageCodec.this ) );
+            } else if( value.getClass() == Message.class || value instanceof BroadcastMessage ) {
+                out.writeByte( TAG_MESSAGE );
+                writeMessage( (Message)value );
+            } else if( value instanceof MessageBatch ) {
+                out.writeByte( TAG_MESSAGE_BATCH );
+                final List<Message> messages = ( (MessageBatch)value ).getMessages();
+                writeVarInt( messages.size() );
+                // every message is a tagged value, so the shared payload of a broadcast is copied verbatim.
+                for( Message msg : messages ) {
+                    writeValue( msg, false );
+                }
+            } else if( value instanceof Enum ) {
+                out.writeByte( TAG_ENUM );
+                writeName( ( (Enum<?>)value ).getDeclaringClass().getName() );
+                writeVarInt( ( (Enum<?>)value ).ordinal() );
+            } else {
+                final ValueCodec codec = VALUE_CODECS.get( value.getClass() );
+                if( codec != null ) {
+                    out.writeByte( TAG_CUSTOM );
+                    writeName( value.getClass().getName() );
+                    codec.write( value, this );
+                } else if( value instanceof Serializable ) {
+                    // fallback for all other values.
+                    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    final ObjectOutputStream oos = new ObjectOutputStream( bos );
+                    oos.writeObject( value );
+                    oos.close();
+                    out.writeByte( TAG_SERIALIZED );
+                    writeVarInt( bos.size() );
+                    bos.writeTo( out );
+                } else {
+                    throw new NotSerializableException( value.getClass().getName() );
+                }
+            }
+        }
+
+        private void writeMessage( Message msg ) throws IOException {
+            writeUUID( msg.getSourceUID() );
+            if( msg.getMessageUID() != null ) {
+                out.writeBoolean( true );
+                writeUUID( msg.getMessageUID() );
+            } else {
+                out.writeBoolean( false );
+            }
+            writeSignedVarInt( msg.getTimeStamp() );
+            final Map<String,Serializable> dataTable = msg.getDataTable();
+            writeVarInt( dataTable.size() );
+            for( Map.Entry<String,Serializable> entry : dataTable.entrySet() ) {
+                writeName( entry.getKey() );
+                writeValue( entry.getValue(), true );
+            }
+        }
+    }
+
+    /**
+     * Input of the codec, passed to the value codecs.
+     */
+    public final class BinaryInput {
+
+        /**
+         * Constructor.
+         * @param in The underlying stream.
+         */
+        private BinaryInput( DataInputStream in ) {
+            this.in = in;
+        }
+
+        /** The underlying stream. */
+        private final DataInputStream in;
+
+        public int readByte() throws IOException {
+            return in.readByte();
+        }
+
+        public boolean readBoolean() throws IOException {
+            return in.readBoolean();
+        }
+
+        public long readLong() throws IOException {
+            return in.readLong();
+        }
+
+        public int readVarInt() throws IOException {
+            int result = 0;
+            for( int shift = 0; shift < 35; shift += 7 ) {
+                final int b = in.readUnsignedByte();
+                result |= ( b & 0x7F ) << shift;
+                if( ( b & 0x80 ) == 0 )
+                    return result;
+            }
+            throw new IOException( "malformed varint" );
+        }
+
+        /**
+         * Read the number of following elements or bytes. Every element takes at least one byte,
+         * so counts beyond the rest of the frame are rejected before anything is allocated.
+         * @return The count.
+         * @throws IOException If the count is negative or exceeds the rest of the frame.
+         */
+        public int readCount() throws IOException {
+            final int count = readVarInt();
+            if( count < 0 || count > in.available() )
+                throw new IOException( "invalid count " + count );
+            return count;
+        }
+
+        public int readSignedVarInt() throws IOException {
+            final int raw = readVarInt();
+            return ( raw >>> 1 ) ^ -( raw & 1 );
+        }
+
+        public long readSignedVarLong() throws IOException {
+            long raw = 0;
+            for( int shift = 0; shift < 70; shift += 7 ) {
+                final int b = in.readUnsignedByte();
+                raw |= (long)( b & 0x7F ) << shift;
+                if( ( b & 0x80 ) == 0 )
+                    return ( raw >>> 1 ) ^ -( raw & 1 );
+            }
+            throw new IOException( "malformed varint" );
+        }
+
+        public UUID readUUID() throws IOException {
+            final long mostSigBits = in.readLong();
+            return new UUID( mostSigBits, in.readLong() );
+        }
+
+        public String readString() throws IOException {
+            final byte[] bytes = new byte[readCount()];
+            in.readFully( bytes );
+            return new String( bytes, "UTF-8" );
+        }
+
+        public String readName() throws IOException {
+            final int n = readVarInt();
+            if( n == NAME_LITERAL ) {
+                return readString();
+            } else if( n == NAME_SHARED ) {
+                final int id = readVarInt();
+                if( id < 0 || id >= SHARED_NAMES.size() )
+                    throw new IOException( "unknown shared name id " + id );
+                return SHARED_NAMES.get( id );
+            } else if( n == NAME_DEFINITION ) {
+                final String name = readString();
+                decoderNames.add( name );
+                return name;
+            } else if( n >= NAME_REFERENCE && n - NAME_REFERENCE < decoderNames.size() ) {
+                return decoderNames.get( n - NAME_REFERENCE );
+            } else {
+                throw new IOException( "unknown name id " + ( n - NAME_REFERENCE ) );
+            }
+        }
+
+        public Class<?> readClass() throws IOException, ClassNotFoundException {
+            return resolveClass( readName() );
+        }
+
+        public Object readValue() throws IOException, ClassNotFoundException {
+            final int tag = in.readUnsignedByte();
+            switch( tag ) {
+                case TAG_NULL:              return null;
+                case TAG_MESSAGE:           return readMessage();
+                case TAG_STRING:            return readString();
+                case TAG_INTERNED_STRING:   return readName();
+                case TAG_INTEGER:           return readSignedVarInt();
+                case TAG_LONG:              return readSignedVarLong();
+                case TAG_TRUE:              return Boolean.TRUE;
+                case TAG_FALSE:             return Boolean.FALSE;
+                case TAG_CHARACTER:         return (char)readVarInt();
+                case TAG_SHORT:             return (short)readSignedVarInt();
+                case TAG_BYTE:              return in.readByte();
+                case TAG_DOUBLE:            return in.readDouble();
+                case TAG_FLOAT:             return in.readFloat();
+                case TAG_UUID:              return readUUID();
+                case TAG_MESSAGE_BATCH: {
+                    final int size = readCount();
+                    final List<Message> messages = new ArrayList<Message>( size );
+                    for( int i = 0; i < size; ++i ) {
+                        final Object msg = readValue();
+                        if( !( msg instanceof Message ) )
+                            throw new IOException( "invalid batch element" );
+                        messages.add( (Message)msg );
+                    }
+                    return new MessageBatch( messages );
+                }
+                case TAG_ENUM: {
+                    final Object[] constants = resolveClass( readName() ).getEnumConstants();
+                    final int ordinal = readVarInt();
+                    if( constants == null || ordinal < 0 || ordinal >= constants.length )
+                        throw new IOException( "invalid enum constant" );
+                    return constants[ordinal];
+                }
+                case TAG_CUSTOM: {
+                    final String className = readName();
+                    final ValueCodec codec = VALUE_CODECS.get( resolveClass( className ) );
+                    if( codec == null )
+                        throw new IOException( "no value codec registered for " + className );
+                    return codec.read( this );
+                }
+                case TAG_SERIALIZED: {
+                    final byte[] bytes = new byte[readCount()];
+                    in.readFully( bytes );
+                    final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bytes ) );
+                    try {
+                        return ois.readObject();
+                    } finally {
+                        ois.close();
+                    }
+                }
+                default:
+                    throw new IOException( "unknown tag " + tag );
+            }
+        }
+
+        private Message readMessage() throws IOException, ClassNotFoundException {
+            final UUID sourceUID = readUUID();
+            final UUID messageUID = in.readBoolean() ? readUUID() : null;
+            final int timeStamp = readSignedVarInt();
+            final int size = readCount();
+            final Map<String,Serializable> dataTable = new HashMap<String,Serializable>();
+            for( int i = 0; i < size; ++i ) {
+                final String key = readName();
+                dataTable.put( key, (Serializable)readValue() );
+            }
+            return new Message( sourceUID, messageUID, dataTable, timeStamp );
+        }
+    }
+
+    /**
+     * Constructor.
+     */
+    public BinaryMessageCodec() {
+        this.buffer = new ByteArrayOutputStream( 256 );
+        this.output = new BinaryOutput( new DataOutputStream( buffer ), false );
+    }
+
+    /** Interned names of the transmission direction. */
+    private final Map<String,Integer> encoderNames = new HashMap<String,Integer>();
+
+    /** Interned names of the transmission direction in definition order. */
+    private final List<String> encoderNameOrder = new ArrayList<String>();
+
+    /** Interned names of the reception direction, the index is the id. */
+    private final List<String> decoderNames = new ArrayList<String>();
+
+    /** Resolved classes of received class names. */
+    private final Map<String,Class<?>> classCache = new HashMap<String,Class<?>>();
+
+    /** Reused encoding buffer. */
+    private final ByteArrayOutputStream buffer;
+
+    /** Output that writes to the encoding buffer. */
+    private final BinaryOutput output;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode( Object obj ) throws IOException {
+        final int mark = encoderNameOrder.size();
+        buffer.reset();
+        boolean encoded = false;
+        try {
+            output.writeValue( obj );
+            encoded = true;
+        } finally {
+            if( !encoded ) {
+                // the frame is not transmitted, so the peer never sees the new names.
+                while( encoderNameOrder.size() > mark ) {
+                    encoderNames.remove( encoderNameOrder.remove( encoderNameOrder.size() - 1 ) );
+                }
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public byte[] encodeDetached( Message msg ) throws IOException {
+        // sanity check.
+        if( msg == null )
+            throw new NullPointerException();
+
+        // own buffer, the connection may encode concurrently.
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream( 256 );
+        new BinaryOutput( new DataOutputStream( bos ), true ).writeValue( msg );
+        return bos.toByteArray();
+    }
+
+    @Override
+    public Object decode( byte[] payload ) throws IOException, ClassNotFoundException {
+        return new BinaryInput( new DataInputStream( new ByteArrayInputStream( payload ) ) ).readValue();
+    }
+
+    /**
+     * Resolve a received class name.
+     */
+    private Class<?> resolveClass( String className ) throws ClassNotFoundException {
+        Class<?> clazz = classCache.get( className );
+        if( clazz == null ) {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if( loader == null ) {
+                loader = BinaryMessageCodec.class.getClassLoader();
+            }
+            clazz = Class.forName( className, false, loader );
+            classCache.put( className, clazz );
+        }
+        return clazz;
+    }
+}
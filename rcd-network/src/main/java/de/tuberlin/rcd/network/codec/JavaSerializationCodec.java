@@ -0,0 +1,52 @@
+package de.tuberlin.rcd.network.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import de.tuberlin.rcd.network.Message;
+
+/**
+ * Codec based on the Java serialization. Every frame is a self-contained object stream.
+ * Used for the connection handshake and as fallback for peers without binary codec support.
+ *
+ * @author Tobias Herb
+ *
+ */
+public final class JavaSerializationCodec implements MessageCodec {
+
+    /** Name of the codec. */
+    public static final String NAME = "java";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode( Object obj ) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream( bos );
+        oos.writeObject( obj );
+        oos.close();
+        return bos.toByteArray();
+    }
+
+    @Override
+    public byte[] encodeDetached( Message msg ) throws IOException {
+        // every frame is self-contained anyway.
+        return encode( msg );
+    }
+
+    @Override
+    public Object decode( byte[] payload ) throws IOException, ClassNotFoundException {
+        final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( payload ) );
+        try {
+            return ois.readObject();
+        } finally {
+            ois.close();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.tuberlin.rcd.network.codec;
+
+import java.io.IOException;
+
+import de.tuberlin.rcd.network.Message;
+
+/**
+ * Converts the objects that are transmitted over a <code>Connection</code> to frame payloads
+ * and back. Every connection owns its own codec instance, so implementations may keep state
+ * between frames (e.g. interned names). <code>encode</code> is called in transmission order
+ * and <code>decode</code> in reception order, both never concurrently.
+ *
+ * @author Tobias Herb
+ *
+ */
+public interface MessageCodec {
+
+    /**
+     * Return the name that identifies the codec in the connection handshake.
+     */
+    public abstract String getName();
+
+    /**
+     * Encode an object to a frame payload.
+     * @param obj The object to encode.
+     * @return The frame payload.
+     * @throws IOException If the object could not be encoded.
+     */
+    public abstract byte[] encode( Object obj ) throws IOException;
+
+    /**
+     * Encode a message independent of the state of this codec instance. The payload can be
+     * transmitted over every connection that uses a codec with the same name. May be called
+     * concurrently to <code>encode</code>.
+     * @param msg The message to encode.
+     * @return The frame payload.
+     * @throws IOException If the message could not be encoded.
+     */
+    public abstract byte[] encodeDetached( Message msg ) throws IOException;
+
+    /**
+     * Decode a frame payload.
+     * @param payload The frame payload.
+     * @return The decoded object.
+     * @throws IOException If the payload could not be decoded.
+     * @throws ClassNotFoundException If the class of a decoded object could not be found.
+     */
+    public abstract Object decode( byte[] payload ) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,97 @@
+package de.tuberlin.rcd.network.codec;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of the available codecs. During the connection handshake the server offers
+ * its codecs by name and the client selects the first one it supports.
+ *
+ * @author Tobias Herb
+ *
+ */
+public final class MessageCodecRegistry {
+
+    // prohibit instantiation.
+    private MessageCodecRegistry() {}
+
+    /** The registered codec classes by name. */
+    private static final Map<String,Class<? extends MessageCodec>> CODECS
+            = new LinkedHashMap<String,Class<? extends MessageCodec>>();
+
+    static {
+        register( BinaryMessageCodec.NAME, BinaryMessageCodec.class );
+        register( JavaSerializationCodec.NAME, JavaSerializationCodec.class );
+    }
+
+    /**
+     * Register a codec. The codec class needs a public default constructor.
+     * @param name The name of the codec.
+     * @param codecClass The codec class.
+     */
+    public static synchronized void register( String name, Class<? extends MessageCodec> codecClass ) {
+        // sanity check.
+        if( name == null )
+            throw new NullPointerException();
+        if( codecClass == null )
+            throw new NullPointerException();
+
+        CODECS.put( name, codecClass );
+    }
+
+    /**
+     * Test if a codec is registered.
+     * @param name The name of the codec.
+     * @return true, if the codec is registered.
+     */
+    public static synchronized boolean isSupported( String name ) {
+        // sanity check.
+        if( name == null )
+            throw new NullPointerException();
+        return CODECS.containsKey( name );
+    }
+
+    /**
+     * Select the first supported codec of the offered codecs.
+     * @param offeredCodecs The codec names in order of preference.
+     * @return The name of the selected codec.
+     */
+    public static synchronized String select( String[] offeredCodecs ) {
+        // sanity check.
+        if( offeredCodecs == null )
+            throw new NullPointerException();
+
+        for( String name : offeredCodecs ) {
+            if( CODECS.containsKey( name ) )
+                return name;
+        }
+        throw new IllegalStateException( "no supported codec offered" );
+    }
+
+    /**
+     * Create a new codec instance.
+     * @param name The name of the codec.
+     * @return A new codec instance.
+     */
+    public static synchronized MessageCodec create( String name ) {
+        // sanity check.
+        if( name == null )
+            throw new NullPointerException();
+
+        final Class<? extends MessageCodec> codecClass = CODECS.get( name );
+        if( codecClass == null )
+            throw new IllegalArgumentException( "codec " + name + " is not registered" );
+        try {
+            return codecClass.getDeclaredConstructor().newInstance();
+        } catch( InstantiationException e ) {
+            throw new IllegalArgumentException( "codec " + name + " could not be created", e );
+        } catch( IllegalAccessException e ) {
+            throw new IllegalArgumentException( "codec " + name + " could not be created", e );
+        } catch( InvocationTargetException e ) {
+            throw new IllegalArgumentException( "codec " + name + " could not be created", e );
+        } catch( NoSuchMethodException e ) {
+            throw new IllegalArgumentException( "codec " + name + " could not be created", e );
+        }
+    }
+}
@@ -23,12 +23,25 @@ public class Event {
             throw new NullPointerException();
 
         this.type    = type;
+        this.typeId  = EventTypes.register( type );
+        this.data = data;
+    }
+
+    /**
+     * Constructor for a pre-resolved event type (see <code>EventTypes</code>).
+     */
+    public Event( int typeId, Object data ) {
+        this.type    = EventTypes.typeOf( typeId );
+        this.typeId  = typeId;
         this.data = data;
     }
 
     /** Defines the type of the event. */
     public final String type;
 
+    /** The id of the event type. */
+    public final int typeId;
+
     /** The event user data. */
     public final Object data;
-}
\ No newline at end of file
+}
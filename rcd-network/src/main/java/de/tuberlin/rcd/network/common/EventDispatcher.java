@@ -1,28 +1,56 @@
 package de.tuberlin.rcd.network.common;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
 
 /**
  * The EventDispatcher is responsible for adding and removing listeners and
- * for dispatching event to this listeners. This EventDispatcher implementation is not thread safe!
+ * for dispatching event to this listeners. This EventDispatcher implementation is thread safe.
+ * The listeners are stored in copy-on-write arrays indexed by the event type id, so dispatching
+ * takes no lock and listeners can be added or removed while events are dispatched.
  *
  * @author Tobias Herb
  *
  */
 public class EventDispatcher implements IEventDispatcher {
 
+    /**
+     * Log4J.
+     */
+    private static final Logger LOGGER = Logger.getLogger( EventDispatcher.class );
+
     /**
      * Constructor.
      */
     public EventDispatcher() {
-        this.listenerMap = new HashMap<String, List<IEventListener>>();
+        this.listeners = new IEventListener[0][];
     }
 
-    /** Hold the listeners for a specific event. */
-    final Map<String,List<IEventListener>> listenerMap;
+    /** Hold the listeners for a specific event, indexed by the event type id. */
+    private volatile IEventListener[][] listeners;
+
+    /** Delivers the events asynchronously, <code>null</code> delivers them in the dispatching thread. */
+    private volatile Executor eventExecutor = null;
+
+    /**
+     * Deliver the events asynchronously through the given executor, e.g. to keep slow listeners
+     * out of the dispatching thread. The events are handed over in dispatch order, a single
+     * threaded executor (see <code>newBoundedExecutor</code>) keeps that order.
+     * @param eventExecutor The executor, or <code>null</code> for the synchronous delivery.
+     */
+    public void setEventExecutor( Executor eventExecutor ) {
+        this.eventExecutor = eventExecutor;
+    }
 
     /**
      * Add a listener for a specific event.
@@ -30,19 +58,23 @@ public class EventDispatcher implements IEventDispatcher {
      * @param listener The handler for this event.
      */
     @Override
-    public void addEventListener( String type, IEventListener listener ) {
+    public synchronized void addEventListener( String type, IEventListener listener ) {
         // sanity check.
         if( type == null )
             throw new NullPointerException();
         if( listener == null )
             throw new NullPointerException();
 
-        List<IEventListener> listeners = listenerMap.get( type );
-        if( listeners == null ) {
-            listeners = new ArrayList<IEventListener>();
-            listenerMap.put( type, listeners );
+        final int typeId = EventTypes.register( type );
+        final IEventListener[][] newListeners = Arrays.copyOf( listeners, Math.max( listeners.length, typeId + 1 ) );
+        final IEventListener[] typeListeners = newListeners[typeId];
+        if( typeListeners == null ) {
+            newListeners[typeId] = new IEventListener[] { listener };
+        } else {
+            newListeners[typeId] = Arrays.copyOf( typeListeners, typeListeners.length + 1 );
+            newListeners[typeId][typeListeners.length] = listener;
         }
-        listeners.add( listener );
+        listeners = newListeners;
     }
 
     /**
@@ -51,24 +83,34 @@ public class EventDispatcher implements IEventDispatcher {
      * @param listener The handler for this event.
      */
     @Override
-    public boolean removeEventListener( String type, IEventListener listener ) {
+    public synchronized boolean removeEventListener( String type, IEventListener listener ) {
         // sanity check.
         if( type == null )
             throw new NullPointerException();
         if( listener == null )
             throw new NullPointerException();
 
-        List<IEventListener> listeners = listenerMap.get( type );
-        if( listeners != null ) {
-            boolean isRemoved = listeners.remove( listener );
-            // if no more listeners registered, we remove the complete mapping.
-            if( isRemoved && listeners.size() == 0 ) {
-                listenerMap.remove( type );
-            }
-            return isRemoved;
-        } else {
+        final int typeId = EventTypes.idOf( type );
+        final IEventListener[] typeListeners = listenersOf( typeId );
+        if( typeListeners == null )
             return false;
+        for( int i = 0; i < typeListeners.length; ++i ) {
+            if( typeListeners[i].equals( listener ) ) {
+                final IEventListener[][] newListeners = listeners.clone();
+                // if no more listeners registered, we remove the complete mapping.
+                if( typeListeners.length == 1 ) {
+                    newListeners[typeId] = null;
+                } else {
+                    final IEventListener[] remaining = new IEventListener[typeListeners.length - 1];
+                    System.arraycopy( typeListeners, 0, remaining, 0, i );
+                    System.arraycopy( typeListeners, i + 1, remaining, i, remaining.length - i );
+                    newListeners[typeId] = remaining;
+                }
+                listeners = newListeners;
+                return true;
+            }
         }
+        return false;
     }
 
     /**
@@ -76,16 +118,28 @@ public class EventDispatcher implements IEventDispatcher {
      * @param event The event to dispatch.
      */
     @Override
-    public void dispatchEvent( Event event ) {
+    public void dispatchEvent( final Event event ) {
         // sanity check.
         if( event == null )
             throw new NullPointerException();
 
-        List<IEventListener> listeners = listenerMap.get( event.type );
-        if( listeners != null ) {
-            for( IEventListener el : listeners ) {
+        final IEventListener[] typeListeners = listenersOf( event.typeId );
+        if( typeListeners == null )
+            return;
+        final Executor executor = eventExecutor;
+        if( executor == null ) {
+            for( IEventListener el : typeListeners ) {
                 el.handleEvent( event );
             }
+        } else {
+            executor.execute( new Runnable() {
+                @Override
+                public void run() {
+                    for( IEventListener el : typeListeners ) {
+                        el.handleEvent( event );
+                    }
+                }
+            } );
         }
     }
 
@@ -99,6 +153,53 @@ public class EventDispatcher implements IEventDispatcher {
         // sanity check.
         if( type == null )
             throw new NullPointerException();
-        return listenerMap.get( type ) != null;
+        return listenersOf( EventTypes.idOf( type ) ) != null;
+    }
+
+    /**
+     * Return the listeners of an event type id, <code>null</code> if none are installed.
+     */
+    private IEventListener[] listenersOf( int typeId ) {
+        final IEventListener[][] listeners = this.listeners;
+        return typeId >= 0 && typeId < listeners.length ? listeners[typeId] : null;
+    }
+
+    /**
+     * Create a executor for the asynchronous event delivery. A single daemon thread delivers the
+     * events in dispatch order. At most <code>capacity</code> events wait for delivery, if the queue
+     * is full the event is dropped and reported, the dispatching thread never waits for the listeners.
+     * @param name The name of the delivery thread.
+     * @param capacity The maximal number of waiting events.
+     * @return The executor.
+     */
+    public static ExecutorService newBoundedExecutor( final String name, int capacity ) {
+        // sanity check.
+        if( name == null )
+            throw new NullPointerException();
+        if( capacity < 1 )
+            throw new IllegalArgumentException();
+
+        final AtomicLong dropped = new AtomicLong( 0 );
+        return new ThreadPoolExecutor( 1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>( capacity ),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread( Runnable r ) {
+                    final Thread thread = new Thread( r, name );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            },
+            new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution( Runnable r, ThreadPoolExecutor executor ) {
+                    if( executor.isShutdown() )
+                        throw new RejectedExecutionException( "event executor is shut down" );
+                    // report the 1st, 2nd, 4th, ... dropped event, a slow listener must not flood the log.
+                    final long count = dropped.incrementAndGet();
+                    if( Long.bitCount( count ) == 1 )
+                        LOGGER.warn( "event queue of " + name + " is full, " + count + " events dropped" );
+                }
+            } );
     }
 }
@@ -0,0 +1,71 @@
+package de.tuberlin.rcd.network.common;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Assigns a dense integer id to every event type. The ids index the listener tables of
+ * the <code>EventDispatcher</code>, so dispatching an event needs no lookup by name.
+ *
+ * @author Tobias Herb
+ *
+ */
+public final class EventTypes {
+
+    // prohibit instantiation.
+    private EventTypes() {}
+
+    /** The ids by event type. */
+    private static final ConcurrentMap<String,Integer> IDS = new ConcurrentHashMap<String,Integer>();
+
+    /** The event types by id. */
+    private static final List<String> TYPES = new CopyOnWriteArrayList<String>();
+
+    /**
+     * Register an event type. Registering a type twice returns the same id.
+     * @param type The event type.
+     * @return The id of the event type.
+     */
+    public static int register( String type ) {
+        // sanity check.
+        if( type == null )
+            throw new NullPointerException();
+
+        final Integer id = IDS.get( type );
+        if( id != null )
+            return id;
+        synchronized( TYPES ) {
+            final Integer registeredId = IDS.get( type );
+            if( registeredId != null )
+                return registeredId;
+            TYPES.add( type );
+            IDS.put( type, TYPES.size() - 1 );
+            return TYPES.size() - 1;
+        }
+    }
+
+    /**
+     * Return the id of an event type.
+     * @param type The event type.
+     * @return The id, or -1 if the type is not registered.
+     */
+    public static int idOf( String type ) {
+        // sanity check.
+        if( type == null )
+            throw new NullPointerException();
+
+        final Integer id = IDS.get( type );
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Return the event type of an id.
+     * @param id The id of the event type.
+     * @return The event type.
+     */
+    public static String typeOf( int id ) {
+        return TYPES.get( id );
+    }
+}
@@ -1,7 +1,11 @@
 package de.tuberlin.rcd.network.common;
 
-public class Pair<A, B> {
-    
+import java.io.Serializable;
+
+public class Pair<A, B> implements Serializable {
+
+    private static final long serialVersionUID = 2684953094861571022L;
+
 	private final A first;
     private final B second;
 
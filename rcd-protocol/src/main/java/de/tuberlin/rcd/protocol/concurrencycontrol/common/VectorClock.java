@@ -1,9 +1,10 @@
 package de.tuberlin.rcd.protocol.concurrencycontrol.common;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * Vector clocks is an algorithm for generating a partial ordering of events in a
@@ -23,13 +24,16 @@ import java.util.List;
  *     in the vector by one and updates each element in its vector by taking the maximum
  *     of the value in its own vector state and the value in the vector in the received
  *     message (for every element).
+ *
+ * The components are stored in a primitive array, reading, comparing and merging clocks
+ * does not allocate. Components that are missing in the shorter of two clocks count as zero.
  */
 public class VectorClock implements Serializable {
 
     /**
 	 * 
 	 */
-	private static final long serialVersionUID = 6973036324174883251L;
+	private static final long serialVersionUID = -3702916842637381580L;
 
 	/**
      * Constructor.
@@ -39,9 +43,7 @@ public class VectorClock implements Serializable {
         // sanity check.
         if( N < 1 )
             throw new IllegalArgumentException();
-        components = new ArrayList<Integer>();
-        for( int i = 0; i < N; ++i )
-            components.add( 0 );
+        components = new int[N];
     }
 
     /**
@@ -52,7 +54,9 @@ public class VectorClock implements Serializable {
         // sanity check.
         if( components == null )
             throw new IllegalArgumentException();
-        this.components = Arrays.asList( components );
+        this.components = new int[components.length];
+        for( int i = 0; i < components.length; ++i )
+            this.components[i] = components[i];
     }
 
     /**
@@ -63,19 +67,19 @@ public class VectorClock implements Serializable {
         // sanity check.
         if( vc == null )
             throw new IllegalArgumentException();
-        components = new ArrayList<Integer>( vc.components );
+        components = vc.components.clone();
     }
 
     /** Store an integer value, for each source of concurrency (process).
-        Implemented as list because of the varying count of processes over time. */
-    final List<Integer> components;
+        Written in a compact form by <code>writeObject</code>. */
+    private transient int[] components;
 
     /**
      * Increment a component of the vector state.
      * @param index The index of the component that gets incremented.
      */
     public void inc( int index ) {
-        components.set( index, ( components.get( index ) + 1 ) );
+        ++components[index];
     }
 
     /**
@@ -84,14 +88,21 @@ public class VectorClock implements Serializable {
      * @param value The new value.
      */
     public void set( int index, int value ) {
-        components.set( index, value );
+        components[index] = value;
     }
 
     /**
      * Return the value of a component.
      */
     public int get( int index ) {
-        return components.get( index );
+        return components[index];
+    }
+
+    /**
+     * Return the number of components.
+     */
+    public int size() {
+        return components.length;
     }
 
     /**
@@ -99,10 +110,75 @@ public class VectorClock implements Serializable {
      */
     public void copy( VectorClock vc ) {
         // sanity check.
-        if( this.components.size() != vc.components.size() )
+        if( this.components.length != vc.components.length )
+            throw new IllegalArgumentException();
+        System.arraycopy( vc.components, 0, components, 0, components.length );
+    }
+
+    /**
+     * Take the maximum of both clocks for every component. The clock must have at least
+     * as many components as the merged clock.
+     * @param vc The merged clock.
+     */
+    public void merge( VectorClock vc ) {
+        // sanity check.
+        if( vc.components.length > components.length )
             throw new IllegalArgumentException();
-        for( int i = 0; i < components.size(); ++i )
-            components.set( i, vc.get( i ) );
+        for( int i = 0; i < vc.components.length; ++i ) {
+            if( vc.components[i] > components[i] )
+                components[i] = vc.components[i];
+        }
+    }
+
+    /**
+     * Test if this clock is smaller or equal to the given clock in every component.
+     * @param vc The compared clock.
+     */
+    public boolean isBeforeOrEqual( VectorClock vc ) {
+        final int n = Math.max( components.length, vc.components.length );
+        for( int i = 0; i < n; ++i ) {
+            if( component( i ) > vc.component( i ) )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Test if the event of this clock happened before the event of the given clock.
+     * @param vc The compared clock.
+     * @return true, if no component is greater and at least one component is smaller.
+     */
+    public boolean happenedBefore( VectorClock vc ) {
+        return isBeforeOrEqual( vc ) && !vc.isBeforeOrEqual( this );
+    }
+
+    /**
+     * Test if the events of both clocks are concurrent, i.e. none happened before the other.
+     * @param vc The compared clock.
+     */
+    public boolean isConcurrent( VectorClock vc ) {
+        return !isBeforeOrEqual( vc ) && !vc.isBeforeOrEqual( this );
+    }
+
+    /**
+     * Return the value of a component, zero if the clock has less components.
+     */
+    private int component( int index ) {
+        return index < components.length ? components[index] : 0;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if( this == obj )
+            return true;
+        if( !( obj instanceof VectorClock ) )
+            return false;
+        return Arrays.equals( components, ( (VectorClock)obj ).components );
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode( components );
     }
 
     /**
@@ -111,15 +187,51 @@ public class VectorClock implements Serializable {
     public String toString() {
         final StringBuilder sb = new StringBuilder();
         sb.append( "[" );
-        for( int i = 0; i < components.size(); ++i )
+        for( int i = 0; i < components.length; ++i )
             sb.append( "(" )
               .append( i )
               .append( ":" )
-              .append( components.get( i ) )
+              .append( components[i] )
               .append( ")" )
               .append( "," );
         return sb.deleteCharAt( sb.length() - 1 )
                  .append( "]" )
                  .toString();
     }
+
+    /**
+     * Write the number of components and the components as varints.
+     */
+    private void writeObject( ObjectOutputStream out ) throws IOException {
+        out.defaultWriteObject();
+        writeVarInt( out, components.length );
+        for( int component : components )
+            writeVarInt( out, component );
+    }
+
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        components = new int[readVarInt( in )];
+        for( int i = 0; i < components.length; ++i )
+            components[i] = readVarInt( in );
+    }
+
+    private static void writeVarInt( ObjectOutputStream out, int value ) throws IOException {
+        while( ( value & ~0x7F ) != 0 ) {
+            out.writeByte( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        out.writeByte( value );
+    }
+
+    private static int readVarInt( ObjectInputStream in ) throws IOException {
+        int value = 0;
+        for( int shift = 0; shift < 32; shift += 7 ) {
+            final int b = in.readUnsignedByte();
+            value |= ( b & 0x7F ) << shift;
+            if( ( b & 0x80 ) == 0 )
+                return value;
+        }
+        throw new IOException( "malformed varint" );
+    }
 }
@@ -1,9 +1,13 @@
 package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.OperationHelper;
 
 /**
  * The basic OT operation definition.
@@ -111,4 +115,72 @@ public class OTOperationDefinition {
             return "[nop()]";
         }
     }
+
+    /**
+     * Composite operation. A ordered sequence of operations that is applied, transformed
+     * and transmitted as one atomic operation. Every component is defined on the state
+     * that results from the application of all preceding components.
+     * @param <T> The type of the data elements in the data model.
+     */
+    public static class CompositeOperation<T> extends OTOperation<T> {
+
+        /**
+         *
+         */
+        private static final long serialVersionUID = 3986510423651296840L;
+
+        /**
+         * Constructor.
+         * @param operations The components of the operation.
+         */
+        public CompositeOperation( final List<OTOperation<T>> operations ) {
+            // sanity check.
+            if( operations == null )
+                throw new IllegalArgumentException();
+            if( operations.isEmpty() )
+                throw new IllegalArgumentException();
+
+            this.operations = Collections.unmodifiableList( new ArrayList<OTOperation<T>>( operations ) );
+        }
+
+        /**
+         * Copy constructor. The components are copied too, as <code>setMetaData</code> changes them.
+         * @param op The source operation that gets cloned.
+         */
+        public CompositeOperation( final CompositeOperation<T> op ) {
+            this( copyOperations( op.operations ) );
+            this.setMetaData( op.getMetaData() );
+        }
+
+        /**
+         * Return shallow copies of the components.
+         */
+        private static <T> List<OTOperation<T>> copyOperations( List<OTOperation<T>> operations ) {
+            final List<OTOperation<T>> copies = new ArrayList<OTOperation<T>>( operations.size() );
+            for( final OTOperation<T> op : operations )
+                copies.add( OperationHelper.shallowCopyOperation( op ) );
+            return copies;
+        }
+
+        /** The components of the operation in application order. */
+        public final List<OTOperation<T>> operations;
+
+        /**
+         * Set the metadata object of the operation and all its components.
+         */
+        @Override
+        public void setMetaData( OTOperationMetaData metaData ) {
+            super.setMetaData( metaData );
+            for( final OTOperation<T> op : operations )
+                op.setMetaData( metaData );
+        }
+
+        /**
+         * Return a string representation of the operation.
+         */
+        @Override
+        public String toString() {
+            return "[comp" + operations + "]";
+        }
+    }
 }
@@ -6,6 +6,12 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
+/**
+ * The operations in execution order. Operations are addressed by their revision, the number of
+ * operations that were executed before. The history can be truncated at a low-water mark, then
+ * only the operations from the base revision on are retained.
+ * @param <T> The type of the data elements in the data model.
+ */
 public class OTOperationHistory<T> implements Serializable {
 
     /**
@@ -19,6 +25,18 @@ public class OTOperationHistory<T> implements Serializable {
     public OTOperationHistory() {
     }
 
+    /**
+     * Constructor of a history that continues at the given revision, e.g. after a snapshot.
+     * @param baseRevision The revision of the first operation.
+     */
+    public OTOperationHistory( int baseRevision ) {
+        // sanity check.
+        if( baseRevision < 0 )
+            throw new IllegalArgumentException();
+
+        this.baseRevision = baseRevision;
+    }
+
     /**
      * Copy constructor.
      * @param copyHistory The operation history that gets cloned.
@@ -29,12 +47,16 @@ public class OTOperationHistory<T> implements Serializable {
             throw new IllegalArgumentException();
 
         history.addAll( copyHistory.history );
+        baseRevision = copyHistory.baseRevision;
     }
 
     /** The list storing the operations in execution order. */
     final List<OTOperationDefinition.OTOperation<T>> history =
             new ArrayList<OTOperationDefinition.OTOperation<T>>();
 
+    /** The revision of the first retained operation. */
+    private int baseRevision = 0;
+
     /**
      * Add a operation to the history.
      * @param op Operation that is pushed to the history end.
@@ -49,12 +71,65 @@ public class OTOperationHistory<T> implements Serializable {
      * @return All concurrent (= independent) operations to the given revision.
      */
     public List<OTOperationDefinition.OTOperation<T>> getConcurrentOperations( int revision ) {
+        // sanity check.
+        if( revision < baseRevision )
+            throw new IllegalStateException( "revision " + revision + " is already truncated (base revision: " + baseRevision + ")" );
+        if( revision > getRevision() )
+            throw new IllegalArgumentException();
+
         return Collections.unmodifiableList(
-                history.subList( revision, history.size() ) );
+                history.subList( revision - baseRevision, history.size() ) );
+    }
+
+    /**
+     * Drop all operations before the given revision. The operations are not needed anymore
+     * if every client has passed the revision.
+     * @param revision The new base revision.
+     */
+    public void truncate( int revision ) {
+        // sanity check.
+        if( revision > getRevision() )
+            throw new IllegalArgumentException();
+
+        if( revision > baseRevision ) {
+            history.subList( 0, revision - baseRevision ).clear();
+            baseRevision = revision;
+        }
+    }
+
+    /**
+     * Replace the retained operations by the operations of another history, e.g. of a
+     * data model that is continued on another server.
+     * @param copyHistory The operation history that gets copied.
+     */
+    public void restore( OTOperationHistory<T> copyHistory ) {
+        // sanity check.
+        if( copyHistory == null )
+            throw new IllegalArgumentException();
+
+        history.clear();
+        history.addAll( copyHistory.history );
+        baseRevision = copyHistory.baseRevision;
+    }
+
+    /**
+     * Return the revision of the first retained operation.
+     * @return The base revision, 0 if the history was never truncated.
+     */
+    public int getBaseRevision() {
+        return baseRevision;
+    }
+
+    /**
+     * Return the revision after the last operation, i.e. the number of all executed operations.
+     * @return The current revision.
+     */
+    public int getRevision() {
+        return baseRevision + history.size();
     }
 
     /**
-     * Return size of the history.
+     * Return the number of retained operations.
      * @return Size of the history.
      */
     public int getHistorySize() {
@@ -62,7 +137,7 @@ public class OTOperationHistory<T> implements Serializable {
     }
 
     /**
-     * Get an history iterator.
+     * Get an history iterator over the retained operations.
      * @return History iterator.
      */
     public Iterator<OTOperationDefinition.OTOperation<T>> getHistoryIterator() {
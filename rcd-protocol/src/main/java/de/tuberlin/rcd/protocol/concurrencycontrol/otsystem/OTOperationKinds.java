@@ -0,0 +1,82 @@
+package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Assigns a dense ordinal to every operation class. The ordinals index the transformation
+ * tables of the inclusion transformers, so data models can add their own operations without
+ * changing the transformers. Subclasses of a registered operation share its kind.
+ */
+public final class OTOperationKinds {
+
+    // prohibit instantiation.
+    private OTOperationKinds() {}
+
+    /** The kinds by operation class, replaced on every registration. */
+    private static volatile Map<Class<?>,Integer> kinds = new IdentityHashMap<Class<?>,Integer>();
+
+    /** The next free ordinal. */
+    private static volatile int nextKind = 0;
+
+    /** Kind of the <code>NoOperation</code>. */
+    public static final int NO_OPERATION = register( OTOperationDefinition.NoOperation.class );
+
+    /** Kind of the <code>CompositeOperation</code>. */
+    public static final int COMPOSITE_OPERATION = register( OTOperationDefinition.CompositeOperation.class );
+
+    /**
+     * Register an operation class. Registering a class twice returns the same kind.
+     * @param clazz The operation class.
+     * @return The kind of the operation class.
+     */
+    @SuppressWarnings("rawtypes")
+    public static synchronized int register( Class<? extends OTOperationDefinition.OTOperation> clazz ) {
+        // sanity check.
+        if( clazz == null )
+            throw new NullPointerException();
+
+        final Integer kind = kinds.get( clazz );
+        if( kind != null )
+            return kind;
+        return put( clazz, nextKind++ );
+    }
+
+    /**
+     * Return the kind of an operation.
+     * @param op The operation.
+     * @return The kind of the operation class or of its nearest registered superclass.
+     */
+    public static int kindOf( OTOperationDefinition.OTOperation<?> op ) {
+        final Integer kind = kinds.get( op.getClass() );
+        if( kind != null )
+            return kind;
+        return inheritKind( op.getClass() );
+    }
+
+    /**
+     * Return the number of registered kinds.
+     */
+    public static int count() {
+        return nextKind;
+    }
+
+    /**
+     * Assign the kind of the nearest registered superclass to an unregistered operation class.
+     */
+    private static synchronized int inheritKind( Class<?> clazz ) {
+        for( Class<?> superClazz = clazz; superClazz != null; superClazz = superClazz.getSuperclass() ) {
+            final Integer kind = kinds.get( superClazz );
+            if( kind != null )
+                return superClazz == clazz ? kind : put( clazz, kind );
+        }
+        throw new IllegalArgumentException( "operation kind of " + clazz.getName() + " is not registered" );
+    }
+
+    private static int put( Class<?> clazz, int kind ) {
+        final Map<Class<?>,Integer> newKinds = new IdentityHashMap<Class<?>,Integer>( kinds );
+        newKinds.put( clazz, kind );
+        kinds = newKinds;
+        return kind;
+    }
+}
@@ -0,0 +1,87 @@
+package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tracks for every registered client the last server revision the client has acknowledged.
+ * A client never sends a operation that is based on a older revision than its acknowledged one,
+ * so all operations before the minimum over all clients (the low-water mark) can be dropped.
+ */
+public final class OTRevisionTracker {
+
+    /** The acknowledged revision per client. */
+    private final Map<UUID,Integer> revisions = new HashMap<UUID,Integer>();
+
+    /**
+     * Start tracking a client.
+     * @param clientUID The UID of the client.
+     * @param revision The revision the client was filled with.
+     */
+    public synchronized void register( UUID clientUID, int revision ) {
+        // sanity check.
+        if( clientUID == null )
+            throw new NullPointerException();
+
+        revisions.put( clientUID, revision );
+    }
+
+    /**
+     * Stop tracking a client.
+     * @param clientUID The UID of the client.
+     */
+    public synchronized void deregister( UUID clientUID ) {
+        // sanity check.
+        if( clientUID == null )
+            throw new NullPointerException();
+
+        revisions.remove( clientUID );
+    }
+
+    /**
+     * Record that a client has integrated all operations before the given revision.
+     * Revisions of unknown clients and outdated revisions are ignored.
+     * @param clientUID The UID of the client.
+     * @param revision The acknowledged revision.
+     */
+    public synchronized void acknowledge( UUID clientUID, int revision ) {
+        // sanity check.
+        if( clientUID == null )
+            throw new NullPointerException();
+
+        final Integer current = revisions.get( clientUID );
+        if( current != null && current < revision )
+            revisions.put( clientUID, revision );
+    }
+
+    /**
+     * Return the acknowledged revision of a client.
+     * @param clientUID The UID of the client.
+     * @return The revision or -1 if the client is not tracked.
+     */
+    public synchronized int getRevision( UUID clientUID ) {
+        final Integer revision = revisions.get( clientUID );
+        return revision != null ? revision : -1;
+    }
+
+    /**
+     * Return the acknowledged revisions of all tracked clients.
+     * @return A copy of the revisions by client UID.
+     */
+    public synchronized Map<UUID,Integer> getRevisions() {
+        return new HashMap<UUID,Integer>( revisions );
+    }
+
+    /**
+     * Return the oldest revision a registered client can still refer to.
+     * @param currentRevision The current server revision, returned if no client is registered.
+     * @return The low-water mark.
+     */
+    public synchronized int getLowWaterMark( int currentRevision ) {
+        int lowWaterMark = currentRevision;
+        for( int revision : revisions.values() )
+            lowWaterMark = Math.min( lowWaterMark, revision );
+        return lowWaterMark;
+    }
+}
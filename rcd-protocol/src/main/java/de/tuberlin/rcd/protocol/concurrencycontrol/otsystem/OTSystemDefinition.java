@@ -1,6 +1,7 @@
 package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.UUID;
 
 import de.tuberlin.rcd.network.common.Pair;
@@ -112,6 +113,18 @@ public class OTSystemDefinition {
          * Return the server space state/revision.
          */
         public VectorClock getState();
+
+        /**
+         * Record that a client has integrated all server operations before the given revision.
+         * @param clientUID The UID of the client.
+         * @param revision The acknowledged revision.
+         */
+        public void acknowledge( UUID clientUID, int revision );
+
+        /**
+         * Return the oldest revision that is still retained for the registered clients.
+         */
+        public int getLowWaterMark();
     }
 
     /**
@@ -130,6 +143,20 @@ public class OTSystemDefinition {
         public abstract void sendOperation( UUID clientUID, OTOperation<T> op );
     }
 
+    /**
+     * Sending mechanism that can transmit the same operation to several receivers at once.
+     * @param <T> The type of the elements in the data model.
+     */
+    public static interface BroadcastOperationSender<T> extends OperationSender<T> {
+
+        /**
+         * Send the operation to all given receivers. The operation is encoded only once.
+         * @param clientUIDs The UIDs of the receivers.
+         * @param op The operation to send.
+         */
+        public abstract void broadcastOperation( Collection<UUID> clientUIDs, OTOperation<T> op );
+    }
+
     /**
      * The interface for client-side OT integration algorithm.
      * @param <T> The type of the elements in the data model.
@@ -153,6 +180,11 @@ public class OTSystemDefinition {
          * @param state State space.
          */
         public void setState( VectorClock state );
+
+        /**
+         * Return the number of server operations integrated into the client state.
+         */
+        public int getRevision();
     }
 
     /**
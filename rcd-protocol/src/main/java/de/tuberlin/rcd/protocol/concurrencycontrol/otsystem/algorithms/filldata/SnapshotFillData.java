@@ -0,0 +1,51 @@
+package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
+import de.tuberlin.rcd.protocol.types.AbstractFillData;
+
+/**
+ * Fill data that consists of the plain data elements at a snapshot revision and the
+ * operations the server executed after that revision. The client inserts the elements
+ * and applies the tail, the size is independent of the length of the operation history.
+ */
+public class SnapshotFillData<T> extends AbstractFillData {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -2958230374581205337L;
+
+    /**
+     * Constructor.
+     * @param elements The data elements at the snapshot revision.
+     * @param tail The operations after the snapshot revision in execution order.
+     * @param state The current server state.
+     */
+    public SnapshotFillData( List<T> elements,
+                             List<OTOperationDefinition.OTOperation<T>> tail,
+                             VectorClock state ) {
+        // sanity check.
+        if( elements == null )
+            throw new IllegalArgumentException();
+        if( tail == null )
+            throw new IllegalArgumentException();
+
+        this.elements = Collections.unmodifiableList( elements );
+        this.tail = Collections.unmodifiableList( new ArrayList<OTOperationDefinition.OTOperation<T>>( tail ) );
+        this.state = new VectorClock( state );
+    }
+
+    /** The data elements at the snapshot revision. */
+    public final List<T> elements;
+
+    /** The operations after the snapshot revision in execution order. */
+    public final List<OTOperationDefinition.OTOperation<T>> tail;
+
+    /** Current server state */
+    public final VectorClock state;
+}
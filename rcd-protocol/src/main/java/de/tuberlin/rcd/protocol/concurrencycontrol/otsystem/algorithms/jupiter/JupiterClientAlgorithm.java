@@ -163,6 +163,14 @@ public class JupiterClientAlgorithm<T> implements OTSystemDefinition.OTClientAlg
         this.state.copy( state );
     }
 
+    /**
+     * Return the number of server operations integrated into the client state.
+     */
+    @Override
+    public synchronized int getRevision() {
+        return state.get( 1 );
+    }
+
     /**
      * Create a cursor and make register at the algorithm to make
      * it aware of local and remote operations.
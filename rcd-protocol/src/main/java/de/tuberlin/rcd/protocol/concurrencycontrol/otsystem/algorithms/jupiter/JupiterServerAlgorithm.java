@@ -40,7 +40,7 @@ public class JupiterServerAlgorithm<T> implements OTSystemDefinition.OTServerAlg
                     final UUID clientUID = (UUID)event.data;
                     proxyMap.put( clientUID,
                             new JupiterServerSideProxy<T>( clientUID, transformer, sender,
-                                    new VectorClock( history.getHistorySize(), 0 ) )
+                                    new VectorClock( history.getRevision(), 0 ) )
                     );
                 }
             } );
@@ -109,7 +109,19 @@ public class JupiterServerAlgorithm<T> implements OTSystemDefinition.OTServerAlg
 
     @Override
     public VectorClock getState() {
-        return new VectorClock( 0, history.getHistorySize() );
+        return new VectorClock( 0, history.getRevision() );
+    }
+
+    /**
+     * The proxies track the acknowledged state of their clients themselves.
+     */
+    @Override
+    public void acknowledge( UUID clientUID, int revision ) {
+    }
+
+    @Override
+    public int getLowWaterMark() {
+        return history.getBaseRevision();
     }
 
     @Override
@@ -0,0 +1,309 @@
+package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.jupiter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.log4j.Logger;
+
+import de.tuberlin.rcd.network.common.Event;
+import de.tuberlin.rcd.network.common.IEventDispatcher;
+import de.tuberlin.rcd.network.common.IEventListener;
+import de.tuberlin.rcd.network.common.Pair;
+import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationHistory;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
+
+/**
+ * Jupiter server that shares the server-ordered operation history between all clients instead
+ * of keeping an outgoing queue per client proxy. A client refers to the history by the revision
+ * of its first unacknowledged operation; only operations that were transformed against later
+ * operations of the client are held per client. An incoming operation is transformed against
+ * the unacknowledged operations of its client, the history is truncated behind the slowest client.
+ * The clients run the unchanged <code>JupiterClientAlgorithm</code>.
+ * @param <T> The type of the elements in the data model.
+ */
+public class SharedLogJupiterServerAlgorithm<T> implements OTSystemDefinition.OTServerAlgorithm<T> {
+
+    /**
+     * Log4J.
+     */
+    private static final Logger LOGGER = Logger.getLogger( SharedLogJupiterServerAlgorithm.class );
+
+    /** Default number of collectable operations before the history is truncated. */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 256;
+
+    /**
+     * The Jupiter state of a client within the shared history.
+     */
+    private static final class ClientState<T> {
+
+        ClientState( UUID clientUID, OTSystemDefinition.OperationSender<T> sender, int revision ) {
+            this.clientUID = clientUID;
+            this.sender = sender;
+            // the client is filled with the current revision.
+            this.sent = revision;
+            this.acknowledged = revision;
+            this.tailRevision = revision;
+        }
+
+        /** The UID of the client. */
+        final UUID clientUID;
+
+        /** Sends the operations to the client. */
+        final OTSystemDefinition.OperationSender<T> sender;
+
+        /** Number of operations sent to the client. */
+        int sent;
+
+        /** Number of operations received from the client. */
+        int received = 0;
+
+        /** Number of sent operations the client has integrated. */
+        int acknowledged;
+
+        /** The unacknowledged operations before the last operation of the client, transformed
+            against the operations of the client. */
+        final List<OTOperationDefinition.OTOperation<T>> bridge = new ArrayList<OTOperationDefinition.OTOperation<T>>();
+
+        /** Revision of the first unacknowledged operation after the bridge. All later operations
+            are from other clients and apply to the client as they are. */
+        int tailRevision;
+
+        @Override
+        public String toString() {
+            return "[ClientUID: " + clientUID.toString() + ", State: " + new VectorClock( sent, received ) + "]";
+        }
+    }
+
+    /**
+     * Constructor.
+     */
+    public SharedLogJupiterServerAlgorithm( OTSystemDefinition.OTDataModel<T> dataModel,
+                                            OTSystemDefinition.InclusionTransformer<T> transformer,
+                                            OTSystemDefinition.OperationSender<T> sender,
+                                            IEventDispatcher base ) {
+        // sanity check.
+        if( dataModel == null )
+            throw new IllegalArgumentException();
+        if( transformer == null )
+            throw new IllegalArgumentException();
+
+        this.dataModel = dataModel;
+        this.transformer = transformer;
+        this.sender = sender;
+
+        if( base != null ) {
+            base.addEventListener( "type_added_client", new IEventListener() {
+                @Override
+                public void handleEvent( Event event ) {
+                    addClient( (UUID)event.data, SharedLogJupiterServerAlgorithm.this.sender );
+                }
+            } );
+
+            base.addEventListener( "type_removed_client", new IEventListener() {
+                @Override
+                public void handleEvent( Event event ) {
+                    removeClient( (UUID)event.data );
+                }
+            } );
+        }
+    }
+
+    /** The states of the registered clients. */
+    private final Map<UUID,ClientState<T>> clients = new HashMap<UUID,ClientState<T>>();
+
+    /** Server-side data model. */
+    private final OTSystemDefinition.OTDataModel<T> dataModel;
+
+    /** Operation (inclusion) transformer. */
+    private final OTSystemDefinition.InclusionTransformer<T> transformer;
+
+    /** Operation history, shared by all clients. */
+    private final OTOperationHistory<T> history = new OTOperationHistory<T>();
+
+    /** The sending mechanism is encapsulated behind interface, for ensuring a loose coupling
+        between the OT-system and the underlying network layer. */
+    private final OTSystemDefinition.OperationSender<T> sender;
+
+    /** Number of operations below the low-water mark that trigger a truncation of the history. */
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /**
+     * Adapt a incoming operation by transforming it against the operations
+     * its client has not integrated yet.
+     * @param remoteOp The remote operation.
+     */
+    @Override
+    public synchronized OTOperationDefinition.OTOperation<T> integrate( OTOperationDefinition.OTOperation<T> remoteOp ) {
+        final ClientState<T> client = clients.get( remoteOp.getMetaData().creator );
+        // if no state exists to the incoming operation
+        // then something went wrong.
+        if( client == null )
+            throw new IllegalStateException();
+        final JupiterOperationMetaData remoteMetaData = (JupiterOperationMetaData) remoteOp.getMetaData();
+        acknowledge( client, remoteMetaData.state.get( 1 ) );
+
+        // transform against the unacknowledged operations. Their transformed versions
+        // form the new bridge, as the next operations of the client are based on them.
+        for( int i = 0; i < client.bridge.size(); ++i ) {
+            final Pair<OTOperationDefinition.OTOperation<T>,OTOperationDefinition.OTOperation<T>> r =
+                    transformer.transformOperation( true, remoteOp, client.bridge.get( i ) );
+            remoteOp = r.getFirst();
+            client.bridge.set( i, r.getSecond() );
+        }
+        for( OTOperationDefinition.OTOperation<T> loggedOp : history.getConcurrentOperations( client.tailRevision ) ) {
+            final Pair<OTOperationDefinition.OTOperation<T>,OTOperationDefinition.OTOperation<T>> r =
+                    transformer.transformOperation( true, remoteOp, loggedOp );
+            remoteOp = r.getFirst();
+            client.bridge.add( r.getSecond() );
+        }
+
+        // apply the operation to data model and add it to history.
+        dataModel.applyOperation( remoteOp );
+        history.pushOperation( remoteOp );
+        client.tailRevision = history.getRevision();
+        ++client.received;
+
+        // distribute it to the other clients.
+        for( ClientState<T> c : clients.values() ) {
+            if( c != client )
+                send( c, remoteOp );
+        }
+        collectHistory();
+        return remoteOp;
+    }
+
+    /**
+     * Drop the operations a client has integrated, first from the bridge, then from the tail.
+     * @param client The state of the client.
+     * @param received The number of operations the client has received from the server.
+     */
+    private void acknowledge( ClientState<T> client, int received ) {
+        // acknowledges never go back and never exceed the sent operations.
+        final int integrated = Math.min( received, client.sent ) - client.acknowledged;
+        if( integrated <= 0 )
+            return;
+        final int bridged = Math.min( integrated, client.bridge.size() );
+        client.bridge.subList( 0, bridged ).clear();
+        client.tailRevision += integrated - bridged;
+        client.acknowledged += integrated;
+    }
+
+    /**
+     * Send an integrated operation to a client. The Jupiter state of the operation
+     * differs per client, so the client gets a shallow copy with its own metadata.
+     */
+    private void send( ClientState<T> client, OTOperationDefinition.OTOperation<T> op ) {
+        final OTOperationDefinition.OTOperation<T> cpOp = OTLinearOperations.OperationHelper.shallowCopyOperation( op );
+        cpOp.setMetaData( new JupiterOperationMetaData( op.getMetaData().creator, new VectorClock( client.sent, client.received ) ) );
+        client.sender.sendOperation( client.clientUID, cpOp );
+        ++client.sent;
+    }
+
+    /**
+     * Drop the operations that all registered clients have integrated. The history is
+     * truncated in chunks to keep the costs of the list compaction low.
+     */
+    private void collectHistory() {
+        final int lowWaterMark = getLowWaterMark();
+        if( lowWaterMark - history.getBaseRevision() >= compactionThreshold ) {
+            LOGGER.info( "truncate history at revision " + lowWaterMark );
+            history.truncate( lowWaterMark );
+        }
+    }
+
+    /**
+     * Set the number of operations below the low-water mark that trigger a truncation of the history.
+     * @param compactionThreshold The threshold, 1 truncates after every operation.
+     */
+    public synchronized void setCompactionThreshold( int compactionThreshold ) {
+        // sanity check.
+        if( compactionThreshold < 1 )
+            throw new IllegalArgumentException();
+
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Get the current server-side operation history.
+     */
+    @Override
+    public OTOperationHistory<T> getHistory() {
+        return history;
+    }
+
+    @Override
+    public synchronized VectorClock getState() {
+        return new VectorClock( 0, history.getRevision() );
+    }
+
+    /**
+     * Record that a client has integrated the operations sent to it. Clients acknowledge with
+     * their own operations too, but a client that only receives relies on this acknowledge to
+     * release the shared history.
+     * @param clientUID The UID of the client.
+     * @param revision The number of operations the client has received from the server.
+     */
+    @Override
+    public synchronized void acknowledge( UUID clientUID, int revision ) {
+        final ClientState<T> client = clients.get( clientUID );
+        if( client == null )
+            return;
+        acknowledge( client, revision );
+        collectHistory();
+    }
+
+    /**
+     * Return the oldest revision of the history a registered client still refers to.
+     */
+    @Override
+    public synchronized int getLowWaterMark() {
+        int lowWaterMark = history.getRevision();
+        for( ClientState<T> client : clients.values() )
+            lowWaterMark = Math.min( lowWaterMark, client.tailRevision );
+        return lowWaterMark;
+    }
+
+    @Override
+    public OTSystemDefinition.OTCursor<T> registerCursor( OTSystemDefinition.OTCursor.OTCursorFactory<T> cursorFactory ) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deregisterCursor( OTSystemDefinition.OTCursor<T> cursor ) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return dataModel.toString();
+    }
+
+    private synchronized void addClient( UUID clientUID, OTSystemDefinition.OperationSender<T> sender ) {
+        clients.put( clientUID, new ClientState<T>( clientUID, sender, history.getRevision() ) );
+    }
+
+    private synchronized void removeClient( UUID clientUID ) {
+        clients.remove( clientUID );
+    }
+
+    // -------------------- Only for tests purposes --------------------
+
+    public synchronized String getProxyState( UUID clientUID ) {
+        return clients.get( clientUID ).toString();
+    }
+
+    public void addClientProxy( UUID clientUID, OTSystemDefinition.OperationSender<T> sender ) {
+        // sanity check.
+        if( clientUID == null )
+            throw new IllegalArgumentException();
+        if( sender == null )
+            throw new IllegalArgumentException();
+        addClient( clientUID, sender );
+    }
+}
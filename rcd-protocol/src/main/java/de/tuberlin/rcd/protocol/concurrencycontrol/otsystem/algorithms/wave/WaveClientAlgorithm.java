@@ -14,6 +14,8 @@ import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.OTOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationHistory;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTSequenceDataModel;
 
 /**
  * The wave client integration control algorithm.
@@ -56,6 +58,9 @@ public class WaveClientAlgorithm<T> implements OTSystemDefinition.OTClientAlgori
     /** The operation that is on its way to the server. */
     private OTOperation<T> inFlightOperation = null;
 
+    /** The server revision the in-flight operation is based on. */
+    private int inFlightRevision = 0;
+
     /** The current server revision on the client.
         The count of received server operations. */
     //private int revision = 0;
@@ -104,6 +109,7 @@ public class WaveClientAlgorithm<T> implements OTSystemDefinition.OTClientAlgori
             // send it to the tests.
             if( inFlightOperation == null && localOperationBuffer.size() == 0 ) {
                 inFlightOperation = localOp;
+                inFlightRevision = state.get( 0 );
                 final WaveOperationMetaData metaData = new WaveOperationMetaData( clientUID, state );
                 inFlightOperation.setMetaData( metaData );
                 LOGGER.info("send next operation " + inFlightOperation.toString());
@@ -153,9 +159,12 @@ public class WaveClientAlgorithm<T> implements OTSystemDefinition.OTClientAlgori
                 // acknowledge and have no in-flight.
                 if( inFlightOperation == null )
                     throw new IllegalStateException();
-                // determine the new in-flight, if possible.
+                // determine the new in-flight, if possible. All buffered operations are sent
+                // as one unit, so the buffer drains in a single round-trip.
                 if( localOperationBuffer.size() > 0 ) {
-                    inFlightOperation = localOperationBuffer.remove( 0 );
+                    inFlightOperation = OTLinearOperations.OperationHelper.composeOperations( localOperationBuffer );
+                    inFlightRevision = state.get( 0 );
+                    localOperationBuffer.clear();
                     // setup correct metadata for operation.
                     final WaveOperationMetaData metaData = new WaveOperationMetaData( clientUID, state );
                     inFlightOperation.setMetaData( metaData );
@@ -216,6 +225,11 @@ public class WaveClientAlgorithm<T> implements OTSystemDefinition.OTClientAlgori
                 history.pushOperation( remoteOp );
 
             }
+            // the local operations that are not acknowledged yet are based on the in-flight
+            // revision or later ones, older rollback deltas are not needed anymore.
+            if( dataModel instanceof OTSequenceDataModel )
+                ( (OTSequenceDataModel<T>)dataModel ).setStableRevision(
+                        inFlightOperation != null ? inFlightRevision : state.get( 0 ) );
         //}
         return remoteOp;
     }
@@ -240,6 +254,14 @@ public class WaveClientAlgorithm<T> implements OTSystemDefinition.OTClientAlgori
         this.state.copy( state );
     }
 
+    /**
+     * Return the number of server operations integrated into the client state.
+     */
+    @Override
+    public synchronized int getRevision() {
+        return state.get( 0 );
+    }
+
     /**
      * Create a cursor and make register at the algorithm to make
      * it aware of local and remote operations.
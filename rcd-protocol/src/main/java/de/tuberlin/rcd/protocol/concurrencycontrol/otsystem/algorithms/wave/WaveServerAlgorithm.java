@@ -1,8 +1,10 @@
 package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -15,7 +17,9 @@ import de.tuberlin.rcd.network.common.Pair;
 import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.OTOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationHistory;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTRevisionTracker;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTSequenceDataModel;
 
 /**
  *
@@ -52,6 +56,8 @@ public class WaveServerAlgorithm<T> implements OTSystemDefinition.OTServerAlgori
                 @Override
                 public void handleEvent( Event event ) {
                     final UUID clientUID = (UUID)event.data;
+                    // the client is filled with the current revision.
+                    revisionTracker.register( clientUID, history.getRevision() );
                     clients.add( clientUID );
                 }
             } );
@@ -61,6 +67,7 @@ public class WaveServerAlgorithm<T> implements OTSystemDefinition.OTServerAlgori
                 public void handleEvent( Event event ) {
                     final UUID clientUID = (UUID)event.data;
                     clients.remove( clientUID );
+                    revisionTracker.deregister( clientUID );
                 }
             } );
         }
@@ -82,6 +89,15 @@ public class WaveServerAlgorithm<T> implements OTSystemDefinition.OTServerAlgori
     /** Operation history. */
     private final OTOperationHistory<T> history = new OTOperationHistory<T>();
 
+    /** The acknowledged revisions of the registered clients. */
+    private final OTRevisionTracker revisionTracker = new OTRevisionTracker();
+
+    /** Number of operations below the low-water mark that trigger a truncation of the history. */
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /** Default number of collectable operations before the history is truncated. */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 256;
+
     /**
      * Adapt a incoming operation by transforming it against all local
      * concurrent (independent) operations.
@@ -95,8 +111,11 @@ public class WaveServerAlgorithm<T> implements OTSystemDefinition.OTServerAlgori
 
         LOGGER.info("integrate operation " + remoteOp.toString() + " from " + remoteOp.getMetaData());
 
+        final WaveOperationMetaData metaData = (WaveOperationMetaData)remoteOp.getMetaData();
+        // the client will never send operations based on older revisions.
+        revisionTracker.acknowledge( metaData.creator, metaData.state.get( 0 ) );
+
         if( history.getHistorySize() > 0 ) {
-            final WaveOperationMetaData metaData = (WaveOperationMetaData)remoteOp.getMetaData();
             List<OTOperation<T>> concurrentOps =
                     history.getConcurrentOperations( metaData.state.get( 0 ) );
 
@@ -115,15 +134,100 @@ public class WaveServerAlgorithm<T> implements OTSystemDefinition.OTServerAlgori
 
         dataModel.applyOperation( remoteOp );
         history.pushOperation( remoteOp );
+        collectHistory();
 
         // broadcast to all tests.
-        for( UUID clientUID : clients ) {
-            sender.sendOperation( clientUID, remoteOp );
+        final List<UUID> receivers;
+        synchronized( clients ) {
+            receivers = new ArrayList<UUID>( clients );
+        }
+        if( sender instanceof OTSystemDefinition.BroadcastOperationSender ) {
+            // build and encode the operation only once for all receivers.
+            ( (OTSystemDefinition.BroadcastOperationSender<T>)sender ).broadcastOperation( receivers, remoteOp );
+        } else {
+            for( UUID clientUID : receivers ) {
+                sender.sendOperation( clientUID, remoteOp );
+            }
         }
 
         return remoteOp;
     }
 
+    /**
+     * Record that a client has integrated all server operations before the given revision.
+     * @param clientUID The UID of the client.
+     * @param revision The acknowledged revision.
+     */
+    @Override
+    public void acknowledge( UUID clientUID, int revision ) {
+        revisionTracker.acknowledge( clientUID, revision );
+        collectHistory();
+    }
+
+    /**
+     * Return the oldest revision a registered client can still refer to.
+     */
+    @Override
+    public int getLowWaterMark() {
+        return revisionTracker.getLowWaterMark( history.getRevision() );
+    }
+
+    /**
+     * Return the acknowledged revisions of the registered clients.
+     * @return A copy of the revisions by client UID.
+     */
+    public Map<UUID,Integer> getRevisions() {
+        return revisionTracker.getRevisions();
+    }
+
+    /**
+     * Continue the operation history and the client revisions of another server, e.g. after
+     * the document was handed over. Must be called before the first operation is integrated.
+     * @param history The retained operations of the other server.
+     * @param revisions The acknowledged revisions of the registered clients.
+     */
+    public void restore( OTOperationHistory<T> history, Map<UUID,Integer> revisions ) {
+        // sanity check.
+        if( history == null )
+            throw new IllegalArgumentException();
+        if( revisions == null )
+            throw new IllegalArgumentException();
+
+        this.history.restore( history );
+        for( Map.Entry<UUID,Integer> entry : revisions.entrySet() ) {
+            revisionTracker.register( entry.getKey(), entry.getValue() );
+            clients.add( entry.getKey() );
+        }
+    }
+
+    /**
+     * Set the number of operations below the low-water mark that trigger a truncation of the history.
+     * @param compactionThreshold The threshold, 1 truncates on every acknowledge.
+     */
+    public void setCompactionThreshold( int compactionThreshold ) {
+        // sanity check.
+        if( compactionThreshold < 1 )
+            throw new IllegalArgumentException();
+
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Drop the operations all registered clients have passed. The history is truncated in
+     * chunks to keep the costs of the list compaction low. No operation based on a revision
+     * below the low-water mark arrives anymore, so the element rollback deltas before it are
+     * dropped as well.
+     */
+    private void collectHistory() {
+        final int lowWaterMark = getLowWaterMark();
+        if( dataModel instanceof OTSequenceDataModel )
+            ( (OTSequenceDataModel<T>)dataModel ).setStableRevision( lowWaterMark );
+        if( lowWaterMark - history.getBaseRevision() >= compactionThreshold ) {
+            LOGGER.info( "truncate history at revision " + lowWaterMark );
+            history.truncate( lowWaterMark );
+        }
+    }
+
     /**
      * Get the current server-side operation history.
      */
@@ -137,7 +241,7 @@ public class WaveServerAlgorithm<T> implements OTSystemDefinition.OTServerAlgori
      */
     @Override
     public VectorClock getState() {
-        return new VectorClock( new Integer[]{ history.getHistorySize() } );
+        return new VectorClock( new Integer[]{ history.getRevision() } );
     }
 
     /**
@@ -0,0 +1,200 @@
+package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The updatable properties of an entity class, i.e. its public instance fields that are not final.
+ * The fields are resolved once per class and addressed by their index, the indices follow the
+ * order of the property names.
+ */
+public final class EntityProperties {
+
+    /** The resolved properties by entity class. */
+    private static final ConcurrentMap<Class<?>,EntityProperties> PROPERTIES = new ConcurrentHashMap<Class<?>,EntityProperties>();
+
+    /**
+     * Property values of an entity, addressed by property index.
+     */
+    public static final class Delta implements Serializable {
+
+        private static final long serialVersionUID = 2935170326472516401L;
+
+        /**
+         * Constructor.
+         * @param properties The indices of the properties.
+         * @param values The values of the properties, in the order of the indices.
+         */
+        public Delta( int[] properties, Object[] values ) {
+            // sanity check.
+            if( properties == null )
+                throw new IllegalArgumentException();
+            if( values == null )
+                throw new IllegalArgumentException();
+            if( properties.length != values.length )
+                throw new IllegalArgumentException();
+
+            this.properties = properties;
+            this.values = values;
+        }
+
+        /** The indices of the properties. */
+        public final int[] properties;
+
+        /** The values of the properties. */
+        public final Object[] values;
+    }
+
+    /**
+     * Return the properties of an entity class.
+     * @param entityClazz The entity class.
+     * @return The cached properties of the class.
+     */
+    public static EntityProperties of( Class<?> entityClazz ) {
+        // sanity check.
+        if( entityClazz == null )
+            throw new IllegalArgumentException();
+
+        EntityProperties properties = PROPERTIES.get( entityClazz );
+        if( properties == null ) {
+            properties = new EntityProperties( entityClazz );
+            final EntityProperties existing = PROPERTIES.putIfAbsent( entityClazz, properties );
+            if( existing != null )
+                properties = existing;
+        }
+        return properties;
+    }
+
+    /**
+     * Constructor.
+     */
+    private EntityProperties( Class<?> entityClazz ) {
+        final List<Field> fields = new ArrayList<Field>();
+        for( Field field : entityClazz.getFields() ) {
+            final int modifiers = field.getModifiers();
+            if( Modifier.isStatic( modifiers ) || Modifier.isFinal( modifiers ) )
+                continue;
+            try {
+                // skip the access check of every get and set.
+                field.setAccessible( true );
+            } catch( SecurityException e ) {
+                // public fields are accessible anyway.
+            }
+            fields.add( field );
+        }
+        Collections.sort( fields, new Comparator<Field>() {
+            @Override
+            public int compare( Field f1, Field f2 ) {
+                return f1.getName().compareTo( f2.getName() );
+            }
+        } );
+
+        this.entityClazz = entityClazz;
+        this.fields = fields.toArray( new Field[fields.size()] );
+        this.indices = new HashMap<String,Integer>();
+        for( int i = 0; i < this.fields.length; ++i )
+            indices.put( this.fields[i].getName(), i );
+    }
+
+    /** The entity class. */
+    public final Class<?> entityClazz;
+
+    /** The fields by property index. */
+    private final Field[] fields;
+
+    /** The property indices by name. */
+    private final Map<String,Integer> indices;
+
+    /**
+     * Return the index of a property.
+     * @param name The name of the property.
+     * @return The index, or -1 if the entity class has no updatable property with this name.
+     */
+    public int indexOf( String name ) {
+        final Integer index = indices.get( name );
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Return the name of a property.
+     * @param index The index of the property.
+     */
+    public String nameOf( int index ) {
+        return fields[index].getName();
+    }
+
+    /**
+     * Return the number of updatable properties.
+     */
+    public int size() {
+        return fields.length;
+    }
+
+    /**
+     * Resolve a delta map with property names.
+     * @param delta The property values by name.
+     * @return The values by property index.
+     * @throws IllegalStateException If a property does not exist.
+     */
+    public Delta resolve( Map<String,Object> delta ) {
+        final int[] properties = new int[delta.size()];
+        final Object[] values = new Object[delta.size()];
+        int i = 0;
+        for( Map.Entry<String,Object> entry : delta.entrySet() ) {
+            properties[i] = indexOf( entry.getKey() );
+            if( properties[i] < 0 )
+                throw new IllegalStateException( "no property " + entry.getKey() + " in " + entityClazz.getName() );
+            values[i++] = entry.getValue();
+        }
+        return new Delta( properties, values );
+    }
+
+    /**
+     * Read the current values of the properties of a delta.
+     * @param entity The entity.
+     * @param delta The delta whose properties are read.
+     * @return The current values, e.g. to roll the delta back.
+     */
+    public Delta read( Object entity, Delta delta ) {
+        final Object[] values = new Object[delta.properties.length];
+        try {
+            for( int i = 0; i < values.length; ++i )
+                values[i] = fields[delta.properties[i]].get( entity );
+        } catch( IllegalAccessException e ) {
+            throw new IllegalStateException( e );
+        }
+        return new Delta( delta.properties, values );
+    }
+
+    /**
+     * Assign the values of a delta to the properties of an entity.
+     * @param entity The entity.
+     * @param delta The property values.
+     */
+    public void write( Object entity, Delta delta ) {
+        try {
+            for( int i = 0; i < delta.properties.length; ++i )
+                fields[delta.properties[i]].set( entity, delta.values[i] );
+        } catch( IllegalAccessException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    @Override
+    public String toString() {
+        final String[] names = new String[fields.length];
+        for( int i = 0; i < names.length; ++i )
+            names[i] = fields[i].getName();
+        return "EntityProperties[class = " + entityClazz.getName() + ", properties = " + Arrays.toString( names ) + "]";
+    }
+}
@@ -0,0 +1,565 @@
+package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+
+import de.tuberlin.rcd.network.common.Pair;
+import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteRangeOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteSEOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertRangeOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertSEOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.UpdateEntityOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.UpdateSEOperation;
+
+/**
+ * List data model for large replicated lists. The elements are stored in chunks, the chunks are
+ * the nodes of a balanced (AVL) tree ordered by position, like the characters of the
+ * <code>OTRopeDataModel</code>. Every node knows the number of elements in its subtree, so
+ * positional access, insert and delete take O(log n) instead of the O(n) array shift of the
+ * <code>OTLinearDataModel</code>.
+ *
+ * Entity updates keep rollback deltas per element like the <code>OTLinearDataModel</code>, the
+ * histories of a chunk are allocated with its first entity update. <code>getData()</code> returns
+ * a unmodifiable list view of the elements.
+ * @param <T> Type of the data elements stored in the data model.
+ */
+public class OTChunkedListDataModel<T> implements OTSequenceDataModel<T> {
+
+    /**
+     * Constants.
+     */
+    private static final long serialVersionUID = -4913276035184307112L;
+
+    /** Capacity of a chunk. Full chunks are split in two halves. */
+    private static final int CHUNK_SIZE = 256;
+
+    /**
+     * Node of the tree, holds one chunk.
+     */
+    private static final class Node {
+
+        /**
+         * Constructor.
+         * @param elements The chunk, ownership is passed to the node.
+         * @param length The number of used slots of the chunk.
+         */
+        Node( Object[] elements, int length ) {
+            this.elements = elements;
+            this.length = length;
+            update();
+        }
+
+        /** The elements of this chunk. */
+        final Object[] elements;
+
+        /** The delta histories of the elements, <code>null</code> until the first entity update. */
+        OTLinearDataModel.ElementDeltaHistory[] histories;
+
+        /** The number of used slots of this chunk. */
+        int length;
+
+        Node left;
+
+        Node right;
+
+        /** Height of the subtree. */
+        int height;
+
+        /** The number of elements in the subtree. */
+        int weight;
+
+        /**
+         * Recompute height and weight after a change of the chunk or the children.
+         */
+        void update() {
+            height = 1 + Math.max( height( left ), height( right ) );
+            weight = weight( left ) + length + weight( right );
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param typeInfo Type information of the stored data elements.
+     */
+    public OTChunkedListDataModel( Class<T> typeInfo ) {
+        this.typeInfo = typeInfo;
+        this.root = null;
+    }
+
+    /** Type information of the stored data elements. */
+    private final Class<T> typeInfo;
+
+    /** All operations that can still be rolled back are based on this revision or a later one. */
+    private volatile int stableRevision = 0;
+
+    /** Root of the chunk tree, <code>null</code> for a empty list. */
+    private transient Node root;
+
+    /** The unmodifiable view of the elements. */
+    private transient List<T> view = null;
+
+    /**
+     * Set the revision all concurrent operations are based on at least, e.g. the low-water
+     * mark of the server. The rollback deltas of operations based on it are dropped.
+     * @param stableRevision The stable revision, it never decreases.
+     */
+    @Override
+    public void setStableRevision( int stableRevision ) {
+        if( stableRevision > this.stableRevision )
+            this.stableRevision = stableRevision;
+    }
+
+    /**
+     * Apply a (linear) operation on the data model.
+     * @param op The operation to execute.
+     */
+    @Override
+    public synchronized void applyOperation( OTOperationDefinition.OTOperation<T> op ) {
+        if( op instanceof OTOperationDefinition.NoOperation ) {
+            // do nothing.
+        } else if( op instanceof InsertSEOperation ) {
+            final InsertSEOperation<T> insertOp = (InsertSEOperation<T>)op;
+            // check if operation position is valid.
+            if( insertOp.position < 0 || insertOp.position > weight( root ) ) {
+                throw new IllegalStateException( "op.pos: " + insertOp.position +
+                        " > " + "data.size: " + weight( root ) );
+            }
+            root = insert( root, insertOp.position, insertOp.insertedElement );
+
+        } else if( op instanceof DeleteSEOperation ) {
+            final DeleteSEOperation<T> deleteOp = (DeleteSEOperation<T>)op;
+            // check if operation position is valid.
+            if( deleteOp.position < 0 || deleteOp.position >= weight( root ) ) {
+                throw new IllegalStateException();
+            }
+            root = delete( root, deleteOp.position, 1 );
+
+        } else if( op instanceof UpdateSEOperation ) {
+            final UpdateSEOperation<T> updateOp = (UpdateSEOperation<T>)op;
+            // check if operation position is valid.
+            if( updateOp.position < 0 || updateOp.position >= weight( root ) ) {
+                throw new IllegalStateException();
+            }
+            final int[] offset = new int[1];
+            final Node node = locate( updateOp.position, offset );
+            node.elements[offset[0]] = updateOp.updatedElement;
+            if( node.histories != null )
+                node.histories[offset[0]] = null;
+
+        } else if( op instanceof UpdateEntityOperation ) {
+            final UpdateEntityOperation<T> updateEntityOp = (UpdateEntityOperation<T>)op;
+            if( updateEntityOp.entityClazz != typeInfo ) {
+                throw new IllegalStateException();
+            }
+            if( updateEntityOp.position < 0 || updateEntityOp.position >= weight( root ) ) {
+                throw new IllegalStateException();
+            }
+            if( op.getMetaData() == null ) {
+                throw new IllegalArgumentException();
+            }
+            final int[] offset = new int[1];
+            final Node node = locate( updateEntityOp.position, offset );
+            final Object element = node.elements[offset[0]];
+
+            final EntityProperties properties = EntityProperties.of( typeInfo );
+            final EntityProperties.Delta delta = updateEntityOp.getIndexedDelta();
+            final EntityProperties.Delta rollbackDelta = properties.read( element, delta );
+            properties.write( element, delta );
+
+            if( node.histories == null )
+                node.histories = new OTLinearDataModel.ElementDeltaHistory[CHUNK_SIZE];
+            OTLinearDataModel.ElementDeltaHistory edh = node.histories[offset[0]];
+            if( edh == null ) {
+                edh = new OTLinearDataModel.ElementDeltaHistory();
+                node.histories[offset[0]] = edh;
+            } else {
+                edh.prune( stableRevision );
+            }
+            edh.addDelta( op.getMetaData().state, rollbackDelta );
+
+        } else if( op instanceof InsertRangeOperation ) {
+            final InsertRangeOperation<T> insertOp = (InsertRangeOperation<T>)op;
+            // check if operation position is valid.
+            if( insertOp.position < 0 || insertOp.position > weight( root ) ) {
+                throw new IllegalStateException( "op.pos: " + insertOp.position +
+                        " > " + "data.size: " + weight( root ) );
+            }
+            if( root == null ) {
+                root = build( insertOp.insertedElements );
+            } else {
+                int pos = insertOp.position;
+                for( T element : insertOp.insertedElements )
+                    root = insert( root, pos++, element );
+            }
+
+        } else if( op instanceof DeleteRangeOperation ) {
+            final DeleteRangeOperation<T> deleteOp = (DeleteRangeOperation<T>)op;
+            // check if operation range is valid.
+            if( deleteOp.position < 0 || deleteOp.position + deleteOp.count > weight( root ) ) {
+                throw new IllegalStateException();
+            }
+            // every pass removes the rest of the range from one chunk.
+            int count = deleteOp.count;
+            while( count > 0 ) {
+                final int before = weight( root );
+                root = delete( root, deleteOp.position, count );
+                count -= before - weight( root );
+            }
+
+        } else if( op instanceof OTOperationDefinition.CompositeOperation ) {
+            for( OTOperationDefinition.OTOperation<T> component : ( (OTOperationDefinition.CompositeOperation<T>)op ).operations )
+                applyOperation( component );
+
+        } else {
+            throw new IllegalStateException( "unsupported operation " + op );
+        }
+    }
+
+    /**
+     * Undo the entity updates of a element that are based on a later revision than the given state.
+     * @param position The position of the element.
+     * @param vc The state the element is rolled back to.
+     */
+    public synchronized void rollBackDataElement( int position, VectorClock vc ) {
+        final int[] offset = new int[1];
+        final Node node = locate( position, offset );
+        if( node.histories == null || node.histories[offset[0]] == null )
+            return;
+        final OTLinearDataModel.ElementDeltaHistory edh = node.histories[offset[0]];
+        edh.prune( stableRevision );
+        final EntityProperties properties = EntityProperties.of( typeInfo );
+        final ListIterator<Pair<VectorClock,EntityProperties.Delta>> iter = edh.getDeltas();
+        while( iter.hasPrevious() ) {
+            final Pair<VectorClock,EntityProperties.Delta> delta = iter.previous();
+            if( vc.get( 0 ) < delta.getFirst().get( 0 ) )
+                properties.write( node.elements[offset[0]], delta.getSecond() );
+        }
+    }
+
+    /**
+     * Get a unmodifiable list view of the elements.
+     */
+    @Override
+    public synchronized Object getData() {
+        if( view == null )
+            view = new ElementView();
+        return view;
+    }
+
+    /**
+     * Return the data element at the given position.
+     * @param pos The position of the element.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized T getDataElement( int pos ) {
+        if( pos < 0 || pos >= weight( root ) )
+            throw new IndexOutOfBoundsException( "index: " + pos + ", size: " + weight( root ) );
+        final int[] offset = new int[1];
+        return (T)locate( pos, offset ).elements[offset[0]];
+    }
+
+    @Override
+    public synchronized List<T> getDataElements() {
+        final List<T> elements = new ArrayList<T>( weight( root ) );
+        appendAll( root, elements );
+        return elements;
+    }
+
+    /**
+     * Fill the model at runtime with new content. The content is appended.
+     * @param model The content.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void fillModel( OTSystemDefinition.OTDataModel<T> model ) {
+        // sanity check.
+        if( model == null )
+            throw new IllegalArgumentException();
+
+        final List<T> elements = getDataElements();
+        if( model instanceof OTSequenceDataModel )
+            elements.addAll( ( (OTSequenceDataModel<T>)model ).getDataElements() );
+        else
+            elements.addAll( (List<T>)model.getData() );
+        root = build( elements );
+    }
+
+    /**
+     * Return the number of elements in the data model.
+     */
+    @Override
+    public synchronized int size() {
+        return weight( root );
+    }
+
+    /**
+     * Build a string representation of the data model.
+     * @return A string representing the model content.
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder strBuilder = new StringBuilder();
+        for( T element : getDataElements() )
+            strBuilder.append( element.toString() );
+        return strBuilder.toString();
+    }
+
+    /**
+     * Unmodifiable view of the elements, every access locks the model.
+     */
+    private final class ElementView extends AbstractList<T> implements RandomAccess {
+
+        @Override
+        public T get( int index ) {
+            return getDataElement( index );
+        }
+
+        @Override
+        public int size() {
+            return OTChunkedListDataModel.this.size();
+        }
+    }
+
+    //-----------------------------------------------
+    // Tree operations.
+    //-----------------------------------------------
+
+    private static int height( Node node ) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int weight( Node node ) {
+        return node == null ? 0 : node.weight;
+    }
+
+    /**
+     * Return the chunk that holds the element at the given position.
+     * @param offset Receives the offset of the element in the chunk.
+     */
+    private Node locate( int pos, int[] offset ) {
+        Node node = root;
+        while( true ) {
+            final int leftWeight = weight( node.left );
+            if( pos < leftWeight ) {
+                node = node.left;
+            } else if( pos < leftWeight + node.length ) {
+                offset[0] = pos - leftWeight;
+                return node;
+            } else {
+                pos -= leftWeight + node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Build a balanced tree of half filled chunks, so following inserts don't split at once.
+     */
+    private static Node build( List<?> elements ) {
+        final int chunkLength = CHUNK_SIZE / 2;
+        final int chunkCount = ( elements.size() + chunkLength - 1 ) / chunkLength;
+        return build( elements, 0, chunkCount, chunkLength );
+    }
+
+    private static Node build( List<?> elements, int fromChunk, int toChunk, int chunkLength ) {
+        if( fromChunk >= toChunk )
+            return null;
+        final int mid = ( fromChunk + toChunk ) >>> 1;
+        final int start = mid * chunkLength;
+        final int end = Math.min( elements.size(), start + chunkLength );
+        final Object[] chunk = new Object[CHUNK_SIZE];
+        for( int i = start; i < end; ++i ) {
+            chunk[i - start] = elements.get( i );
+        }
+        final Node node = new Node( chunk, end - start );
+        node.left = build( elements, fromChunk, mid, chunkLength );
+        node.right = build( elements, mid + 1, toChunk, chunkLength );
+        node.update();
+        return node;
+    }
+
+    private static Node insert( Node node, int pos, Object element ) {
+        if( node == null ) {
+            final Object[] chunk = new Object[CHUNK_SIZE];
+            chunk[0] = element;
+            return new Node( chunk, 1 );
+        }
+        final int leftWeight = weight( node.left );
+        if( pos < leftWeight ) {
+            node.left = insert( node.left, pos, element );
+        } else if( pos <= leftWeight + node.length ) {
+            final int offset = pos - leftWeight;
+            if( node.length == CHUNK_SIZE ) {
+                // split the full chunk, the upper half becomes the successor node.
+                final int half = CHUNK_SIZE / 2;
+                final Object[] upper = new Object[CHUNK_SIZE];
+                System.arraycopy( node.elements, half, upper, 0, CHUNK_SIZE - half );
+                Arrays.fill( node.elements, half, CHUNK_SIZE, null );
+                node.length = half;
+                final Node successor = new Node( upper, CHUNK_SIZE - half );
+                if( node.histories != null ) {
+                    successor.histories = new OTLinearDataModel.ElementDeltaHistory[CHUNK_SIZE];
+                    System.arraycopy( node.histories, half, successor.histories, 0, CHUNK_SIZE - half );
+                    Arrays.fill( node.histories, half, CHUNK_SIZE, null );
+                }
+                if( offset <= half ) {
+                    insertIntoChunk( node, offset, element );
+                } else {
+                    insertIntoChunk( successor, offset - half, element );
+                }
+                node.right = insertFirst( node.right, successor );
+            } else {
+                insertIntoChunk( node, offset, element );
+            }
+        } else {
+            node.right = insert( node.right, pos - leftWeight - node.length, element );
+        }
+        return balance( node );
+    }
+
+    private static void insertIntoChunk( Node node, int offset, Object element ) {
+        System.arraycopy( node.elements, offset, node.elements, offset + 1, node.length - offset );
+        node.elements[offset] = element;
+        if( node.histories != null ) {
+            System.arraycopy( node.histories, offset, node.histories, offset + 1, node.length - offset );
+            node.histories[offset] = null;
+        }
+        ++node.length;
+        node.update();
+    }
+
+    /**
+     * Insert a node in front of all nodes of the subtree.
+     */
+    private static Node insertFirst( Node node, Node first ) {
+        if( node == null )
+            return first;
+        node.left = insertFirst( node.left, first );
+        return balance( node );
+    }
+
+    /**
+     * Delete up to <code>count</code> elements from the chunk that holds the given position,
+     * the range ends at the end of the chunk at most.
+     */
+    private static Node delete( Node node, int pos, int count ) {
+        final int leftWeight = weight( node.left );
+        if( pos < leftWeight ) {
+            node.left = delete( node.left, pos, count );
+        } else if( pos < leftWeight + node.length ) {
+            final int offset = pos - leftWeight;
+            final int removed = Math.min( count, node.length - offset );
+            final int tail = node.length - offset - removed;
+            System.arraycopy( node.elements, offset + removed, node.elements, offset, tail );
+            Arrays.fill( node.elements, offset + tail, node.length, null );
+            if( node.histories != null ) {
+                System.arraycopy( node.histories, offset + removed, node.histories, offset, tail );
+                Arrays.fill( node.histories, offset + tail, node.length, null );
+            }
+            node.length -= removed;
+            if( node.length == 0 ) {
+                // remove the empty chunk.
+                if( node.left == null )
+                    return node.right;
+                if( node.right == null )
+                    return node.left;
+                final Node successor = first( node.right );
+                successor.right = deleteFirst( node.right );
+                successor.left = node.left;
+                return balance( successor );
+            }
+        } else {
+            node.right = delete( node.right, pos - leftWeight - node.length, count );
+        }
+        return balance( node );
+    }
+
+    private static Node first( Node node ) {
+        while( node.left != null ) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static Node deleteFirst( Node node ) {
+        if( node.left == null )
+            return node.right;
+        node.left = deleteFirst( node.left );
+        return balance( node );
+    }
+
+    private static Node balance( Node node ) {
+        node.update();
+        final int diff = height( node.left ) - height( node.right );
+        if( diff > 1 ) {
+            if( height( node.left.left ) < height( node.left.right ) )
+                node.left = rotateLeft( node.left );
+            return rotateRight( node );
+        }
+        if( diff < -1 ) {
+            if( height( node.right.right ) < height( node.right.left ) )
+                node.right = rotateRight( node.right );
+            return rotateLeft( node );
+        }
+        return node;
+    }
+
+    private static Node rotateRight( Node node ) {
+        final Node pivot = node.left;
+        node.left = pivot.right;
+        node.update();
+        pivot.right = node;
+        pivot.update();
+        return pivot;
+    }
+
+    private static Node rotateLeft( Node node ) {
+        final Node pivot = node.right;
+        node.right = pivot.left;
+        node.update();
+        pivot.left = node;
+        pivot.update();
+        return pivot;
+    }
+
+    /**
+     * Append the elements of the subtree in order.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void appendAll( Node node, List<T> elements ) {
+        if( node == null )
+            return;
+        appendAll( node.left, elements );
+        for( int i = 0; i < node.length; ++i )
+            elements.add( (T)node.elements[i] );
+        appendAll( node.right, elements );
+    }
+
+    //-----------------------------------------------
+    // Serialization.
+    //-----------------------------------------------
+
+    /**
+     * Only the elements are written, a copy starts without rollback deltas.
+     */
+    private void writeObject( ObjectOutputStream out ) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject( new ArrayList<T>( getDataElements() ) );
+    }
+
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        root = build( (List<?>)in.readObject() );
+    }
+}
@@ -21,7 +21,7 @@ public class OTLinearCursor<T> extends OTSystemDefinition.OTCursor<T> {
 
         this.type = art;
         //this.operationGenerator = art.getOperationGenerator();
-        this.dataModel = (OTLinearDataModel<T>)art.getDataModel();
+        this.dataModel = (OTSequenceDataModel<T>)art.getDataModel();
         this.position = position;
     }
 
@@ -29,7 +29,7 @@ public class OTLinearCursor<T> extends OTSystemDefinition.OTCursor<T> {
 
     //private final OTSystemDefinition.OTOperationGenerator<T> operationGenerator;
 
-    private final OTLinearDataModel<T> dataModel;
+    private final OTSequenceDataModel<T> dataModel;
 
     private int position;
 
@@ -1,18 +1,19 @@
 package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel;
 
-import java.lang.reflect.Field;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Map;
 
 import de.tuberlin.rcd.network.common.Pair;
 import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteRangeOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteSEOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertRangeOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertSEOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.UpdateEntityOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.UpdateSEOperation;
@@ -22,28 +23,39 @@ import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmod
  * @param <T> Type of the data elements stored in the linear data model.
  * TODO: remove (and verify that) the <code>synchronized</code> modifiers.
  */
-public class OTLinearDataModel<T> implements OTSystemDefinition.OTDataModel<T> {
+public class OTLinearDataModel<T> implements OTSequenceDataModel<T> {
 
     /**
 	 * 
 	 */
 	private static final long serialVersionUID = -1575449896240299725L;
 
-	private static class ElementDeltaHistory {
+	static class ElementDeltaHistory implements Serializable {
+        private static final long serialVersionUID = -3320458161728740194L;
         public ElementDeltaHistory() {
-            this.deltaHistoryMap = new ArrayList<Pair<VectorClock,Map<String,Object>>>();
+            this.deltaHistoryMap = new ArrayList<Pair<VectorClock,EntityProperties.Delta>>();
         }
-        private List<Pair<VectorClock,Map<String,Object>>> deltaHistoryMap;
-        public void addDelta( VectorClock vc, Map<String,Object> deltaMap ) {
-            deltaHistoryMap.add( new Pair<VectorClock,Map<String, Object>>( vc, deltaMap ) );
+        private List<Pair<VectorClock,EntityProperties.Delta>> deltaHistoryMap;
+        public void addDelta( VectorClock vc, EntityProperties.Delta delta ) {
+            deltaHistoryMap.add( new Pair<VectorClock,EntityProperties.Delta>( vc, delta ) );
         }
-        //public Map<String,Object> getDelta( VectorClock vc ) {
-        //    return deltaHistoryMap.get( vc );
-        //}
 
-        public ListIterator<Pair<VectorClock,Map<String, Object>>> getDeltas() {
+        public ListIterator<Pair<VectorClock,EntityProperties.Delta>> getDeltas() {
             return deltaHistoryMap.listIterator( deltaHistoryMap.size() );
         }
+        /**
+         * Drop the deltas no rollback can reach, i.e. of operations based on a stable revision.
+         */
+        public void prune( int stableRevision ) {
+            final Iterator<Pair<VectorClock,EntityProperties.Delta>> iter = deltaHistoryMap.iterator();
+            while( iter.hasNext() ) {
+                if( iter.next().getFirst().get( 0 ) <= stableRevision )
+                    iter.remove();
+            }
+        }
+        public boolean isEmpty() {
+            return deltaHistoryMap.isEmpty();
+        }
     }
 
     /**
@@ -67,6 +79,7 @@ public class OTLinearDataModel<T> implements OTSystemDefinition.OTDataModel<T> {
         //this.data = Collections.synchronizedList( new ArrayList<T>( model.data ) );
 
         this.typeInfo = model.typeInfo;
+        this.stableRevision = model.stableRevision;
     }
 
     /** A list data structure that store the data elements in linear address space. */
@@ -77,6 +90,20 @@ public class OTLinearDataModel<T> implements OTSystemDefinition.OTDataModel<T> {
     /** Type information of the stored data elements. */
     private final Class<T> typeInfo;
 
+    /** All operations that can still be rolled back are based on this revision or a later one. */
+    private volatile int stableRevision = 0;
+
+    /**
+     * Set the revision all concurrent operations are based on at least, e.g. the low-water
+     * mark of the server. The rollback deltas of operations based on it are dropped.
+     * @param stableRevision The stable revision, it never decreases.
+     */
+    @Override
+    public void setStableRevision( int stableRevision ) {
+        if( stableRevision > this.stableRevision )
+            this.stableRevision = stableRevision;
+    }
+
     /**
      * Apply a (linear) operation on the data model.
      * @param op The operation to execute.
@@ -110,7 +137,7 @@ public class OTLinearDataModel<T> implements OTSystemDefinition.OTDataModel<T> {
             // --------
 
 
-            data.add( insertOp.position, new Pair<T,ElementDeltaHistory>( insertOp.insertedElement, new ElementDeltaHistory() ) );
+            data.add( insertOp.position, new Pair<T,ElementDeltaHistory>( insertOp.insertedElement, null ) );
             //data.add( insertOp.position, new Pair<T,ElementDeltaHistory>( copiedElement, new ElementDeltaHistory() ) );
             //data.add( insertOp.position, insertOp.insertedElement );
 
@@ -145,7 +172,7 @@ public class OTLinearDataModel<T> implements OTSystemDefinition.OTDataModel<T> {
             }*/
             // --------
 
-            data.set( updateOp.position, new Pair<T,ElementDeltaHistory>( updateOp.updatedElement, new ElementDeltaHistory() ) );
+            data.set( updateOp.position, new Pair<T,ElementDeltaHistory>( updateOp.updatedElement, null ) );
             //data.set( updateOp.position, new Pair<T,ElementDeltaHistory>( copiedElement, new ElementDeltaHistory() ) );
             //data.set( updateOp.position, copiedElement );
             //data.set( updateOp.position, updateOp.updatedElement );
@@ -161,67 +188,64 @@ public class OTLinearDataModel<T> implements OTSystemDefinition.OTDataModel<T> {
             T element = elementAndHistory.getFirst();
             ElementDeltaHistory edh = elementAndHistory.getSecond();
 
-            final Map<String,Object> rollbackDeltaMap = new HashMap<String, Object>();
-            for( String propertyName : updateEntityOp.entityDelta.keySet() ) {
-                try {
-                    Field field = element.getClass().getField( propertyName );
-                    try {
-                        final Object value = field.get( element );
-                        rollbackDeltaMap.put( propertyName, value );
-                    } catch( IllegalAccessException e ) {
-                        throw new IllegalStateException( e );
-                    }
-                } catch (NoSuchFieldException e) {
-                    throw new IllegalStateException( e );
-                }
+            if( op.getMetaData() == null ) {
+                throw new IllegalArgumentException();
             }
 
-            for( String propertyName : updateEntityOp.entityDelta.keySet() ) {
-                try {
-                    Field field = element.getClass().getField( propertyName );
-                    try {
-                        field.set( element, updateEntityOp.entityDelta.get( propertyName ) );
-                    } catch( IllegalAccessException e ) {
-                        throw new IllegalStateException( e );
-                    }
-                } catch (NoSuchFieldException e) {
-                    throw new IllegalStateException( e );
-                }
+            // the fields are resolved once per entity class, the deltas address them by index.
+            final EntityProperties properties = EntityProperties.of( typeInfo );
+            final EntityProperties.Delta delta = updateEntityOp.getIndexedDelta();
+            final EntityProperties.Delta rollbackDelta = properties.read( element, delta );
+            properties.write( element, delta );
+
+            // the history is created with the first entity update of the element.
+            if( edh == null ) {
+                edh = new ElementDeltaHistory();
+                data.set( updateEntityOp.position, new Pair<T,ElementDeltaHistory>( element, edh ) );
+            } else {
+                edh.prune( stableRevision );
             }
+            edh.addDelta( op.getMetaData().state, rollbackDelta );
 
-            if( op.getMetaData() == null ) {
-                throw new IllegalArgumentException();
+        } else if( op instanceof InsertRangeOperation ) {
+            final InsertRangeOperation<T> insertOp = (InsertRangeOperation<T>)op;
+            // check if operation position is valid.
+            if( insertOp.position > data.size() ) {
+                throw new IllegalStateException( "op.pos: " + insertOp.position +
+                        " > " + "data.size: " + data.size() );
+            }
+            final List<Pair<T,ElementDeltaHistory>> elements =
+                    new ArrayList<Pair<T,ElementDeltaHistory>>( insertOp.insertedElements.size() );
+            for( T element : insertOp.insertedElements )
+                elements.add( new Pair<T,ElementDeltaHistory>( element, null ) );
+            data.addAll( insertOp.position, elements );
+
+        } else if( op instanceof DeleteRangeOperation ) {
+            final DeleteRangeOperation<T> deleteOp = (DeleteRangeOperation<T>)op;
+            // check if operation range is valid.
+            if( deleteOp.position + deleteOp.count > data.size() ) {
+                throw new IllegalStateException();
             }
+            data.subList( deleteOp.position, deleteOp.position + deleteOp.count ).clear();
 
-            edh.addDelta( op.getMetaData().state, rollbackDeltaMap );
+        } else if( op instanceof OTOperationDefinition.CompositeOperation ) {
+            for( OTOperationDefinition.OTOperation<T> component : ( (OTOperationDefinition.CompositeOperation<T>)op ).operations )
+                applyOperation( component );
         }
     }
 
     public synchronized void rollBackDataElement( int position, VectorClock vc ) {
         Pair<T,ElementDeltaHistory> elementAndHistory = data.get( position );
         ElementDeltaHistory edh = elementAndHistory.getSecond();
-        ListIterator<Pair<VectorClock,Map<String,Object>>> iter = edh.getDeltas();
+        if( edh == null )
+            return;
+        edh.prune( stableRevision );
+        final EntityProperties properties = EntityProperties.of( typeInfo );
+        ListIterator<Pair<VectorClock,EntityProperties.Delta>> iter = edh.getDeltas();
         while( iter.hasPrevious() ) {
-            Pair<VectorClock,Map<String,Object>> delta = iter.previous();
+            Pair<VectorClock,EntityProperties.Delta> delta = iter.previous();
             if(  vc.get( 0 ) < delta.getFirst().get( 0 ) ) {
-                final Map<String,Object> rollbackDeltaMap = delta.getSecond();
-
-                //final UpdateEntityOperation<T> rollbackOp = new UpdateEntityOperation<T>( position, typeInfo, rollbackDeltaMap );
-                //applyOperation( rollbackOp );
-
-                for( String propertyName : rollbackDeltaMap.keySet() ) {
-                    try {
-                        Field field = elementAndHistory.getFirst().getClass().getField( propertyName );
-                        try {
-                            field.set( elementAndHistory.getFirst(), rollbackDeltaMap.get( propertyName ) );
-                        } catch( IllegalAccessException e ) {
-                            throw new IllegalStateException( e );
-                        }
-                    } catch (NoSuchFieldException e) {
-                        throw new IllegalStateException( e );
-                    }
-                }
-
+                properties.write( elementAndHistory.getFirst(), delta.getSecond() );
             }
         }
     }
@@ -238,12 +262,22 @@ public class OTLinearDataModel<T> implements OTSystemDefinition.OTDataModel<T> {
     //    return Collections.unmodifiableList( data );
     //}
 
+    @Override
     public T getDataElement( int pos ) {
         return data.get( pos ).getFirst();
     }
 
+    @Override
+    public synchronized List<T> getDataElements() {
+        final List<T> elements = new ArrayList<T>( data.size() );
+        for( Pair<T,ElementDeltaHistory> element : data )
+            elements.add( element.getFirst() );
+        return elements;
+    }
+
     /**
-     * Fill the model at runtime with new content.
+     * Fill the model at runtime with new content. The content is appended, it may come from
+     * a replica with another sequence model. The delta histories are not taken over.
      * @param model The content.
      */
     @Override
@@ -252,7 +286,11 @@ public class OTLinearDataModel<T> implements OTSystemDefinition.OTDataModel<T> {
         // sanity check.
         if( model == null )
             throw new IllegalArgumentException();
-        data.addAll( (List<Pair<T,ElementDeltaHistory>>)model.getData() );
+
+        final List<T> elements = model instanceof OTSequenceDataModel
+                ? ( (OTSequenceDataModel<T>)model ).getDataElements() : (List<T>)model.getData();
+        for( T element : elements )
+            data.add( new Pair<T,ElementDeltaHistory>( element, null ) );
     }
 
     /**
@@ -1,16 +1,28 @@
 package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import de.tuberlin.rcd.network.common.Pair;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationKinds;
 
 /**
  * Defines the operations for the linear data model.
  */
 public class OTLinearOperations {
 
+    /** Kinds of the linear operations, see <code>OTOperationKinds</code>. */
+    public static final int KIND_INSERT_SE      = OTOperationKinds.register( InsertSEOperation.class );
+    public static final int KIND_DELETE_SE      = OTOperationKinds.register( DeleteSEOperation.class );
+    public static final int KIND_UPDATE_SE      = OTOperationKinds.register( UpdateSEOperation.class );
+    public static final int KIND_UPDATE_ENTITY  = OTOperationKinds.register( UpdateEntityOperation.class );
+    public static final int KIND_INSERT_RANGE   = OTOperationKinds.register( InsertRangeOperation.class );
+    public static final int KIND_DELETE_RANGE   = OTOperationKinds.register( DeleteRangeOperation.class );
+
     /**
      * Abstract operation, that owns a positional parameter to address a data element in a data model.
      * All operations that operate on a linear data model must be derived from this class.
@@ -119,6 +131,104 @@ public class OTLinearOperations {
         }
     }
 
+    /**
+     * Inserts a sequence of elements in a data model.
+     * @param <T> The type of the data element.
+     */
+    public static class InsertRangeOperation<T> extends PositionalOperation<T> {
+
+        /**
+         *
+         */
+        private static final long serialVersionUID = 4316802467531098452L;
+
+        /**
+         * Constructor.
+         * @param position The index of the first inserted data element.
+         * @param insertedElements The elements that get inserted.
+         */
+        public InsertRangeOperation( int position, List<T> insertedElements ) {
+            super( position );
+            // sanity check.
+            if( insertedElements == null )
+                throw new IllegalArgumentException();
+            if( insertedElements.isEmpty() )
+                throw new IllegalArgumentException();
+
+            final List<T> elements = new ArrayList<T>( insertedElements );
+            if( elements.contains( null ) )
+                throw new IllegalArgumentException();
+            this.insertedElements = Collections.unmodifiableList( elements );
+        }
+
+        /**
+         * Copy constructor.
+         * @param op The source operation that gets cloned.
+         */
+        public InsertRangeOperation( final InsertRangeOperation<T> op ) {
+            super( op.position );
+            this.insertedElements = op.insertedElements;
+            this.setMetaData( op.getMetaData() );
+        }
+
+        /** The new data elements that get inserted. */
+        public final List<T> insertedElements;
+
+        /**
+         * Return a string representation of the operation.
+         */
+        @Override
+        public String toString() {
+            return "[ins( " + position + ", " + insertedElements + " )]";
+        }
+    }
+
+    /**
+     * Delete a sequence of consecutive elements from a data model.
+     * @param <T> The type of the data element.
+     */
+    public static class DeleteRangeOperation<T> extends PositionalOperation<T> {
+
+        /**
+         *
+         */
+        private static final long serialVersionUID = -6519720738425466273L;
+
+        /**
+         * Constructor.
+         * @param position The index of the first data element that gets deleted.
+         * @param count The number of deleted data elements.
+         */
+        public DeleteRangeOperation( int position, int count ) {
+            super( position );
+            // sanity check.
+            if( count < 1 )
+                throw new IllegalArgumentException();
+
+            this.count = count;
+        }
+
+        /**
+         * Copy constructor.
+         * @param op The source operation that gets cloned.
+         */
+        public DeleteRangeOperation( final DeleteRangeOperation<T> op ) {
+            this( op.position, op.count );
+            this.setMetaData( op.getMetaData() );
+        }
+
+        /** The number of deleted data elements. */
+        public final int count;
+
+        /**
+         * Return a string representation of the operation.
+         */
+        @Override
+        public String toString() {
+            return "[del( " + position + ", " + count + " )]";
+        }
+    }
+
     /**
      * The std class for update operations. This std class is introduced to reduce the amount of code
      * for handling the update operations in the linear transformer class.
@@ -228,6 +338,21 @@ public class OTLinearOperations {
         /** The map that stores the property name and the new value for the data element. */
         public final Map<String,Object> entityDelta;
 
+        /** The new values by property index, resolved on first use. */
+        private transient EntityProperties.Delta indexedDelta;
+
+        /**
+         * Return the new values by property index.
+         */
+        EntityProperties.Delta getIndexedDelta() {
+            EntityProperties.Delta delta = indexedDelta;
+            if( delta == null ) {
+                delta = EntityProperties.of( entityClazz ).resolve( entityDelta );
+                indexedDelta = delta;
+            }
+            return delta;
+        }
+
         /**
          * Return a string representation of the operation.
          */
@@ -249,14 +374,8 @@ public class OTLinearOperations {
          * exists in the entity type that gets updated.
          */
         private void verifyDeltaProperties() {
-            for( String property : entityDelta.keySet() ) {
-                try {
-                    // if the field does not exist a exception is thrown.
-                    entityClazz.getField( property );
-                } catch( NoSuchFieldException e ) {
-                    throw new IllegalStateException( e );
-                }
-            }
+            // if a property does not exist a exception is thrown.
+            indexedDelta = EntityProperties.of( entityClazz ).resolve( entityDelta );
         }
     }
 
@@ -297,11 +416,188 @@ public class OTLinearOperations {
                 final UpdateSEOperation<T> newUpdateOp = new UpdateSEOperation<T>( newPosition, updateOp.updatedElement );
                 newUpdateOp.setMetaData( updateOp.getMetaData() );
                 return newUpdateOp;
+
+            } else if( sourceOp instanceof UpdateEntityOperation ) {
+                final UpdateEntityOperation<T> updateOp = (UpdateEntityOperation<T>)sourceOp;
+                final UpdateEntityOperation<T> newUpdateOp =
+                        new UpdateEntityOperation<T>( newPosition, updateOp.entityClazz, updateOp.entityDelta );
+                newUpdateOp.setMetaData( updateOp.getMetaData() );
+                return newUpdateOp;
+
+            } else if( sourceOp instanceof InsertRangeOperation ) {
+                final InsertRangeOperation<T> insertOp = (InsertRangeOperation<T>)sourceOp;
+                final InsertRangeOperation<T> newInsertOp = new InsertRangeOperation<T>( newPosition, insertOp.insertedElements );
+                newInsertOp.setMetaData( insertOp.getMetaData() );
+                return newInsertOp;
+
+            } else if( sourceOp instanceof DeleteRangeOperation ) {
+                final DeleteRangeOperation<T> deleteOp = (DeleteRangeOperation<T>)sourceOp;
+                final DeleteRangeOperation<T> newDeleteOp = new DeleteRangeOperation<T>( newPosition, deleteOp.count );
+                newDeleteOp.setMetaData( deleteOp.getMetaData() );
+                return newDeleteOp;
             }
 
             throw new IllegalStateException();
         }
 
+        /**
+         * Change the position and the number of deleted elements of a delete operation. If no element
+         * is left, the operation is cancelled. A single element delete stays a single element delete.
+         * @param sourceOp The delete operation that must adapted.
+         * @param newPosition The position of the operation.
+         * @param newCount The number of deleted elements.
+         * @param <T> The type of the data element.
+         * @return The adapted operation.
+         */
+        public static <T> OTOperationDefinition.OTOperation<T> adaptDeleteOperation( PositionalOperation<T> sourceOp,
+                                                                                    int newPosition,
+                                                                                    int newCount ) {
+            // sanity check.
+            if( !isDeleteOperation( sourceOp ) )
+                throw new IllegalArgumentException();
+            if( newCount < 0 )
+                throw new IllegalArgumentException();
+
+            if( newCount == 0 )
+                return cancelOperation( sourceOp );
+            if( newCount == rangeLength( sourceOp ) )
+                return sourceOp.position == newPosition ? sourceOp : adaptOperation( sourceOp, newPosition );
+
+            final DeleteRangeOperation<T> newDeleteOp = new DeleteRangeOperation<T>( newPosition, newCount );
+            newDeleteOp.setMetaData( sourceOp.getMetaData() );
+            return newDeleteOp;
+        }
+
+        /**
+         * Check if the operation inserts elements.
+         */
+        public static boolean isInsertOperation( OTOperationDefinition.OTOperation<?> op ) {
+            return op instanceof InsertSEOperation || op instanceof InsertRangeOperation;
+        }
+
+        /**
+         * Check if the operation deletes elements.
+         */
+        public static boolean isDeleteOperation( OTOperationDefinition.OTOperation<?> op ) {
+            return op instanceof DeleteSEOperation || op instanceof DeleteRangeOperation;
+        }
+
+        /**
+         * Check if the operation inserts or deletes more than a single element.
+         */
+        public static boolean isRangeOperation( OTOperationDefinition.OTOperation<?> op ) {
+            return op instanceof InsertRangeOperation || op instanceof DeleteRangeOperation;
+        }
+
+        /**
+         * Return the number of elements that are inserted or deleted by the operation.
+         * @param op A insert or delete operation.
+         * @return The number of inserted or deleted elements.
+         */
+        public static int rangeLength( OTOperationDefinition.OTOperation<?> op ) {
+            if( op instanceof InsertSEOperation || op instanceof DeleteSEOperation )
+                return 1;
+            if( op instanceof InsertRangeOperation )
+                return ( (InsertRangeOperation<?>)op ).insertedElements.size();
+            if( op instanceof DeleteRangeOperation )
+                return ( (DeleteRangeOperation<?>)op ).count;
+
+            throw new IllegalArgumentException();
+        }
+
+        /**
+         * Create the no-operation that replaces a cancelled operation. The metadata of the cancelled
+         * operation is kept, so the receivers can still acknowledge it.
+         * @param cancelledOp The operation that has no effect anymore.
+         * @param <T> The type of the data element.
+         * @return The no-operation.
+         */
+        public static <T> OTOperationDefinition.NoOperation<T> cancelOperation( OTOperationDefinition.OTOperation<T> cancelledOp ) {
+            // sanity check.
+            if( cancelledOp == null )
+                throw new IllegalArgumentException();
+
+            final OTOperationDefinition.NoOperation<T> noOp = new OTOperationDefinition.NoOperation<T>();
+            noOp.setMetaData( cancelledOp.getMetaData() );
+            return noOp;
+        }
+
+        /**
+         * Compose a sequence of operations into a single operation. Runs of single element inserts
+         * at consecutive positions and runs of single element deletes (forward delete or backspace)
+         * are merged into range operations, no-operations are dropped.
+         * @param ops The operations in execution order.
+         * @param <T> The type of the data element.
+         * @return The merged operation, or a composite of the merged runs in execution order.
+         */
+        public static <T> OTOperationDefinition.OTOperation<T> composeOperations( List<OTOperationDefinition.OTOperation<T>> ops ) {
+            // sanity check.
+            if( ops == null )
+                throw new IllegalArgumentException();
+            if( ops.isEmpty() )
+                throw new IllegalArgumentException();
+
+            final List<OTOperationDefinition.OTOperation<T>> flatOps = new ArrayList<OTOperationDefinition.OTOperation<T>>( ops.size() );
+            flattenOperations( ops, flatOps );
+            if( flatOps.isEmpty() )
+                return cancelOperation( ops.get( ops.size() - 1 ) );
+
+            final List<OTOperationDefinition.OTOperation<T>> components = new ArrayList<OTOperationDefinition.OTOperation<T>>();
+            int i = 0;
+            while( i < flatOps.size() ) {
+                final OTOperationDefinition.OTOperation<T> op = flatOps.get( i );
+                int j = i + 1;
+                if( op instanceof InsertSEOperation ) {
+                    final int position = ( (InsertSEOperation<T>)op ).position;
+                    while( j < flatOps.size() && flatOps.get( j ) instanceof InsertSEOperation
+                            && ( (InsertSEOperation<T>)flatOps.get( j ) ).position == position + ( j - i ) )
+                        ++j;
+                    if( j - i > 1 ) {
+                        final List<T> elements = new ArrayList<T>( j - i );
+                        for( int k = i; k < j; ++k )
+                            elements.add( ( (InsertSEOperation<T>)flatOps.get( k ) ).insertedElement );
+                        components.add( new InsertRangeOperation<T>( position, elements ) );
+                        i = j;
+                        continue;
+                    }
+                } else if( op instanceof DeleteSEOperation ) {
+                    // the deleted elements stay consecutive, a backspace moves the start of the range.
+                    int position = ( (DeleteSEOperation<T>)op ).position;
+                    while( j < flatOps.size() && flatOps.get( j ) instanceof DeleteSEOperation ) {
+                        final int nextPosition = ( (DeleteSEOperation<T>)flatOps.get( j ) ).position;
+                        if( nextPosition != position && nextPosition != position - 1 )
+                            break;
+                        position = nextPosition;
+                        ++j;
+                    }
+                    if( j - i > 1 ) {
+                        components.add( new DeleteRangeOperation<T>( position, j - i ) );
+                        i = j;
+                        continue;
+                    }
+                }
+                components.add( op );
+                ++i;
+            }
+
+            if( components.size() == 1 )
+                return components.get( 0 );
+            return new OTOperationDefinition.CompositeOperation<T>( components );
+        }
+
+        /**
+         * Collect the components of the operations, nested composites are resolved and no-operations dropped.
+         */
+        private static <T> void flattenOperations( List<OTOperationDefinition.OTOperation<T>> ops,
+                                                   List<OTOperationDefinition.OTOperation<T>> flatOps ) {
+            for( final OTOperationDefinition.OTOperation<T> op : ops ) {
+                if( op instanceof OTOperationDefinition.CompositeOperation )
+                    flattenOperations( ( (OTOperationDefinition.CompositeOperation<T>)op ).operations, flatOps );
+                else if( !( op instanceof OTOperationDefinition.NoOperation ) )
+                    flatOps.add( op );
+            }
+        }
+
         /**
          * Helper Function, that just builds a <code>Pair</code> object.
          * @param remoteOp The remote operation.
@@ -336,6 +632,12 @@ public class OTLinearOperations {
                 return new UpdateSEOperation<T>( (UpdateSEOperation<T>)op );
             } else if( op instanceof UpdateEntityOperation ) {
                 return new UpdateEntityOperation<T>( (UpdateEntityOperation<T>)op );
+            } else if( op instanceof InsertRangeOperation ) {
+                return new InsertRangeOperation<T>( (InsertRangeOperation<T>)op );
+            } else if( op instanceof DeleteRangeOperation ) {
+                return new DeleteRangeOperation<T>( (DeleteRangeOperation<T>)op );
+            } else if( op instanceof OTOperationDefinition.CompositeOperation ) {
+                return new OTOperationDefinition.CompositeOperation<T>( (OTOperationDefinition.CompositeOperation<T>)op );
             }
 
             throw new IllegalStateException();
@@ -1,23 +1,58 @@
 package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import de.tuberlin.rcd.network.common.Pair;
-import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.NoOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.CompositeOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition.OTOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationKinds;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteRangeOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteSEOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertRangeOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertSEOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.OperationHelper;
-import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.UpdateEntityOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.PositionalOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.UpdateOperationBase;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.UpdateSEOperation;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.conflictmng.UpdateConflictSolver;
 
 /**
  * This interfaces defines all transformation functions that include the effect
- * of (concurrent/independent) operations.
+ * of (concurrent/independent) operations. The transformation functions are stored in a table
+ * that is indexed by the kinds of the remote and the local operation (see <code>OTOperationKinds</code>).
+ * Operations that need no adaptation are returned unchanged.
  */
 public final class OTLinearTransformer<T> implements OTSystemDefinition.InclusionTransformer<T> {
 
+    /**
+     * A transformation function for a pair of operation kinds.
+     * @param <T> The type of the data elements in the data model.
+     */
+    public static interface TransformationFunction<T> {
+
+        /**
+         * Transform a remote operation against a local operation.
+         * @param isServer Flag that indicates if transformation is done on the server or the client side.
+         * @param remoteOp The remote operation.
+         * @param localOp The local operation.
+         * @return A pair of corrected (adapted) remote and local operations.
+         */
+        public abstract Pair<OTOperation<T>, OTOperation<T>>
+            transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp );
+    }
+
+    /** Kinds of the positional operations. */
+    private static final int[] INSERT_KINDS   = { OTLinearOperations.KIND_INSERT_SE, OTLinearOperations.KIND_INSERT_RANGE };
+    private static final int[] DELETE_KINDS   = { OTLinearOperations.KIND_DELETE_SE, OTLinearOperations.KIND_DELETE_RANGE };
+    private static final int[] UPDATE_KINDS   = { OTLinearOperations.KIND_UPDATE_SE, OTLinearOperations.KIND_UPDATE_ENTITY };
+    private static final int[] RANGE_KINDS    = { OTLinearOperations.KIND_INSERT_RANGE, OTLinearOperations.KIND_DELETE_RANGE };
+    private static final int[] POSITIONAL_KINDS = {
+            OTLinearOperations.KIND_INSERT_SE, OTLinearOperations.KIND_DELETE_SE,
+            OTLinearOperations.KIND_UPDATE_SE, OTLinearOperations.KIND_UPDATE_ENTITY,
+            OTLinearOperations.KIND_INSERT_RANGE, OTLinearOperations.KIND_DELETE_RANGE };
+
     /**
      * Constructor.
      * @param conflictSolver A instance of a dedicated conflict solver for update-update conflicts.
@@ -28,12 +63,84 @@ public final class OTLinearTransformer<T> implements OTSystemDefinition.Inclusio
             throw new IllegalArgumentException();
 
         this.conflictSolver = conflictSolver;
+        this.table = newTable( OTOperationKinds.count() );
+
+        registerTransformation( INSERT_KINDS[0], INSERT_KINDS[0], insertInsert );
+        registerTransformation( INSERT_KINDS[0], UPDATE_KINDS, insertUpdate );
+        registerTransformation( INSERT_KINDS[0], DELETE_KINDS[0], insertDelete );
+        registerTransformation( UPDATE_KINDS, INSERT_KINDS[0], updateInsert );
+        registerTransformation( UPDATE_KINDS, UPDATE_KINDS, updateUpdate );
+        registerTransformation( UPDATE_KINDS, DELETE_KINDS[0], updateDelete );
+        registerTransformation( DELETE_KINDS[0], INSERT_KINDS[0], deleteInsert );
+        registerTransformation( DELETE_KINDS[0], UPDATE_KINDS, deleteUpdate );
+        registerTransformation( DELETE_KINDS[0], DELETE_KINDS[0], deleteDelete );
+        registerTransformation( RANGE_KINDS, POSITIONAL_KINDS, range );
+        registerTransformation( POSITIONAL_KINDS, RANGE_KINDS, range );
     }
 
     /** Reference to the conflict solver, that allows to embed user defined semantics
         for resolving update-update conflicts. */
     private final UpdateConflictSolver<T> conflictSolver;
 
+    /** The transformation functions indexed by the remote and the local operation kind.
+        Replaced on every registration, so the transformation needs no lock. */
+    private volatile TransformationFunction<T>[][] table;
+
+    /**
+     * Register a transformation function for a pair of operation kinds. Allows data models to
+     * add their own operations. Should be called before the transformer is used.
+     * @param remoteKind The kind of the remote operation.
+     * @param localKind The kind of the local operation.
+     * @param function The transformation function.
+     */
+    public void registerTransformation( int remoteKind, int localKind, TransformationFunction<T> function ) {
+        registerTransformation( new int[] { remoteKind }, new int[] { localKind }, function );
+    }
+
+    private void registerTransformation( int remoteKind, int[] localKinds, TransformationFunction<T> function ) {
+        registerTransformation( new int[] { remoteKind }, localKinds, function );
+    }
+
+    private void registerTransformation( int[] remoteKinds, int localKind, TransformationFunction<T> function ) {
+        registerTransformation( remoteKinds, new int[] { localKind }, function );
+    }
+
+    private synchronized void registerTransformation( int[] remoteKinds, int[] localKinds, TransformationFunction<T> function ) {
+        // sanity check.
+        if( function == null )
+            throw new NullPointerException();
+
+        final TransformationFunction<T>[][] newTable = newTable( OTOperationKinds.count() );
+        for( int i = 0; i < table.length; ++i )
+            System.arraycopy( table[i], 0, newTable[i], 0, table.length );
+        for( int remoteKind : remoteKinds ) {
+            for( int localKind : localKinds ) {
+                if( remoteKind < 0 || remoteKind >= newTable.length || localKind < 0 || localKind >= newTable.length )
+                    throw new IllegalArgumentException();
+                newTable[remoteKind][localKind] = function;
+            }
+        }
+        table = newTable;
+    }
+
+    /**
+     * Create a table with the transformation functions for no-operations and composite operations.
+     * @param size The number of operation kinds.
+     */
+    private TransformationFunction<T>[][] newTable( int size ) {
+        @SuppressWarnings("unchecked")
+        final TransformationFunction<T>[][] newTable = (TransformationFunction<T>[][])new TransformationFunction<?>[size][size];
+        for( int kind = 0; kind < size; ++kind ) {
+            newTable[OTOperationKinds.COMPOSITE_OPERATION][kind] = composite;
+            newTable[kind][OTOperationKinds.COMPOSITE_OPERATION] = composite;
+        }
+        for( int kind = 0; kind < size; ++kind ) {
+            newTable[OTOperationKinds.NO_OPERATION][kind] = identity;
+            newTable[kind][OTOperationKinds.NO_OPERATION] = identity;
+        }
+        return newTable;
+    }
+
     /**
      * The heart of the OT system. This functions transforms a remote operation against a local operation
      * and produces a pair of corrected remote and local operation. The triggering of the transformation
@@ -53,12 +160,54 @@ public final class OTLinearTransformer<T> implements OTSystemDefinition.Inclusio
         if( localOp == null )
             throw new IllegalArgumentException();
 
-        //-------------------------------------
-        // remote: insert vs. local: insert
-        //-------------------------------------
-        if( remoteOp instanceof InsertSEOperation &&
-            localOp instanceof InsertSEOperation ) {
+        final TransformationFunction<T>[][] table = this.table;
+        final int remoteKind = OTOperationKinds.kindOf( remoteOp );
+        final int localKind = OTOperationKinds.kindOf( localOp );
+        final TransformationFunction<T> function =
+                remoteKind < table.length && localKind < table.length ? table[remoteKind][localKind] : null;
+
+        // if no function is registered, something went wrong.
+        if( function == null )
+            throw new IllegalStateException( "( localOp: " + localOp.toString() + ", remoteOp: " + remoteOp.toString() + " )" );
+        return function.transform( isServer, remoteOp, localOp );
+    }
 
+    //-------------------------------------
+    // no-operation transformation
+    //-------------------------------------
+    private final TransformationFunction<T> identity = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            return OperationHelper.buildPair( remoteOp, localOp );
+        }
+    };
+
+    //-------------------------------------
+    // composite operations
+    //-------------------------------------
+    private final TransformationFunction<T> composite = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            return transformComposite( isServer, remoteOp, localOp );
+        }
+    };
+
+    //-------------------------------------
+    // range operations
+    //-------------------------------------
+    private final TransformationFunction<T> range = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            return transformRange( isServer, (PositionalOperation<T>)remoteOp, (PositionalOperation<T>)localOp );
+        }
+    };
+
+    //-------------------------------------
+    // remote: insert vs. local: insert
+    //-------------------------------------
+    private final TransformationFunction<T> insertInsert = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
             final InsertSEOperation<T> remoteInsert = (InsertSEOperation<T>)remoteOp;
             final InsertSEOperation<T> localInsert  = (InsertSEOperation<T>)localOp;
 
@@ -66,211 +215,371 @@ public final class OTLinearTransformer<T> implements OTSystemDefinition.Inclusio
                 return OperationHelper.buildPair(remoteInsert, OperationHelper.adaptOperation(localInsert, localInsert.position + 1));
             if( remoteInsert.position > localInsert.position )
                 return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteInsert, remoteInsert.position + 1), localInsert);
+            // defined rule: server operation wins always the insert conflict.
+            if( isServer )
+                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteInsert, remoteInsert.position + 1), localInsert);
+            else
+                return OperationHelper.buildPair(remoteInsert, OperationHelper.adaptOperation(localInsert, localInsert.position + 1));
+        }
+    };
+
+    //-------------------------------------
+    // remote: insert vs. local: update
+    //-------------------------------------
+    private final TransformationFunction<T> insertUpdate = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            final InsertSEOperation<T> remoteInsert   = (InsertSEOperation<T>)remoteOp;
+            final UpdateOperationBase<T> localUpdate  = (UpdateOperationBase<T>)localOp;
+
+            if( remoteInsert.position <= localUpdate.position )
+                return OperationHelper.buildPair(remoteInsert, OperationHelper.adaptOperation(localUpdate, localUpdate.position + 1));
+            return OperationHelper.buildPair(remoteInsert, localUpdate);
+        }
+    };
+
+    //-------------------------------------
+    // remote: insert vs. local: delete
+    //-------------------------------------
+    private final TransformationFunction<T> insertDelete = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            final InsertSEOperation<T> remoteInsert = (InsertSEOperation<T>)remoteOp;
+            final DeleteSEOperation<T> localDelete  = (DeleteSEOperation<T>)localOp;
 
-            if( remoteInsert.position == localInsert.position ) {
-                // defined rule: tests operation wins always the insert conflict.
-                if( isServer ) {
-                    return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteInsert, remoteInsert.position + 1), localInsert);
-                } else {
-                    return OperationHelper.buildPair(remoteInsert, OperationHelper.adaptOperation(localInsert, localInsert.position + 1));
-                }
+            if( remoteInsert.position <= localDelete.position )
+                return OperationHelper.buildPair(remoteInsert, OperationHelper.adaptOperation(localDelete, localDelete.position + 1));
+            return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteInsert, remoteInsert.position - 1), localDelete);
+        }
+    };
+
+    //-------------------------------------
+    // remote: update vs. local: insert
+    //-------------------------------------
+    private final TransformationFunction<T> updateInsert = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            final UpdateOperationBase<T> remoteUpdate = (UpdateOperationBase<T>)remoteOp;
+            final InsertSEOperation<T> localInsert    = (InsertSEOperation<T>)localOp;
+
+            if( remoteUpdate.position < localInsert.position )
+                return OperationHelper.buildPair(remoteUpdate, localInsert);
+            return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteUpdate, remoteUpdate.position + 1), localInsert);
+        }
+    };
+
+    //-------------------------------------------------
+    // remote: update vs. local: update
+    //-------------------------------------------------
+    private final TransformationFunction<T> updateUpdate = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            final UpdateOperationBase<T> remoteUpdate = (UpdateOperationBase<T>)remoteOp;
+            final UpdateOperationBase<T> localUpdate  = (UpdateOperationBase<T>)localOp;
+
+            if( remoteUpdate.position != localUpdate.position )
+                return OperationHelper.buildPair( remoteUpdate, localUpdate );
+            // Call UpdateConflictSolver.
+            return conflictSolver.solveUpdateConflict( isServer, remoteUpdate, localUpdate );
+        }
+    };
+
+    //-------------------------------------
+    // remote: update vs. local: delete
+    //-------------------------------------
+    private final TransformationFunction<T> updateDelete = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            final UpdateOperationBase<T> remoteUpdate = (UpdateOperationBase<T>)remoteOp;
+            final DeleteSEOperation<T> localDelete    = (DeleteSEOperation<T>)localOp;
+
+            if( remoteUpdate.position < localDelete.position )
+                return OperationHelper.buildPair(remoteUpdate, localDelete);
+            if( remoteUpdate.position > localDelete.position )
+                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteUpdate, remoteUpdate.position - 1), localDelete);
+            return OperationHelper.buildPair(OperationHelper.cancelOperation(remoteUpdate), localDelete);
+        }
+    };
+
+    //-------------------------------------
+    // remote: delete vs. local: insert
+    //-------------------------------------
+    private final TransformationFunction<T> deleteInsert = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            final DeleteSEOperation<T> remoteDelete = (DeleteSEOperation<T>)remoteOp;
+            final InsertSEOperation<T> localInsert  = (InsertSEOperation<T>)localOp;
+
+            if( remoteDelete.position < localInsert.position )
+                return OperationHelper.buildPair(remoteDelete, OperationHelper.adaptOperation(localInsert, localInsert.position - 1));
+            return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteDelete, remoteDelete.position + 1), localInsert);
+        }
+    };
+
+    //-------------------------------------
+    // remote: delete vs. local: update
+    //-------------------------------------
+    private final TransformationFunction<T> deleteUpdate = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            final DeleteSEOperation<T> remoteDelete  = (DeleteSEOperation<T>)remoteOp;
+            final UpdateOperationBase<T> localUpdate = (UpdateOperationBase<T>)localOp;
+
+            if( remoteDelete.position < localUpdate.position )
+                return OperationHelper.buildPair(remoteDelete, OperationHelper.adaptOperation(localUpdate, localUpdate.position - 1));
+            if( remoteDelete.position > localUpdate.position )
+                return OperationHelper.buildPair(remoteDelete, localUpdate);
+            return OperationHelper.buildPair(remoteDelete, OperationHelper.cancelOperation(localUpdate));
+        }
+    };
+
+    //-------------------------------------
+    // remote: delete vs. local: delete
+    //-------------------------------------
+    private final TransformationFunction<T> deleteDelete = new TransformationFunction<T>() {
+        @Override
+        public Pair<OTOperation<T>, OTOperation<T>> transform( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+            final DeleteSEOperation<T> remoteDelete = (DeleteSEOperation<T>)remoteOp;
+            final DeleteSEOperation<T> localDelete  = (DeleteSEOperation<T>)localOp;
+
+            if( remoteDelete.position < localDelete.position )
+                return OperationHelper.buildPair(remoteDelete, OperationHelper.adaptOperation(localDelete, localDelete.position - 1));
+            if( remoteDelete.position > localDelete.position )
+                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteDelete, remoteDelete.position - 1), localDelete);
+            return OperationHelper.buildPair(OperationHelper.cancelOperation(remoteDelete), OperationHelper.cancelOperation(localDelete));
+        }
+    };
+
+    /**
+     * Transform composite operations component by component. A remote composite is transformed
+     * against the local operation, that is carried forward over the components. A local composite
+     * is carried forward over the remote operation in the same way. A composite whose components
+     * need no adaptation is returned unchanged.
+     * @param isServer Flag that indicates if transformation is done on the server or the client side.
+     * @param remoteOp The remote operation that needs to be transformed against the local operation.
+     * @param localOp The local operations against the server operation is transformed.
+     * @return A pair of corrected (adapted) remote and local operations.
+     */
+    private Pair<OTOperation<T>, OTOperation<T>>
+        transformComposite( boolean isServer, OTOperation<T> remoteOp, OTOperation<T> localOp ) {
+
+        if( remoteOp instanceof CompositeOperation ) {
+            final CompositeOperation<T> remoteComposite = (CompositeOperation<T>)remoteOp;
+            List<OTOperation<T>> components = null;
+            OTOperation<T> local = localOp;
+            for( int i = 0; i < remoteComposite.operations.size(); ++i ) {
+                final OTOperation<T> component = remoteComposite.operations.get( i );
+                final Pair<OTOperation<T>, OTOperation<T>> transformed = transformOperation( isServer, component, local );
+                components = collectComponent( components, remoteComposite, i, transformed.getFirst() );
+                local = transformed.getSecond();
+            }
+            if( components == null )
+                return OperationHelper.buildPair( remoteOp, local );
+            final CompositeOperation<T> newRemoteOp = new CompositeOperation<T>( components );
+            newRemoteOp.setMetaData( remoteComposite.getMetaData() );
+            return OperationHelper.buildPair( newRemoteOp, local );
+
+        } else {
+            final CompositeOperation<T> localComposite = (CompositeOperation<T>)localOp;
+            List<OTOperation<T>> components = null;
+            OTOperation<T> remote = remoteOp;
+            for( int i = 0; i < localComposite.operations.size(); ++i ) {
+                final OTOperation<T> component = localComposite.operations.get( i );
+                final Pair<OTOperation<T>, OTOperation<T>> transformed = transformOperation( isServer, remote, component );
+                remote = transformed.getFirst();
+                components = collectComponent( components, localComposite, i, transformed.getSecond() );
             }
+            if( components == null )
+                return OperationHelper.buildPair( remote, localOp );
+            final CompositeOperation<T> newLocalOp = new CompositeOperation<T>( components );
+            newLocalOp.setMetaData( localComposite.getMetaData() );
+            return OperationHelper.buildPair( remote, newLocalOp );
+        }
+    }
+
+    /**
+     * Collect the transformed components of a composite. The list is created with the
+     * first component that differs from the original component.
+     * @param components The collected components, or null if all components are unchanged so far.
+     * @param composite The original composite.
+     * @param index The index of the component.
+     * @param transformed The transformed component.
+     * @return The collected components, or null if all components are unchanged so far.
+     */
+    private static <T> List<OTOperation<T>> collectComponent( List<OTOperation<T>> components, CompositeOperation<T> composite,
+                                                             int index, OTOperation<T> transformed ) {
+        if( components == null ) {
+            if( transformed == composite.operations.get( index ) )
+                return null;
+            components = new ArrayList<OTOperation<T>>( composite.operations.size() );
+            components.addAll( composite.operations.subList( 0, index ) );
+        }
+        components.add( transformed );
+        return components;
+    }
+
+    /**
+     * Transform operations where at least one side inserts or deletes a range of elements. Single
+     * element inserts and deletes are treated as ranges of length one, the rules for equal positions
+     * are the same as for the single element operations.
+     * @param isServer Flag that indicates if transformation is done on the server or the client side.
+     * @param remoteOp The remote operation that needs to be transformed against the local operation.
+     * @param localOp The local operations against the server operation is transformed.
+     * @return A pair of corrected (adapted) remote and local operations.
+     */
+    private Pair<OTOperation<T>, OTOperation<T>>
+        transformRange( boolean isServer, PositionalOperation<T> remoteOp, PositionalOperation<T> localOp ) {
+
+        final boolean remoteInsert = OperationHelper.isInsertOperation( remoteOp );
+        final boolean remoteDelete = OperationHelper.isDeleteOperation( remoteOp );
+        final boolean localInsert  = OperationHelper.isInsertOperation( localOp );
+        final boolean localDelete  = OperationHelper.isDeleteOperation( localOp );
 
         //-------------------------------------
-        // remote: insert vs. local: update
+        // remote: insert vs. local: insert
         //-------------------------------------
-        } else if( remoteOp instanceof InsertSEOperation &&
-                   localOp instanceof UpdateOperationBase ) {
+        if( remoteInsert && localInsert ) {
 
-            final InsertSEOperation<T> remoteInsert = (InsertSEOperation<T>)remoteOp;
-            final UpdateSEOperation<T> localUpdate  = (UpdateSEOperation<T>)localOp;
+            final int remoteLength = OperationHelper.rangeLength( remoteOp );
+            final int localLength  = OperationHelper.rangeLength( localOp );
 
-            if( remoteInsert.position < localUpdate.position )
-                return OperationHelper.buildPair(remoteInsert, OperationHelper.adaptOperation(localUpdate, localUpdate.position + 1));
-            if( remoteInsert.position > localUpdate.position )
-                return OperationHelper.buildPair(remoteInsert, localUpdate);
-            if( remoteInsert.position == localUpdate.position )
-                return OperationHelper.buildPair(remoteInsert, OperationHelper.adaptOperation(localUpdate, localUpdate.position + 1));
+            // defined rule: on equal positions the server operation wins the insert conflict.
+            if( remoteOp.position < localOp.position || ( remoteOp.position == localOp.position && !isServer ) )
+                return OperationHelper.buildPair( remoteOp, OperationHelper.adaptOperation( localOp, localOp.position + remoteLength ) );
+            else
+                return OperationHelper.buildPair( OperationHelper.adaptOperation( remoteOp, remoteOp.position + localLength ), localOp );
 
         //-------------------------------------
         // remote: insert vs. local: delete
         //-------------------------------------
-        } else if( remoteOp instanceof InsertSEOperation &&
-                   localOp instanceof DeleteSEOperation ) {
+        } else if( remoteInsert && localDelete ) {
 
-            final InsertSEOperation<T> remoteInsert = (InsertSEOperation<T>)remoteOp;
-            final DeleteSEOperation<T> localDelete  = (DeleteSEOperation<T>)localOp;
+            final int insertLength = OperationHelper.rangeLength( remoteOp );
+            final int deleteLength = OperationHelper.rangeLength( localOp );
 
-            if( remoteInsert.position < localDelete.position )
-                return OperationHelper.buildPair(remoteInsert, OperationHelper.adaptOperation(localDelete, localDelete.position + 1));
-            if( remoteInsert.position > localDelete.position )
-                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteInsert, remoteInsert.position - 1), localDelete);
-            if( remoteInsert.position == localDelete.position )
-                return OperationHelper.buildPair(remoteInsert, OperationHelper.adaptOperation(localDelete, localDelete.position + 1));
+            if( remoteOp.position <= localOp.position )
+                return OperationHelper.buildPair( remoteOp, OperationHelper.adaptOperation( localOp, localOp.position + insertLength ) );
+            if( remoteOp.position >= localOp.position + deleteLength )
+                return OperationHelper.buildPair( OperationHelper.adaptOperation( remoteOp, remoteOp.position - deleteLength ), localOp );
+            // the insert lies inside the deleted range, the inserted elements survive.
+            return OperationHelper.buildPair( OperationHelper.adaptOperation( remoteOp, localOp.position ),
+                                              splitDelete( localOp, remoteOp.position, insertLength ) );
 
         //-------------------------------------
-        // remote: update vs. local: insert
+        // remote: delete vs. local: insert
         //-------------------------------------
-        } else if( remoteOp instanceof UpdateOperationBase &&
-                   localOp instanceof InsertSEOperation ) {
+        } else if( remoteDelete && localInsert ) {
 
-            final UpdateSEOperation<T> remoteUpdate = (UpdateSEOperation<T>)remoteOp;
-            final InsertSEOperation<T> localInsert  = (InsertSEOperation<T>)localOp;
+            final int deleteLength = OperationHelper.rangeLength( remoteOp );
+            final int insertLength = OperationHelper.rangeLength( localOp );
 
-            if( remoteUpdate.position < localInsert.position )
-                return OperationHelper.buildPair(remoteUpdate, localInsert);
-            if( remoteUpdate.position > localInsert.position )
-                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteUpdate, remoteUpdate.position + 1), localInsert);
-            if( remoteUpdate.position == localInsert.position )
-                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteUpdate, remoteUpdate.position + 1), localInsert);
-
-        //-------------------------------------------------
-        // remote: update std vs. local: update std
-        //-------------------------------------------------
-        } else if( remoteOp instanceof UpdateOperationBase &&
-                   localOp instanceof UpdateOperationBase ) {
-
-            //-------------------------------------------------
-            // remote: replace vs. local: replace
-            //-------------------------------------------------
-            if( remoteOp instanceof UpdateSEOperation &&
-                localOp instanceof UpdateSEOperation ) {
-
-                final UpdateSEOperation<T> remoteUpdate = (UpdateSEOperation<T>)remoteOp;
-                final UpdateSEOperation<T> localUpdate  = (UpdateSEOperation<T>)localOp;
-
-                if( remoteUpdate.position != localUpdate.position )
-                    return OperationHelper.buildPair( remoteUpdate, localUpdate );
-                else {
-                    // Call UpdateConflictSolver.
-                    return conflictSolver.solveUpdateConflict( isServer, remoteUpdate, localUpdate );
-                }
-
-            //-------------------------------------------------
-            // remote: replace vs. local: update entity
-            //-------------------------------------------------
-            } else if( remoteOp instanceof UpdateSEOperation &&
-                       localOp instanceof UpdateEntityOperation ) {
-
-                final UpdateSEOperation<T> remoteUpdate = (UpdateSEOperation<T>)remoteOp;
-                final UpdateEntityOperation<T> localUpdateEntity  = (UpdateEntityOperation<T>)localOp;
-
-                if( remoteUpdate.position != localUpdateEntity.position )
-                    return OperationHelper.buildPair( remoteUpdate, localUpdateEntity );
-                else {
-                    // Call UpdateConflictSolver.
-                    return conflictSolver.solveUpdateConflict( isServer, remoteUpdate, localUpdateEntity );
-                }
-
-            //-------------------------------------------------
-            // remote: update entity vs. local: replace
-            //-------------------------------------------------
-            } else if( remoteOp instanceof UpdateEntityOperation &&
-                    localOp instanceof UpdateSEOperation ) {
-
-                final UpdateEntityOperation<T> remoteUpdateEntity = (UpdateEntityOperation<T>)remoteOp;
-                final UpdateSEOperation<T> localUpdate  = (UpdateSEOperation<T>)localOp;
-
-                if( remoteUpdateEntity.position != localUpdate.position )
-                    return OperationHelper.buildPair( remoteUpdateEntity, localUpdate );
-                else {
-                    // Call UpdateConflictSolver.
-                    return conflictSolver.solveUpdateConflict( isServer, remoteUpdateEntity, localUpdate );
-                }
-
-            //-------------------------------------------------
-            // remote: update entity vs. local: update entity
-            //-------------------------------------------------
-            } else if( remoteOp instanceof UpdateEntityOperation &&
-                    localOp instanceof UpdateEntityOperation ) {
-
-                final UpdateEntityOperation<T> remoteUpdateEntity = (UpdateEntityOperation<T>)remoteOp;
-                final UpdateEntityOperation<T> localUpdateEntity  = (UpdateEntityOperation<T>)localOp;
-
-                if( remoteUpdateEntity.position != localUpdateEntity.position )
-                    return OperationHelper.buildPair( remoteUpdateEntity, localUpdateEntity );
-                else {
-                    // Call UpdateConflictSolver.
-                    return conflictSolver.solveUpdateConflict( isServer, remoteUpdateEntity, localUpdateEntity );
-                }
-            }
+            if( localOp.position <= remoteOp.position )
+                return OperationHelper.buildPair( OperationHelper.adaptOperation( remoteOp, remoteOp.position + insertLength ), localOp );
+            if( localOp.position >= remoteOp.position + deleteLength )
+                return OperationHelper.buildPair( remoteOp, OperationHelper.adaptOperation( localOp, localOp.position - deleteLength ) );
+            // the insert lies inside the deleted range, the inserted elements survive.
+            return OperationHelper.buildPair( splitDelete( remoteOp, localOp.position, insertLength ),
+                                              OperationHelper.adaptOperation( localOp, remoteOp.position ) );
 
         //-------------------------------------
-        // remote: update vs. local: delete
+        // remote: delete vs. local: delete
         //-------------------------------------
-        } else if( remoteOp instanceof UpdateOperationBase &&
-                   localOp instanceof DeleteSEOperation ) {
+        } else if( remoteDelete && localDelete ) {
 
-            final UpdateSEOperation<T> remoteUpdate = (UpdateSEOperation<T>)remoteOp;
-            final DeleteSEOperation<T> localDelete  = (DeleteSEOperation<T>)localOp;
+            final int remoteStart = remoteOp.position;
+            final int remoteEnd   = remoteStart + OperationHelper.rangeLength( remoteOp );
+            final int localStart  = localOp.position;
+            final int localEnd    = localStart + OperationHelper.rangeLength( localOp );
+            // elements deleted by both operations.
+            final int overlap = Math.max( 0, Math.min( remoteEnd, localEnd ) - Math.max( remoteStart, localStart ) );
 
-            if( remoteUpdate.position < localDelete.position )
-                return OperationHelper.buildPair(remoteUpdate, localDelete);
-            if( remoteUpdate.position > localDelete.position )
-                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteUpdate, remoteUpdate.position - 1), localDelete);
-            if( remoteUpdate.position == localDelete.position )
-                return OperationHelper.buildPair(new NoOperation<T>(), localDelete);
+            return OperationHelper.buildPair(
+                    OperationHelper.adaptDeleteOperation( remoteOp,
+                            mapDeletedPosition( remoteStart, localStart, localEnd ), remoteEnd - remoteStart - overlap ),
+                    OperationHelper.adaptDeleteOperation( localOp,
+                            mapDeletedPosition( localStart, remoteStart, remoteEnd ), localEnd - localStart - overlap ) );
 
         //-------------------------------------
-        // remote: delete vs. local: insert
+        // remote: insert vs. local: update
         //-------------------------------------
-        } else if( remoteOp instanceof DeleteSEOperation &&
-                   localOp instanceof InsertSEOperation ) {
-
-            final DeleteSEOperation<T> remoteDelete = (DeleteSEOperation<T>)remoteOp;
-            final InsertSEOperation<T> localInsert = (InsertSEOperation<T>)localOp;
+        } else if( remoteInsert && localOp instanceof UpdateOperationBase ) {
 
-            if( remoteDelete.position < localInsert.position )
-                return OperationHelper.buildPair(remoteDelete, OperationHelper.adaptOperation(localInsert, localInsert.position - 1));
-            if( remoteDelete.position > localInsert.position )
-                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteDelete, remoteDelete.position + 1), localInsert);
-            if( remoteDelete.position == localInsert.position )
-                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteDelete, remoteDelete.position + 1), localInsert);
+            if( remoteOp.position <= localOp.position )
+                return OperationHelper.buildPair( remoteOp,
+                        OperationHelper.adaptOperation( localOp, localOp.position + OperationHelper.rangeLength( remoteOp ) ) );
+            return OperationHelper.buildPair( remoteOp, localOp );
 
         //-------------------------------------
-        // remote: delete vs. local: update
+        // remote: update vs. local: insert
         //-------------------------------------
-        } else if( remoteOp instanceof DeleteSEOperation &&
-                   localOp instanceof UpdateOperationBase ) {
+        } else if( remoteOp instanceof UpdateOperationBase && localInsert ) {
 
-            final DeleteSEOperation<T> remoteDelete = (DeleteSEOperation<T>)remoteOp;
-            final UpdateSEOperation<T> localUpdate = (UpdateSEOperation<T>)localOp;
-
-            if( remoteDelete.position < localUpdate.position )
-                return OperationHelper.buildPair(remoteDelete, OperationHelper.adaptOperation(localUpdate, localUpdate.position - 1));
-            if( remoteDelete.position > localUpdate.position )
-                return OperationHelper.buildPair(remoteDelete, localUpdate);
-            if( remoteDelete.position == localUpdate.position )
-                return OperationHelper.buildPair(remoteDelete, new NoOperation<T>());
+            if( localOp.position <= remoteOp.position )
+                return OperationHelper.buildPair(
+                        OperationHelper.adaptOperation( remoteOp, remoteOp.position + OperationHelper.rangeLength( localOp ) ), localOp );
+            return OperationHelper.buildPair( remoteOp, localOp );
 
         //-------------------------------------
-        // remote: delete vs. local: delete
+        // remote: delete vs. local: update
         //-------------------------------------
-        } else if( remoteOp instanceof DeleteSEOperation &&
-                   localOp instanceof DeleteSEOperation ) {
+        } else if( remoteDelete && localOp instanceof UpdateOperationBase ) {
 
-            final DeleteSEOperation<T> remoteDelete = (DeleteSEOperation<T>)remoteOp;
-            final DeleteSEOperation<T> localDelete = (DeleteSEOperation<T>)localOp;
+            final int deleteLength = OperationHelper.rangeLength( remoteOp );
 
-            if( remoteDelete.position < localDelete.position )
-                return OperationHelper.buildPair(remoteDelete, OperationHelper.adaptOperation(localDelete, localDelete.position - 1));
-            if( remoteDelete.position > localDelete.position )
-                return OperationHelper.buildPair(OperationHelper.adaptOperation(remoteDelete, remoteDelete.position - 1), localDelete);
-            if( remoteDelete.position == localDelete.position )
-                return OperationHelper.buildPair(new NoOperation<T>(), new NoOperation<T>());
-        }
+            if( localOp.position < remoteOp.position )
+                return OperationHelper.buildPair( remoteOp, localOp );
+            if( localOp.position >= remoteOp.position + deleteLength )
+                return OperationHelper.buildPair( remoteOp, OperationHelper.adaptOperation( localOp, localOp.position - deleteLength ) );
+            return OperationHelper.buildPair( remoteOp, OperationHelper.cancelOperation( localOp ) );
 
         //-------------------------------------
-        // no-operation transformation
+        // remote: update vs. local: delete
         //-------------------------------------
-        if( remoteOp instanceof NoOperation || localOp instanceof NoOperation ) {
-            return OperationHelper.buildPair(remoteOp, localOp);
+        } else if( remoteOp instanceof UpdateOperationBase && localDelete ) {
+
+            final int deleteLength = OperationHelper.rangeLength( localOp );
+
+            if( remoteOp.position < localOp.position )
+                return OperationHelper.buildPair( remoteOp, localOp );
+            if( remoteOp.position >= localOp.position + deleteLength )
+                return OperationHelper.buildPair( OperationHelper.adaptOperation( remoteOp, remoteOp.position - deleteLength ), localOp );
+            return OperationHelper.buildPair( OperationHelper.cancelOperation( remoteOp ), localOp );
         }
 
         // if no case is accepted, something went wrong.
         throw new IllegalStateException( "( localOp: " + localOp.toString() + ", remoteOp: " + remoteOp.toString() + " )" );
     }
 
+    /**
+     * Split a delete operation around concurrently inserted elements. The elements in front of the
+     * insert position are deleted first, then the elements behind the inserted elements.
+     * @param deleteOp The delete operation that contains the insert position.
+     * @param insertPosition The position of the concurrent insert.
+     * @param insertLength The number of concurrently inserted elements.
+     * @return The composite of both deletes.
+     */
+    private OTOperation<T> splitDelete( PositionalOperation<T> deleteOp, int insertPosition, int insertLength ) {
+        final int deleteLength = OperationHelper.rangeLength( deleteOp );
+        final List<OTOperation<T>> components = new ArrayList<OTOperation<T>>( 2 );
+        components.add( OperationHelper.adaptDeleteOperation( deleteOp, deleteOp.position, insertPosition - deleteOp.position ) );
+        components.add( OperationHelper.adaptDeleteOperation( deleteOp, deleteOp.position + insertLength,
+                deleteOp.position + deleteLength - insertPosition ) );
+        final CompositeOperation<T> compositeOp = new CompositeOperation<T>( components );
+        compositeOp.setMetaData( deleteOp.getMetaData() );
+        return compositeOp;
+    }
+
+    /**
+     * Map a position onto the state after a delete of the range <code>[start, end)</code>.
+     */
+    private static int mapDeletedPosition( int position, int start, int end ) {
+        if( position < start )
+            return position;
+        if( position < end )
+            return start;
+        return position - ( end - start );
+    }
+
     /**
      * Adapt a cursor according to local or remote operations.
      * @param cursor The cursor that is adapted.
@@ -305,6 +614,26 @@ public final class OTLinearTransformer<T> implements OTSystemDefinition.Inclusio
         } else if( op instanceof UpdateSEOperation ) {
             // nothing happens.
             linearCursor.setCursorState( OTSystemDefinition.OTCursor.CursorState.CURSOR_UPDATED );
+
+        } else if( op instanceof InsertRangeOperation ) {
+            final InsertRangeOperation<T> insertOp = (InsertRangeOperation<T>)op;
+
+            if( insertOp.position <= linearCursor.getPosition() )
+                linearCursor.reset( linearCursor.getPosition() + insertOp.insertedElements.size() );
+
+        } else if( op instanceof DeleteRangeOperation ) {
+            final DeleteRangeOperation<T> deleteOp = (DeleteRangeOperation<T>)op;
+
+            if( deleteOp.position + deleteOp.count <= linearCursor.getPosition() ) {
+                linearCursor.reset( linearCursor.getPosition() - deleteOp.count );
+            } else if( deleteOp.position <= linearCursor.getPosition() ) {
+                linearCursor.reset( deleteOp.position );
+                linearCursor.setCursorState( OTSystemDefinition.OTCursor.CursorState.CURSOR_DELETED );
+            }
+
+        } else if( op instanceof CompositeOperation ) {
+            for( final OTOperation<T> component : ( (CompositeOperation<T>)op ).operations )
+                transformCursor( cursor, component );
         }
     }
 }
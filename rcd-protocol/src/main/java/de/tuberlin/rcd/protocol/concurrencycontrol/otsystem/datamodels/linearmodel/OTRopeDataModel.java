@@ -0,0 +1,486 @@
+package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteRangeOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteSEOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertRangeOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertSEOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.UpdateSEOperation;
+
+/**
+ * Text data model for linear operations. The characters are stored in <code>char[]</code> chunks,
+ * the chunks are the nodes of a balanced (AVL) tree ordered by position. Every node knows the number
+ * of characters in its subtree, so positional access, insert and delete take O(log n).
+ *
+ * The model itself is the <code>CharSequence</code> of its content, <code>getData()</code> returns
+ * a immutable snapshot (<code>String</code>) that is cached until the next change.
+ */
+public class OTRopeDataModel implements OTSequenceDataModel<Character>, CharSequence {
+
+    /**
+     * Constants.
+     */
+    private static final long serialVersionUID = 7270436707617587127L;
+
+    /** Capacity of a chunk. Full chunks are split in two halves. */
+    private static final int CHUNK_SIZE = 512;
+
+    /**
+     * Node of the tree, holds one chunk.
+     */
+    private static final class Node {
+
+        /**
+         * Constructor.
+         * @param chars The chunk, ownership is passed to the node.
+         * @param length The number of used characters of the chunk.
+         */
+        Node( char[] chars, int length ) {
+            this.chars = chars;
+            this.length = length;
+            update();
+        }
+
+        /** The characters of this chunk. */
+        final char[] chars;
+
+        /** The number of used characters of this chunk. */
+        int length;
+
+        Node left;
+
+        Node right;
+
+        /** Height of the subtree. */
+        int height;
+
+        /** The number of characters in the subtree. */
+        int weight;
+
+        /**
+         * Recompute height and weight after a change of the chunk or the children.
+         */
+        void update() {
+            height = 1 + Math.max( height( left ), height( right ) );
+            weight = weight( left ) + length + weight( right );
+        }
+    }
+
+    /**
+     * Constructor.
+     */
+    public OTRopeDataModel() {
+        this.root = null;
+    }
+
+    /**
+     * Constructor.
+     * @param text The initial content.
+     */
+    public OTRopeDataModel( CharSequence text ) {
+        // sanity check.
+        if( text == null )
+            throw new IllegalArgumentException();
+
+        this.root = build( text );
+    }
+
+    /** Root of the chunk tree, <code>null</code> for a empty text. */
+    private transient Node root;
+
+    /** Cached content, invalidated by every change. */
+    private transient String snapshot = null;
+
+    /**
+     * Apply a (linear) operation on the data model.
+     * @param op The operation to execute.
+     */
+    @Override
+    public synchronized void applyOperation( OTOperationDefinition.OTOperation<Character> op ) {
+        if( op instanceof OTOperationDefinition.NoOperation ) {
+            // do nothing.
+        } else if( op instanceof InsertSEOperation ) {
+            final InsertSEOperation<Character> insertOp = (InsertSEOperation<Character>)op;
+            // check if operation position is valid.
+            if( insertOp.position < 0 || insertOp.position > weight( root ) ) {
+                throw new IllegalStateException( "op.pos: " + insertOp.position +
+                        " > " + "data.size: " + weight( root ) );
+            }
+            root = insert( root, insertOp.position, insertOp.insertedElement );
+            snapshot = null;
+
+        } else if( op instanceof DeleteSEOperation ) {
+            final DeleteSEOperation<Character> deleteOp = (DeleteSEOperation<Character>)op;
+            // check if operation position is valid.
+            if( deleteOp.position < 0 || deleteOp.position >= weight( root ) ) {
+                throw new IllegalStateException();
+            }
+            root = delete( root, deleteOp.position );
+            snapshot = null;
+
+        } else if( op instanceof UpdateSEOperation ) {
+            final UpdateSEOperation<Character> updateOp = (UpdateSEOperation<Character>)op;
+            // check if operation position is valid.
+            if( updateOp.position < 0 || updateOp.position >= weight( root ) ) {
+                throw new IllegalStateException();
+            }
+            Node node = root;
+            int pos = updateOp.position;
+            while( true ) {
+                final int leftWeight = weight( node.left );
+                if( pos < leftWeight ) {
+                    node = node.left;
+                } else if( pos < leftWeight + node.length ) {
+                    node.chars[pos - leftWeight] = updateOp.updatedElement;
+                    break;
+                } else {
+                    pos -= leftWeight + node.length;
+                    node = node.right;
+                }
+            }
+            snapshot = null;
+
+        } else if( op instanceof InsertRangeOperation ) {
+            final InsertRangeOperation<Character> insertOp = (InsertRangeOperation<Character>)op;
+            // check if operation position is valid.
+            if( insertOp.position < 0 || insertOp.position > weight( root ) ) {
+                throw new IllegalStateException( "op.pos: " + insertOp.position +
+                        " > " + "data.size: " + weight( root ) );
+            }
+            int pos = insertOp.position;
+            for( Character c : insertOp.insertedElements )
+                root = insert( root, pos++, c );
+            snapshot = null;
+
+        } else if( op instanceof DeleteRangeOperation ) {
+            final DeleteRangeOperation<Character> deleteOp = (DeleteRangeOperation<Character>)op;
+            // check if operation range is valid.
+            if( deleteOp.position < 0 || deleteOp.position + deleteOp.count > weight( root ) ) {
+                throw new IllegalStateException();
+            }
+            for( int i = 0; i < deleteOp.count; ++i )
+                root = delete( root, deleteOp.position );
+            snapshot = null;
+
+        } else if( op instanceof OTOperationDefinition.CompositeOperation ) {
+            for( OTOperationDefinition.OTOperation<Character> component
+                    : ( (OTOperationDefinition.CompositeOperation<Character>)op ).operations )
+                applyOperation( component );
+
+        } else {
+            throw new IllegalStateException( "unsupported operation " + op );
+        }
+    }
+
+    /**
+     * Get a immutable snapshot of the text.
+     */
+    @Override
+    public synchronized Object getData() {
+        return toString();
+    }
+
+    /**
+     * Return the character at the given position.
+     * @param pos The position of the character.
+     */
+    @Override
+    public Character getDataElement( int pos ) {
+        return charAt( pos );
+    }
+
+    @Override
+    public synchronized List<Character> getDataElements() {
+        final String text = toString();
+        final List<Character> elements = new ArrayList<Character>( text.length() );
+        for( int i = 0; i < text.length(); ++i )
+            elements.add( text.charAt( i ) );
+        return elements;
+    }
+
+    /**
+     * The characters keep no rollback deltas, nothing to drop.
+     */
+    @Override
+    public void setStableRevision( int stableRevision ) {
+    }
+
+    /**
+     * Fill the model at runtime with new content. The content is appended.
+     * @param model The content.
+     */
+    @Override
+    public synchronized void fillModel( OTSystemDefinition.OTDataModel<Character> model ) {
+        // sanity check.
+        if( model == null )
+            throw new IllegalArgumentException();
+
+        final String text = model.toString();
+        if( text.length() > 0 ) {
+            root = build( toString() + text );
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Return the number of characters in the data model.
+     */
+    @Override
+    public synchronized int size() {
+        return weight( root );
+    }
+
+    //-----------------------------------------------
+    // CharSequence implementation.
+    //-----------------------------------------------
+
+    @Override
+    public int length() {
+        return size();
+    }
+
+    @Override
+    public synchronized char charAt( int index ) {
+        if( index < 0 || index >= weight( root ) )
+            throw new IndexOutOfBoundsException( "index: " + index + ", length: " + weight( root ) );
+        if( snapshot != null )
+            return snapshot.charAt( index );
+        Node node = root;
+        while( true ) {
+            final int leftWeight = weight( node.left );
+            if( index < leftWeight ) {
+                node = node.left;
+            } else if( index < leftWeight + node.length ) {
+                return node.chars[index - leftWeight];
+            } else {
+                index -= leftWeight + node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    @Override
+    public synchronized CharSequence subSequence( int start, int end ) {
+        if( start < 0 || end > weight( root ) || start > end )
+            throw new IndexOutOfBoundsException( "start: " + start + ", end: " + end + ", length: " + weight( root ) );
+        if( snapshot != null )
+            return snapshot.substring( start, end );
+        final StringBuilder builder = new StringBuilder( end - start );
+        appendRange( root, start, end, builder );
+        return builder.toString();
+    }
+
+    /**
+     * Build a string representation of the data model.
+     * @return A string representing the model content.
+     */
+    @Override
+    public synchronized String toString() {
+        if( snapshot == null ) {
+            final StringBuilder builder = new StringBuilder( weight( root ) );
+            appendRange( root, 0, weight( root ), builder );
+            snapshot = builder.toString();
+        }
+        return snapshot;
+    }
+
+    //-----------------------------------------------
+    // Tree operations.
+    //-----------------------------------------------
+
+    private static int height( Node node ) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int weight( Node node ) {
+        return node == null ? 0 : node.weight;
+    }
+
+    /**
+     * Build a balanced tree of half filled chunks, so following inserts don't split at once.
+     */
+    private static Node build( CharSequence text ) {
+        final int chunkLength = CHUNK_SIZE / 2;
+        final int chunkCount = ( text.length() + chunkLength - 1 ) / chunkLength;
+        return build( text, 0, chunkCount, chunkLength );
+    }
+
+    private static Node build( CharSequence text, int fromChunk, int toChunk, int chunkLength ) {
+        if( fromChunk >= toChunk )
+            return null;
+        final int mid = ( fromChunk + toChunk ) >>> 1;
+        final int start = mid * chunkLength;
+        final int end = Math.min( text.length(), start + chunkLength );
+        final char[] chars = new char[CHUNK_SIZE];
+        for( int i = start; i < end; ++i ) {
+            chars[i - start] = text.charAt( i );
+        }
+        final Node node = new Node( chars, end - start );
+        node.left = build( text, fromChunk, mid, chunkLength );
+        node.right = build( text, mid + 1, toChunk, chunkLength );
+        node.update();
+        return node;
+    }
+
+    private static Node insert( Node node, int pos, char c ) {
+        if( node == null ) {
+            final char[] chars = new char[CHUNK_SIZE];
+            chars[0] = c;
+            return new Node( chars, 1 );
+        }
+        final int leftWeight = weight( node.left );
+        if( pos < leftWeight ) {
+            node.left = insert( node.left, pos, c );
+        } else if( pos <= leftWeight + node.length ) {
+            final int offset = pos - leftWeight;
+            if( node.length == CHUNK_SIZE ) {
+                // split the full chunk, the upper half becomes the successor node.
+                final int half = CHUNK_SIZE / 2;
+                final char[] upper = new char[CHUNK_SIZE];
+                System.arraycopy( node.chars, half, upper, 0, CHUNK_SIZE - half );
+                node.length = half;
+                final Node successor = new Node( upper, CHUNK_SIZE - half );
+                if( offset <= half ) {
+                    insertIntoChunk( node, offset, c );
+                } else {
+                    insertIntoChunk( successor, offset - half, c );
+                }
+                node.right = insertFirst( node.right, successor );
+            } else {
+                insertIntoChunk( node, offset, c );
+            }
+        } else {
+            node.right = insert( node.right, pos - leftWeight - node.length, c );
+        }
+        return balance( node );
+    }
+
+    private static void insertIntoChunk( Node node, int offset, char c ) {
+        System.arraycopy( node.chars, offset, node.chars, offset + 1, node.length - offset );
+        node.chars[offset] = c;
+        ++node.length;
+        node.update();
+    }
+
+    /**
+     * Insert a node in front of all nodes of the subtree.
+     */
+    private static Node insertFirst( Node node, Node first ) {
+        if( node == null )
+            return first;
+        node.left = insertFirst( node.left, first );
+        return balance( node );
+    }
+
+    private static Node delete( Node node, int pos ) {
+        final int leftWeight = weight( node.left );
+        if( pos < leftWeight ) {
+            node.left = delete( node.left, pos );
+        } else if( pos < leftWeight + node.length ) {
+            final int offset = pos - leftWeight;
+            System.arraycopy( node.chars, offset + 1, node.chars, offset, node.length - offset - 1 );
+            --node.length;
+            if( node.length == 0 ) {
+                // remove the empty chunk.
+                if( node.left == null )
+                    return node.right;
+                if( node.right == null )
+                    return node.left;
+                final Node successor = first( node.right );
+                successor.right = deleteFirst( node.right );
+                successor.left = node.left;
+                return balance( successor );
+            }
+        } else {
+            node.right = delete( node.right, pos - leftWeight - node.length );
+        }
+        return balance( node );
+    }
+
+    private static Node first( Node node ) {
+        while( node.left != null ) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static Node deleteFirst( Node node ) {
+        if( node.left == null )
+            return node.right;
+        node.left = deleteFirst( node.left );
+        return balance( node );
+    }
+
+    private static Node balance( Node node ) {
+        node.update();
+        final int diff = height( node.left ) - height( node.right );
+        if( diff > 1 ) {
+            if( height( node.left.left ) < height( node.left.right ) )
+                node.left = rotateLeft( node.left );
+            return rotateRight( node );
+        }
+        if( diff < -1 ) {
+            if( height( node.right.right ) < height( node.right.left ) )
+                node.right = rotateRight( node.right );
+            return rotateLeft( node );
+        }
+        return node;
+    }
+
+    private static Node rotateRight( Node node ) {
+        final Node pivot = node.left;
+        node.left = pivot.right;
+        node.update();
+        pivot.right = node;
+        pivot.update();
+        return pivot;
+    }
+
+    private static Node rotateLeft( Node node ) {
+        final Node pivot = node.right;
+        node.right = pivot.left;
+        node.update();
+        pivot.left = node;
+        pivot.update();
+        return pivot;
+    }
+
+    /**
+     * Append the characters in [start, end) of the subtree, positions are relative to the subtree.
+     */
+    private static void appendRange( Node node, int start, int end, StringBuilder builder ) {
+        if( node == null || start >= end )
+            return;
+        final int leftWeight = weight( node.left );
+        if( start < leftWeight )
+            appendRange( node.left, start, Math.min( end, leftWeight ), builder );
+        final int chunkStart = Math.max( start - leftWeight, 0 );
+        final int chunkEnd = Math.min( end - leftWeight, node.length );
+        if( chunkStart < chunkEnd )
+            builder.append( node.chars, chunkStart, chunkEnd - chunkStart );
+        final int rightStart = leftWeight + node.length;
+        if( end > rightStart )
+            appendRange( node.right, Math.max( start - rightStart, 0 ), end - rightStart, builder );
+    }
+
+    //-----------------------------------------------
+    // Serialization.
+    //-----------------------------------------------
+
+    private void writeObject( ObjectOutputStream out ) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject( toString() );
+    }
+
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        root = build( (String)in.readObject() );
+    }
+}
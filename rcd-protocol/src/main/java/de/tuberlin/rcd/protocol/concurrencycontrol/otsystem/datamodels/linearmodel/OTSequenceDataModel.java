@@ -0,0 +1,33 @@
+package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel;
+
+import java.util.List;
+
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+
+/**
+ * Data model with positional access to its elements. Implemented by all models
+ * that are changed by linear operations, used e.g. by the <code>OTLinearCursor</code>.
+ * @param <T> Type of the data elements stored in the data model.
+ */
+public interface OTSequenceDataModel<T> extends OTSystemDefinition.OTDataModel<T> {
+
+    /**
+     * Return the data element at the given position.
+     * @param pos The position of the element.
+     */
+    public abstract T getDataElement( int pos );
+
+    /**
+     * Return a copy of all data elements in their current order.
+     * @return A list that is not backed by the data model.
+     */
+    public abstract List<T> getDataElements();
+
+    /**
+     * Set the revision all concurrent operations are based on at least, e.g. the low-water
+     * mark of the server. Models that keep rollback deltas drop the deltas of operations
+     * based on it.
+     * @param stableRevision The stable revision, it never decreases.
+     */
+    public abstract void setStableRevision( int stableRevision );
+}
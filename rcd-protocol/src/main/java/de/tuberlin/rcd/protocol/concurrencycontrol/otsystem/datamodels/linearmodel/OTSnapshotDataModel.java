@@ -0,0 +1,400 @@
+package de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteRangeOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.DeleteSEOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertRangeOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.InsertSEOperation;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations.UpdateSEOperation;
+
+/**
+ * Data model that publishes a immutable snapshot of the elements of another sequence model.
+ * Every applied operation is applied to the model and to a persistent balanced tree of chunks,
+ * which shares all untouched chunks with the previous version. The new version is published by
+ * the applying thread, so readers of the snapshot take no lock and never wait for the integration.
+ * An operation copies O(log n) nodes and the chunks it changes.
+ * @param <T> Type of the data elements stored in the data model.
+ */
+public class OTSnapshotDataModel<T> implements OTSequenceDataModel<T> {
+
+    /**
+     * Constants.
+     */
+    private static final long serialVersionUID = 2871630911872359417L;
+
+    /** Maximal length of a chunk. Chunks are copied on every change, so they are kept short. */
+    private static final int CHUNK_SIZE = 64;
+
+    /**
+     * Immutable node of the tree, holds one chunk.
+     */
+    private static final class Node {
+
+        /**
+         * Constructor.
+         * @param left The left subtree.
+         * @param elements The chunk, it is not changed after construction.
+         * @param right The right subtree.
+         */
+        Node( Node left, Object[] elements, Node right ) {
+            this.left = left;
+            this.elements = elements;
+            this.right = right;
+            this.height = 1 + Math.max( height( left ), height( right ) );
+            this.weight = weight( left ) + elements.length + weight( right );
+        }
+
+        final Node left;
+
+        /** The elements of this chunk. */
+        final Object[] elements;
+
+        final Node right;
+
+        /** Height of the subtree. */
+        final int height;
+
+        /** The number of elements in the subtree. */
+        final int weight;
+    }
+
+    /**
+     * A version of the elements.
+     */
+    private static final class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+
+        Snapshot( Node root ) {
+            this.root = root;
+        }
+
+        /** Root of the tree, <code>null</code> for a empty list. */
+        final Node root;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get( int index ) {
+            if( index < 0 || index >= weight( root ) )
+                throw new IndexOutOfBoundsException( "index: " + index + ", size: " + weight( root ) );
+            Node node = root;
+            while( true ) {
+                final int leftWeight = weight( node.left );
+                if( index < leftWeight ) {
+                    node = node.left;
+                } else if( index < leftWeight + node.elements.length ) {
+                    return (T)node.elements[index - leftWeight];
+                } else {
+                    index -= leftWeight + node.elements.length;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return weight( root );
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param model The model that holds the elements, it must only be changed through this model.
+     */
+    public OTSnapshotDataModel( OTSequenceDataModel<T> model ) {
+        // sanity check.
+        if( model == null )
+            throw new NullPointerException();
+
+        this.model = model;
+        this.snapshot = new Snapshot<T>( build( model.getDataElements() ) );
+    }
+
+    /** The model that holds the elements. */
+    private final OTSequenceDataModel<T> model;
+
+    /** The latest published version of the elements. */
+    private transient volatile Snapshot<T> snapshot;
+
+    /**
+     * Return the immutable elements of the latest applied operation, without locking.
+     * @return The unmodifiable elements.
+     */
+    public List<T> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Apply a (linear) operation on the data model and publish the changed snapshot.
+     * @param op The operation to execute.
+     */
+    @Override
+    public synchronized void applyOperation( OTOperationDefinition.OTOperation<T> op ) {
+        model.applyOperation( op );
+        final Node root = apply( snapshot.root, op );
+        if( root != snapshot.root )
+            snapshot = new Snapshot<T>( root );
+    }
+
+    /**
+     * Fill the model at runtime with new content and publish the filled snapshot.
+     * @param model The content.
+     */
+    @Override
+    public synchronized void fillModel( OTSystemDefinition.OTDataModel<T> model ) {
+        this.model.fillModel( model );
+        snapshot = new Snapshot<T>( build( this.model.getDataElements() ) );
+    }
+
+    @Override
+    public void setStableRevision( int stableRevision ) {
+        model.setStableRevision( stableRevision );
+    }
+
+    @Override
+    public Object getData() {
+        return model.getData();
+    }
+
+    @Override
+    public T getDataElement( int pos ) {
+        return model.getDataElement( pos );
+    }
+
+    @Override
+    public List<T> getDataElements() {
+        return model.getDataElements();
+    }
+
+    @Override
+    public int size() {
+        return model.size();
+    }
+
+    @Override
+    public String toString() {
+        return model.toString();
+    }
+
+    //-----------------------------------------------
+    // Tree operations.
+    //-----------------------------------------------
+
+    private static int height( Node node ) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int weight( Node node ) {
+        return node == null ? 0 : node.weight;
+    }
+
+    /**
+     * Apply the structural change of a operation, entity updates change the shared elements in place.
+     * @return The root of the changed version.
+     */
+    private static <T> Node apply( Node root, OTOperationDefinition.OTOperation<T> op ) {
+        if( op instanceof InsertSEOperation ) {
+            final InsertSEOperation<T> insertOp = (InsertSEOperation<T>)op;
+            return insert( root, insertOp.position, insertOp.insertedElement );
+        } else if( op instanceof DeleteSEOperation ) {
+            return delete( root, ( (DeleteSEOperation<T>)op ).position, 1 );
+        } else if( op instanceof UpdateSEOperation ) {
+            final UpdateSEOperation<T> updateOp = (UpdateSEOperation<T>)op;
+            return set( root, updateOp.position, updateOp.updatedElement );
+        } else if( op instanceof InsertRangeOperation ) {
+            final InsertRangeOperation<T> insertOp = (InsertRangeOperation<T>)op;
+            final Node[] parts = split( root, insertOp.position );
+            return concat( concat( parts[0], build( insertOp.insertedElements ) ), parts[1] );
+        } else if( op instanceof DeleteRangeOperation ) {
+            final DeleteRangeOperation<T> deleteOp = (DeleteRangeOperation<T>)op;
+            return deleteOp.count > 0 ? delete( root, deleteOp.position, deleteOp.count ) : root;
+        } else if( op instanceof OTOperationDefinition.CompositeOperation ) {
+            for( OTOperationDefinition.OTOperation<T> component : ( (OTOperationDefinition.CompositeOperation<T>)op ).operations )
+                root = apply( root, component );
+        }
+        return root;
+    }
+
+    /**
+     * Build a balanced tree of full chunks.
+     */
+    private static Node build( List<?> elements ) {
+        final int chunkCount = ( elements.size() + CHUNK_SIZE - 1 ) / CHUNK_SIZE;
+        return build( elements, 0, chunkCount );
+    }
+
+    private static Node build( List<?> elements, int fromChunk, int toChunk ) {
+        if( fromChunk >= toChunk )
+            return null;
+        final int mid = ( fromChunk + toChunk ) >>> 1;
+        final int start = mid * CHUNK_SIZE;
+        final int end = Math.min( elements.size(), start + CHUNK_SIZE );
+        final Object[] chunk = new Object[end - start];
+        for( int i = start; i < end; ++i ) {
+            chunk[i - start] = elements.get( i );
+        }
+        return new Node( build( elements, fromChunk, mid ), chunk, build( elements, mid + 1, toChunk ) );
+    }
+
+    private static Node insert( Node node, int pos, Object element ) {
+        if( node == null )
+            return new Node( null, new Object[] { element }, null );
+        final int leftWeight = weight( node.left );
+        final int length = node.elements.length;
+        if( pos < leftWeight )
+            return balance( insert( node.left, pos, element ), node.elements, node.right );
+        if( pos > leftWeight + length )
+            return balance( node.left, node.elements, insert( node.right, pos - leftWeight - length, element ) );
+
+        final int offset = pos - leftWeight;
+        final Object[] chunk = new Object[length + 1];
+        System.arraycopy( node.elements, 0, chunk, 0, offset );
+        chunk[offset] = element;
+        System.arraycopy( node.elements, offset, chunk, offset + 1, length - offset );
+        if( chunk.length <= CHUNK_SIZE )
+            return new Node( node.left, chunk, node.right );
+        // split the full chunk, the upper half becomes the successor node.
+        final int half = chunk.length / 2;
+        final Object[] lower = new Object[half];
+        final Object[] upper = new Object[chunk.length - half];
+        System.arraycopy( chunk, 0, lower, 0, half );
+        System.arraycopy( chunk, half, upper, 0, upper.length );
+        return balance( node.left, lower, insertFirst( node.right, upper ) );
+    }
+
+    private static Node set( Node node, int pos, Object element ) {
+        final int leftWeight = weight( node.left );
+        if( pos < leftWeight )
+            return new Node( set( node.left, pos, element ), node.elements, node.right );
+        if( pos >= leftWeight + node.elements.length )
+            return new Node( node.left, node.elements, set( node.right, pos - leftWeight - node.elements.length, element ) );
+        final Object[] chunk = node.elements.clone();
+        chunk[pos - leftWeight] = element;
+        return new Node( node.left, chunk, node.right );
+    }
+
+    /**
+     * Delete a range, a range inside of one chunk only copies that chunk.
+     */
+    private static Node delete( Node node, int pos, int count ) {
+        final int leftWeight = weight( node.left );
+        final int length = node.elements.length;
+        if( pos + count <= leftWeight )
+            return balance( delete( node.left, pos, count ), node.elements, node.right );
+        if( pos >= leftWeight + length )
+            return balance( node.left, node.elements, delete( node.right, pos - leftWeight - length, count ) );
+        final int offset = pos - leftWeight;
+        if( offset >= 0 && offset + count <= length ) {
+            if( count == length )
+                return concat( node.left, node.right );
+            final Object[] chunk = new Object[length - count];
+            System.arraycopy( node.elements, 0, chunk, 0, offset );
+            System.arraycopy( node.elements, offset + count, chunk, offset, length - offset - count );
+            return new Node( node.left, chunk, node.right );
+        }
+        // the range spans several chunks.
+        final Node[] head = split( node, pos );
+        final Node[] tail = split( head[1], count );
+        return concat( head[0], tail[1] );
+    }
+
+    /**
+     * Insert a chunk in front of all chunks of the subtree.
+     */
+    private static Node insertFirst( Node node, Object[] chunk ) {
+        if( node == null )
+            return new Node( null, chunk, null );
+        return balance( insertFirst( node.left, chunk ), node.elements, node.right );
+    }
+
+    /**
+     * Split the subtree in the first <code>pos</code> elements and the rest.
+     * @return The two subtrees.
+     */
+    private static Node[] split( Node node, int pos ) {
+        if( node == null )
+            return new Node[] { null, null };
+        final int leftWeight = weight( node.left );
+        final int length = node.elements.length;
+        if( pos <= leftWeight ) {
+            final Node[] parts = split( node.left, pos );
+            return new Node[] { parts[0], join( parts[1], node.elements, node.right ) };
+        }
+        if( pos >= leftWeight + length ) {
+            final Node[] parts = split( node.right, pos - leftWeight - length );
+            return new Node[] { join( node.left, node.elements, parts[0] ), parts[1] };
+        }
+        final int offset = pos - leftWeight;
+        final Object[] lower = new Object[offset];
+        final Object[] upper = new Object[length - offset];
+        System.arraycopy( node.elements, 0, lower, 0, offset );
+        System.arraycopy( node.elements, offset, upper, 0, upper.length );
+        return new Node[] { join( node.left, lower, null ), join( null, upper, node.right ) };
+    }
+
+    /**
+     * Concatenate two subtrees.
+     */
+    private static Node concat( Node left, Node right ) {
+        if( left == null )
+            return right;
+        if( right == null )
+            return left;
+        Node first = right;
+        while( first.left != null ) {
+            first = first.left;
+        }
+        return join( left, first.elements, deleteFirst( right ) );
+    }
+
+    private static Node deleteFirst( Node node ) {
+        if( node.left == null )
+            return node.right;
+        return balance( deleteFirst( node.left ), node.elements, node.right );
+    }
+
+    /**
+     * Join two subtrees of any height with a chunk in between.
+     */
+    private static Node join( Node left, Object[] chunk, Node right ) {
+        if( height( left ) > height( right ) + 1 )
+            return balance( left.left, left.elements, join( left.right, chunk, right ) );
+        if( height( right ) > height( left ) + 1 )
+            return balance( join( left, chunk, right.left ), right.elements, right.right );
+        return new Node( left, chunk, right );
+    }
+
+    /**
+     * Create a node and restore the balance, the heights of the subtrees differ by two at most.
+     */
+    private static Node balance( Node left, Object[] chunk, Node right ) {
+        final int diff = height( left ) - height( right );
+        if( diff > 1 ) {
+            if( height( left.left ) >= height( left.right ) )
+                return new Node( left.left, left.elements, new Node( left.right, chunk, right ) );
+            return new Node( new Node( left.left, left.elements, left.right.left ), left.right.elements,
+                    new Node( left.right.right, chunk, right ) );
+        }
+        if( diff < -1 ) {
+            if( height( right.right ) >= height( right.left ) )
+                return new Node( new Node( left, chunk, right.left ), right.elements, right.right );
+            return new Node( new Node( left, chunk, right.left.left ), right.left.elements,
+                    new Node( right.left.right, right.elements, right.right ) );
+        }
+        return new Node( left, chunk, right );
+    }
+
+    //-----------------------------------------------
+    // Serialization.
+    //-----------------------------------------------
+
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        snapshot = new Snapshot<T>( build( model.getDataElements() ) );
+    }
+}
@@ -19,6 +19,12 @@ public final class MessageFormat {
         public static final String MSG_ATTR_FILL_DATA = "fill";
 
         public static final String MSG_ATTR_OPERATION = "operation";
+
+        public static final String MSG_ATTR_REVISION = "revision";
+
+        public static final String MSG_ATTR_CLIENT = "client";
+
+        public static final String MSG_ATTR_PAYLOAD = "payload";
     }
 
     /**
@@ -38,6 +44,18 @@ public final class MessageFormat {
 
         MSG_TYPE_FILL_REPLICATED_TYPE,
 
-        MSG_TYPE_ERROR
+        MSG_TYPE_ERROR,
+
+        MSG_TYPE_ACKNOWLEDGE_REPLICATED_TYPE,
+
+        MSG_TYPE_FILL_ACKNOWLEDGE_REPLICATED_TYPE,
+
+        MSG_TYPE_HANDOVER_REPLICATED_TYPE,
+
+        MSG_TYPE_CLUSTER_FORWARD,
+
+        MSG_TYPE_CLUSTER_DELIVER,
+
+        MSG_TYPE_CLUSTER_CLIENT_REMOVED
     }
 }
\ No newline at end of file
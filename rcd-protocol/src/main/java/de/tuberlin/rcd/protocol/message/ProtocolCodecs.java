@@ -0,0 +1,285 @@
+package de.tuberlin.rcd.protocol.message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import de.tuberlin.rcd.network.codec.BinaryMessageCodec;
+import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.SnapshotFillData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.jupiter.JupiterOperationMetaData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveOperationMetaData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
+
+/**
+ * Compact binary encodings of the operations and their metadata. Positions are written as
+ * varints, the creator UID as two longs and the vector clock as varint components. Must be
+ * installed on client and server before connections are established, the registration order
+ * defines the ids of the shared names.
+ */
+public final class ProtocolCodecs {
+
+    // prohibit instantiation.
+    private ProtocolCodecs() {}
+
+    /** Flag that prevents multiple installations. */
+    private static boolean installed = false;
+
+    /**
+     * Register the value codecs at the <code>BinaryMessageCodec</code>.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static synchronized void install() {
+        if( installed )
+            return;
+        installed = true;
+
+        // parameter keys and enums of every message.
+        BinaryMessageCodec.registerSharedName( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE );
+        BinaryMessageCodec.registerSharedName( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME );
+        BinaryMessageCodec.registerSharedName( MessageFormat.MessageAttribute.MSG_ATTR_CLASS_NAME );
+        BinaryMessageCodec.registerSharedName( MessageFormat.MessageAttribute.MSG_ATTR_FILL_DATA );
+        BinaryMessageCodec.registerSharedName( MessageFormat.MessageAttribute.MSG_ATTR_OPERATION );
+        BinaryMessageCodec.registerSharedName( MessageFormat.MessageAttribute.MSG_ATTR_REVISION );
+        BinaryMessageCodec.registerSharedName( MessageFormat.MessageType.class.getName() );
+
+        BinaryMessageCodec.registerValueCodec( OTOperationDefinition.NoOperation.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                out.writeValue( ( (OTOperationDefinition.NoOperation)value ).getMetaData() );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final OTOperationDefinition.NoOperation op = new OTOperationDefinition.NoOperation();
+                op.setMetaData( (OTOperationDefinition.OTOperationMetaData)in.readValue() );
+                return op;
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( OTLinearOperations.InsertSEOperation.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final OTLinearOperations.InsertSEOperation op = (OTLinearOperations.InsertSEOperation)value;
+                out.writeVarInt( op.position );
+                out.writeValue( op.insertedElement );
+                out.writeValue( op.getMetaData() );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final int position = in.readVarInt();
+                final OTLinearOperations.InsertSEOperation op = new OTLinearOperations.InsertSEOperation( position, in.readValue() );
+                op.setMetaData( (OTOperationDefinition.OTOperationMetaData)in.readValue() );
+                return op;
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( OTLinearOperations.DeleteSEOperation.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final OTLinearOperations.DeleteSEOperation op = (OTLinearOperations.DeleteSEOperation)value;
+                out.writeVarInt( op.position );
+                out.writeValue( op.getMetaData() );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final OTLinearOperations.DeleteSEOperation op = new OTLinearOperations.DeleteSEOperation( in.readVarInt() );
+                op.setMetaData( (OTOperationDefinition.OTOperationMetaData)in.readValue() );
+                return op;
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( OTLinearOperations.UpdateSEOperation.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final OTLinearOperations.UpdateSEOperation op = (OTLinearOperations.UpdateSEOperation)value;
+                out.writeVarInt( op.position );
+                out.writeValue( op.updatedElement );
+                out.writeValue( op.getMetaData() );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final int position = in.readVarInt();
+                final OTLinearOperations.UpdateSEOperation op = new OTLinearOperations.UpdateSEOperation( position, in.readValue() );
+                op.setMetaData( (OTOperationDefinition.OTOperationMetaData)in.readValue() );
+                return op;
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( OTLinearOperations.UpdateEntityOperation.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final OTLinearOperations.UpdateEntityOperation<?> op = (OTLinearOperations.UpdateEntityOperation<?>)value;
+                out.writeVarInt( op.position );
+                out.writeClass( op.entityClazz );
+                out.writeVarInt( op.entityDelta.size() );
+                for( Map.Entry<String,Object> entry : op.entityDelta.entrySet() ) {
+                    out.writeName( entry.getKey() );
+                    out.writeValue( entry.getValue() );
+                }
+                out.writeValue( op.getMetaData() );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final int position = in.readVarInt();
+                final Class entityClazz = in.readClass();
+                final int size = in.readCount();
+                final Map<String,Object> entityDelta = new HashMap<String,Object>();
+                for( int i = 0; i < size; ++i ) {
+                    final String property = in.readName();
+                    entityDelta.put( property, in.readValue() );
+                }
+                final OTLinearOperations.UpdateEntityOperation op =
+                        new OTLinearOperations.UpdateEntityOperation( position, entityClazz, entityDelta );
+                op.setMetaData( (OTOperationDefinition.OTOperationMetaData)in.readValue() );
+                return op;
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( OTLinearOperations.InsertRangeOperation.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final OTLinearOperations.InsertRangeOperation<?> op = (OTLinearOperations.InsertRangeOperation<?>)value;
+                out.writeVarInt( op.position );
+                out.writeVarInt( op.insertedElements.size() );
+                for( Object element : op.insertedElements )
+                    out.writeValue( element );
+                out.writeValue( op.getMetaData() );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final int position = in.readVarInt();
+                final int size = in.readCount();
+                final List<Object> insertedElements = new ArrayList<Object>( size );
+                for( int i = 0; i < size; ++i )
+                    insertedElements.add( in.readValue() );
+                final OTLinearOperations.InsertRangeOperation op =
+                        new OTLinearOperations.InsertRangeOperation( position, insertedElements );
+                op.setMetaData( (OTOperationDefinition.OTOperationMetaData)in.readValue() );
+                return op;
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( OTLinearOperations.DeleteRangeOperation.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final OTLinearOperations.DeleteRangeOperation op = (OTLinearOperations.DeleteRangeOperation)value;
+                out.writeVarInt( op.position );
+                out.writeVarInt( op.count );
+                out.writeValue( op.getMetaData() );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final int position = in.readVarInt();
+                final OTLinearOperations.DeleteRangeOperation op =
+                        new OTLinearOperations.DeleteRangeOperation( position, in.readVarInt() );
+                op.setMetaData( (OTOperationDefinition.OTOperationMetaData)in.readValue() );
+                return op;
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( OTOperationDefinition.CompositeOperation.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final OTOperationDefinition.CompositeOperation<?> op = (OTOperationDefinition.CompositeOperation<?>)value;
+                out.writeVarInt( op.operations.size() );
+                for( Object component : op.operations )
+                    out.writeValue( component );
+                out.writeValue( op.getMetaData() );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final int size = in.readCount();
+                final List<OTOperationDefinition.OTOperation> operations = new ArrayList<OTOperationDefinition.OTOperation>( size );
+                for( int i = 0; i < size; ++i )
+                    operations.add( (OTOperationDefinition.OTOperation)in.readValue() );
+                final OTOperationDefinition.CompositeOperation op = new OTOperationDefinition.CompositeOperation( operations );
+                op.setMetaData( (OTOperationDefinition.OTOperationMetaData)in.readValue() );
+                return op;
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( WaveOperationMetaData.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final WaveOperationMetaData metaData = (WaveOperationMetaData)value;
+                out.writeUUID( metaData.creator );
+                writeVectorClock( metaData.state, out );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final UUID creator = in.readUUID();
+                return new WaveOperationMetaData( creator, readVectorClock( in ) );
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( JupiterOperationMetaData.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final JupiterOperationMetaData metaData = (JupiterOperationMetaData)value;
+                out.writeUUID( metaData.creator );
+                writeVectorClock( metaData.state, out );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final UUID creator = in.readUUID();
+                return new JupiterOperationMetaData( creator, readVectorClock( in ) );
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( VectorClock.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                writeVectorClock( (VectorClock)value, out );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                return readVectorClock( in );
+            }
+        } );
+
+        BinaryMessageCodec.registerValueCodec( SnapshotFillData.class, new BinaryMessageCodec.ValueCodec() {
+            @Override
+            public void write( Object value, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+                final SnapshotFillData<?> fillData = (SnapshotFillData<?>)value;
+                out.writeVarInt( fillData.elements.size() );
+                for( Object element : fillData.elements )
+                    out.writeValue( element );
+                out.writeVarInt( fillData.tail.size() );
+                for( Object op : fillData.tail )
+                    out.writeValue( op );
+                writeVectorClock( fillData.state, out );
+            }
+            @Override
+            public Object read( BinaryMessageCodec.BinaryInput in ) throws IOException, ClassNotFoundException {
+                final int size = in.readCount();
+                final List<Object> elements = new ArrayList<Object>( size );
+                for( int i = 0; i < size; ++i )
+                    elements.add( in.readValue() );
+                final int tailSize = in.readCount();
+                final List<OTOperationDefinition.OTOperation<Object>> tail = new ArrayList<OTOperationDefinition.OTOperation<Object>>( tailSize );
+                for( int i = 0; i < tailSize; ++i )
+                    tail.add( (OTOperationDefinition.OTOperation<Object>)in.readValue() );
+                return new SnapshotFillData<Object>( elements, tail, readVectorClock( in ) );
+            }
+        } );
+    }
+
+    private static void writeVectorClock( VectorClock state, BinaryMessageCodec.BinaryOutput out ) throws IOException {
+        out.writeVarInt( state.size() );
+        for( int i = 0; i < state.size(); ++i ) {
+            out.writeVarInt( state.get( i ) );
+        }
+    }
+
+    private static VectorClock readVectorClock( BinaryMessageCodec.BinaryInput in ) throws IOException {
+        final VectorClock state = new VectorClock( in.readCount() );
+        for( int i = 0; i < state.size(); ++i ) {
+            state.set( i, in.readVarInt() );
+        }
+        return state;
+    }
+}
@@ -5,7 +5,7 @@ import java.io.Serializable;
 /**
  * The std class of transmitted fill data. If a client registers itself by a replicated type,
  * the client-side instance of the replicated type must be filled with the state information from
- * the server (they must become initially synchronous in state). The framework supports two types
+ * the server (they must become initially synchronous in state). The framework supports three types
  * of fill data:
  *      (1) The state based fill data. This is the serialized data model state
  *          that is transmitted to the server.
@@ -13,6 +13,9 @@ import java.io.Serializable;
  *          and there applied to the local replicated instance of that type. The advantage of the operation
  *          based style is that it allows a replay function. The disadvantage is the increased size
  *          compared to the state based fill data.
+ *      (3) The snapshot based fill data (default). The plain data elements at a snapshot revision and
+ *          the operations after that revision. The snapshot is shared by subsequent fills, so the
+ *          server neither copies the model nor replays the complete history for every joining client.
  */
 public abstract class AbstractFillData implements Serializable {
 
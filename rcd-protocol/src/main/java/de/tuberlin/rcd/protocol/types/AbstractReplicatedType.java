@@ -2,6 +2,7 @@ package de.tuberlin.rcd.protocol.types;
 
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
@@ -25,6 +26,12 @@ public abstract class AbstractReplicatedType<T> extends EventDispatcher implemen
      */
      private static final Logger LOGGER = Logger.getLogger( AbstractReplicatedType.class );
 
+    /**
+     * Maximal number of messages a drain task processes before the type is rescheduled,
+     * so that types with a long queue do not starve the others on a shared executor.
+     */
+    public static final int MAILBOX_BATCH_SIZE = 64;
+
     /**
      *
      */
@@ -50,7 +57,6 @@ public abstract class AbstractReplicatedType<T> extends EventDispatcher implemen
         final AtomicBoolean finished = new AtomicBoolean( false );
 
         @Override
-        @SuppressWarnings("unchecked")
         public void run() {
             while( running.get() ) {
                 try {
@@ -73,19 +79,7 @@ public abstract class AbstractReplicatedType<T> extends EventDispatcher implemen
                     //------------------------ END EXPERIMENTAL ------------------------
 
                     final Message msg = receiverQueue.take();
-                    if( msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE )
-                            == MessageFormat.MessageType.MSG_TYPE_OPERATION_FOR_REPLICATED_TYPE  ) {
-                        final OTOperationDefinition.OTOperation<T> remoteOp =
-                                (OTOperationDefinition.OTOperation<T>) msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_OPERATION );
-
-                        // the lock is used for the fill-phase after connection and local locking.
-                        lockRemoteOpProcessing();
-                            processRemoteOperation( msg, remoteOp );
-                        unlockRemoteOpProcessing();
-
-                    } else {
-                        throw new IllegalStateException();
-                    }
+                    processMessage( msg );
                 } catch( InterruptedException e ) {
                     // Do nothing.
                 }
@@ -94,6 +88,110 @@ public abstract class AbstractReplicatedType<T> extends EventDispatcher implemen
         }
     }
 
+    /**
+     * Processing code for the mailbox mode. The type is scheduled on the executor only if it
+     * has received messages. At most one drain task per type is scheduled at a time, so the
+     * messages are processed strictly in order of their reception.
+     */
+    private class MailboxCode implements Runnable {
+
+        /** This flag indicates if a drain task is scheduled or running. */
+        final AtomicBoolean scheduled = new AtomicBoolean( false );
+
+        @Override
+        public void run() {
+            try {
+                int processed = 0;
+                Message msg;
+                while( processingCode.running.get() && processed < MAILBOX_BATCH_SIZE
+                        && ( msg = receiverQueue.poll() ) != null ) {
+                    try {
+                        processMessage( msg );
+                    } catch( RuntimeException e ) {
+                        // the type stays schedulable for its next messages.
+                        LOGGER.error( "could not process message [name = " + name + "]", e );
+                    }
+                    ++processed;
+                }
+            } finally {
+                scheduled.set( false );
+            }
+            // a message enqueued after the last poll must not be left behind.
+            if( !receiverQueue.isEmpty() )
+                schedule();
+        }
+
+        /**
+         * Submit a drain task if none is scheduled.
+         */
+        void schedule() {
+            if( processingCode.running.get() && scheduled.compareAndSet( false, true ) ) {
+                try {
+                    executor.execute( this );
+                } catch( RuntimeException e ) {
+                    scheduled.set( false );
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatch a received message to the processing methods.
+     * @param msg The received message.
+     */
+    @SuppressWarnings("unchecked")
+    private void processMessage( Message msg ) {
+        if( msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE )
+                == MessageFormat.MessageType.MSG_TYPE_OPERATION_FOR_REPLICATED_TYPE  ) {
+            final OTOperationDefinition.OTOperation<T> remoteOp =
+                    (OTOperationDefinition.OTOperation<T>) msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_OPERATION );
+
+            // the lock is used for the fill-phase after connection and local locking.
+            lockRemoteOpProcessing();
+            try {
+                processRemoteOperation( msg, remoteOp );
+            } finally {
+                unlockRemoteOpProcessing();
+            }
+
+        } else if( msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE )
+                == MessageFormat.MessageType.MSG_TYPE_ACKNOWLEDGE_REPLICATED_TYPE ) {
+            final int revision = (Integer) msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_REVISION );
+
+            lockRemoteOpProcessing();
+            try {
+                processAcknowledge( msg.getSourceUID(), revision );
+            } finally {
+                unlockRemoteOpProcessing();
+            }
+
+        } else if( msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE )
+                == MessageFormat.MessageType.MSG_TYPE_FILL_ACKNOWLEDGE_REPLICATED_TYPE ) {
+            final int revision = (Integer) msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_REVISION );
+
+            lockRemoteOpProcessing();
+            try {
+                processFillAcknowledge( msg.getSourceUID(), revision );
+            } finally {
+                unlockRemoteOpProcessing();
+            }
+
+        } else if( msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE )
+                == MessageFormat.MessageType.MSG_TYPE_HANDOVER_REPLICATED_TYPE ) {
+
+            lockRemoteOpProcessing();
+            try {
+                processHandover();
+            } finally {
+                unlockRemoteOpProcessing();
+            }
+
+        } else {
+            throw new IllegalStateException();
+        }
+    }
+
     //------------------------ BEGIN EXPERIMENTAL ------------------------
     /*
     protected boolean singleStepMode = false;
@@ -146,6 +244,12 @@ public abstract class AbstractReplicatedType<T> extends EventDispatcher implemen
     /** Code for integration thread. */
     protected final ProcessingCode processingCode;
 
+    /** Code for the mailbox mode. */
+    private final MailboxCode mailboxCode = new MailboxCode();
+
+    /** The executor of the mailbox mode, or null if the type runs its own processing thread. */
+    private volatile Executor executor = null;
+
     /** Lock the remote processing thread.
         The lock is used for the fill-phase after connection
         and local remote operation locking. */
@@ -174,6 +278,23 @@ public abstract class AbstractReplicatedType<T> extends EventDispatcher implemen
             throw new NullPointerException();
 
         receiverQueue.add( msg );
+        if( executor != null )
+            mailboxCode.schedule();
+    }
+
+    /**
+     * Process the received messages on the given executor instead of a dedicated thread.
+     * Must be called before <code>startProcessing</code>.
+     * @param executor The executor, e.g. shared by all types of a server.
+     */
+    public void setExecutor( Executor executor ) {
+        // sanity check.
+        if( executor == null )
+            throw new NullPointerException();
+        if( processingCode.running.get() )
+            throw new IllegalStateException();
+
+        this.executor = executor;
     }
 
     /**
@@ -186,7 +307,13 @@ public abstract class AbstractReplicatedType<T> extends EventDispatcher implemen
             throw new IllegalStateException();
 
         processingCode.running.set( true );
-        processingThread.start();
+        if( executor != null ) {
+            // messages may have been received before the start.
+            if( !receiverQueue.isEmpty() )
+                mailboxCode.schedule();
+        } else {
+            processingThread.start();
+        }
         LOGGER.info( "replicated type is started [name = " + name + "]" );
     }
 
@@ -200,6 +327,11 @@ public abstract class AbstractReplicatedType<T> extends EventDispatcher implemen
             throw new IllegalStateException();
 
         processingCode.running.set( false );
+        if( executor != null ) {
+            // a running drain task stops after the current message.
+            LOGGER.info( "replicated type is terminated [name = " + name + "]" );
+            return;
+        }
         while( !processingCode.finished.get() ) {
             if( processingThread.getState() == Thread.State.WAITING ||
                 processingThread.getState() == Thread.State.BLOCKED ) {
@@ -223,6 +355,32 @@ public abstract class AbstractReplicatedType<T> extends EventDispatcher implemen
         lock.unlock();
     }
 
+    /**
+     * Process the acknowledged revision of a client. Only the server receives acknowledges.
+     * @param clientUID The UID of the acknowledging client.
+     * @param revision The number of server operations the client has integrated.
+     */
+    protected void processAcknowledge( UUID clientUID, int revision ) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Process the acknowledge of a client that has applied its fill data. Only the server receives acknowledges.
+     * @param clientUID The UID of the filled client.
+     * @param revision The revision the client was filled with.
+     */
+    protected void processFillAcknowledge( UUID clientUID, int revision ) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Process the handover of the type to another server. All messages received before
+     * the handover are already processed. Only the server hands types over.
+     */
+    protected void processHandover() {
+        throw new IllegalStateException();
+    }
+
     public abstract OTSystemDefinition.OTAlgorithmBase<T> getAlgorithmBase();
 
     public abstract OTSystemDefinition.OTOperationGenerator<T> getOperationGenerator();
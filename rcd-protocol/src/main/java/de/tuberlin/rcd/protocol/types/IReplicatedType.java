@@ -3,6 +3,7 @@ package de.tuberlin.rcd.protocol.types;
 
 import de.tuberlin.rcd.network.Message;
 import de.tuberlin.rcd.network.common.Event;
+import de.tuberlin.rcd.network.common.EventTypes;
 import de.tuberlin.rcd.network.common.IEventDispatcher;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationHistory;
@@ -38,12 +39,32 @@ public interface IReplicatedType<T> extends IEventDispatcher {
 
         public static final String RS_FILL = "rs_fill";
 
+        /**
+         * Pre-resolved event type ids (see <code>EventTypes</code>).
+         */
+        public static final int RS_REMOTE_UPDATE_ID = EventTypes.register( RS_REMOTE_UPDATE );
+
+        public static final int RS_LOCAL_UPDATE_ID = EventTypes.register( RS_LOCAL_UPDATE );
+
+        public static final int RS_ACKNOWLEDGE_ID = EventTypes.register( RS_ACKNOWLEDGE );
+
+        public static final int RS_UPDATE_ID = EventTypes.register( RS_UPDATE );
+
+        public static final int RS_FILL_ID = EventTypes.register( RS_FILL );
+
         /**
          * Constructor.
          */
         public ReplicatedTypeEvent( String type, Object data ) {
             super( type, data );
         }
+
+        /**
+         * Constructor.
+         */
+        public ReplicatedTypeEvent( int typeId, Object data ) {
+            super( typeId, data );
+        }
     }
 
     /**
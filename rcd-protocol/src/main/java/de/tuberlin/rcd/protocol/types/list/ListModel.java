@@ -0,0 +1,32 @@
+package de.tuberlin.rcd.protocol.types.list;
+
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTChunkedListDataModel;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearDataModel;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTSequenceDataModel;
+
+/**
+ * The data model of a replicated list. Every replica chooses its model on its own,
+ * all models apply the same linear operations.
+ */
+public enum ListModel {
+
+    /** Array list, inserts and deletes shift the following elements. */
+    LINEAR,
+
+    /** Balanced tree of chunks, positional access, insert and delete take O(log n). */
+    CHUNKED;
+
+    /**
+     * Create a empty data model.
+     * @param typeInfo Type information of the stored data elements.
+     * @return The new data model.
+     */
+    public <T> OTSequenceDataModel<T> createDataModel( Class<T> typeInfo ) {
+        switch( this ) {
+            case CHUNKED:
+                return new OTChunkedListDataModel<T>( typeInfo );
+            default:
+                return new OTLinearDataModel<T>( typeInfo );
+        }
+    }
+}
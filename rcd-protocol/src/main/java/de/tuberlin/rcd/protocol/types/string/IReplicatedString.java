@@ -23,4 +23,18 @@ public interface IReplicatedString extends CharSequence, IEventDispatcher {
      * @param pos The position to delete.
      */
     public abstract void deleteChar( int pos );
-}
\ No newline at end of file
+
+    /**
+     * Insert a sequence of characters at a given position.
+     * @param pos The position to insert.
+     * @param text The characters to insert.
+     */
+    public abstract void insertString( int pos, CharSequence text );
+
+    /**
+     * Delete a sequence of characters starting at a given position.
+     * @param pos The position of the first deleted character.
+     * @param count The number of characters to delete.
+     */
+    public abstract void deleteString( int pos, int count );
+}
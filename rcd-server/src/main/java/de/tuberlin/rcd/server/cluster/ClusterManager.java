@@ -0,0 +1,539 @@
+package de.tuberlin.rcd.server.cluster;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import de.tuberlin.rcd.network.Message;
+import de.tuberlin.rcd.network.common.Event;
+import de.tuberlin.rcd.network.common.IEventListener;
+import de.tuberlin.rcd.protocol.message.MessageFormat;
+import de.tuberlin.rcd.protocol.runtimedefinition.IMessageCommand;
+import de.tuberlin.rcd.protocol.types.IReplicatedType;
+import de.tuberlin.rcd.server.runtime.ServerConnectionManager;
+import de.tuberlin.rcd.server.runtime.ServerConnectionManagerException;
+import de.tuberlin.rcd.server.runtime.ServerDataManager;
+import de.tuberlin.rcd.server.types.AbstractServerReplicatedType;
+
+/**
+ * Partitions the replicated types across the nodes of a cluster. Every type is owned by exactly
+ * one node, chosen by rendezvous hashing of the type name over the members. Clients may connect
+ * to any node: the messages for types of other nodes are forwarded over a connection between the
+ * nodes, the owner reaches the client over the same connection. If the membership changes, the
+ * types that get a new owner are handed over with a copy of their data model and their history tail.
+ *
+ * All members must use the same type name mappings and the membership must be changed on every
+ * node. Only types synchronized by the <code>WaveServerAlgorithm</code> can be handed over, other
+ * types stay with their node.
+ */
+public final class ClusterManager {
+
+    /**
+     * Log4J.
+     */
+    private static final Logger LOGGER = Logger.getLogger( ClusterManager.class );
+
+    /** Number of locks that serialize the routing and the handover of the types. */
+    public static final int LOCK_STRIPES = 64;
+
+    /**
+     * Handle of a client that is connected to another node. The messages for the
+     * client are wrapped and sent over the connection to that node.
+     */
+    private static final class RoutedHandle extends ServerConnectionManager.ConnectionHandle {
+
+        /**
+         * Constructor.
+         * @param clientUID The UID of the client.
+         * @param link The handle of the connection to the node of the client.
+         */
+        RoutedHandle( UUID clientUID, ServerConnectionManager.ConnectionHandle link ) {
+            super( link.connection, link.transceiver, link.peer );
+            this.clientUID = clientUID;
+        }
+
+        /** The UID of the client. */
+        private final UUID clientUID;
+
+        @Override
+        public void send( Message msg ) {
+            sender.enqueueMessage( envelope( connection.getUID(),
+                    MessageFormat.MessageType.MSG_TYPE_CLUSTER_DELIVER, clientUID, msg ) );
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param connectionManager The connection manager of the server.
+     * @param dataManager The data manager of the server.
+     */
+    public ClusterManager( ServerConnectionManager connectionManager, ServerDataManager dataManager ) {
+        // sanity check.
+        if( connectionManager == null )
+            throw new NullPointerException();
+        if( dataManager == null )
+            throw new NullPointerException();
+        if( connectionManager.configuration.getLocalNode() == null )
+            throw new IllegalStateException( "the server is not configured as cluster node" );
+        if( connectionManager.configuration.getClusterSecret() == null )
+            throw new IllegalStateException( "the cluster secret is not configured" );
+
+        this.connectionManager = connectionManager;
+        this.dataManager = dataManager;
+        this.localNode = connectionManager.configuration.getLocalNode();
+        this.members = connectionManager.configuration.getClusterMembers();
+        this.stripes = new ReadWriteLock[LOCK_STRIPES];
+        for( int i = 0; i < stripes.length; ++i )
+            stripes[i] = new ReentrantReadWriteLock();
+        registerByConnectionManager();
+    }
+
+    /** Reference to the connection manager. */
+    private final ServerConnectionManager connectionManager;
+
+    /** Reference to the data manager. */
+    private final ServerDataManager dataManager;
+
+    /** The node of this server. */
+    private final ClusterNode localNode;
+
+    /** The current members of the cluster. */
+    private volatile List<ClusterNode> members;
+
+    /** The members before the last change, their types may not be handed over yet. */
+    private volatile List<ClusterNode> previousMembers = null;
+
+    /** Serialize the routing of the messages (read) and the handover (write) of a type. */
+    private final ReadWriteLock[] stripes;
+
+    /** The UIDs of the connections this node opened to other nodes, by node name. */
+    private final Map<String,UUID> links = new HashMap<String,UUID>();
+
+    /** The connections the messages of a client were forwarded over. */
+    private final ConcurrentMap<UUID,Set<UUID>> forwards = new ConcurrentHashMap<UUID,Set<UUID>>();
+
+    /** The commands that process the messages of the types owned by this node. */
+    private final Map<MessageFormat.MessageType,IMessageCommand> localCommands
+            = new EnumMap<MessageFormat.MessageType,IMessageCommand>( MessageFormat.MessageType.class );
+
+    /**
+     * Install listeners for ServerConnectionManager events.
+     */
+    private void registerByConnectionManager() {
+        connectionManager.addEventListener( ServerConnectionManager.ConnectionChangedEvent.EVENT_TYPE_CLIENT_REMOVED,
+            new IEventListener() {
+                @Override
+                public void handleEvent( Event e ) {
+                    final UUID uid = (UUID)e.data;
+                    // the clients behind a closed connection to another node are gone.
+                    synchronized( links ) {
+                        links.values().remove( uid );
+                    }
+                    for( UUID clientUID : connectionManager.getRoutedClients( uid ) ) {
+                        final ServerConnectionManager.ConnectionHandle handle = connectionManager.getConnectionHandle( clientUID );
+                        if( handle != null )
+                            connectionManager.removeRoute( clientUID, handle );
+                    }
+                    // the nodes the messages of the client were forwarded to deregister it too.
+                    final Set<UUID> linkUIDs = forwards.remove( uid );
+                    if( linkUIDs != null ) {
+                        for( UUID linkUID : linkUIDs ) {
+                            final ServerConnectionManager.ConnectionHandle link = connectionManager.getConnectionHandle( linkUID );
+                            if( link != null )
+                                link.send( envelope( linkUID, MessageFormat.MessageType.MSG_TYPE_CLUSTER_CLIENT_REMOVED, uid, null ) );
+                        }
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Wrap the command of a message type that addresses a replicated type. The command is
+     * executed if this node owns the type, else the message is forwarded to the owner.
+     * @param msgType The message type.
+     * @param command The command that processes the message on the owner.
+     * @return The routing command.
+     */
+    public IMessageCommand route( MessageFormat.MessageType msgType, final IMessageCommand command ) {
+        // sanity check.
+        if( msgType == null )
+            throw new NullPointerException();
+        if( command == null )
+            throw new NullPointerException();
+
+        localCommands.put( msgType, command );
+        return new IMessageCommand() {
+            @Override
+            public void execute( Message msg ) {
+                routeMessage( msg, command, null );
+            }
+        };
+    }
+
+    /**
+     * Return the commands of the messages between the nodes.
+     * @return The commands by message type.
+     */
+    public Map<MessageFormat.MessageType,IMessageCommand> getCommands() {
+        final Map<MessageFormat.MessageType,IMessageCommand> commands
+                = new EnumMap<MessageFormat.MessageType,IMessageCommand>( MessageFormat.MessageType.class );
+        commands.put( MessageFormat.MessageType.MSG_TYPE_CLUSTER_FORWARD, peerOnly( new ForwardCommand() ) );
+        commands.put( MessageFormat.MessageType.MSG_TYPE_CLUSTER_DELIVER, peerOnly( new DeliverCommand() ) );
+        commands.put( MessageFormat.MessageType.MSG_TYPE_CLUSTER_CLIENT_REMOVED, peerOnly( new ClientRemovedCommand() ) );
+        commands.put( MessageFormat.MessageType.MSG_TYPE_HANDOVER_REPLICATED_TYPE, peerOnly( new HandoverCommand() ) );
+        return commands;
+    }
+
+    /**
+     * Wrap a command between the nodes, the command is only executed for messages that were
+     * received over a connection to an authenticated node.
+     * @param command The command.
+     * @return The checking command.
+     */
+    private IMessageCommand peerOnly( final IMessageCommand command ) {
+        return new IMessageCommand() {
+            @Override
+            public void execute( Message msg ) {
+                if( !connectionManager.isPeerConnection( msg.getSourceUID() ) )
+                    throw new IllegalStateException( "message of a cluster node received from a client" );
+                command.execute( msg );
+            }
+        };
+    }
+
+    /**
+     * Return the node of this server.
+     */
+    public ClusterNode getLocalNode() {
+        return localNode;
+    }
+
+    /**
+     * Return the current members of the cluster.
+     */
+    public List<ClusterNode> getMembers() {
+        return members;
+    }
+
+    /**
+     * Return the owner of a replicated type.
+     * @param typeName The name of the replicated type.
+     * @return The owning node.
+     */
+    public ClusterNode getOwner( String typeName ) {
+        return ownerOf( typeName, members );
+    }
+
+    /**
+     * Change the members of the cluster. The types of this node that get a new owner are handed
+     * over, the call returns after they are sent. Must be called on every node of the cluster.
+     * @param newMembers The new members, the local node is left out if it leaves the cluster.
+     */
+    public synchronized void setMembers( ClusterNode... newMembers ) {
+        // sanity check.
+        if( newMembers == null )
+            throw new NullPointerException();
+        if( newMembers.length == 0 )
+            throw new IllegalArgumentException();
+
+        previousMembers = members;
+        members = Collections.unmodifiableList( new ArrayList<ClusterNode>( Arrays.asList( newMembers ) ) );
+        // the leaving nodes still connect to hand their types over.
+        final Set<ClusterNode> accepted = new HashSet<ClusterNode>( previousMembers );
+        accepted.addAll( members );
+        connectionManager.setClusterMembers( accepted );
+        LOGGER.info( "cluster members changed " + previousMembers + " => " + members );
+
+        for( IReplicatedType<?> type : new ArrayList<IReplicatedType<?>>( dataManager.getAllReplicatedTypes() ) ) {
+            final String typeName = ( (AbstractServerReplicatedType<?>)type ).name;
+            final ClusterNode owner = ownerOf( typeName, members );
+            if( !owner.equals( localNode ) )
+                handOver( typeName, owner );
+        }
+    }
+
+    /**
+     * Hand a type over to its new owner. The routing of the type is blocked until the state
+     * is sent, the messages received afterwards follow the state over the same connection.
+     * @param typeName The name of the replicated type.
+     * @param owner The new owner.
+     */
+    private void handOver( String typeName, ClusterNode owner ) {
+        final UUID linkUID = linkTo( owner );
+        final ServerConnectionManager.ConnectionHandle link = connectionManager.getConnectionHandle( linkUID );
+        if( link == null )
+            throw new IllegalStateException( "connection to node " + owner + " is closed" );
+
+        HandoverData<?> data;
+        final Lock lock = stripeOf( typeName ).writeLock();
+        lock.lock();
+        try {
+            try {
+                data = dataManager.handOverReplicatedType( typeName );
+            } catch( UnsupportedOperationException e ) {
+                LOGGER.warn( "type[name = " + typeName + "] stays at node " + localNode + ": " + e.getMessage() );
+                return;
+            }
+            if( data == null )
+                return;
+            link.send( envelope( linkUID, MessageFormat.MessageType.MSG_TYPE_HANDOVER_REPLICATED_TYPE, null, data ) );
+            for( UUID clientUID : data.revisions.keySet() )
+                rememberForward( clientUID, linkUID );
+        } finally {
+            lock.unlock();
+        }
+        // the removed event of a client that disconnected during the handover did not reach the new owner.
+        for( UUID clientUID : data.revisions.keySet() ) {
+            if( connectionManager.getConnectionHandle( clientUID ) == null )
+                link.send( envelope( linkUID, MessageFormat.MessageType.MSG_TYPE_CLUSTER_CLIENT_REMOVED, clientUID, null ) );
+        }
+        LOGGER.info( "type[name = " + typeName + "] handed over to node " + owner );
+    }
+
+    /**
+     * Process a message locally or forward it to the owner of its type.
+     * @param msg The message.
+     * @param command The command that processes the message on the owner.
+     * @param from The node that forwarded the message, <code>null</code> if it was received from the client.
+     */
+    private void routeMessage( Message msg, IMessageCommand command, ClusterNode from ) {
+        final String typeName = msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME ).toString();
+        final Lock lock = stripeOf( typeName ).readLock();
+        lock.lock();
+        try {
+            final ClusterNode target = targetOf( typeName, from );
+            if( target == null ) {
+                command.execute( msg );
+            } else {
+                forward( msg, target );
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the node a message for the given type is forwarded to.
+     * @param typeName The name of the replicated type.
+     * @param from The node that forwarded the message, <code>null</code> if it was received from the client.
+     * @return The node, or <code>null</code> if the message is processed locally.
+     */
+    private ClusterNode targetOf( String typeName, ClusterNode from ) {
+        if( dataManager.existsReplicatedType( typeName ) )
+            return null;
+        final ClusterNode owner = ownerOf( typeName, members );
+        if( !owner.equals( localNode ) )
+            return owner;
+        // the previous owner may not have handed the type over yet. It forwards the message
+        // back over the connection of the handover, so the message follows the type.
+        final List<ClusterNode> previous = previousMembers;
+        if( previous != null ) {
+            final ClusterNode previousOwner = ownerOf( typeName, previous );
+            if( !previousOwner.equals( localNode ) && !previousOwner.equals( from ) )
+                return previousOwner;
+        }
+        return null;
+    }
+
+    /**
+     * Forward a client message to another node.
+     * @param msg The message.
+     * @param node The node.
+     */
+    private void forward( Message msg, ClusterNode node ) {
+        final UUID linkUID = linkTo( node );
+        final ServerConnectionManager.ConnectionHandle link = connectionManager.getConnectionHandle( linkUID );
+        if( link == null )
+            throw new IllegalStateException( "connection to node " + node + " is closed" );
+        rememberForward( msg.getSourceUID(), linkUID );
+        link.send( envelope( linkUID, MessageFormat.MessageType.MSG_TYPE_CLUSTER_FORWARD, null, msg ) );
+    }
+
+    /**
+     * Record that messages of a client were forwarded over the given connection.
+     */
+    private void rememberForward( UUID clientUID, UUID linkUID ) {
+        Set<UUID> linkUIDs = forwards.get( clientUID );
+        if( linkUIDs == null ) {
+            final Set<UUID> newLinkUIDs = Collections.newSetFromMap( new ConcurrentHashMap<UUID,Boolean>() );
+            linkUIDs = forwards.putIfAbsent( clientUID, newLinkUIDs );
+            if( linkUIDs == null )
+                linkUIDs = newLinkUIDs;
+        }
+        linkUIDs.add( linkUID );
+    }
+
+    /**
+     * Return the connection to another node, the connection is opened on first use.
+     * @param node The node.
+     * @return The UID of the connection.
+     */
+    private UUID linkTo( ClusterNode node ) {
+        synchronized( links ) {
+            UUID linkUID = links.get( node.name );
+            if( linkUID == null || !connectionManager.existsConnection( linkUID ) ) {
+                try {
+                    linkUID = connectionManager.openPeerConnection( node, localNode );
+                } catch( ServerConnectionManagerException e ) {
+                    throw new IllegalStateException( e );
+                }
+                links.put( node.name, linkUID );
+            }
+            return linkUID;
+        }
+    }
+
+    /**
+     * Make a client that is connected to the node at the other end of a connection reachable.
+     * @param clientUID The UID of the client.
+     * @param linkUID The UID of the connection.
+     */
+    private void addRoute( UUID clientUID, UUID linkUID ) {
+        if( connectionManager.getConnectionHandle( clientUID ) != null )
+            return;
+        final ServerConnectionManager.ConnectionHandle link = connectionManager.getConnectionHandle( linkUID );
+        if( link != null )
+            connectionManager.addRoute( clientUID, new RoutedHandle( clientUID, link ) );
+    }
+
+    /**
+     * Return the lock stripe of a type.
+     */
+    private ReadWriteLock stripeOf( String typeName ) {
+        return stripes[( typeName.hashCode() & 0x7fffffff ) % stripes.length];
+    }
+
+    /**
+     * Return the owner of a replicated type: the member with the highest hash of type and node
+     * name (rendezvous hashing). A membership change only moves the types of joining or leaving nodes.
+     * @param typeName The name of the replicated type.
+     * @param members The members of the cluster.
+     * @return The owning node.
+     */
+    public static ClusterNode ownerOf( String typeName, List<ClusterNode> members ) {
+        // sanity check.
+        if( typeName == null )
+            throw new NullPointerException();
+
+        ClusterNode owner = null;
+        long maxWeight = 0;
+        for( ClusterNode node : members ) {
+            final long weight = mix( typeName.hashCode() * 0x9E3779B97F4A7C15L + node.name.hashCode() );
+            if( owner == null || weight > maxWeight ) {
+                owner = node;
+                maxWeight = weight;
+            }
+        }
+        if( owner == null )
+            throw new IllegalStateException( "the cluster has no members" );
+        return owner;
+    }
+
+    /**
+     * Finalization step of the 64-bit MurmurHash3, spreads the bits of the key.
+     */
+    private static long mix( long key ) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Build a message between two nodes.
+     * @param linkUID The UID of the connection between the nodes.
+     * @param msgType The message type.
+     * @param clientUID The UID of the addressed client, or <code>null</code>.
+     * @param payload The transported data, or <code>null</code>.
+     * @return The message.
+     */
+    private static Message envelope( UUID linkUID, MessageFormat.MessageType msgType, UUID clientUID, Serializable payload ) {
+        final Map<String,Serializable> dataTable = new HashMap<String,Serializable>();
+        dataTable.put( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE, msgType );
+        if( clientUID != null )
+            dataTable.put( MessageFormat.MessageAttribute.MSG_ATTR_CLIENT, clientUID );
+        if( payload != null )
+            dataTable.put( MessageFormat.MessageAttribute.MSG_ATTR_PAYLOAD, payload );
+        return new Message( linkUID, UUID.randomUUID(), dataTable, -1 );
+    }
+
+    /**
+     * Processes a client message that another node forwarded. The client becomes reachable
+     * over the connection to that node.
+     */
+    private final class ForwardCommand implements IMessageCommand {
+        @Override
+        public void execute( Message msg ) {
+            final Message clientMsg = (Message)msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_PAYLOAD );
+            final IMessageCommand command = localCommands.get(
+                    clientMsg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE ) );
+            if( command == null )
+                throw new IllegalStateException( "Message type not supported" );
+            final ServerConnectionManager.ConnectionHandle link = connectionManager.getConnectionHandle( msg.getSourceUID() );
+            if( link == null )
+                return;
+            addRoute( clientMsg.getSourceUID(), msg.getSourceUID() );
+            routeMessage( clientMsg, command, link.peer );
+        }
+    }
+
+    /**
+     * Passes a message of the owner of a type on to the client.
+     */
+    private final class DeliverCommand implements IMessageCommand {
+        @Override
+        public void execute( Message msg ) {
+            final UUID clientUID = (UUID)msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_CLIENT );
+            final ServerConnectionManager.ConnectionHandle handle = connectionManager.getConnectionHandle( clientUID );
+            // a disconnected client is deregistered by the client removed message.
+            if( handle != null )
+                handle.send( (Message)msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_PAYLOAD ) );
+        }
+    }
+
+    /**
+     * Removes the route to a client that disconnected from another node.
+     */
+    private final class ClientRemovedCommand implements IMessageCommand {
+        @Override
+        public void execute( Message msg ) {
+            final UUID clientUID = (UUID)msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_CLIENT );
+            final ServerConnectionManager.ConnectionHandle handle = connectionManager.getConnectionHandle( clientUID );
+            if( handle instanceof RoutedHandle && handle.connection.getUID().equals( msg.getSourceUID() ) )
+                connectionManager.removeRoute( clientUID, handle );
+        }
+    }
+
+    /**
+     * Continues a type that another node handed over. Its clients are reached over the
+     * connection to the previous owner.
+     */
+    private final class HandoverCommand implements IMessageCommand {
+        @Override
+        public void execute( Message msg ) {
+            final HandoverData<?> data = (HandoverData<?>)msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_PAYLOAD );
+            for( UUID clientUID : data.revisions.keySet() )
+                addRoute( clientUID, msg.getSourceUID() );
+            dataManager.adoptReplicatedType( data );
+            LOGGER.info( "type[name = " + data.name + "] taken over by node " + localNode );
+        }
+    }
+}
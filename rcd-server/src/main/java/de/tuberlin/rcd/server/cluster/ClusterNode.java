@@ -0,0 +1,59 @@
+package de.tuberlin.rcd.server.cluster;
+
+import java.io.Serializable;
+
+/**
+ * A server of the cluster. The nodes are identified by their name, the name must be the
+ * same in the membership lists of all nodes.
+ */
+public final class ClusterNode implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 6264302520785713542L;
+
+    /**
+     * Constructor.
+     * @param name The unique name of the node.
+     * @param host The host name the node accepts connections on.
+     * @param port The port number the node accepts connections on.
+     */
+    public ClusterNode( String name, String host, int port ) {
+        // sanity check.
+        if( name == null )
+            throw new NullPointerException();
+        if( host == null )
+            throw new NullPointerException();
+        if( port < 1 )
+            throw new IllegalArgumentException();
+
+        this.name = name;
+        this.host = host;
+        this.port = port;
+    }
+
+    /** The unique name of the node. */
+    public final String name;
+
+    /** The host name the node accepts connections on. */
+    public final String host;
+
+    /** The port number the node accepts connections on. */
+    public final int port;
+
+    @Override
+    public boolean equals( Object obj ) {
+        return obj instanceof ClusterNode && name.equals( ( (ClusterNode)obj ).name );
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + host + ":" + port + "]";
+    }
+}
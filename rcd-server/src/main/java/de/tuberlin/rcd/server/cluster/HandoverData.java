@@ -0,0 +1,85 @@
+package de.tuberlin.rcd.server.cluster;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationHistory;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
+
+/**
+ * The state of a replicated type that is handed over to its new owner: a copy of the data model,
+ * the retained operations (the history tail the registered clients can still refer to) and the
+ * registered clients with their acknowledged revisions.
+ */
+public final class HandoverData<T> implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -3650164183405787306L;
+
+    /**
+     * Constructor.
+     * @param name The name of the replicated type.
+     * @param className The class name of the server side type.
+     * @param model A copy of the data model.
+     * @param history The retained operations.
+     * @param revisions The acknowledged revisions of the registered clients.
+     * @param pendingOperations The operations for clients that have not yet acknowledged their fill data.
+     */
+    public HandoverData( String name,
+                         String className,
+                         OTSystemDefinition.OTDataModel<T> model,
+                         OTOperationHistory<T> history,
+                         Map<UUID,Integer> revisions,
+                         Map<UUID,List<OTOperationDefinition.OTOperation<T>>> pendingOperations ) {
+        // sanity check.
+        if( name == null )
+            throw new IllegalArgumentException();
+        if( className == null )
+            throw new IllegalArgumentException();
+        if( model == null )
+            throw new IllegalArgumentException();
+        if( history == null )
+            throw new IllegalArgumentException();
+        if( revisions == null )
+            throw new IllegalArgumentException();
+        if( pendingOperations == null )
+            throw new IllegalArgumentException();
+
+        this.name = name;
+        this.className = className;
+        this.model = model;
+        this.history = new OTOperationHistory<T>( history );
+        this.revisions = Collections.unmodifiableMap( new HashMap<UUID,Integer>( revisions ) );
+        final Map<UUID,List<OTOperationDefinition.OTOperation<T>>> pending =
+                new HashMap<UUID,List<OTOperationDefinition.OTOperation<T>>>();
+        for( Map.Entry<UUID,List<OTOperationDefinition.OTOperation<T>>> entry : pendingOperations.entrySet() )
+            pending.put( entry.getKey(), new ArrayList<OTOperationDefinition.OTOperation<T>>( entry.getValue() ) );
+        this.pendingOperations = Collections.unmodifiableMap( pending );
+    }
+
+    /** The name of the replicated type. */
+    public final String name;
+
+    /** The class name of the server side type. */
+    public final String className;
+
+    /** A copy of the data model. */
+    public final OTSystemDefinition.OTDataModel<T> model;
+
+    /** The retained operations. */
+    public final OTOperationHistory<T> history;
+
+    /** The acknowledged revisions of the registered clients. */
+    public final Map<UUID,Integer> revisions;
+
+    /** The operations for clients that have not yet acknowledged their fill data. */
+    public final Map<UUID,List<OTOperationDefinition.OTOperation<T>>> pendingOperations;
+}
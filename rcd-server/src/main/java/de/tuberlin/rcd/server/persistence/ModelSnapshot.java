@@ -0,0 +1,274 @@
+package de.tuberlin.rcd.server.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import de.tuberlin.rcd.protocol.concurrencycontrol.common.VectorClock;
+
+/**
+ * The data elements of a sequence data model at a revision, together with the server state.
+ * The snapshot holds references to the elements of the model and is encoded by the log writer
+ * and the senders of the fills, while the processing thread goes on. Entities are updated in
+ * place, so the encoded fields may already carry the values of later entity updates. Those
+ * updates follow the snapshot in the log and in the fill tail, and as they assign absolute
+ * field values, replaying them after the snapshot yields the exact state.
+ *
+ * File layout: magic, version, revision, the components of the state as varints, the element
+ * format and the elements, followed by a CRC32 of the content. Characters are written as
+ * modified UTF-8 chunks, strings and boxed primitives are tagged, other elements are
+ * serialized as one list.
+ * @param <T> The type of the data elements.
+ */
+public final class ModelSnapshot<T> {
+
+    /** Marks a snapshot file. */
+    private static final int MAGIC = 0x52434453;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 1;
+
+    /** Element formats. */
+    private static final int ELEMENTS_CHARACTERS = 0;
+    private static final int ELEMENTS_TAGGED = 1;
+    private static final int ELEMENTS_SERIALIZED = 2;
+
+    /** Tags of the tagged element format. */
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INTEGER = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_BOOLEAN = 4;
+    private static final int TAG_DOUBLE = 5;
+    private static final int TAG_CHARACTER = 6;
+
+    /** Maximal number of characters per UTF chunk, encodes to less than 64 KiB. */
+    private static final int CHUNK_LENGTH = 16384;
+
+    /**
+     * Constructor.
+     * @param revision The revision of the snapshot.
+     * @param state The server state at the revision.
+     * @param elements The data elements, the list must not be changed afterwards.
+     */
+    public ModelSnapshot( int revision, VectorClock state, List<T> elements ) {
+        // sanity check.
+        if( state == null )
+            throw new NullPointerException();
+        if( elements == null )
+            throw new NullPointerException();
+
+        this.revision = revision;
+        this.state = new VectorClock( state );
+        this.elements = Collections.unmodifiableList( elements );
+    }
+
+    /** The revision of the snapshot. */
+    public final int revision;
+
+    /** The server state at the revision. */
+    public final VectorClock state;
+
+    /** The data elements at the revision. */
+    public final List<T> elements;
+
+    /**
+     * Encode the snapshot.
+     * @param os The stream the snapshot is written to.
+     * @throws IOException If the snapshot could not be written.
+     */
+    public void writeTo( OutputStream os ) throws IOException {
+        final CRC32 crc = new CRC32();
+        final DataOutputStream out = new DataOutputStream( new CheckedOutputStream( os, crc ) );
+        out.writeInt( MAGIC );
+        out.writeByte( VERSION );
+        out.writeInt( revision );
+        writeVarInt( out, state.size() );
+        for( int i = 0; i < state.size(); ++i )
+            writeVarInt( out, state.get( i ) );
+
+        final int format = formatOf( elements );
+        out.writeByte( format );
+        writeVarInt( out, elements.size() );
+        switch( format ) {
+            case ELEMENTS_CHARACTERS: {
+                final StringBuilder sb = new StringBuilder( elements.size() );
+                for( T element : elements )
+                    sb.append( ( (Character)element ).charValue() );
+                writeChars( out, sb );
+            } break;
+            case ELEMENTS_TAGGED: {
+                for( T element : elements )
+                    writeTagged( out, element );
+            } break;
+            default: {
+                final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                final ObjectOutputStream oos = new ObjectOutputStream( bos );
+                oos.writeObject( new ArrayList<T>( elements ) );
+                oos.close();
+                writeVarInt( out, bos.size() );
+                bos.writeTo( out );
+            }
+        }
+        out.flush();
+        // the checksum is not part of the checked content.
+        new DataOutputStream( os ).writeInt( (int)crc.getValue() );
+    }
+
+    /**
+     * Decode a snapshot.
+     * @param is The stream the snapshot is read from.
+     * @return The snapshot.
+     * @throws IOException If the snapshot is damaged.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ModelSnapshot<T> readFrom( InputStream is ) throws IOException {
+        final CRC32 crc = new CRC32();
+        final DataInputStream in = new DataInputStream( new CheckedInputStream( is, crc ) );
+        if( in.readInt() != MAGIC || in.readUnsignedByte() != VERSION )
+            throw new IOException( "not a snapshot" );
+        final int revision = in.readInt();
+        final Integer[] components = new Integer[readVarInt( in )];
+        for( int i = 0; i < components.length; ++i )
+            components[i] = readVarInt( in );
+
+        final int format = in.readUnsignedByte();
+        final int size = readVarInt( in );
+        final List<T> elements;
+        switch( format ) {
+            case ELEMENTS_CHARACTERS: {
+                final String chars = readChars( in );
+                if( chars.length() != size )
+                    throw new IOException( "damaged snapshot" );
+                elements = new ArrayList<T>( size );
+                for( int i = 0; i < size; ++i )
+                    elements.add( (T)Character.valueOf( chars.charAt( i ) ) );
+            } break;
+            case ELEMENTS_TAGGED: {
+                elements = new ArrayList<T>( size );
+                for( int i = 0; i < size; ++i )
+                    elements.add( (T)readTagged( in ) );
+            } break;
+            case ELEMENTS_SERIALIZED: {
+                final byte[] data = new byte[readVarInt( in )];
+                in.readFully( data );
+                final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( data ) );
+                try {
+                    elements = (List<T>)ois.readObject();
+                } catch( ClassNotFoundException e ) {
+                    throw new IOException( e.getMessage() );
+                } finally {
+                    ois.close();
+                }
+            } break;
+            default:
+                throw new IOException( "unknown element format " + format );
+        }
+        final int checksum = (int)crc.getValue();
+        if( new DataInputStream( is ).readInt() != checksum )
+            throw new IOException( "damaged snapshot" );
+        return new ModelSnapshot<T>( revision, new VectorClock( components ), elements );
+    }
+
+    /**
+     * Return the most compact format that can encode all elements.
+     */
+    private static int formatOf( List<?> elements ) {
+        boolean characters = true;
+        for( Object element : elements ) {
+            if( element instanceof Character )
+                continue;
+            characters = false;
+            if( !( element == null || element instanceof String || element instanceof Integer || element instanceof Long
+                    || element instanceof Boolean || element instanceof Double ) )
+                return ELEMENTS_SERIALIZED;
+        }
+        return characters ? ELEMENTS_CHARACTERS : ELEMENTS_TAGGED;
+    }
+
+    private static void writeTagged( DataOutputStream out, Object element ) throws IOException {
+        if( element == null ) {
+            out.writeByte( TAG_NULL );
+        } else if( element instanceof String ) {
+            out.writeByte( TAG_STRING );
+            writeChars( out, (String)element );
+        } else if( element instanceof Integer ) {
+            out.writeByte( TAG_INTEGER );
+            out.writeInt( (Integer)element );
+        } else if( element instanceof Long ) {
+            out.writeByte( TAG_LONG );
+            out.writeLong( (Long)element );
+        } else if( element instanceof Boolean ) {
+            out.writeByte( TAG_BOOLEAN );
+            out.writeBoolean( (Boolean)element );
+        } else if( element instanceof Double ) {
+            out.writeByte( TAG_DOUBLE );
+            out.writeDouble( (Double)element );
+        } else {
+            out.writeByte( TAG_CHARACTER );
+            out.writeChar( (Character)element );
+        }
+    }
+
+    private static Object readTagged( DataInputStream in ) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch( tag ) {
+            case TAG_NULL: return null;
+            case TAG_STRING: return readChars( in );
+            case TAG_INTEGER: return in.readInt();
+            case TAG_LONG: return in.readLong();
+            case TAG_BOOLEAN: return in.readBoolean();
+            case TAG_DOUBLE: return in.readDouble();
+            case TAG_CHARACTER: return in.readChar();
+            default: throw new IOException( "unknown element tag " + tag );
+        }
+    }
+
+    /**
+     * Write characters as modified UTF-8 chunks, unpaired surrogates are preserved.
+     */
+    private static void writeChars( DataOutputStream out, CharSequence chars ) throws IOException {
+        writeVarInt( out, chars.length() );
+        for( int start = 0; start < chars.length(); start += CHUNK_LENGTH )
+            out.writeUTF( chars.subSequence( start, Math.min( chars.length(), start + CHUNK_LENGTH ) ).toString() );
+    }
+
+    private static String readChars( DataInputStream in ) throws IOException {
+        final int length = readVarInt( in );
+        final StringBuilder sb = new StringBuilder( length );
+        while( sb.length() < length )
+            sb.append( in.readUTF() );
+        return sb.toString();
+    }
+
+    private static void writeVarInt( DataOutputStream out, int value ) throws IOException {
+        while( ( value & ~0x7F ) != 0 ) {
+            out.writeByte( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        out.writeByte( value );
+    }
+
+    private static int readVarInt( DataInputStream in ) throws IOException {
+        int value = 0;
+        for( int shift = 0; shift < 35; shift += 7 ) {
+            final int b = in.readUnsignedByte();
+            value |= ( b & 0x7F ) << shift;
+            if( ( b & 0x80 ) == 0 )
+                return value;
+        }
+        throw new IOException( "malformed varint" );
+    }
+}
@@ -0,0 +1,446 @@
+package de.tuberlin.rcd.server.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
+import de.tuberlin.rcd.server.runtime.ServerConfiguration;
+
+/**
+ * The durable log of the operations a replicated type integrated. The processing thread of
+ * the type only queues the operations, the writer thread of the <code>PersistenceManager</code>
+ * appends them to memory mapped segment files. Every <code>snapshotInterval</code> operations
+ * the type hands a <code>ModelSnapshot</code> over, the writer encodes it in the background and
+ * deletes the segments before it afterwards.
+ *
+ * The directory of a log contains the file <code>type</code> with name and class of the type,
+ * the segments <code>segment-[first revision].log</code> and the snapshots
+ * <code>snapshot-[revision].snap</code>. A record consists of length, checksum and revision
+ * (4 bytes each) followed by the serialized operation, a length of 0 ends a segment.
+ * @param <T> The type of the data elements in the data model.
+ */
+public final class OperationLog<T> {
+
+    /**
+     * Log4J.
+     */
+    private static final Logger LOGGER = Logger.getLogger( OperationLog.class );
+
+    /** Name of the file with name and class of the type. */
+    static final String TYPE_FILE = "type";
+
+    /** Size of the record header. */
+    private static final int RECORD_HEADER = 12;
+
+    /**
+     * The state of a type that is rebuilt from its log.
+     * @param <T> The type of the data elements in the data model.
+     */
+    public static final class Recovery<T> {
+
+        /**
+         * Constructor.
+         */
+        Recovery( int revision, ModelSnapshot<T> snapshot, List<OTOperationDefinition.OTOperation<T>> operations ) {
+            this.revision = revision;
+            this.snapshot = snapshot;
+            this.operations = Collections.unmodifiableList( operations );
+        }
+
+        /** The revision of the snapshot, 0 if no snapshot was taken. */
+        public final int revision;
+
+        /** The snapshot of the data model, <code>null</code> if no snapshot was taken. */
+        public final ModelSnapshot<T> snapshot;
+
+        /** The operations after the snapshot revision in execution order. */
+        public final List<OTOperationDefinition.OTOperation<T>> operations;
+    }
+
+    /**
+     * Constructor.
+     * @param manager The manager whose writer appends the operations.
+     * @param directory The directory of the log.
+     * @param name The name of the replicated type.
+     * @param className The class name of the replicated type.
+     * @param revision The revision of the first appended operation.
+     */
+    OperationLog( PersistenceManager manager, File directory, String name, String className, int revision ) {
+        this.manager = manager;
+        this.directory = directory;
+        this.name = name;
+        this.className = className;
+        this.revision = revision;
+        this.snapshotRevision = revision;
+        this.writtenRevision = revision;
+    }
+
+    /** The manager whose writer appends the operations. */
+    private final PersistenceManager manager;
+
+    /** The directory of the log. */
+    final File directory;
+
+    /** The name of the replicated type. */
+    public final String name;
+
+    /** The class name of the replicated type. */
+    public final String className;
+
+    /** Set while the log waits for the writer. */
+    final AtomicBoolean scheduled = new AtomicBoolean( false );
+
+    /** Set if the log is deleted by the writer. */
+    volatile boolean deleted = false;
+
+    //-----------------------------------------------
+    // accessed by the processing thread of the type.
+    //-----------------------------------------------
+
+    /** The revision of the next appended operation. */
+    private int revision;
+
+    /** The revision of the last snapshot. */
+    private int snapshotRevision;
+
+    //-----------------------------------------------
+    // accessed by the writer thread.
+    //-----------------------------------------------
+
+    /** The operations that are not yet written. */
+    private final Queue<OTOperationDefinition.OTOperation<T>> pending = new ConcurrentLinkedQueue<OTOperationDefinition.OTOperation<T>>();
+
+    /** The snapshot that is not yet written. */
+    private final AtomicReference<ModelSnapshot<T>> pendingSnapshot = new AtomicReference<ModelSnapshot<T>>();
+
+    /** The segment files by the revision of their first record. */
+    private final TreeMap<Integer,File> segments = new TreeMap<Integer,File>();
+
+    /** The revision of the next written record. */
+    private int writtenRevision;
+
+    /** The channel of the current segment. */
+    private FileChannel channel = null;
+
+    /** The mapped current segment. */
+    private MappedByteBuffer buffer = null;
+
+    /** Set if records were written since the last force. */
+    private boolean unforced = false;
+
+    /** Reused serialization buffer. */
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 );
+
+    /** Reused checksum. */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Append an integrated operation. Returns immediately, the operation is written by the writer thread.
+     * @param op The operation in the form it was applied to the data model.
+     */
+    public void append( OTOperationDefinition.OTOperation<T> op ) {
+        // sanity check.
+        if( op == null )
+            throw new NullPointerException();
+
+        pending.add( op );
+        ++revision;
+        manager.schedule( this );
+    }
+
+    /**
+     * Return true if the operations since the last snapshot exceed the snapshot interval.
+     */
+    public boolean needsSnapshot() {
+        return revision - snapshotRevision >= manager.snapshotInterval;
+    }
+
+    /**
+     * Hand a snapshot of the data model over, it is encoded and written by the writer thread.
+     * @param snapshot The snapshot at the revision of the last appended operation.
+     */
+    public void snapshot( ModelSnapshot<T> snapshot ) {
+        // sanity check.
+        if( snapshot == null )
+            throw new NullPointerException();
+        if( snapshot.revision != revision )
+            throw new IllegalArgumentException( "snapshot revision " + snapshot.revision + " != log revision " + revision );
+
+        snapshotRevision = revision;
+        pendingSnapshot.set( snapshot );
+        manager.schedule( this );
+    }
+
+    /**
+     * Read the latest snapshot and the operations after it. The operations are appended after
+     * the read operations. Must be called before the first operation is appended.
+     * @return The persisted state of the type.
+     * @throws IOException If the log could not be read.
+     */
+    @SuppressWarnings("unchecked")
+    public Recovery<T> recover() throws IOException {
+        // the latest readable snapshot.
+        int baseRevision = 0;
+        ModelSnapshot<T> snapshot = null;
+        final TreeMap<Integer,File> snapshots = listFiles( "snapshot-", ".snap" );
+        for( Map.Entry<Integer,File> entry : snapshots.descendingMap().entrySet() ) {
+            try {
+                final InputStream is = new BufferedInputStream( new FileInputStream( entry.getValue() ) );
+                try {
+                    snapshot = ModelSnapshot.readFrom( is );
+                } finally {
+                    is.close();
+                }
+                baseRevision = snapshot.revision;
+                break;
+            } catch( Exception e ) {
+                LOGGER.warn( "skip unreadable snapshot " + entry.getValue(), e );
+                snapshot = null;
+            }
+        }
+
+        // the records after the snapshot revision, the log ends at the first torn or missing record.
+        final List<OTOperationDefinition.OTOperation<T>> operations = new ArrayList<OTOperationDefinition.OTOperation<T>>();
+        int expected = baseRevision;
+        segments.putAll( listFiles( "segment-", ".log" ) );
+        for( Map.Entry<Integer,File> entry : segments.entrySet() ) {
+            if( entry.getKey() > expected )
+                break;
+            final RandomAccessFile file = new RandomAccessFile( entry.getValue(), "r" );
+            try {
+                final MappedByteBuffer segment = file.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, file.length() );
+                while( segment.remaining() >= RECORD_HEADER ) {
+                    final int length = segment.getInt();
+                    final int checksum = segment.getInt();
+                    final int recordRevision = segment.getInt();
+                    if( length <= 0 || length > segment.remaining() || recordRevision > expected )
+                        break;
+                    final byte[] data = new byte[length];
+                    segment.get( data );
+                    if( checksum( recordRevision, data, length ) != checksum )
+                        break;
+                    if( recordRevision < expected )
+                        continue;
+                    operations.add( (OTOperationDefinition.OTOperation<T>)deserialize( data ) );
+                    ++expected;
+                }
+            } finally {
+                file.close();
+            }
+        }
+
+        // the segments after the end of the log are overwritten by the next appends.
+        for( Integer firstRevision : new ArrayList<Integer>( segments.tailMap( expected, true ).keySet() ) ) {
+            if( !segments.remove( firstRevision ).delete() )
+                throw new IOException( "could not delete segment " + firstRevision + " of type[name = " + name + "]" );
+        }
+
+        revision = expected;
+        snapshotRevision = baseRevision;
+        writtenRevision = expected;
+        LOGGER.info( "recovered type[name = " + name + "] at revision " + expected + " (snapshot revision " + baseRevision + ")" );
+        return new Recovery<T>( baseRevision, snapshot, operations );
+    }
+
+    /**
+     * Write the queued operations and the pending snapshot. Called by the writer thread.
+     * @return true, if records were written.
+     */
+    boolean write() throws IOException {
+        scheduled.set( false );
+        boolean written = false;
+        OTOperationDefinition.OTOperation<T> op;
+        while( ( op = pending.poll() ) != null ) {
+            writeRecord( writtenRevision++, op );
+            written = true;
+        }
+        final ModelSnapshot<T> snapshot = pendingSnapshot.getAndSet( null );
+        if( snapshot != null )
+            writeSnapshot( snapshot );
+        return written;
+    }
+
+    /**
+     * Force the written records to the storage device. Called by the writer thread.
+     */
+    void force() {
+        if( unforced && buffer != null ) {
+            buffer.force();
+            unforced = false;
+        }
+    }
+
+    /**
+     * Close the current segment. Called by the writer thread.
+     * @param force true, if the written records are forced before.
+     */
+    void close( boolean force ) throws IOException {
+        if( channel != null ) {
+            if( force )
+                force();
+            channel.close();
+            channel = null;
+            buffer = null;
+            unforced = false;
+        }
+    }
+
+    /**
+     * Close the log and delete its files. Called by the writer thread.
+     */
+    void delete() throws IOException {
+        close( false );
+        pending.clear();
+        pendingSnapshot.set( null );
+        PersistenceManager.deleteDirectory( directory );
+    }
+
+    /**
+     * Append a record to the current segment, a new segment is started if it is full.
+     */
+    private void writeRecord( int recordRevision, OTOperationDefinition.OTOperation<T> op ) throws IOException {
+        bytes.reset();
+        final ObjectOutputStream oos = new ObjectOutputStream( bytes );
+        oos.writeObject( op );
+        oos.close();
+        final byte[] data = bytes.toByteArray();
+        if( buffer == null || buffer.remaining() < RECORD_HEADER + data.length )
+            startSegment( recordRevision, RECORD_HEADER + data.length );
+        buffer.putInt( data.length );
+        buffer.putInt( checksum( recordRevision, data, data.length ) );
+        buffer.putInt( recordRevision );
+        buffer.put( data );
+        unforced = true;
+    }
+
+    /**
+     * Close the current segment and map a new one.
+     * @param firstRevision The revision of the first record of the segment.
+     * @param minSize The size of the first record.
+     */
+    private void startSegment( int firstRevision, int minSize ) throws IOException {
+        close( manager.syncPolicy != ServerConfiguration.SyncPolicy.NEVER );
+        final File file = new File( directory, fileName( "segment-", firstRevision, ".log" ) );
+        final RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        // the mapping extends the file with zeros, a length of 0 ends the segment.
+        raf.setLength( 0 );
+        channel = raf.getChannel();
+        buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, Math.max( manager.segmentSize, minSize + 4 ) );
+        segments.put( firstRevision, file );
+    }
+
+    /**
+     * Write a snapshot and delete the files it makes obsolete.
+     */
+    private void writeSnapshot( ModelSnapshot<T> snapshot ) throws IOException {
+        final File tmpFile = new File( directory, "snapshot.tmp" );
+        final FileOutputStream fos = new FileOutputStream( tmpFile );
+        try {
+            final BufferedOutputStream bos = new BufferedOutputStream( fos );
+            snapshot.writeTo( bos );
+            bos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        final File file = new File( directory, fileName( "snapshot-", snapshot.revision, ".snap" ) );
+        if( !tmpFile.renameTo( file ) )
+            throw new IOException( "could not rename snapshot of type[name = " + name + "]" );
+
+        // a segment is obsolete if its successor starts before the snapshot revision.
+        for( File oldSnapshot : listFiles( "snapshot-", ".snap" ).headMap( snapshot.revision ).values() )
+            oldSnapshot.delete();
+        while( segments.size() > 1 ) {
+            final Map.Entry<Integer,File> first = segments.firstEntry();
+            if( segments.higherKey( first.getKey() ) > snapshot.revision )
+                break;
+            first.getValue().delete();
+            segments.remove( first.getKey() );
+        }
+        LOGGER.info( "snapshot of type[name = " + name + "] at revision " + snapshot.revision );
+    }
+
+    /**
+     * Return the files of the log directory with the given prefix and suffix by their revision.
+     */
+    private TreeMap<Integer,File> listFiles( String prefix, String suffix ) {
+        final TreeMap<Integer,File> files = new TreeMap<Integer,File>();
+        final File[] children = directory.listFiles();
+        if( children != null ) {
+            for( File file : children ) {
+                final String fileName = file.getName();
+                if( fileName.startsWith( prefix ) && fileName.endsWith( suffix ) ) {
+                    try {
+                        files.put( Integer.parseInt( fileName.substring( prefix.length(), fileName.length() - suffix.length() ) ), file );
+                    } catch( NumberFormatException e ) {
+                        LOGGER.warn( "skip unknown file " + file );
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Return the checksum of a record.
+     */
+    private int checksum( int recordRevision, byte[] data, int length ) {
+        crc.reset();
+        crc.update( recordRevision >>> 24 );
+        crc.update( recordRevision >>> 16 );
+        crc.update( recordRevision >>> 8 );
+        crc.update( recordRevision );
+        crc.update( data, 0, length );
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Read a serialized operation.
+     */
+    private static Object deserialize( byte[] data ) throws IOException {
+        final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( data ) );
+        try {
+            return ois.readObject();
+        } catch( ClassNotFoundException e ) {
+            throw new IOException( e.getMessage() );
+        } finally {
+            ois.close();
+        }
+    }
+
+    /**
+     * Return the name of a file, the revision is padded to sort the names by revision.
+     */
+    private static String fileName( String prefix, int revision, String suffix ) {
+        return prefix + String.format( "%010d", revision ) + suffix;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationLog[name = " + name + ", directory = " + directory + "]";
+    }
+}
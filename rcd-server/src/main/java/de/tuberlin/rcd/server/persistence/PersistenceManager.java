@@ -0,0 +1,279 @@
+package de.tuberlin.rcd.server.persistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import de.tuberlin.rcd.server.runtime.ServerConfiguration;
+
+/**
+ * Manages the operation logs of the replicated types. A single writer thread appends the
+ * queued operations of all logs: it writes every log that received operations, then forces
+ * the written logs once for the whole group (group commit), so the processing threads of
+ * the types never wait for the storage device.
+ */
+public final class PersistenceManager {
+
+    /**
+     * Log4J.
+     */
+    private static final Logger LOGGER = Logger.getLogger( PersistenceManager.class );
+
+    /** Maximal time in milliseconds the writer waits for scheduled logs. */
+    private static final long POLL_TIMEOUT = 50;
+
+    /**
+     * Constructor.
+     * @param configuration The server configuration with the persistence settings.
+     */
+    public PersistenceManager( ServerConfiguration configuration ) {
+        // sanity check.
+        if( configuration == null )
+            throw new NullPointerException();
+        if( configuration.getPersistenceDirectory() == null )
+            throw new IllegalArgumentException( "no persistence directory configured" );
+
+        this.directory = configuration.getPersistenceDirectory();
+        this.syncPolicy = configuration.getSyncPolicy();
+        this.syncInterval = configuration.getSyncInterval();
+        this.segmentSize = configuration.getSegmentSize();
+        this.snapshotInterval = configuration.getSnapshotInterval();
+        if( !directory.isDirectory() && !directory.mkdirs() )
+            throw new IllegalStateException( "could not create persistence directory " + directory );
+
+        this.writer = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "OperationLogWriter" );
+        writer.setDaemon( true );
+        writer.start();
+
+        // the queued operations are written when the VM exits.
+        Runtime.getRuntime().addShutdownHook( new Thread( new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        } ) );
+    }
+
+    /** The directory of the operation logs. */
+    private final File directory;
+
+    /** When the logs are forced to the storage device. */
+    final ServerConfiguration.SyncPolicy syncPolicy;
+
+    /** The time in milliseconds between two forces of the <code>INTERVAL</code> policy. */
+    private final long syncInterval;
+
+    /** The size in bytes of a log segment file. */
+    final int segmentSize;
+
+    /** The number of operations between two snapshots of a data model. */
+    final int snapshotInterval;
+
+    /** The logs with queued operations. */
+    private final BlockingQueue<OperationLog<?>> scheduledLogs = new LinkedBlockingQueue<OperationLog<?>>();
+
+    /** The logs the writer opened a segment of. Accessed by the writer thread. */
+    private final Set<OperationLog<?>> openLogs = Collections.newSetFromMap( new IdentityHashMap<OperationLog<?>,Boolean>() );
+
+    /** The thread that writes the logs. */
+    private final Thread writer;
+
+    /** Set if the writer stops after the scheduled logs are written. */
+    private volatile boolean closed = false;
+
+    /**
+     * Create the log of a new replicated type. An existing log with the same name is replaced.
+     * @param name The name of the replicated type.
+     * @param className The class name of the replicated type.
+     * @param revision The revision of the first appended operation.
+     * @return The new operation log.
+     * @throws IOException If the log directory could not be created.
+     */
+    public <T> OperationLog<T> createLog( String name, String className, int revision ) throws IOException {
+        // sanity check.
+        if( name == null )
+            throw new NullPointerException();
+        if( className == null )
+            throw new NullPointerException();
+
+        final File logDirectory = new File( directory, directoryName( name ) );
+        if( logDirectory.exists() )
+            deleteDirectory( logDirectory );
+        if( !logDirectory.mkdirs() )
+            throw new IOException( "could not create log directory " + logDirectory );
+        final FileOutputStream fos = new FileOutputStream( new File( logDirectory, OperationLog.TYPE_FILE ) );
+        try {
+            final DataOutputStream dos = new DataOutputStream( fos );
+            dos.writeUTF( name );
+            dos.writeUTF( className );
+            dos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        return new OperationLog<T>( this, logDirectory, name, className, revision );
+    }
+
+    /**
+     * Open the logs of all persisted types. Their state is read by <code>OperationLog.recover</code>.
+     * @return The operation logs.
+     * @throws IOException If a log directory could not be read.
+     */
+    public List<OperationLog<?>> openLogs() throws IOException {
+        final List<OperationLog<?>> logs = new ArrayList<OperationLog<?>>();
+        final File[] children = directory.listFiles();
+        if( children == null )
+            return logs;
+        for( File logDirectory : children ) {
+            final File typeFile = new File( logDirectory, OperationLog.TYPE_FILE );
+            if( !typeFile.isFile() )
+                continue;
+            final DataInputStream dis = new DataInputStream( new FileInputStream( typeFile ) );
+            try {
+                final String name = dis.readUTF();
+                final String className = dis.readUTF();
+                logs.add( new OperationLog<Object>( this, logDirectory, name, className, 0 ) );
+            } finally {
+                dis.close();
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * Delete a log, e.g. of a type that was handed over to another server.
+     * The files are deleted by the writer thread.
+     * @param log The operation log.
+     */
+    public void deleteLog( OperationLog<?> log ) {
+        // sanity check.
+        if( log == null )
+            throw new NullPointerException();
+
+        log.deleted = true;
+        schedule( log );
+    }
+
+    /**
+     * Write the queued operations of all logs and stop the writer.
+     */
+    public void close() {
+        if( closed )
+            return;
+        closed = true;
+        try {
+            writer.join();
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pass a log with queued operations to the writer.
+     */
+    void schedule( OperationLog<?> log ) {
+        if( log.scheduled.compareAndSet( false, true ) )
+            scheduledLogs.add( log );
+    }
+
+    /**
+     * Loop of the writer thread.
+     */
+    private void runWriter() {
+        final Set<OperationLog<?>> unforcedLogs = Collections.newSetFromMap( new IdentityHashMap<OperationLog<?>,Boolean>() );
+        long lastSync = System.currentTimeMillis();
+        while( true ) {
+            final boolean closing = closed;
+            OperationLog<?> log;
+            try {
+                log = scheduledLogs.poll( POLL_TIMEOUT, TimeUnit.MILLISECONDS );
+            } catch( InterruptedException e ) {
+                log = null;
+            }
+            // write all logs that received operations meanwhile.
+            for( ; log != null; log = scheduledLogs.poll() ) {
+                try {
+                    if( log.deleted ) {
+                        log.delete();
+                        openLogs.remove( log );
+                        unforcedLogs.remove( log );
+                    } else if( log.write() ) {
+                        openLogs.add( log );
+                        unforcedLogs.add( log );
+                    }
+                } catch( IOException e ) {
+                    LOGGER.error( "could not write " + log, e );
+                }
+            }
+            // force the group of written logs.
+            final long now = System.currentTimeMillis();
+            if( syncPolicy == ServerConfiguration.SyncPolicy.NEVER ) {
+                unforcedLogs.clear();
+            } else if( syncPolicy == ServerConfiguration.SyncPolicy.GROUP_COMMIT || closing || now - lastSync >= syncInterval ) {
+                for( OperationLog<?> unforcedLog : unforcedLogs )
+                    unforcedLog.force();
+                unforcedLogs.clear();
+                lastSync = now;
+            }
+            if( closing ) {
+                for( OperationLog<?> openLog : openLogs ) {
+                    try {
+                        openLog.close( false );
+                    } catch( IOException e ) {
+                        LOGGER.error( "could not close " + openLog, e );
+                    }
+                }
+                openLogs.clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return the directory name of a log, the hex digits of the type name.
+     */
+    private static String directoryName( String name ) {
+        final StringBuilder sb = new StringBuilder( "type-" );
+        try {
+            for( byte b : name.getBytes( "UTF-8" ) )
+                sb.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        } catch( UnsupportedEncodingException e ) {
+            throw new IllegalStateException( e );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Delete a directory and its files.
+     */
+    static void deleteDirectory( File directory ) throws IOException {
+        final File[] children = directory.listFiles();
+        if( children != null ) {
+            for( File child : children ) {
+                if( !child.delete() )
+                    throw new IOException( "could not delete " + child );
+            }
+        }
+        if( !directory.delete() )
+            throw new IOException( "could not delete " + directory );
+    }
+}
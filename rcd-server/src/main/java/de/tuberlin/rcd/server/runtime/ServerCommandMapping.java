@@ -11,6 +11,7 @@ import de.tuberlin.rcd.protocol.message.MessageFormat;
 import de.tuberlin.rcd.protocol.runtimedefinition.IMessageCommand;
 import de.tuberlin.rcd.protocol.runtimedefinition.TypeNameRegistry;
 import de.tuberlin.rcd.protocol.types.IReplicatedType;
+import de.tuberlin.rcd.server.cluster.ClusterManager;
 import de.tuberlin.rcd.server.types.AbstractServerReplicatedType;
 
 /**
@@ -27,6 +28,15 @@ public final class ServerCommandMapping {
      * Constructor.
      */
     public ServerCommandMapping(ServerConnectionManager connectionManager, ServerDataManager dataManager, TypeNameRegistry nameRegistry) {
+        this( connectionManager, dataManager, nameRegistry, null );
+    }
+
+    /**
+     * Constructor.
+     * @param cluster Routes the messages to the owners of the types, <code>null</code> if the server runs alone.
+     */
+    public ServerCommandMapping(ServerConnectionManager connectionManager, ServerDataManager dataManager,
+                                TypeNameRegistry nameRegistry, ClusterManager cluster) {
         // sanity check.
         if( connectionManager == null )
             throw new IllegalArgumentException();
@@ -38,12 +48,26 @@ public final class ServerCommandMapping {
         //this.connectionManager = connectionManager;
         this.dataManager = dataManager;
         this.nameRegistry = nameRegistry;
+        this.cluster = cluster;
         //this.msgBuilder = new MessageBuilder( connectionManager.configuration.serverUID, false );
 
         // message - command mapping.
-        msgCmdMap.put( MessageFormat.MessageType.MSG_TYPE_REGISTER_BY_REPLICATED_TYPE, new RegisterCommand() );
-        msgCmdMap.put( MessageFormat.MessageType.MSG_TYPE_OPERATION_FOR_REPLICATED_TYPE, new OperationCommand() );
-        msgCmdMap.put( MessageFormat.MessageType.MSG_TYPE_CREATE_REPLICATED_TYPE, new CreateCommand() );
+        putTypeCommand( MessageFormat.MessageType.MSG_TYPE_REGISTER_BY_REPLICATED_TYPE, new RegisterCommand() );
+        putTypeCommand( MessageFormat.MessageType.MSG_TYPE_OPERATION_FOR_REPLICATED_TYPE, new OperationCommand() );
+        putTypeCommand( MessageFormat.MessageType.MSG_TYPE_CREATE_REPLICATED_TYPE, new CreateCommand() );
+        // acknowledges are processed by the type in order with the operations of the client.
+        putTypeCommand( MessageFormat.MessageType.MSG_TYPE_ACKNOWLEDGE_REPLICATED_TYPE, new OperationCommand() );
+        putTypeCommand( MessageFormat.MessageType.MSG_TYPE_FILL_ACKNOWLEDGE_REPLICATED_TYPE, new OperationCommand() );
+        if( cluster != null )
+            msgCmdMap.putAll( cluster.getCommands() );
+    }
+
+    /**
+     * Map a message type that addresses a replicated type. In a cluster the
+     * message is processed by the node that owns the type.
+     */
+    private void putTypeCommand( MessageFormat.MessageType msgType, IMessageCommand command ) {
+        msgCmdMap.put( msgType, cluster != null ? cluster.route( msgType, command ) : command );
     }
 
     /** Defines a mapping of a message type to a handler. */
@@ -59,6 +83,9 @@ public final class ServerCommandMapping {
     /** Resolves client type names to server type names. */
     private final TypeNameRegistry nameRegistry;
 
+    /** Routes the messages between the cluster nodes, null if the server runs alone. */
+    private final ClusterManager cluster;
+
     /**
      * Resolves a message type to a command.
      * @param msgType Type of the message.
@@ -75,8 +102,8 @@ public final class ServerCommandMapping {
         @Override
         public void execute( Message msg ) {
             final String typeName = msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME ).toString();
-            if( dataManager.existsReplicatedType( typeName ) ) {
-                final AbstractServerReplicatedType<?> type = (AbstractServerReplicatedType<?>)dataManager.getReplicatedType( typeName );
+            final AbstractServerReplicatedType<?> type = (AbstractServerReplicatedType<?>) dataManager.getReplicatedType( typeName );
+            if( type != null ) {
                 final String clazzName = msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_CLASS_NAME ).toString();
                 final String specificTypeName = nameRegistry.getSpecificName( clazzName );
                 if( !type.getClass().getName().equals( specificTypeName ) ) {
@@ -109,8 +136,8 @@ public final class ServerCommandMapping {
         @Override
         public void execute( Message msg ) {
             final String typeName = msg.getParameter( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME ).toString();
-            if( dataManager.existsReplicatedType( typeName ) ) {
-                final AbstractServerReplicatedType<?> type = (AbstractServerReplicatedType<?>) dataManager.getReplicatedType( typeName );
+            final AbstractServerReplicatedType<?> type = (AbstractServerReplicatedType<?>) dataManager.getReplicatedType( typeName );
+            if( type != null ) {
                 if( type.isClientRegistered( msg.getSourceUID() ) ) {
                     type.enqueueReceivedMsg( msg );
                 } else {
@@ -139,7 +166,13 @@ public final class ServerCommandMapping {
                     //if( clazz.isAssignableFrom( IReplicatedType.class ) ) {
                         @SuppressWarnings("rawtypes")
 						final Class<? extends IReplicatedType> replicatedTypeClazz = clazz.asSubclass( IReplicatedType.class );
-                        dataManager.createReplicatedType( typeName, msg.getSourceUID(), replicatedTypeClazz );
+                        final AbstractServerReplicatedType<?> type = (AbstractServerReplicatedType<?>)
+                                dataManager.createReplicatedType( typeName, msg.getSourceUID(), replicatedTypeClazz );
+                        if( !type.isClientRegistered( msg.getSourceUID() ) ) {
+                            // type name was used concurrently, register with the existing type.
+                            final IMessageCommand cmd = msgCmdMap.get( MessageFormat.MessageType.MSG_TYPE_REGISTER_BY_REPLICATED_TYPE );
+                            cmd.execute( msg );
+                        }
                     //} else {
                         // TODO: Error handling.
                     //    throw new IllegalStateException();
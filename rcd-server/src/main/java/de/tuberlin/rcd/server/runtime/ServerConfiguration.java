@@ -1,7 +1,21 @@
 package de.tuberlin.rcd.server.runtime;
 
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
+import de.tuberlin.rcd.network.BatchPolicy;
+import de.tuberlin.rcd.network.Connection;
+import de.tuberlin.rcd.network.codec.BinaryMessageCodec;
+import de.tuberlin.rcd.network.codec.JavaSerializationCodec;
+import de.tuberlin.rcd.network.codec.MessageCodecRegistry;
+import de.tuberlin.rcd.protocol.types.list.ListModel;
+import de.tuberlin.rcd.server.cluster.ClusterNode;
+
 /**
  * Encapsulates the tests configuration.
  * @author Tobias Herb
@@ -9,6 +23,63 @@ import java.util.UUID;
  */
 public final class ServerConfiguration {
 
+    /**
+     * The transport that serves the client connections.
+     */
+    public static enum TransportMode {
+
+        /** Dedicated sender and receiver thread per connection. */
+        BLOCKING,
+
+        /** Connections are multiplexed over a small pool of selector threads. */
+        NON_BLOCKING
+    }
+
+    /**
+     * The threads that process the received messages of the replicated types.
+     */
+    public static enum ProcessingMode {
+
+        /** Every replicated type runs its own processing thread. */
+        DEDICATED_THREAD,
+
+        /** The replicated types are scheduled on a fixed pool of threads when they received messages. */
+        SHARED_EXECUTOR,
+
+        /** The replicated types are scheduled on virtual threads, requires Java 21 or newer. */
+        VIRTUAL_THREAD
+    }
+
+    /**
+     * The content that is transmitted to fill a newly registered client.
+     */
+    public static enum FillMode {
+
+        /** The data elements at a snapshot revision and the operations after it. */
+        SNAPSHOT,
+
+        /** A serialized copy of the complete data model. */
+        STATE,
+
+        /** The complete operation history, falls back to the state if the history is truncated. */
+        OPERATION
+    }
+
+    /**
+     * When the operation logs of the replicated types are forced to the storage device.
+     */
+    public static enum SyncPolicy {
+
+        /** The operating system writes the logs back, a crash of the machine may lose operations. */
+        NEVER,
+
+        /** Every group of operations the log writer appends is forced before the next group. */
+        GROUP_COMMIT,
+
+        /** The logs are forced at most once per sync interval. */
+        INTERVAL
+    }
+
 	/**
 	 * Constructor.
 	 */
@@ -31,6 +102,60 @@ public final class ServerConfiguration {
     /** Server UID. */
     public final UUID serverUID;
 
+    /** The transport that serves the client connections. */
+    private TransportMode transportMode = TransportMode.BLOCKING;
+
+    /** The number of selector threads of the non-blocking transport. */
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The codecs offered to the clients in order of preference. */
+    private String[] codecs = { BinaryMessageCodec.NAME, JavaSerializationCodec.NAME };
+
+    /** Packing of the outgoing messages, by default only already queued messages are packed. */
+    private BatchPolicy batchPolicy = new BatchPolicy( 64, 0 );
+
+    /** The maximal payload length of a received frame. */
+    private int maxFrameSize = Connection.DEFAULT_MAX_FRAME_SIZE;
+
+    /** Time in milliseconds a connecting peer has to finish the handshake. */
+    private long handshakeTimeout = 10000;
+
+    /** The content that is transmitted to fill newly registered clients. */
+    private FillMode fillMode = FillMode.SNAPSHOT;
+
+    /** The data model of the replicated lists. */
+    private ListModel listModel = ListModel.LINEAR;
+
+    /** The threads that process the received messages of the replicated types. */
+    private ProcessingMode processingMode = ProcessingMode.DEDICATED_THREAD;
+
+    /** The number of threads of the shared executor. */
+    private int processingThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The node of this server in the cluster, <code>null</code> if the server runs alone. */
+    private ClusterNode localNode = null;
+
+    /** The initial members of the cluster. */
+    private List<ClusterNode> clusterMembers = Collections.emptyList();
+
+    /** The secret the nodes of the cluster authenticate each other with. */
+    private byte[] clusterSecret = null;
+
+    /** The directory of the operation logs, <code>null</code> if the types are kept only in memory. */
+    private File persistenceDirectory = null;
+
+    /** When the operation logs are forced to the storage device. */
+    private SyncPolicy syncPolicy = SyncPolicy.GROUP_COMMIT;
+
+    /** The time in milliseconds between two forces of the <code>INTERVAL</code> policy. */
+    private long syncInterval = 1000;
+
+    /** The size in bytes of a log segment file. */
+    private int segmentSize = 4 << 20;
+
+    /** The number of operations between two snapshots of a data model. */
+    private int snapshotInterval = 4096;
+
 	/**
 	 *	Return the port number.
 	 */
@@ -51,4 +176,333 @@ public final class ServerConfiguration {
 	public String getHost() {
 		return host;
 	}
+
+    /**
+     * Set the transport that serves the client connections.
+     * @param transportMode The transport mode.
+     * @param ioThreads The number of selector threads, only used by the non-blocking transport.
+     * @return This configuration.
+     */
+    public ServerConfiguration setTransportMode( TransportMode transportMode, int ioThreads ) {
+        // sanity check.
+        if( transportMode == null )
+            throw new NullPointerException();
+        if( ioThreads < 1 )
+            throw new IllegalArgumentException();
+
+        this.transportMode = transportMode;
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    /**
+     * Return the transport that serves the client connections.
+     */
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    /**
+     * Return the number of selector threads of the non-blocking transport.
+     */
+    public int getIOThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Set the codecs that are offered to the clients during the connection handshake.
+     * @param codecs The codec names in order of preference.
+     * @return This configuration.
+     */
+    public ServerConfiguration setCodecs( String... codecs ) {
+        // sanity check.
+        if( codecs == null )
+            throw new NullPointerException();
+        if( codecs.length == 0 )
+            throw new IllegalArgumentException();
+        for( String codec : codecs ) {
+            if( !MessageCodecRegistry.isSupported( codec ) )
+                throw new IllegalArgumentException( "codec " + codec + " is not registered" );
+        }
+
+        this.codecs = codecs.clone();
+        return this;
+    }
+
+    /**
+     * Return the codecs offered to the clients in order of preference.
+     */
+    public String[] getCodecs() {
+        return codecs.clone();
+    }
+
+    /**
+     * Set how the senders pack queued messages into frames.
+     * @param maxBatchSize The maximal number of messages per frame, <code>1</code> disables batching.
+     * @param maxFlushDelay The maximal time in milliseconds a message waits for further messages.
+     * @return This configuration.
+     */
+    public ServerConfiguration setBatching( int maxBatchSize, long maxFlushDelay ) {
+        this.batchPolicy = new BatchPolicy( maxBatchSize, maxFlushDelay );
+        return this;
+    }
+
+    /**
+     * Return how the senders pack queued messages into frames.
+     */
+    public BatchPolicy getBatchPolicy() {
+        return batchPolicy;
+    }
+
+    /**
+     * Set the maximal payload length of a received frame. A peer that announces
+     * a larger frame is disconnected.
+     * @param maxFrameSize The maximal payload length in bytes.
+     * @return This configuration.
+     */
+    public ServerConfiguration setMaxFrameSize( int maxFrameSize ) {
+        // sanity check.
+        if( maxFrameSize < 1 )
+            throw new IllegalArgumentException();
+
+        this.maxFrameSize = maxFrameSize;
+        return this;
+    }
+
+    /**
+     * Return the maximal payload length of a received frame.
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Set the time a connecting peer has to finish the handshake, a silent peer is disconnected.
+     * @param handshakeTimeout The timeout in milliseconds.
+     * @return This configuration.
+     */
+    public ServerConfiguration setHandshakeTimeout( long handshakeTimeout ) {
+        // sanity check.
+        if( handshakeTimeout < 1 )
+            throw new IllegalArgumentException();
+
+        this.handshakeTimeout = handshakeTimeout;
+        return this;
+    }
+
+    /**
+     * Return the time in milliseconds a connecting peer has to finish the handshake.
+     */
+    public long getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+
+    /**
+     * Set the content that is transmitted to fill newly registered clients.
+     * @param fillMode The fill mode.
+     * @return This configuration.
+     */
+    public ServerConfiguration setFillMode( FillMode fillMode ) {
+        // sanity check.
+        if( fillMode == null )
+            throw new NullPointerException();
+
+        this.fillMode = fillMode;
+        return this;
+    }
+
+    /**
+     * Return the content that is transmitted to fill newly registered clients.
+     */
+    public FillMode getFillMode() {
+        return fillMode;
+    }
+
+    /**
+     * Set the data model of the replicated lists, e.g. <code>CHUNKED</code> for large lists.
+     * @param listModel The list model.
+     * @return This configuration.
+     */
+    public ServerConfiguration setListModel( ListModel listModel ) {
+        // sanity check.
+        if( listModel == null )
+            throw new NullPointerException();
+
+        this.listModel = listModel;
+        return this;
+    }
+
+    /**
+     * Return the data model of the replicated lists.
+     */
+    public ListModel getListModel() {
+        return listModel;
+    }
+
+    /**
+     * Set the threads that process the received messages of the replicated types.
+     * @param processingMode The processing mode.
+     * @param processingThreads The number of threads, only used by the shared executor.
+     * @return This configuration.
+     */
+    public ServerConfiguration setProcessingMode( ProcessingMode processingMode, int processingThreads ) {
+        // sanity check.
+        if( processingMode == null )
+            throw new NullPointerException();
+        if( processingThreads < 1 )
+            throw new IllegalArgumentException();
+
+        this.processingMode = processingMode;
+        this.processingThreads = processingThreads;
+        return this;
+    }
+
+    /**
+     * Return the threads that process the received messages of the replicated types.
+     */
+    public ProcessingMode getProcessingMode() {
+        return processingMode;
+    }
+
+    /**
+     * Return the number of threads of the shared executor.
+     */
+    public int getProcessingThreads() {
+        return processingThreads;
+    }
+
+    /**
+     * Run the server as a node of a cluster. The replicated types are partitioned across the
+     * members by their name, the clients of a type may connect to any member.
+     * @param localNode The node of this server.
+     * @param members The initial members of the cluster, including the local node.
+     * @return This configuration.
+     */
+    public ServerConfiguration setCluster( ClusterNode localNode, ClusterNode... members ) {
+        // sanity check.
+        if( localNode == null )
+            throw new NullPointerException();
+        if( members == null )
+            throw new NullPointerException();
+        if( !Arrays.asList( members ).contains( localNode ) )
+            throw new IllegalArgumentException( "the local node must be a member" );
+
+        this.localNode = localNode;
+        this.clusterMembers = Collections.unmodifiableList( new ArrayList<ClusterNode>( Arrays.asList( members ) ) );
+        return this;
+    }
+
+    /**
+     * Set the secret the nodes of the cluster authenticate each other with. A connection that
+     * introduces itself as a node is only accepted, if the node proves the same secret.
+     * @param secret The secret, the same on all members.
+     * @return This configuration.
+     */
+    public ServerConfiguration setClusterSecret( String secret ) {
+        // sanity check.
+        if( secret == null )
+            throw new NullPointerException();
+        if( secret.length() == 0 )
+            throw new IllegalArgumentException();
+
+        this.clusterSecret = secret.getBytes( Charset.forName( "UTF-8" ) );
+        return this;
+    }
+
+    /**
+     * Return the secret of the cluster, <code>null</code> if no secret is configured.
+     */
+    public byte[] getClusterSecret() {
+        return clusterSecret != null ? clusterSecret.clone() : null;
+    }
+
+    /**
+     * Return the node of this server in the cluster, <code>null</code> if the server runs alone.
+     */
+    public ClusterNode getLocalNode() {
+        return localNode;
+    }
+
+    /**
+     * Return the initial members of the cluster.
+     */
+    public List<ClusterNode> getClusterMembers() {
+        return clusterMembers;
+    }
+
+    /**
+     * Persist the replicated types. Every integrated operation is appended to the log of its
+     * type, the types are rebuilt from their logs when the server starts.
+     * @param directory The directory of the operation logs.
+     * @param syncPolicy When the logs are forced to the storage device.
+     * @param syncInterval The time in milliseconds between two forces, only used by the <code>INTERVAL</code> policy.
+     * @return This configuration.
+     */
+    public ServerConfiguration setPersistence( File directory, SyncPolicy syncPolicy, long syncInterval ) {
+        // sanity check.
+        if( directory == null )
+            throw new NullPointerException();
+        if( syncPolicy == null )
+            throw new NullPointerException();
+        if( syncInterval < 1 )
+            throw new IllegalArgumentException();
+
+        this.persistenceDirectory = directory;
+        this.syncPolicy = syncPolicy;
+        this.syncInterval = syncInterval;
+        return this;
+    }
+
+    /**
+     * Set the layout of the operation logs.
+     * @param segmentSize The size in bytes of a log segment file.
+     * @param snapshotInterval The number of operations between two snapshots of a data model.
+     * @return This configuration.
+     */
+    public ServerConfiguration setLogLayout( int segmentSize, int snapshotInterval ) {
+        // sanity check.
+        if( segmentSize < 4096 )
+            throw new IllegalArgumentException();
+        if( snapshotInterval < 1 )
+            throw new IllegalArgumentException();
+
+        this.segmentSize = segmentSize;
+        this.snapshotInterval = snapshotInterval;
+        return this;
+    }
+
+    /**
+     * Return the directory of the operation logs, <code>null</code> if the types are kept only in memory.
+     */
+    public File getPersistenceDirectory() {
+        return persistenceDirectory;
+    }
+
+    /**
+     * Return when the operation logs are forced to the storage device.
+     */
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Return the time in milliseconds between two forces of the <code>INTERVAL</code> policy.
+     */
+    public long getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * Return the size in bytes of a log segment file.
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Return the number of operations between two snapshots of a data model.
+     */
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
 }
@@ -1,9 +1,15 @@
 package de.tuberlin.rcd.server.runtime;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -30,8 +36,24 @@ public final class ServerConnectionListener {
 			throw new IllegalArgumentException();
         this.connectionManager = connectionManager;
         this.configuration = connectionManager.configuration;
-		this.socket = new ServerSocket( configuration.getPort(), configuration.getBacklog() );
+        if( configuration.getTransportMode() == ServerConfiguration.TransportMode.NON_BLOCKING ) {
+            // the accepted sockets must provide a channel for the selector based transport.
+            final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().bind( new InetSocketAddress( configuration.getPort() ), configuration.getBacklog() );
+            this.socket = serverChannel.socket();
+        } else {
+            this.socket = new ServerSocket( configuration.getPort(), configuration.getBacklog() );
+        }
 	    this.running = new AtomicBoolean( true );
+        final AtomicInteger threadCount = new AtomicInteger( 0 );
+        this.handshakeExecutor = Executors.newCachedThreadPool( new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r ) {
+                final Thread thread = new Thread( r, "Handshake-" + threadCount.getAndIncrement() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
     }
 
     /** Server port configuration. */
@@ -49,6 +71,9 @@ public final class ServerConnectionListener {
     /** Thread container for listener thread. */
     private Thread listenerThread = null;
 
+    /** Runs the handshakes, so a slow client does not hold up the accept loop. */
+    private final ExecutorService handshakeExecutor;
+
 	/**
 	 * Create a tests thread which accepts initial client requests,
 	 * build <code>Connection</code> objects and add them to 
@@ -61,10 +86,20 @@ public final class ServerConnectionListener {
                 public void run() {
                     try {
                         while( running.get() ) {
-                            Socket clientSocket = socket.accept();
+                            final Socket clientSocket = socket.accept();
                             LOGGER.info( "socket connection established" );
                             // accepted client socket and create connection context.
-                            connectionManager.openConnection( clientSocket, true );
+                            handshakeExecutor.execute( new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        connectionManager.openConnection( clientSocket, true );
+                                    } catch( ServerConnectionManagerException e ) {
+                                        // e.g. a failed handshake, the connection is already closed.
+                                        LOGGER.error( "could not open connection", e );
+                                    }
+                                }
+                            } );
                         }
                     } catch( Exception e ) {
                         throw new IllegalStateException( e );
@@ -87,6 +122,7 @@ public final class ServerConnectionListener {
      */
     public void stop() {
         running.set( false );
+        handshakeExecutor.shutdown();
         if( listenerThread.getState() == Thread.State.WAITING ||
             listenerThread.getState() == Thread.State.BLOCKED ) {
             listenerThread.interrupt();
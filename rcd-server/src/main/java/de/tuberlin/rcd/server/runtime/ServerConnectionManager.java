@@ -1,26 +1,50 @@
 package de.tuberlin.rcd.server.runtime;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.log4j.Logger;
 
 import de.tuberlin.rcd.network.Connection;
+import de.tuberlin.rcd.network.Message;
+import de.tuberlin.rcd.network.NioSelectorGroup;
 import de.tuberlin.rcd.network.Transceiver;
 import de.tuberlin.rcd.network.TransceiverFactory;
 import de.tuberlin.rcd.network.common.Event;
 import de.tuberlin.rcd.network.common.EventDispatcher;
-import de.tuberlin.rcd.network.common.Pair;
+import de.tuberlin.rcd.network.codec.MessageCodecRegistry;
+import de.tuberlin.rcd.server.cluster.ClusterNode;
 
 /**
  * Central component responsible for managing all client connections.
  *
  * @author Tobias Herb
  *
- * TODO: We could use a ConncurrentHashMap for connectionMap for allowing concurrent accesses.
  */
 public final class ServerConnectionManager extends EventDispatcher {
 
@@ -50,6 +74,46 @@ public final class ServerConnectionManager extends EventDispatcher {
         }
     }
 
+    /**
+     * Registry entry of a client connection. The sender of the connection is resolved once
+     * at registration, so sending a message needs no further lookups.
+     */
+    public static class ConnectionHandle {
+
+        /**
+         * Constructor.
+         * @param connection The client connection.
+         * @param transceiver The transceiver of the connection.
+         * @param peer The cluster node at the other end, <code>null</code> for a client.
+         */
+        protected ConnectionHandle( Connection connection, Transceiver transceiver, ClusterNode peer ) {
+            this.connection = connection;
+            this.transceiver = transceiver;
+            this.sender = (ServerSender)transceiver.getTransmitter();
+            this.peer = peer;
+        }
+
+        /** The client connection. */
+        public final Connection connection;
+
+        /** The transceiver of the connection. */
+        public final Transceiver transceiver;
+
+        /** The sender of the connection. */
+        public final ServerSender sender;
+
+        /** The cluster node at the other end, <code>null</code> for a client. */
+        public final ClusterNode peer;
+
+        /**
+         * Send a message to the client.
+         * @param msg The message.
+         */
+        public void send( Message msg ) {
+            sender.enqueueMessage( msg );
+        }
+    }
+
 	/**
 	 * Constructor.
 	 */
@@ -59,17 +123,45 @@ public final class ServerConnectionManager extends EventDispatcher {
             throw new NullPointerException();
 
         this.configuration = configuration;
-        this.connectionMap = new HashMap<UUID,Pair<Connection,Transceiver>>();
-		this.factory = new TransceiverFactory( ServerReceiver.class, ServerSender.class );
+        this.connectionMap = new ConcurrentHashMap<UUID,ConnectionHandle>();
+        this.routeMap = new ConcurrentHashMap<UUID,ConnectionHandle>();
+        this.clusterMembers = Collections.unmodifiableSet( new HashSet<ClusterNode>( configuration.getClusterMembers() ) );
+        if( configuration.getTransportMode() == ServerConfiguration.TransportMode.NON_BLOCKING ) {
+            this.selectorGroup = new NioSelectorGroup( configuration.getIOThreads() );
+            this.factory = new TransceiverFactory( ServerReceiver.class, ServerSender.class, selectorGroup );
+        } else {
+            this.selectorGroup = null;
+            this.factory = new TransceiverFactory( ServerReceiver.class, ServerSender.class );
+        }
+        this.handshakeTimer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r ) {
+                final Thread thread = new Thread( r, "HandshakeTimer" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
 	}
 
-	/** A map that stores the client UID and the associated connection. */
-	private final Map<UUID,Pair<Connection,Transceiver>> connectionMap;
+	/** A map that stores the client UID and the associated connection. Read without locking. */
+	private final ConcurrentMap<UUID,ConnectionHandle> connectionMap;
+
+    /** The handles of clients that are connected to other nodes of the cluster. */
+    private final ConcurrentMap<UUID,ConnectionHandle> routeMap;
 	
 	/** The factory is responsible to create a transceiver
 	    for the associated connection. */
 	private final TransceiverFactory factory;
 
+    /** I/O threads of the non-blocking transport, <code>null</code> for the blocking transport. */
+    private final NioSelectorGroup selectorGroup;
+
+    /** The nodes that are accepted as peers, a node that is not a member is rejected. */
+    private volatile Set<ClusterNode> clusterMembers;
+
+    /** Closes the connections that don't finish the handshake in time. */
+    private final ScheduledExecutorService handshakeTimer;
+
     /** The tests configuration. */
     public final ServerConfiguration configuration;
 
@@ -85,14 +177,17 @@ public final class ServerConnectionManager extends EventDispatcher {
 		
 		try {
             // create a dedicated connection handler.
-			final Connection connection = new Connection( socket );
+			final Connection connection = ( selectorGroup != null && socket.getChannel() != null )
+                    ? new Connection( socket.getChannel() ) : new Connection( socket );
+            connection.setMaxFrameSize( configuration.getMaxFrameSize() );
+            final ScheduledFuture<?> handshakeTimeout = scheduleHandshakeTimeout( connection );
 
             try {
                 // Generate a UID for this connection and send it to the client.
                 // This behaviour is hardwired, because we want that the client uses
                 // the same UID as the tests for further communication.
                 UUID clientUID = UUID.randomUUID();
-                connection.out.writeObject( clientUID );
+                connection.writeObject( clientUID );
                 connection.setUID( clientUID );
                 LOGGER.info( "uid transmitted to the client [uid = " + connection.getUID() + "]" );
             } catch( Exception e ) {
@@ -100,6 +195,173 @@ public final class ServerConnectionManager extends EventDispatcher {
                 throw new ServerConnectionManagerException( "could not send UID to the client", e );
             }
 
+            ClusterNode peer = null;
+            try {
+                // Offer the configured codecs, the client answers with the selected one.
+                // Both sides switch to the selected codec after that frame.
+                final String[] offeredCodecs = configuration.getCodecs();
+                connection.writeObject( offeredCodecs );
+                Object reply = connection.readObject();
+                // a node of the cluster introduces itself and proves the cluster secret before it selects the codec.
+                if( reply instanceof ClusterNode ) {
+                    final ClusterNode node = (ClusterNode)reply;
+                    final byte[] token = (byte[])connection.readObject();
+                    final byte[] secret = configuration.getClusterSecret();
+                    if( secret == null || !clusterMembers.contains( node ) )
+                        throw new IllegalStateException( "node " + node + " is not a member of the cluster" );
+                    if( !MessageDigest.isEqual( token, peerToken( secret, connection.getUID(), node ) ) )
+                        throw new IllegalStateException( "node " + node + " could not be authenticated" );
+                    peer = node;
+                    reply = connection.readObject();
+                }
+                final String codecName = (String)reply;
+                if( !Arrays.asList( offeredCodecs ).contains( codecName ) )
+                    throw new IllegalStateException( "codec " + codecName + " was not offered" );
+                connection.setCodec( MessageCodecRegistry.create( codecName ) );
+            } catch( Exception e ) {
+                connection.close();
+                throw new ServerConnectionManagerException( "handshake with the client failed", e );
+            }
+            // the connection is already closed, if the timeout has expired.
+            if( !handshakeTimeout.cancel( false ) )
+                throw new ServerConnectionManagerException( "handshake timed out" );
+
+            registerConnection( connection, peer, startTransceiver );
+
+		} catch( IOException e ) {
+			throw new ServerConnectionManagerException( "connection object could not be created" );
+		}
+	}
+
+    /**
+     * Open a connection to another node of the cluster and add it to the connection manager.
+     * The connection takes the UID the other node assigns and is used in both directions.
+     * @param node The node to connect to.
+     * @param localNode The node of this server.
+     * @return The UID of the connection.
+     * @throws ServerConnectionManagerException If the connection could not be established.
+     */
+    public UUID openPeerConnection( ClusterNode node, ClusterNode localNode ) throws ServerConnectionManagerException {
+        // sanity check.
+        if( node == null )
+            throw new NullPointerException();
+        if( localNode == null )
+            throw new NullPointerException();
+
+        try {
+            final Connection connection;
+            if( selectorGroup != null ) {
+                connection = new Connection( SocketChannel.open( new InetSocketAddress( node.host, node.port ) ) );
+            } else {
+                connection = new Connection( new Socket( node.host, node.port ) );
+            }
+            connection.setMaxFrameSize( configuration.getMaxFrameSize() );
+            final ScheduledFuture<?> handshakeTimeout = scheduleHandshakeTimeout( connection );
+
+            try {
+                // the client side of the handshake, the node introduces itself before it selects the codec.
+                connection.setUID( (UUID)connection.readObject() );
+                final String codecName = MessageCodecRegistry.select( (String[])connection.readObject() );
+                connection.writeObject( localNode );
+                connection.writeObject( peerToken( configuration.getClusterSecret(), connection.getUID(), localNode ) );
+                connection.writeObject( codecName );
+                connection.setCodec( MessageCodecRegistry.create( codecName ) );
+            } catch( Exception e ) {
+                connection.close();
+                throw new ServerConnectionManagerException( "could not connect to node " + node, e );
+            }
+            if( !handshakeTimeout.cancel( false ) )
+                throw new ServerConnectionManagerException( "handshake with node " + node + " timed out" );
+
+            registerConnection( connection, node, true );
+            LOGGER.info( "connected to node " + node + " [uid = " + connection.getUID() + "]" );
+            return connection.getUID();
+
+        } catch( IOException e ) {
+            throw new ServerConnectionManagerException( "could not connect to node " + node, e );
+        }
+    }
+
+    /**
+     * Compute the token a node proves the cluster secret with. The token is bound to the UID of
+     * the connection, so a recorded handshake can't be replayed on another connection.
+     * @param secret The cluster secret.
+     * @param uid The UID of the connection.
+     * @param node The node that introduces itself.
+     * @return The token.
+     */
+    private static byte[] peerToken( byte[] secret, UUID uid, ClusterNode node ) {
+        // sanity check.
+        if( secret == null )
+            throw new IllegalStateException( "the cluster secret is not configured" );
+
+        try {
+            final Mac mac = Mac.getInstance( "HmacSHA256" );
+            mac.init( new SecretKeySpec( secret, "HmacSHA256" ) );
+            mac.update( ByteBuffer.allocate( 16 ).putLong( uid.getMostSignificantBits() )
+                    .putLong( uid.getLeastSignificantBits() ).array() );
+            return mac.doFinal( node.name.getBytes( Charset.forName( "UTF-8" ) ) );
+        } catch( GeneralSecurityException e ) {
+            throw new IllegalStateException( "could not compute the cluster token", e );
+        }
+    }
+
+    /**
+     * Set the nodes that are accepted as peers.
+     * @param members The nodes of the cluster.
+     */
+    public void setClusterMembers( Collection<ClusterNode> members ) {
+        // sanity check.
+        if( members == null )
+            throw new NullPointerException();
+
+        clusterMembers = Collections.unmodifiableSet( new HashSet<ClusterNode>( members ) );
+    }
+
+    /**
+     * Return true, if the connection leads to an authenticated node of the cluster.
+     * @param uid The UID of the connection.
+     */
+    public boolean isPeerConnection( UUID uid ) {
+        // sanity check.
+        if( uid == null )
+            throw new NullPointerException();
+
+        final ConnectionHandle handle = connectionMap.get( uid );
+        return handle != null && handle.peer != null;
+    }
+
+    /**
+     * Close the connection, if the handshake is not finished within the configured timeout.
+     * Closing the connection releases the thread that waits for the peer.
+     * @param connection The connection in handshake.
+     * @return The timeout, cancelled when the handshake is finished.
+     */
+    private ScheduledFuture<?> scheduleHandshakeTimeout( final Connection connection ) {
+        return handshakeTimer.schedule( new Runnable() {
+            @Override
+            public void run() {
+                LOGGER.info( "handshake timed out [connection = " + connection + "]" );
+                try {
+                    connection.close();
+                } catch( IOException e ) {
+                    LOGGER.error( "could not close connection", e );
+                }
+            }
+        }, configuration.getHandshakeTimeout(), TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Create the transceiver of a connection that finished the handshake and add it to the connection manager.
+     * @param connection The connection.
+     * @param peer The cluster node at the other end, <code>null</code> for a client.
+     * @param startTransceiver true, if the transceiver is started.
+     * @throws IOException If the connection could not be closed after a failure.
+     * @throws ServerConnectionManagerException If the transceiver could not be created.
+     */
+    private void registerConnection( final Connection connection, ClusterNode peer, boolean startTransceiver )
+            throws IOException, ServerConnectionManagerException {
+
             // monitor for concurrent managers accesses.
             final ServerConnectionManager managerMutex = this;
 
@@ -131,27 +393,24 @@ public final class ServerConnectionManager extends EventDispatcher {
                     // The callback handler is called either by the sender or by the receiver thread of the transceiver.
                     @Override
                     public void run() {
-                        // serialize access to ServerConnectionManager internals in the case of concurrent closing callback invocations.
+                        // in the case of concurrent closing callback invocations only the first one removes the entry.
+                        if( connectionMap.remove( connection.getUID() ) == null )
+                            throw new IllegalStateException( "client entry not found" );
+                        // serialize the event dispatching.
                         synchronized( managerMutex ) {
-                            if( connectionMap.containsKey( connection.getUID() ) ) {
-                                // dispatch a client removed event for the external environment.
-                                managerMutex.dispatchEvent(new ConnectionChangedEvent(ConnectionChangedEvent.EVENT_TYPE_CLIENT_REMOVED, connection.getUID()));
-                                connectionMap.remove( connection.getUID() );
-                            } else {
-                                throw new IllegalStateException( "client entry not found" );
-                            }
-                            try {
-                                connection.close();
-                            } catch( Exception e ) {
-                                throw new IllegalStateException( "could not close connection" );
-                            }
+                            // dispatch a client removed event for the external environment.
+                            managerMutex.dispatchEvent(new ConnectionChangedEvent(ConnectionChangedEvent.EVENT_TYPE_CLIENT_REMOVED, connection.getUID()));
+                        }
+                        try {
+                            connection.close();
+                        } catch( Exception e ) {
+                            throw new IllegalStateException( "could not close connection" );
                         }
                      }
 			    } );
 			
 			if( transceiver != null ) {
-                connectionMap.put( connection.getUID(),
-            		               new Pair<Connection,Transceiver>( connection, transceiver ) );
+                connectionMap.put( connection.getUID(), new ConnectionHandle( connection, transceiver, peer ) );
 
 				if( startTransceiver ) {
                     // before we start the transceiver for this connection, we must
@@ -165,10 +424,6 @@ public final class ServerConnectionManager extends EventDispatcher {
 				connection.close();
 				throw new ServerConnectionManagerException( "transceiver object could not be created" );
 			}
-			
-		} catch( IOException e ) {
-			throw new ServerConnectionManagerException( "connection object could not be created" );
-		}
 	}
 	
 	/**
@@ -182,10 +437,10 @@ public final class ServerConnectionManager extends EventDispatcher {
 		if( uid == null )
 			throw new NullPointerException();
 		
-		final Pair<Connection,Transceiver> connectionAndTransceiver = connectionMap.get( uid );
-		if( connectionAndTransceiver.getFirst() == null )
+		final ConnectionHandle handle = connectionMap.get( uid );
+		if( handle == null )
 			throw new ServerConnectionManagerException( "connection manager could not find connection" );
-		return connectionAndTransceiver.getFirst();
+		return handle.connection;
 	}
 	
 	/**
@@ -199,11 +454,81 @@ public final class ServerConnectionManager extends EventDispatcher {
 		if( uid == null )
 			throw new NullPointerException();
 		
-		final Pair<Connection,Transceiver> connectionAndTransceiver = connectionMap.get( uid );
-		if( connectionAndTransceiver.getSecond() == null )
+		final ConnectionHandle handle = connectionMap.get( uid );
+		if( handle == null )
 			throw new ServerConnectionManagerException( "connection manager could not find transceiver" );
-		return connectionAndTransceiver.getSecond();
+		return handle.transceiver;
 	}
+
+    /**
+     * Return the registry entry of a client connection.
+     * @param uid The UID of the client connection.
+     * @return The registry entry, or <code>null</code> if the client is not connected (anymore).
+     */
+    public ConnectionHandle getConnectionHandle( UUID uid ) {
+        // sanity check.
+        if( uid == null )
+            throw new NullPointerException();
+        final ConnectionHandle handle = connectionMap.get( uid );
+        return handle != null ? handle : routeMap.get( uid );
+    }
+
+    /**
+     * Make a client that is connected to another node of the cluster reachable.
+     * @param clientUID The UID of the client.
+     * @param handle The handle that sends messages to the client, e.g. over the connection to its node.
+     * @return true, if the route was added, false if the client is connected or already routed.
+     */
+    public boolean addRoute( UUID clientUID, ConnectionHandle handle ) {
+        // sanity check.
+        if( clientUID == null )
+            throw new NullPointerException();
+        if( handle == null )
+            throw new NullPointerException();
+
+        if( connectionMap.containsKey( clientUID ) )
+            return false;
+        return routeMap.putIfAbsent( clientUID, handle ) == null;
+    }
+
+    /**
+     * Remove the route to a client and dispatch a client removed event.
+     * @param clientUID The UID of the client.
+     * @param handle The handle of the route.
+     * @return true, if the route was removed.
+     */
+    public boolean removeRoute( UUID clientUID, ConnectionHandle handle ) {
+        // sanity check.
+        if( clientUID == null )
+            throw new NullPointerException();
+        if( handle == null )
+            throw new NullPointerException();
+
+        if( !routeMap.remove( clientUID, handle ) )
+            return false;
+        synchronized( this ) {
+            dispatchEvent( new ConnectionChangedEvent( ConnectionChangedEvent.EVENT_TYPE_CLIENT_REMOVED, clientUID ) );
+        }
+        return true;
+    }
+
+    /**
+     * Return the clients that are reached over the given connection.
+     * @param uid The UID of the connection to another node.
+     * @return The UIDs of the routed clients.
+     */
+    public List<UUID> getRoutedClients( UUID uid ) {
+        // sanity check.
+        if( uid == null )
+            throw new NullPointerException();
+
+        final List<UUID> clients = new ArrayList<UUID>();
+        for( Map.Entry<UUID,ConnectionHandle> entry : routeMap.entrySet() ) {
+            if( entry.getValue().connection.getUID().equals( uid ) )
+                clients.add( entry.getKey() );
+        }
+        return clients;
+    }
 	
 	/**
 	 * Close the client connection and remove it from the connection manager.
@@ -211,19 +536,19 @@ public final class ServerConnectionManager extends EventDispatcher {
 	 * @throws ServerConnectionManagerException If the connection could not be found.
 	 * 									  If the connection could not be closed.
 	 */
-	public synchronized void closeConnection( UUID uid ) throws ServerConnectionManagerException {
+	public void closeConnection( UUID uid ) throws ServerConnectionManagerException {
 		// sanity check.
 		if( uid == null )
 			throw new NullPointerException();
 		
-		if( connectionMap.containsKey( uid ) ) {
-			final Pair<Connection,Transceiver> connectionAndTransceiver = connectionMap.remove( uid );
-			final Transceiver transceiver = connectionAndTransceiver.getSecond();
-			if( transceiver.isActive() ) {
-				transceiver.stop();
-			} else {
+		final ConnectionHandle handle = connectionMap.get( uid );
+		if( handle != null ) {
+			if( handle.transceiver.isActive() ) {
+				// the closing callback removes the entry.
+				handle.transceiver.stop();
+			} else if( connectionMap.remove( uid, handle ) ) {
 				try {
-					connectionAndTransceiver.getFirst().close();
+					handle.connection.close();
 				} catch (IOException e) {
 					throw new ServerConnectionManagerException( "connection object could not be created" );
 				}
@@ -2,9 +2,13 @@ package de.tuberlin.rcd.server.runtime;
 
 import java.lang.reflect.Constructor;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -13,14 +17,17 @@ import de.tuberlin.rcd.network.common.IEventListener;
 import de.tuberlin.rcd.protocol.runtimedefinition.IDataManager;
 import de.tuberlin.rcd.protocol.runtimedefinition.IReplicatedObjectFactory;
 import de.tuberlin.rcd.protocol.types.IReplicatedType;
+import de.tuberlin.rcd.server.cluster.HandoverData;
+import de.tuberlin.rcd.server.persistence.OperationLog;
+import de.tuberlin.rcd.server.persistence.PersistenceManager;
 import de.tuberlin.rcd.server.types.AbstractServerReplicatedType;
 
 /**
  *
  * @author Tobias Herb
- * ATTENTION: This class must be synchronized.
- * Try to use only non-blocking concurrent datastructures
- * to avoid heavy synchronization overhead.
+ * ATTENTION: This class is accessed concurrently by the receive threads of all clients.
+ * The types are kept in a non-blocking concurrent map to avoid heavy synchronization
+ * overhead, every type processes its messages on its own (see <code>ProcessingMode</code>).
  */
 public final class ServerDataManager implements IDataManager {
 
@@ -38,15 +45,59 @@ public final class ServerDataManager implements IDataManager {
             throw new NullPointerException();
 
         this.connectionManager = connectionManager;
+        this.executor = createExecutor( connectionManager.configuration );
+        this.persistence = connectionManager.configuration.getPersistenceDirectory() != null
+                ? new PersistenceManager( connectionManager.configuration ) : null;
         registerByConnectionManager();
     }
 
     /** Reference to the ServerConnectionManager. */
     private final ServerConnectionManager connectionManager;
 
-    /** A mapping between the given names and the references to the replicated types. */
-    private final Map<String,AbstractServerReplicatedType<?>> replicatedTypes
-            = new HashMap<String,AbstractServerReplicatedType<?>>();
+    /** Processes the received messages of all types, or null if every type runs its own thread. */
+    private final Executor executor;
+
+    /** Manages the operation logs of the types, or null if the types are kept only in memory. */
+    private final PersistenceManager persistence;
+
+    /**
+     * A mapping between the given names and the references to the replicated types.
+     * The lookups take no lock, so the receive threads of clients working on different
+     * types do not serialize each other.
+     */
+    private final ConcurrentMap<String,AbstractServerReplicatedType<?>> replicatedTypes
+            = new ConcurrentHashMap<String,AbstractServerReplicatedType<?>>();
+
+    /**
+     * Create the executor for the configured processing mode.
+     * @param configuration The server configuration.
+     * @return The executor, or null if every type runs its own processing thread.
+     */
+    private static Executor createExecutor( ServerConfiguration configuration ) {
+        switch( configuration.getProcessingMode() ) {
+            case SHARED_EXECUTOR: {
+                final AtomicInteger threadCount = new AtomicInteger( 0 );
+                return Executors.newFixedThreadPool( configuration.getProcessingThreads(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread( Runnable r ) {
+                        final Thread thread = new Thread( r, "TypeProcessor-" + threadCount.getAndIncrement() );
+                        thread.setDaemon( true );
+                        return thread;
+                    }
+                } );
+            }
+            case VIRTUAL_THREAD: {
+                // looked up at runtime, the sources stay compatible with older JDKs.
+                try {
+                    return (Executor)Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+                } catch( Exception e ) {
+                    throw new IllegalStateException( "virtual threads are not supported by this JVM", e );
+                }
+            }
+            default:
+                return null;
+        }
+    }
 
     /**
      * Install listeners for ServerConnectionManager events.
@@ -94,12 +145,14 @@ public final class ServerDataManager implements IDataManager {
 
     /**
      * Create a new replicated type. Implemented in client and tests specialization.
+     * The creation is atomic: if another client created a type with the same name
+     * concurrently, that type is returned and the client is not registered with it.
      * @param name The name of the new replicated type.
      * @param clientUID Only used in the tests implementation.
      * @param clazz The class information about the replicated type.
-     * @return The new created replicated type.
+     * @return The new created replicated type, or the type that already exists under that name.
      */
-    public synchronized IReplicatedType<?> createReplicatedType( String name, UUID clientUID, @SuppressWarnings("rawtypes") Class<? extends IReplicatedType> clazz ) {
+    public IReplicatedType<?> createReplicatedType( String name, UUID clientUID, @SuppressWarnings("rawtypes") Class<? extends IReplicatedType> clazz ) {
         // sanity check.
         if( name ==  null )
             throw new NullPointerException();
@@ -107,39 +160,168 @@ public final class ServerDataManager implements IDataManager {
             throw new NullPointerException();
         final AbstractServerReplicatedType<?> type;
         try {
-             Constructor<?> constructors[] = clazz.getConstructors();
-             if( constructors.length ==  1 ) {
-                 Constructor<?> constructor = constructors[0];
-                 // two constructor signatures of replicated types are supported.
-                 if( constructor.getParameterTypes().length == 4 ) {
-                     type = (AbstractServerReplicatedType<?>) clazz.getConstructor( String.class, UUID.class, Class.class, ServerConnectionManager.class )
-                             .newInstance( name, UUID.randomUUID(), Object.class, connectionManager );
-                 } else if( constructor.getParameterTypes().length == 3 ) {
-                     type = (AbstractServerReplicatedType<?>) clazz.getConstructor( String.class, UUID.class, ServerConnectionManager.class )
-                             .newInstance( name, UUID.randomUUID(), connectionManager );
-                 } else {
-                     throw new IllegalStateException();
-                 }
-             } else {
-                 throw  new IllegalStateException();
-             }
-
-            if( type != null ) {
-                replicatedTypes.put( name, type );
-                // clientUID is null, its a tests side created type.
-                if( clientUID != null ) {
-                    type.registerClient( clientUID );
-                }
-                type.startProcessing();
-                return type;
+            type = newReplicatedType( name, clazz );
+        } catch( Exception e ) {
+            throw new IllegalStateException( e );
+        }
+        if( type == null )
+            throw new IllegalStateException();
+        if( executor != null ) {
+            type.setExecutor( executor );
+        }
+        // messages received before the start are queued by the type.
+        final AbstractServerReplicatedType<?> existingType = replicatedTypes.putIfAbsent( name, type );
+        if( existingType != null ) {
+            return existingType;
+        }
+        try {
+            // clientUID is null, its a tests side created type.
+            if( clientUID != null ) {
+                type.registerClient( clientUID );
+            }
+            if( persistence != null ) {
+                type.attachLog( persistence.createLog( name, clazz.getName(), 0 ) );
+            }
+            type.startProcessing();
+            return type;
+        } catch( Exception e ) {
+            discardReplicatedType( name, type );
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Remove a published type whose start failed, together with its log.
+     * @param name The name of the type.
+     * @param type The type that was published under the name.
+     */
+    private void discardReplicatedType( String name, AbstractServerReplicatedType<?> type ) {
+        replicatedTypes.remove( name, type );
+        final OperationLog<?> log = type.detachLog();
+        if( log != null ) {
+            persistence.deleteLog( log );
+        }
+    }
+
+    /**
+     * Instantiate a replicated type.
+     * @param name The name of the new replicated type.
+     * @param clazz The class information about the replicated type.
+     * @return The new replicated type, not yet started.
+     * @throws Exception If the type could not be instantiated.
+     */
+    private AbstractServerReplicatedType<?> newReplicatedType( String name, @SuppressWarnings("rawtypes") Class<? extends IReplicatedType> clazz )
+            throws Exception {
+        Constructor<?> constructors[] = clazz.getConstructors();
+        if( constructors.length ==  1 ) {
+            Constructor<?> constructor = constructors[0];
+            // two constructor signatures of replicated types are supported.
+            if( constructor.getParameterTypes().length == 4 ) {
+                return (AbstractServerReplicatedType<?>) clazz.getConstructor( String.class, UUID.class, Class.class, ServerConnectionManager.class )
+                        .newInstance( name, UUID.randomUUID(), Object.class, connectionManager );
+            } else if( constructor.getParameterTypes().length == 3 ) {
+                return (AbstractServerReplicatedType<?>) clazz.getConstructor( String.class, UUID.class, ServerConnectionManager.class )
+                        .newInstance( name, UUID.randomUUID(), connectionManager );
             } else {
                 throw new IllegalStateException();
             }
+        } else {
+            throw  new IllegalStateException();
+        }
+    }
+
+    /**
+     * Hand a replicated type over to another server. The messages the type received before are
+     * processed, then the type is stopped and removed. The caller must ensure that no further
+     * messages are passed to the type.
+     * @param name The name of the replicated type.
+     * @return The state of the type, or null if the type does not exist.
+     */
+    public HandoverData<?> handOverReplicatedType( String name ) {
+        // sanity check.
+        if( name == null )
+            throw new NullPointerException();
+
+        final AbstractServerReplicatedType<?> type = replicatedTypes.get( name );
+        if( type == null )
+            return null;
+        final HandoverData<?> data = type.handOver();
+        replicatedTypes.remove( name, type );
+        // the new owner persists the type.
+        final OperationLog<?> log = type.detachLog();
+        if( log != null ) {
+            persistence.deleteLog( log );
+        }
+        return data;
+    }
+
+    /**
+     * Continue a replicated type that was handed over by another server.
+     * @param data The state of the type at the handover.
+     * @return The continued replicated type.
+     */
+    public IReplicatedType<?> adoptReplicatedType( HandoverData<?> data ) {
+        // sanity check.
+        if( data == null )
+            throw new NullPointerException();
+
+        final AbstractServerReplicatedType<?> type;
+        try {
+            type = newReplicatedType( data.name, Class.forName( data.className ).asSubclass( IReplicatedType.class ) );
+        } catch( Exception e ) {
+            throw new IllegalStateException( e );
+        }
+        type.restore( data );
+        if( executor != null ) {
+            type.setExecutor( executor );
+        }
+        if( replicatedTypes.putIfAbsent( data.name, type ) != null )
+            throw new IllegalStateException( "type[name = " + data.name + "] exists already" );
+        try {
+            if( persistence != null ) {
+                type.attachLog( persistence.createLog( data.name, data.className, type.getHistory().getRevision() ) );
+            }
+            type.startProcessing();
+            return type;
+        } catch( Exception e ) {
+            discardReplicatedType( data.name, type );
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Rebuild the persisted replicated types from their operation logs.
+     * Must be called before the clients connect.
+     */
+    public void recoverReplicatedTypes() {
+        // sanity check.
+        if( persistence == null )
+            throw new IllegalStateException( "the types are kept only in memory" );
+
+        try {
+            for( OperationLog<?> log : persistence.openLogs() ) {
+                final AbstractServerReplicatedType<?> type =
+                        newReplicatedType( log.name, Class.forName( log.className ).asSubclass( IReplicatedType.class ) );
+                type.recover( log );
+                if( executor != null ) {
+                    type.setExecutor( executor );
+                }
+                if( replicatedTypes.putIfAbsent( log.name, type ) != null )
+                    throw new IllegalStateException( "type[name = " + log.name + "] exists already" );
+                type.startProcessing();
+            }
         } catch( Exception e ) {
             throw new IllegalStateException( e );
         }
     }
 
+    /**
+     * Return the manager of the operation logs, or null if the types are kept only in memory.
+     */
+    public PersistenceManager getPersistenceManager() {
+        return persistence;
+    }
+
     public <G> IReplicatedType<G> createReplicatedType( String name, IReplicatedObjectFactory<G> factory ) {
         return null;
     }
@@ -165,7 +347,7 @@ public final class ServerDataManager implements IDataManager {
      * @param name The name of the replicated type.
      */
     @Override
-    public synchronized void removeReplicatedType( String name ) {
+    public void removeReplicatedType( String name ) {
         // TODO: implement it.
     }
 
@@ -175,7 +357,7 @@ public final class ServerDataManager implements IDataManager {
      * @return True if the data type exists.
      */
     @Override
-    public synchronized boolean existsReplicatedType( String name ) {
+    public boolean existsReplicatedType( String name ) {
         // sanity check.
         if( name == null )
             throw new NullPointerException();
@@ -188,7 +370,7 @@ public final class ServerDataManager implements IDataManager {
      * @return The data type if exists else null should be returned.
      */
     @Override
-    public synchronized IReplicatedType<?> getReplicatedType( String name ) {
+    public IReplicatedType<?> getReplicatedType( String name ) {
         // sanity check.
         if( name == null )
             throw new NullPointerException();
@@ -199,9 +381,8 @@ public final class ServerDataManager implements IDataManager {
      * Return the collection of all active replicated data types.
      * @return A collection of all replicated data types.
      */
-    @SuppressWarnings("rawtypes")
 	@Override
-    public Collection<? extends IReplicatedType> getAllReplicatedTypes() {
+    public Collection<? extends IReplicatedType<?>> getAllReplicatedTypes() {
         return replicatedTypes.values();
     }
 }
@@ -3,8 +3,10 @@ package de.tuberlin.rcd.server.runtime;
 import de.tuberlin.rcd.network.Transceiver;
 import de.tuberlin.rcd.network.common.Event;
 import de.tuberlin.rcd.network.common.IEventListener;
+import de.tuberlin.rcd.protocol.message.ProtocolCodecs;
 import de.tuberlin.rcd.protocol.runtimedefinition.IDataManager;
 import de.tuberlin.rcd.protocol.runtimedefinition.TypeNameRegistry;
+import de.tuberlin.rcd.server.cluster.ClusterManager;
 
 public class ServerFactory {
 
@@ -20,9 +22,22 @@ public class ServerFactory {
          * @param nameRegistry Reference to the server side name registry.
          */
         public ServerContext( IDataManager dataManager, ServerConnectionManager connectionManager, TypeNameRegistry nameRegistry) {
+            this( dataManager, connectionManager, nameRegistry, null );
+        }
+
+        /**
+         * Constructor.
+         * @param dataManager Reference to the server side data manager.
+         * @param connectionManager Reference to the server side connection manager.
+         * @param nameRegistry Reference to the server side name registry.
+         * @param cluster Reference to the cluster manager, <code>null</code> if the server runs alone.
+         */
+        public ServerContext( IDataManager dataManager, ServerConnectionManager connectionManager,
+                              TypeNameRegistry nameRegistry, ClusterManager cluster ) {
             this.dataManager = dataManager;
             this.connectionManager = connectionManager;
             this.nameRegistry = nameRegistry;
+            this.cluster = cluster;
         }
 
         /** Reference to the server side data manager. */
@@ -34,6 +49,9 @@ public class ServerFactory {
         /** Reference to the server side name registry.
             Responsible for resolving type name between client and server. */
         public final TypeNameRegistry nameRegistry;
+
+        /** Reference to the cluster manager, null if the server runs alone. */
+        public final ClusterManager cluster;
     }
 
     /**
@@ -41,16 +59,24 @@ public class ServerFactory {
      * @param configuration The server configuration.
      * @return A initialized server context.
      */
-    public ServerContext create( ServerConfiguration configuration ) {
+    public ServerContext create( final ServerConfiguration configuration ) {
         // sanity check.
         if( configuration == null )
             throw new NullPointerException();
 
+        // Compact wire encoding of the operations.
+        ProtocolCodecs.install();
+
         // Create the all server components.
         final ServerConnectionManager connectionManager = new ServerConnectionManager( configuration );
         final ServerDataManager dataManager = new ServerDataManager( connectionManager );
+        // Rebuild the persisted types before the clients connect.
+        if( configuration.getPersistenceDirectory() != null )
+            dataManager.recoverReplicatedTypes();
         final TypeNameRegistry nameRegistry = new TypeNameRegistry();
-        final ServerCommandMapping msgCmdMapping = new ServerCommandMapping( connectionManager, dataManager, nameRegistry);
+        final ClusterManager cluster = configuration.getLocalNode() != null
+                ? new ClusterManager( connectionManager, dataManager ) : null;
+        final ServerCommandMapping msgCmdMapping = new ServerCommandMapping( connectionManager, dataManager, nameRegistry, cluster );
 
         // Use the event mechanism to embed dependencies on
         // the transceiver instances of the lower network layer.
@@ -62,9 +88,10 @@ public class ServerFactory {
                 final Transceiver transceiver = (Transceiver)event.data;
                 transceiver.getReceiver().storeDependency( "connectionManager", connectionManager );
                 transceiver.getReceiver().storeDependency( "msgCmdMapping", msgCmdMapping );
+                transceiver.getTransmitter().storeDependency( "batchPolicy", configuration.getBatchPolicy() );
             }
         });
 
-        return new ServerContext( dataManager, connectionManager, nameRegistry);
+        return new ServerContext( dataManager, connectionManager, nameRegistry, cluster );
     }
 }
@@ -5,6 +5,7 @@ import java.util.UUID;
 import org.apache.log4j.Logger;
 
 import de.tuberlin.rcd.network.Message;
+import de.tuberlin.rcd.network.MessageBatch;
 import de.tuberlin.rcd.network.Transceiver;
 import de.tuberlin.rcd.protocol.message.MessageFormat;
 import de.tuberlin.rcd.protocol.runtimedefinition.IMessageCommand;
@@ -12,7 +13,7 @@ import de.tuberlin.rcd.protocol.runtimedefinition.IMessageCommand;
 /**
  * Server receiver thread of the server side transceiver instances.
  */
-public final class ServerReceiver extends Transceiver.TransceiverThreadBase {
+public final class ServerReceiver extends Transceiver.ReceiverThreadBase {
 
     /**
      * Log4J.
@@ -49,6 +50,10 @@ public final class ServerReceiver extends Transceiver.TransceiverThreadBase {
             LOGGER.info( "received message from client [UID = " + msg.getSourceUID() + "] of [type = " + msgType + "]" );
             // sanity check.
             final UUID clientUID = msg.getSourceUID();
+            // a connection may only send messages under its own UID.
+            if( !connection.getUID().equals( clientUID ) ) {
+                throw new IllegalStateException( "Message source does not match the connection" );
+            }
             if( !connectionManager.existsConnection(clientUID) ) {
                 throw new IllegalStateException( "Client is not registered" );
             }
@@ -89,10 +94,21 @@ public final class ServerReceiver extends Transceiver.TransceiverThreadBase {
 	 */
 	@Override
 	protected void process() throws Exception {
-		Object receivedObj = connection.in.readObject();
-	    if( receivedObj instanceof Message ) {
-            Message msg = (Message)receivedObj;
-            msgDispatcher.dispatchMessage( msg );
+        received( connection.readObject() );
+    }
+
+    /* (non-Javadoc)
+     * @see de.tuberlin.rcd.network.Transceiver.ReceiverThreadBase#received(java.lang.Object)
+     */
+    @Override
+    protected void received( Object receivedObj ) throws Exception {
+        if( receivedObj instanceof Message ) {
+            msgDispatcher.dispatchMessage( (Message)receivedObj );
+        } else if( receivedObj instanceof MessageBatch ) {
+            // unpack the batch, the messages are dispatched in transmission order.
+            for( Message msg : ( (MessageBatch)receivedObj ).getMessages() ) {
+                msgDispatcher.dispatchMessage( msg );
+            }
         } else {
             throw new IllegalStateException();
         }
@@ -0,0 +1,74 @@
+package de.tuberlin.rcd.server.tests;
+
+import java.util.UUID;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.SimpleLayout;
+
+import de.tuberlin.rcd.server.cluster.ClusterNode;
+import de.tuberlin.rcd.server.runtime.ServerConfiguration;
+import de.tuberlin.rcd.server.runtime.ServerConnectionListener;
+import de.tuberlin.rcd.server.runtime.ServerFactory;
+import de.tuberlin.rcd.server.runtime.ServerFactory.ServerContext;
+import de.tuberlin.rcd.server.types.list.ServerReplicatedList;
+import de.tuberlin.rcd.server.types.string.ServerReplicatedString;
+
+/**
+ * Entry point of the cluster tests. Starts three nodes on localhost, the
+ * clients may connect to any of the ports 2832, 2833 and 2834.
+ */
+public final class ClusterServer {
+
+    /**
+     * Log4J.
+     */
+    private static final Logger LOGGER = Logger.getRootLogger();
+
+    /**
+     * Main.
+     * @param args Not used.
+     */
+    public static void main(String[] args) {
+
+        //-----------------------------------
+        // initialize log4j.
+        //-----------------------------------
+        final SimpleLayout layout = new SimpleLayout();
+        final ConsoleAppender consoleAppender = new ConsoleAppender( layout );
+        LOGGER.addAppender( consoleAppender );
+        LOGGER.setLevel( Level.INFO );
+
+        //-----------------------------------
+        // initialize cluster nodes.
+        //-----------------------------------
+        final ClusterNode[] nodes = new ClusterNode[] {
+                new ClusterNode( "node-0", "localhost", 2832 ),
+                new ClusterNode( "node-1", "localhost", 2833 ),
+                new ClusterNode( "node-2", "localhost", 2834 )
+            };
+
+        final ServerFactory factory = new ServerFactory();
+        for( ClusterNode node : nodes ) {
+            final ServerContext context = factory.create(
+                    new ServerConfiguration( UUID.randomUUID(), node.port, 1000, node.host )
+                            .setCluster( node, nodes ).setClusterSecret( "rcd-cluster" )
+                );
+
+            // every node needs the same type mappings.
+            context.nameRegistry.insertMapping( "ReplicatedString", ServerReplicatedString.class.getName() );
+            context.nameRegistry.insertMapping( "ReplicatedList", ServerReplicatedList.class.getName() );
+
+            //-----------------------------------
+            // execute connection listener.
+            //-----------------------------------
+            try {
+                new ServerConnectionListener( context.connectionManager ).startListener();
+            } catch( Throwable t ) {
+                LOGGER.error( "fatal error", t );
+            }
+        }
+        LOGGER.info( "tests started" );
+    }
+}
@@ -1,26 +1,41 @@
 package de.tuberlin.rcd.server.types;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.log4j.Logger;
 
+import de.tuberlin.rcd.network.BroadcastMessage;
 import de.tuberlin.rcd.network.Message;
-import de.tuberlin.rcd.network.MessageBuilder;
-import de.tuberlin.rcd.network.Transceiver;
 import de.tuberlin.rcd.network.common.Event;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTOperationHistory;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.ServerOTConcurrencyControlFactory;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.OperationBasedFillData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.SnapshotFillData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.StateBasedFillData;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveServerAlgorithm;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearOperations;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTSequenceDataModel;
 import de.tuberlin.rcd.protocol.message.MessageFormat;
 import de.tuberlin.rcd.protocol.types.AbstractFillData;
 import de.tuberlin.rcd.protocol.types.AbstractReplicatedType;
+import de.tuberlin.rcd.server.cluster.HandoverData;
+import de.tuberlin.rcd.server.persistence.ModelSnapshot;
+import de.tuberlin.rcd.server.persistence.OperationLog;
+import de.tuberlin.rcd.server.runtime.ServerConfiguration;
 import de.tuberlin.rcd.server.runtime.ServerConnectionManager;
-import de.tuberlin.rcd.server.runtime.ServerConnectionManagerException;
-import de.tuberlin.rcd.server.runtime.ServerSender;
 
 /**
  * Server side specialization of the AbstractReplicatedType.
@@ -32,6 +47,12 @@ public abstract class AbstractServerReplicatedType<T> extends AbstractReplicated
      */
      private static final Logger LOGGER = Logger.getLogger( AbstractServerReplicatedType.class );
 
+    /**
+     * Maximal number of operations after the snapshot revision, a new snapshot is taken
+     * for the next fill if the tail grows longer.
+     */
+    public static final int MAX_SNAPSHOT_TAIL = 256;
+
     /**
      * Constructor.
      */
@@ -48,7 +69,10 @@ public abstract class AbstractServerReplicatedType<T> extends AbstractReplicated
             throw new IllegalArgumentException();
 
         this.registeredClients = Collections.synchronizedSet( new HashSet<UUID>() );
+        this.pendingFills = Collections.synchronizedMap( new HashMap<UUID,List<OTOperationDefinition.OTOperation<T>>>() );
         this.connectionManager = connectionManager;
+        this.fillMode = connectionManager.configuration.getFillMode();
+        this.factory = factory;
         this.model = factory.injectDataModel();
         this.transformer = factory.injectInclusionTransformer( model );
         this.serverIntegrator = factory.injectControlAlgorithm( model, transformer, opSender, this );
@@ -57,38 +81,94 @@ public abstract class AbstractServerReplicatedType<T> extends AbstractReplicated
     /** Stores all registered client for this type. */
     protected final Set<UUID> registeredClients;
 
+    /** The operations for clients that have not yet acknowledged their fill data. */
+    private final Map<UUID,List<OTOperationDefinition.OTOperation<T>>> pendingFills;
+
     /** Reference to the connection manager. */
     protected final ServerConnectionManager connectionManager;
 
+    /** Creates the data model copies for the state based fill data. */
+    private final ServerOTConcurrencyControlFactory<T> factory;
+
+    /** The content that is transmitted to fill newly registered clients. */
+    private volatile ServerConfiguration.FillMode fillMode;
+
+    /** The latest snapshot of the data model, shared by the snapshot fills and the log. */
+    private ModelSnapshot<T> snapshot = null;
+
+    /** Released when the handover message is processed. */
+    private volatile CountDownLatch handoverLatch = null;
+
+    /** The state of the type at the handover. */
+    private volatile HandoverData<T> handoverData = null;
+
+    /** Persists the integrated operations, null if the type is kept only in memory. */
+    private volatile OperationLog<T> log = null;
+
     /** System specific */
 
     /** Encapsulate the network layer specific stuff. */
-    protected final OTSystemDefinition.OperationSender<T> opSender = new OTSystemDefinition.OperationSender<T>() {
+    protected final OTSystemDefinition.OperationSender<T> opSender = new OTSystemDefinition.BroadcastOperationSender<T>() {
         @Override
         public void sendOperation( UUID clientUID, OTOperationDefinition.OTOperation<T> op ) {
-            // substitute the operation in msg.
-            final MessageBuilder builder;
-            try {
-                builder = connectionManager.getConnection( clientUID ).msgBuilder;
-            } catch( ServerConnectionManagerException e ) {
-                throw new IllegalStateException( e );
-            }
-            final Message newMsg = builder.begin( UUID.randomUUID() )
-                    .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE,
-                            MessageFormat.MessageType.MSG_TYPE_OPERATION_FOR_REPLICATED_TYPE )
-                    .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME, name )
-                    .addParameter(MessageFormat.MessageAttribute.MSG_ATTR_OPERATION, op )
-                    .build( op.getMetaData().creator );
-            try {
-                final Transceiver transceiver = connectionManager.getTransceiver( clientUID );
-                final ServerSender sender = (ServerSender)transceiver.getTransmitter();
-                sender.enqueueMessage( newMsg );
-            } catch( ServerConnectionManagerException e ) {
-                throw new IllegalStateException( e );
+            if( !bufferPendingOperation( clientUID, op ) )
+                transmitOperation( clientUID, op );
+        }
+
+        @Override
+        public void broadcastOperation( Collection<UUID> clientUIDs, OTOperationDefinition.OTOperation<T> op ) {
+            // one message for all clients, the senders share its encoded payload.
+            final Map<String,Serializable> dataTable = new HashMap<String,Serializable>();
+            dataTable.put( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE,
+                    MessageFormat.MessageType.MSG_TYPE_OPERATION_FOR_REPLICATED_TYPE );
+            dataTable.put( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME, name );
+            dataTable.put( MessageFormat.MessageAttribute.MSG_ATTR_OPERATION, op );
+            final Message newMsg = new BroadcastMessage( op.getMetaData().creator, UUID.randomUUID(), dataTable, -1 );
+            for( UUID clientUID : clientUIDs ) {
+                if( bufferPendingOperation( clientUID, op ) )
+                    continue;
+                final ServerConnectionManager.ConnectionHandle handle = connectionManager.getConnectionHandle( clientUID );
+                // a disconnected client is deregistered by the client removed event.
+                if( handle != null )
+                    handle.send( newMsg );
             }
         }
     };
 
+    /**
+     * Buffer the operation if the client has not yet acknowledged its fill data.
+     * @param clientUID The UID of the receiver.
+     * @param op The operation to send.
+     * @return true, if the operation was buffered.
+     */
+    private boolean bufferPendingOperation( UUID clientUID, OTOperationDefinition.OTOperation<T> op ) {
+        final List<OTOperationDefinition.OTOperation<T>> pending = pendingFills.get( clientUID );
+        if( pending == null )
+            return false;
+        pending.add( op );
+        return true;
+    }
+
+    /**
+     * Send a operation to a single client.
+     * @param clientUID The UID of the receiver.
+     * @param op The operation to send.
+     */
+    private void transmitOperation( UUID clientUID, OTOperationDefinition.OTOperation<T> op ) {
+        final ServerConnectionManager.ConnectionHandle handle = connectionManager.getConnectionHandle( clientUID );
+        // a disconnected client is deregistered by the client removed event.
+        if( handle == null )
+            return;
+        // substitute the operation in msg.
+        final Message newMsg = handle.connection.msgBuilder.begin( UUID.randomUUID() )
+                .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE,
+                        MessageFormat.MessageType.MSG_TYPE_OPERATION_FOR_REPLICATED_TYPE )
+                .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME, name )
+                .addParameter(MessageFormat.MessageAttribute.MSG_ATTR_OPERATION, op )
+                .build( op.getMetaData().creator );
+        handle.send( newMsg );
+    }
+
     /** Structure specific **/
 
     /** The data structures data model. */
@@ -146,6 +226,7 @@ public abstract class AbstractServerReplicatedType<T> extends AbstractReplicated
             throw new NullPointerException();
         if( registeredClients.contains( clientUID ) ) {
             registeredClients.remove(clientUID);
+            pendingFills.remove( clientUID );
             dispatchEvent( new Event( "type_removed_client", clientUID ) );
         } else {
             throw new IllegalStateException();
@@ -153,7 +234,8 @@ public abstract class AbstractServerReplicatedType<T> extends AbstractReplicated
     }
 
     /**
-     * Fill the given client with the current state of the replicated object.
+     * Fill the given client with the current state of the replicated object. The operations that
+     * are integrated until the client acknowledges the fill data are buffered and sent afterwards.
      * @param clientUID The UID of the client that gets filled.
      */
     public void fillClient( UUID clientUID ) {
@@ -161,53 +243,31 @@ public abstract class AbstractServerReplicatedType<T> extends AbstractReplicated
         if( clientUID == null )
             throw new NullPointerException();
 
-        // TODO: use cyclic barrier!
-        // reset the latch.
-        //fillLatch = new CountDownLatch( 1 );
-        //try {
-            //fillLatch.await();
-        //} catch (InterruptedException e) {
-        //    throw new IllegalStateException( e );
-        //}
-
         // Acquire a lock in the fill phase. No incoming operation is processed until the new client is
-        // registered and filled with current data model state. Without the lock it could be possible that
-        // operation are processed and the new client gets no messages. The state would diverge from the beginning.
+        // registered and its fill data is taken. Without the lock it could be possible that operations
+        // are processed and the new client gets no messages. The state would diverge from the beginning.
         lockRemoteOpProcessing(); // The experimental re-entrant lock of <code>AbstractReplicatedType</code>.
-
-            final AbstractFillData fillData = fillData();
-            final MessageBuilder builder;
-
-            try {
-                builder = connectionManager.getConnection(clientUID).msgBuilder;
-            } catch( ServerConnectionManagerException e ) {
-                throw new IllegalStateException( e );
+        try {
+            final ServerConnectionManager.ConnectionHandle handle = connectionManager.getConnectionHandle( clientUID );
+            if( handle == null ) {
+                throw new IllegalStateException( "client[uid = " + clientUID + "] is not connected" );
             }
 
-            final Message msg = builder.begin( UUID.randomUUID() )
+            final AbstractFillData fillData = fillData();
+            final Message msg = handle.connection.msgBuilder.begin( UUID.randomUUID() )
                     .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE, MessageFormat.MessageType.MSG_TYPE_FILL_REPLICATED_TYPE )
                     .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME, name )
                     .addParameter( MessageFormat.MessageAttribute.MSG_ATTR_FILL_DATA, fillData )
                     .build( connectionManager.configuration.serverUID );
+            handle.send( msg );
 
-            try {
-                final ServerSender sender = (ServerSender) connectionManager.getTransceiver(clientUID).getTransmitter();
-                sender.enqueueMessage( msg );
-            } catch( ServerConnectionManagerException e ) {
-                throw new IllegalStateException( e );
-            }
-
+            // the operations after the fill revision wait for the fill acknowledge of the client.
+            pendingFills.put( clientUID, new ArrayList<OTOperationDefinition.OTOperation<T>>() );
             registerClient( clientUID );
             LOGGER.info( "registered and filled client[uid =" + clientUID + " ] by type[name = " + name + "]" );
-
-            // TODO: this is strange. Why do we need to wait here?
-            try {
-                Thread.sleep( 1000 );
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-        unlockRemoteOpProcessing();
+        } finally {
+            unlockRemoteOpProcessing();
+        }
     }
 
     /**
@@ -222,7 +282,181 @@ public abstract class AbstractServerReplicatedType<T> extends AbstractReplicated
         //
         // DO SOME TRANSFORMATION.
         //
-        serverIntegrator.integrate( remoteOp );
+        final OTOperationDefinition.OTOperation<T> executedOp = serverIntegrator.integrate( remoteOp );
+
+        // the log only queues the operation, it is written by the log writer.
+        final OperationLog<T> log = this.log;
+        if( log != null ) {
+            log.append( executedOp );
+            if( log.needsSnapshot() && model instanceof OTSequenceDataModel )
+                log.snapshot( takeSnapshot() );
+        }
+    }
+
+    /**
+     * Process the acknowledged revision of a client. Operations all clients have
+     * acknowledged are dropped from the history.
+     * @param clientUID The UID of the acknowledging client.
+     * @param revision The number of server operations the client has integrated.
+     */
+    @Override
+    protected void processAcknowledge( UUID clientUID, int revision ) {
+        serverIntegrator.acknowledge( clientUID, revision );
+    }
+
+    /**
+     * Process the fill acknowledge of a client. The buffered operations are sent in the
+     * order of their integration.
+     * @param clientUID The UID of the filled client.
+     * @param revision The revision the client was filled with.
+     */
+    @Override
+    protected void processFillAcknowledge( UUID clientUID, int revision ) {
+        final List<OTOperationDefinition.OTOperation<T>> pending = pendingFills.remove( clientUID );
+        // sanity check.
+        if( pending == null )
+            throw new IllegalStateException();
+
+        for( OTOperationDefinition.OTOperation<T> op : pending )
+            transmitOperation( clientUID, op );
+        serverIntegrator.acknowledge( clientUID, revision );
+        LOGGER.info( "client[uid =" + clientUID + " ] acknowledged fill of type[name = " + name + "], "
+                + pending.size() + " buffered operations sent" );
+    }
+
+    /**
+     * Hand the type over to another server. The messages received before are processed first,
+     * then the processing is stopped and the state of the type is returned. The caller must
+     * ensure that no further messages are enqueued. Only types that are synchronized by the
+     * <code>WaveServerAlgorithm</code> can be handed over.
+     * @return The state of the type.
+     */
+    public HandoverData<T> handOver() {
+        // sanity check.
+        if( !( serverIntegrator instanceof WaveServerAlgorithm ) )
+            throw new UnsupportedOperationException( "type[name = " + name + "] can not be handed over" );
+
+        final CountDownLatch latch = new CountDownLatch( 1 );
+        handoverLatch = latch;
+        final Map<String,Serializable> dataTable = new HashMap<String,Serializable>();
+        dataTable.put( MessageFormat.MessageAttribute.MSG_ATTR_MSG_TYPE,
+                MessageFormat.MessageType.MSG_TYPE_HANDOVER_REPLICATED_TYPE );
+        dataTable.put( MessageFormat.MessageAttribute.MSG_ATTR_TYPE_NAME, name );
+        enqueueReceivedMsg( new Message( typeUID, UUID.randomUUID(), dataTable, -1 ) );
+        try {
+            latch.await();
+        } catch( InterruptedException e ) {
+            throw new IllegalStateException( e );
+        }
+        stopProcessing();
+        LOGGER.info( "type[name = " + name + "] handed over at revision " + handoverData.history.getRevision() );
+        return handoverData;
+    }
+
+    /**
+     * Take the state of the type for the handover.
+     */
+    @Override
+    protected void processHandover() {
+        final Map<UUID,List<OTOperationDefinition.OTOperation<T>>> pending;
+        synchronized( pendingFills ) {
+            pending = new HashMap<UUID,List<OTOperationDefinition.OTOperation<T>>>( pendingFills );
+        }
+        handoverData = new HandoverData<T>( name, getClass().getName(), copyDataModel(), serverIntegrator.getHistory(),
+                ( (WaveServerAlgorithm<T>)serverIntegrator ).getRevisions(), pending );
+        handoverLatch.countDown();
+    }
+
+    /**
+     * Continue the state of a type that was handed over by another server.
+     * Must be called before <code>startProcessing</code>.
+     * @param data The state of the type at the handover.
+     */
+    @SuppressWarnings("unchecked")
+    public void restore( HandoverData<?> data ) {
+        // sanity check.
+        if( data == null )
+            throw new NullPointerException();
+        if( !data.className.equals( getClass().getName() ) )
+            throw new IllegalArgumentException();
+        if( !( serverIntegrator instanceof WaveServerAlgorithm ) )
+            throw new UnsupportedOperationException( "type[name = " + name + "] can not be handed over" );
+
+        final HandoverData<T> handover = (HandoverData<T>)data;
+        model.fillModel( handover.model );
+        ( (WaveServerAlgorithm<T>)serverIntegrator ).restore( handover.history, handover.revisions );
+        registeredClients.addAll( handover.revisions.keySet() );
+        for( Map.Entry<UUID,List<OTOperationDefinition.OTOperation<T>>> entry : handover.pendingOperations.entrySet() )
+            pendingFills.put( entry.getKey(), new ArrayList<OTOperationDefinition.OTOperation<T>>( entry.getValue() ) );
+        LOGGER.info( "type[name = " + name + "] taken over at revision " + handover.history.getRevision() );
+    }
+
+    /**
+     * Persist the operations integrated from now on. If the type continues the state of
+     * another server, a snapshot of the state is logged first.
+     * Must be called before <code>startProcessing</code>.
+     * @param persistentLog The empty log of the type.
+     */
+    @SuppressWarnings("unchecked")
+    public void attachLog( OperationLog<?> persistentLog ) {
+        // sanity check.
+        if( persistentLog == null )
+            throw new NullPointerException();
+
+        final OperationLog<T> log = (OperationLog<T>)persistentLog;
+        if( getHistory().getRevision() > 0 ) {
+            if( !( model instanceof OTSequenceDataModel ) )
+                throw new UnsupportedOperationException( "type[name = " + name + "] can not take snapshots" );
+            log.snapshot( takeSnapshot() );
+        }
+        this.log = log;
+    }
+
+    /**
+     * Stop persisting the integrated operations, e.g. after the type was handed over.
+     * @return The log of the type, or null if the type is kept only in memory.
+     */
+    public OperationLog<T> detachLog() {
+        final OperationLog<T> log = this.log;
+        this.log = null;
+        return log;
+    }
+
+    /**
+     * Rebuild the state of the type from its log: the elements of the latest snapshot are
+     * inserted and the operations after it are replayed. The recovered type has no clients,
+     * so its history starts empty at the recovered revision. The type continues to persist
+     * to the log. Must be called before <code>startProcessing</code>.
+     * @param persistentLog The log of the type.
+     * @throws IOException If the log could not be read.
+     */
+    @SuppressWarnings("unchecked")
+    public void recover( OperationLog<?> persistentLog ) throws IOException {
+        // sanity check.
+        if( persistentLog == null )
+            throw new NullPointerException();
+        if( !persistentLog.className.equals( getClass().getName() ) )
+            throw new IllegalArgumentException();
+
+        final OperationLog<T> log = (OperationLog<T>)persistentLog;
+        final OperationLog.Recovery<T> recovery = log.recover();
+        if( recovery.snapshot != null && !recovery.snapshot.elements.isEmpty() )
+            model.applyOperation( new OTLinearOperations.InsertRangeOperation<T>( 0, recovery.snapshot.elements ) );
+        // entity updates assign absolute field values, replaying them after the snapshot is idempotent.
+        for( OTOperationDefinition.OTOperation<T> op : recovery.operations )
+            model.applyOperation( op );
+        final OTOperationHistory<T> history = new OTOperationHistory<T>( recovery.revision + recovery.operations.size() );
+        serverIntegrator.getHistory().restore( history );
+        this.log = log;
+        LOGGER.info( "type[name = " + name + "] recovered at revision " + history.getRevision() );
+    }
+
+    /**
+     * Return the oldest revision that is retained for the registered clients.
+     * @return The low-water mark of the operation history.
+     */
+    public int getLowWaterMark() {
+        return serverIntegrator.getLowWaterMark();
     }
 
     /**
@@ -244,11 +478,76 @@ public abstract class AbstractServerReplicatedType<T> extends AbstractReplicated
         return serverIntegrator.getHistory();
     }
 
+    /**
+     * Set the content that is transmitted to fill newly registered clients.
+     * Overrides the fill mode of the server configuration for this type.
+     * @param fillMode The fill mode.
+     */
+    public void setFillMode( ServerConfiguration.FillMode fillMode ) {
+        // sanity check.
+        if( fillMode == null )
+            throw new NullPointerException();
+        this.fillMode = fillMode;
+    }
+
+    /**
+     * Return the content that is transmitted to fill newly registered clients.
+     */
+    public ServerConfiguration.FillMode getFillMode() {
+        return fillMode;
+    }
+
     /**
      * Return the current state of the replicated data for client filling.
+     * Must be called while the remote operation processing is locked.
      * @return Current state of the replicated data.
      */
-    protected abstract AbstractFillData fillData();
+    protected AbstractFillData fillData() {
+        final OTOperationHistory<T> history = serverIntegrator.getHistory();
+        if( fillMode == ServerConfiguration.FillMode.SNAPSHOT && model instanceof OTSequenceDataModel )
+            return snapshotFillData( history );
+        // a truncated history can not rebuild the data model, the client gets a copy of the model instead.
+        if( fillMode == ServerConfiguration.FillMode.OPERATION && history.getBaseRevision() == 0 )
+            return new OperationBasedFillData<T>( new OTOperationHistory<T>( history ), serverIntegrator.getState() );
+        return new StateBasedFillData<T>( copyDataModel(), serverIntegrator.getState() );
+    }
+
+    /**
+     * Return a copy of the data model that is not changed by further operations.
+     */
+    private OTSystemDefinition.OTDataModel<T> copyDataModel() {
+        final OTSystemDefinition.OTDataModel<T> copy = factory.injectDataModel();
+        copy.fillModel( model );
+        return copy;
+    }
+
+    /**
+     * Take a snapshot of the sequence data model at the current revision. Only the references
+     * of the elements are copied here, the elements are encoded by the fills and the log writer
+     * on their own threads (see <code>ModelSnapshot</code>).
+     * @return The new snapshot.
+     */
+    private ModelSnapshot<T> takeSnapshot() {
+        snapshot = new ModelSnapshot<T>( serverIntegrator.getHistory().getRevision(), serverIntegrator.getState(),
+                                         ((OTSequenceDataModel<T>)model).getDataElements() );
+        return snapshot;
+    }
+
+    /**
+     * Build the fill data from the snapshot and the operations after the snapshot revision.
+     * The snapshot is reused by subsequent fills until the history is truncated behind it
+     * or the tail exceeds <code>MAX_SNAPSHOT_TAIL</code> operations.
+     * @param history The server history.
+     * @return The snapshot fill data.
+     */
+    private AbstractFillData snapshotFillData( OTOperationHistory<T> history ) {
+        if( snapshot == null
+                || snapshot.revision < history.getBaseRevision()
+                || history.getRevision() - snapshot.revision > MAX_SNAPSHOT_TAIL )
+            takeSnapshot();
+        return new SnapshotFillData<T>( snapshot.elements, history.getConcurrentOperations( snapshot.revision ),
+                                        serverIntegrator.getState() );
+    }
 
     /**
      * Create a cursor on a fixed position.
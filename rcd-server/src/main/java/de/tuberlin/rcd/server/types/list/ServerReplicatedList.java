@@ -11,12 +11,9 @@ import org.apache.log4j.Logger;
 import de.tuberlin.rcd.network.common.IEventDispatcher;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.ServerOTConcurrencyControlFactory;
-import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.OperationBasedFillData;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveServerAlgorithm;
-import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearDataModel;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearTransformer;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.conflictmng.LastWriterWinsConflictSolver;
-import de.tuberlin.rcd.protocol.types.AbstractFillData;
 import de.tuberlin.rcd.protocol.types.list.IReplicatedList;
 import de.tuberlin.rcd.server.runtime.ServerConnectionManager;
 import de.tuberlin.rcd.server.types.AbstractServerReplicatedType;
@@ -35,7 +32,7 @@ public class ServerReplicatedList<T> extends AbstractServerReplicatedType<T>
      * @param name The name of the type.
      * @param typeUID The UID of the type.
      */
-    public ServerReplicatedList( String name, UUID typeUID, final Class<T> typeInfo, ServerConnectionManager connectionManager ) {
+    public ServerReplicatedList( String name, UUID typeUID, final Class<T> typeInfo, final ServerConnectionManager connectionManager ) {
         super( new ServerOTConcurrencyControlFactory<T>() {
 
             @Override
@@ -58,29 +55,12 @@ public class ServerReplicatedList<T> extends AbstractServerReplicatedType<T>
 
             @Override
             public OTSystemDefinition.OTDataModel<T> injectDataModel() {
-                return new OTLinearDataModel<T>( typeInfo );
+                return connectionManager.configuration.getListModel().createDataModel( typeInfo );
             }
 
         }, name, typeUID, connectionManager );
     }
 
-    //-----------------------------------------------
-    // IReplicatedType implementation.
-    //-----------------------------------------------
-
-    /**
-     * Return the current state of the replicated data for client filling.
-     *
-     * @return Current state of the replicated data.
-     */
-    @Override
-    public AbstractFillData fillData() {
-        //return new StateBasedFillData<T>( model,
-        //        ((WaveServerAlgorithm)serverIntegrator).getRevision() );
-        return new OperationBasedFillData<T>( serverIntegrator.getHistory(),
-                                                  serverIntegrator.getState() );
-    }
-
     //-----------------------------------------------
     // List implementation.
     //-----------------------------------------------
@@ -5,12 +5,10 @@ import java.util.UUID;
 import de.tuberlin.rcd.network.common.IEventDispatcher;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.ServerOTConcurrencyControlFactory;
-import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.OperationBasedFillData;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveServerAlgorithm;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearDataModel;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearTransformer;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.conflictmng.LastWriterWinsConflictSolver;
-import de.tuberlin.rcd.protocol.types.AbstractFillData;
 import de.tuberlin.rcd.server.runtime.ServerConnectionManager;
 import de.tuberlin.rcd.server.types.AbstractServerReplicatedType;
 
@@ -54,16 +52,4 @@ public class ServerReplicatedType extends AbstractServerReplicatedType<Object> {
 
         }, name, typeUID, connectionManager );
     }
-
-    /**
-     *
-     * @return
-     */
-    @Override
-    protected AbstractFillData fillData() {
-        //return new StateBasedFillData<Object>( model,
-        //       ((WaveServerAlgorithm)serverIntegrator).getRevision() );
-        return new OperationBasedFillData<Object>( serverIntegrator.getHistory(),
-                                                       serverIntegrator.getState() );
-    }
 }
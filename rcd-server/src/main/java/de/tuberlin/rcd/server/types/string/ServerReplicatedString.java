@@ -1,17 +1,14 @@
 package de.tuberlin.rcd.server.types.string;
 
-import java.util.List;
 import java.util.UUID;
 
 import de.tuberlin.rcd.network.common.IEventDispatcher;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.OTSystemDefinition;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.ServerOTConcurrencyControlFactory;
-import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.filldata.StateBasedFillData;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.algorithms.wave.WaveServerAlgorithm;
-import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearDataModel;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTLinearTransformer;
+import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.OTRopeDataModel;
 import de.tuberlin.rcd.protocol.concurrencycontrol.otsystem.datamodels.linearmodel.conflictmng.LastWriterWinsConflictSolver;
-import de.tuberlin.rcd.protocol.types.AbstractFillData;
 import de.tuberlin.rcd.protocol.types.string.IReplicatedString;
 import de.tuberlin.rcd.server.runtime.ServerConnectionManager;
 import de.tuberlin.rcd.server.types.AbstractServerReplicatedType;
@@ -55,22 +52,12 @@ public final class ServerReplicatedString extends AbstractServerReplicatedType<C
 
             @Override
             public OTSystemDefinition.OTDataModel<Character> injectDataModel() {
-                return new OTLinearDataModel<Character>( Character.class );
+                return new OTRopeDataModel();
             }
 
         }, name, typeUID, connectionManager );
     }
 
-    /**
-     * Return the current state of the replicated data for client filling.
-     *
-     * @return Current state of the replicated data.
-     */
-    @Override
-    public AbstractFillData fillData() {
-        return new StateBasedFillData<Character>( model, serverIntegrator.getState() );
-    }
-
     //-----------------------------------------------
     // IReplicatedString implementation.
     //-----------------------------------------------
@@ -96,35 +83,56 @@ public final class ServerReplicatedString extends AbstractServerReplicatedType<C
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Insert a sequence of characters at a given position.
+     *
+     * @param pos The position to insert.
+     * @param text The characters to insert.
+     */
+    @Override
+    public void insertString( int pos, CharSequence text ) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Delete a sequence of characters starting at a given position.
+     *
+     * @param pos The position of the first deleted character.
+     * @param count The number of characters to delete.
+     */
+    @Override
+    public void deleteString( int pos, int count ) {
+        throw new UnsupportedOperationException();
+    }
+
     //-----------------------------------------------
     // CharSequence implementation.
     //-----------------------------------------------
 
     @Override
     public int length() {
-        throw new UnsupportedOperationException();
+        return model.size();
     }
 
     @Override
     public char charAt( int i ) {
-        throw new UnsupportedOperationException();
+        return text().charAt( i );
     }
 
     @Override
     public CharSequence subSequence( int i, int i1 ) {
-        throw new UnsupportedOperationException();
+        return text().subSequence( i, i1 );
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public String toString() {
-        //synchronized( modelMutex ) {
-            final List<Character> m = (List<Character>)model.getData();
-            final StringBuilder builder = new StringBuilder( m.size() );
-            for( Character ch : m ) {
-                builder.append( ch );
-            }
-            return builder.toString();
-        //}
+        return text().toString();
+    }
+
+    /**
+     * Return the text data model.
+     */
+    private OTRopeDataModel text() {
+        return (OTRopeDataModel)model;
     }
 }